@@ -0,0 +1,160 @@
+package dbproject.bench;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Handle on a DBproject instance. The application classes live in the
+ * default package, which code in a named package (as JMH requires for
+ * benchmarks) cannot reference, so they are reached through reflection.
+ * The lookups happen once; each call is a plain Method.invoke.
+ */
+final class App{
+	private final Class<?> _cls;
+	private final Object _esql;
+	private final Method _update;
+	private final Method _columns;
+	private final Object _booker;
+	private final Method _book;
+	private final Method _cleanup;
+	private final Method _availableOfDepartment;
+	private final Object _patientsReport;
+	private final Method _patientsReportRun;
+	private final Object _viewSource;
+	private final Class<?> _shardKey;
+	private final Method _shardKeyParse;
+	private final Method _parallelStatus;
+	private final Method _parallelPatients;
+	private final Method _parallelStop;
+
+	App(String dbname, String port, String user) throws Exception {
+		this._cls = Class.forName("DBproject");
+		this._esql = this._cls.getConstructor(String.class, String.class, String.class, String.class)
+			.newInstance(dbname, port, user, "");
+		this._update = this._cls.getMethod("executeUpdate", String.class, Object[].class);
+		this._columns = this._cls.getMethod("executeQueryAndReturnColumns", String.class, Object[].class);
+		this._booker = this._cls.getMethod("getBooker").invoke(this._esql);
+		this._book = this._booker.getClass().getMethod("book", int.class, int.class, int.class);
+		this._cleanup = this._cls.getMethod("cleanup");
+		this._availableOfDepartment = this._cls.getMethod("listAvailableAppointmentsOfDepartment",
+			String.class, LocalDate.class);
+		this._patientsReport = this._cls.getMethod("getPatientsPerDoctorReport").invoke(this._esql);
+		Class<?> source = Class.forName("PatientsPerDoctorReport$Source");
+		this._patientsReportRun = this._patientsReport.getClass().getMethod("run", String.class, source);
+		this._viewSource = source.getField("VIEW").get(null);
+		Class<?> parallel = Class.forName("ParallelReports");
+		this._shardKey = Class.forName("ParallelReports$ShardKey");
+		this._shardKeyParse = this._shardKey.getMethod("parse", String.class);
+		this._parallelStatus = parallel.getMethod("statusPerDoctor");
+		this._parallelPatients = parallel.getMethod("patientsCountWithStatus", String.class);
+		this._parallelStop = parallel.getMethod("stop");
+	}
+
+	/**
+	 * @return the value of one of DBproject's SQL template constants
+	 */
+	String sql(String constant) throws Exception {
+		Field f = this._cls.getDeclaredField(constant);
+		f.setAccessible(true);
+		return (String) f.get(null);
+	}
+
+	int update(String sql, Object... params) throws SQLException {
+		return (Integer) call(this._update, this._esql, sql, params);
+	}
+
+	/**
+	 * @return the ColumnarResult of the query
+	 */
+	Object query(String sql, Object... params) throws SQLException {
+		return call(this._columns, this._esql, sql, params);
+	}
+
+	/**
+	 * @return the query DBproject uses for report 7
+	 */
+	String statusReportSql() throws Exception {
+		return (String) this._cls.getMethod("getStatusReportSql").invoke(this._esql);
+	}
+
+	/**
+	 * @return the ColumnarResult of query 6 through the reference cache
+	 */
+	Object availableOfDepartment(String dName, LocalDate date) throws SQLException {
+		return call(this._availableOfDepartment, this._esql, dName, date);
+	}
+
+	/**
+	 * @return the PatientsPerDoctorReport.Result of report 8 read from its
+	 *         materialized view, or live when the view is not installed
+	 */
+	Object patientsPerDoctorFromView(String status) throws SQLException {
+		return call(this._patientsReportRun, this._patientsReport, status, this._viewSource);
+	}
+
+	/**
+	 * @param key doctor, department or hospital
+	 * @param shards the number of shards
+	 * @return a ParallelReports over this instance, for the calls below
+	 */
+	Object parallelReports(String key, int shards) throws Exception {
+		Object k = this._shardKeyParse.invoke(null, key);
+		return Class.forName("ParallelReports").getConstructor(this._cls, this._shardKey, int.class)
+			.newInstance(this._esql, k, shards);
+	}
+
+	/**
+	 * @return the ParallelReports.Result of report 7
+	 */
+	Object parallelStatusPerDoctor(Object reports) throws SQLException {
+		return call(this._parallelStatus, reports);
+	}
+
+	/**
+	 * @return the ParallelReports.Result of report 8
+	 */
+	Object parallelPatientsCountWithStatus(Object reports, String status) throws SQLException {
+		return call(this._parallelPatients, reports, status);
+	}
+
+	void stopParallelReports(Object reports){
+		try{
+			this._parallelStop.invoke(reports);
+		}catch (Exception e){
+			// ignored.
+		}
+	}
+
+	/**
+	 * @return the AppointmentBooker.Booking of the request
+	 */
+	Object book(int patientID, int doctorID, int apptID) throws SQLException {
+		return call(this._book, this._booker, patientID, doctorID, apptID);
+	}
+
+	void close(){
+		try{
+			this._cleanup.invoke(this._esql);
+		}catch (Exception e){
+			// ignored.
+		}
+	}
+
+	static Object call(Method m, Object target, Object... args) throws SQLException {
+		try{
+			return m.invoke(target, args);
+		}catch (InvocationTargetException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException)
+				throw (SQLException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}catch (IllegalAccessException e){
+			throw new IllegalStateException(e);
+		}
+	}
+}
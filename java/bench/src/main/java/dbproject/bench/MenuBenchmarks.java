@@ -0,0 +1,232 @@
+package dbproject.bench;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency (SampleTime percentiles) of every menu operation,
+ * measured through the same DBproject entry points and SQL templates the
+ * menu uses.
+ *
+ * The database is the one started by postgresql/startPostgreSQL.sh with the
+ * schema of sql/create.sql. It is selected with -Ddb.name, -Ddb.port and
+ * -Ddb.user (defaults: $USER_DB, $PGPORT, $USER). Before each trial every
+ * table is refilled (see Seeder): from data/*.csv at scale 1, with
+ * DataGenerator rows at larger scales. Pass -Dbench.seed=false to benchmark
+ * the data as it is, and -Dbench.data to point at the CSV directory.
+ *
+ * The insert and booking benchmarks change the data, which is why each
+ * trial reseeds by default.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class MenuBenchmarks{
+
+	@State(Scope.Benchmark)
+	public static class Db{
+		@Param({"1"})
+		public int scale;
+
+		App app;
+		String addDoctor, addPatient, addAppointment;
+		String appointmentsOfDoctor, availableOfDepartment, statusPerDoctor, patientsWithStatus;
+
+		int[] doctors;
+		int[] departments;
+		String[] departmentNames;
+		int[] patients;
+		//doctor and appointment of each has_appointment row, for booking
+		int[] slotDoctors;
+		int[] slotAppointments;
+		LocalDate minDate;
+		int dateSpan;
+
+		final AtomicInteger nextDoctorID = new AtomicInteger();
+		final AtomicInteger nextPatientID = new AtomicInteger();
+		final AtomicInteger nextAppointmentID = new AtomicInteger();
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			String user = System.getProperty("db.user", System.getenv("USER"));
+			String name = System.getProperty("db.name", user + "_DB");
+			String port = System.getProperty("db.port", System.getenv("PGPORT"));
+			Class.forName("org.postgresql.Driver");
+
+			String url = "jdbc:postgresql://localhost:" + port + "/" + name;
+			if (Boolean.parseBoolean(System.getProperty("bench.seed", "true")))
+				Seeder.seed(url, user, new File(System.getProperty("bench.data", "../../data")), this.scale);
+			Connection c = DriverManager.getConnection(url, user, "");
+			try{
+				this.doctors = ints(c, "SELECT doctor_ID FROM Doctor");
+				this.departments = ints(c, "SELECT dept_ID FROM Department");
+				this.departmentNames = strings(c, "SELECT DISTINCT dept_name FROM request_maintenance");
+				this.patients = ints(c, "SELECT patient_ID FROM Patient");
+				this.slotDoctors = ints(c, "SELECT doctor_id FROM has_appointment ORDER BY appt_id, doctor_id");
+				this.slotAppointments = ints(c, "SELECT appt_id FROM has_appointment ORDER BY appt_id, doctor_id");
+				this.nextDoctorID.set(max(c, "SELECT max(doctor_ID) FROM Doctor") + 1);
+				this.nextPatientID.set(max(c, "SELECT max(patient_ID) FROM Patient") + 1);
+				this.nextAppointmentID.set(max(c, "SELECT max(appnt_ID) FROM Appointment") + 1);
+				Statement stmt = c.createStatement();
+				ResultSet rs = stmt.executeQuery("SELECT min(adate), max(adate) FROM Appointment");
+				rs.next();
+				this.minDate = rs.getDate(1).toLocalDate();
+				this.dateSpan = (int) (rs.getDate(2).toLocalDate().toEpochDay() - this.minDate.toEpochDay()) + 1;
+				stmt.close();
+			}finally{
+				c.close();
+			}
+
+			this.app = new App(name, port, user);
+			this.addDoctor = this.app.sql("ADD_DOCTOR_SQL");
+			this.addPatient = this.app.sql("ADD_PATIENT_SQL");
+			this.addAppointment = this.app.sql("ADD_APPOINTMENT_SQL");
+			this.appointmentsOfDoctor = this.app.sql("LIST_APPOINTMENTS_OF_DOCTOR_SQL");
+			this.availableOfDepartment = this.app.sql("LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT_SQL");
+			this.statusPerDoctor = this.app.statusReportSql();
+			this.patientsWithStatus = this.app.sql("PATIENTS_COUNT_WITH_STATUS_SQL");
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown(){
+			if (this.app != null)
+				this.app.close();
+		}
+
+		LocalDate randomDate(ThreadLocalRandom rnd){
+			return this.minDate.plusDays(rnd.nextInt(this.dateSpan));
+		}
+
+		private static int max(Connection c, String sql) throws SQLException {
+			int[] v = ints(c, sql);
+			return v.length == 0 ? 0 : v[0];
+		}
+
+		private static int[] ints(Connection c, String sql) throws SQLException {
+			Statement stmt = c.createStatement();
+			ResultSet rs = stmt.executeQuery(sql);
+			List<Integer> values = new ArrayList<Integer>();
+			while (rs.next())
+				values.add(rs.getInt(1));
+			stmt.close();
+			int[] out = new int[values.size()];
+			for (int i = 0; i < out.length; ++i)
+				out[i] = values.get(i);
+			return out;
+		}
+
+		private static String[] strings(Connection c, String sql) throws SQLException {
+			Statement stmt = c.createStatement();
+			ResultSet rs = stmt.executeQuery(sql);
+			List<String> values = new ArrayList<String>();
+			while (rs.next())
+				values.add(rs.getString(1));
+			stmt.close();
+			return values.toArray(new String[values.size()]);
+		}
+	}
+
+	private static final String[] STATUSES = {"PA", "AC", "AV", "WL"};
+
+	//1
+	@Benchmark
+	public int addDoctor(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		return db.app.update(db.addDoctor, db.nextDoctorID.getAndIncrement(), "Bench Doctor", "Allergist",
+			db.departments[rnd.nextInt(db.departments.length)]);
+	}
+
+	//2
+	@Benchmark
+	public int addPatient(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		return db.app.update(db.addPatient, db.nextPatientID.getAndIncrement(), "Bench Patient",
+			rnd.nextBoolean() ? "F" : "M", 18 + rnd.nextInt(70), "1 Bench Street", 0);
+	}
+
+	//3
+	@Benchmark
+	public int addAppointment(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		return db.app.update(db.addAppointment, db.nextAppointmentID.getAndIncrement(), db.randomDate(rnd),
+			"8:00-10:00", "AV");
+	}
+
+	//4
+	@Benchmark
+	public Object makeAppointment(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		int slot = rnd.nextInt(db.slotAppointments.length);
+		return db.app.book(db.patients[rnd.nextInt(db.patients.length)], db.slotDoctors[slot],
+			db.slotAppointments[slot]);
+	}
+
+	//5
+	@Benchmark
+	public Object listAppointmentsOfDoctor(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		LocalDate start = db.randomDate(rnd);
+		return db.app.query(db.appointmentsOfDoctor, db.doctors[rnd.nextInt(db.doctors.length)],
+			start, start.plusDays(90));
+	}
+
+	//6
+	@Benchmark
+	public Object listAvailableAppointmentsOfDepartment(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		return db.app.query(db.availableOfDepartment, db.departmentNames[rnd.nextInt(db.departmentNames.length)],
+			db.randomDate(rnd));
+	}
+
+	//6, department name resolved to doctors by the reference cache
+	@Benchmark
+	public Object listAvailableAppointmentsOfDepartmentCached(Db db) throws SQLException {
+		ThreadLocalRandom rnd = ThreadLocalRandom.current();
+		return db.app.availableOfDepartment(db.departmentNames[rnd.nextInt(db.departmentNames.length)],
+			db.randomDate(rnd));
+	}
+
+	//7
+	@Benchmark
+	public Object listStatusNumberOfAppointmentsPerDoctor(Db db) throws SQLException {
+		return db.app.query(db.statusPerDoctor);
+	}
+
+	//8
+	@Benchmark
+	public Object findPatientsCountWithStatus(Db db) throws SQLException {
+		return db.app.query(db.patientsWithStatus, STATUSES[ThreadLocalRandom.current().nextInt(STATUSES.length)]);
+	}
+
+	//8, from the materialized view of migration V004
+	@Benchmark
+	public Object findPatientsCountWithStatusFromView(Db db) throws SQLException {
+		return db.app.patientsPerDoctorFromView(STATUSES[ThreadLocalRandom.current().nextInt(STATUSES.length)]);
+	}
+}
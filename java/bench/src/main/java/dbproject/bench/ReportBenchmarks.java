@@ -0,0 +1,102 @@
+package dbproject.bench;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of reports 7 and 8 computed by ParallelReports, by number of shards
+ * and shard key. The speed-up of n shards is the score of shards=1 divided
+ * by the score of shards=n; the serial queries are the report benchmarks
+ * of MenuBenchmarks.
+ *
+ * One report runs at a time (one benchmark thread), so the shards have the
+ * pool to themselves. The pool is sized for the largest shard count plus
+ * the connection that exports the snapshot unless -Dpool.maxSize is given.
+ * The database and seeding options are those of MenuBenchmarks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(1)
+@Fork(1)
+public class ReportBenchmarks{
+
+	@State(Scope.Benchmark)
+	public static class Db{
+		@Param({"1"})
+		public int scale;
+
+		@Param({"1", "2", "4", "8"})
+		public int shards;
+
+		@Param({"doctor", "department", "hospital"})
+		public String by;
+
+		App app;
+		Object reports;
+		//whether setup() sized the pool, to undo it for the next trial
+		boolean sizedPool;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			String user = System.getProperty("db.user", System.getenv("USER"));
+			String name = System.getProperty("db.name", user + "_DB");
+			String port = System.getProperty("db.port", System.getenv("PGPORT"));
+			Class.forName("org.postgresql.Driver");
+
+			if (Boolean.parseBoolean(System.getProperty("bench.seed", "true"))){
+				Seeder.seed("jdbc:postgresql://localhost:" + port + "/" + name, user,
+					new File(System.getProperty("bench.data", "../../data")), this.scale);
+			}
+			if (System.getProperty("pool.maxSize") == null){
+				System.setProperty("pool.maxSize", Integer.toString(this.shards + 1));
+				this.sizedPool = true;
+			}
+			this.app = new App(name, port, user);
+			this.reports = this.app.parallelReports(this.by, this.shards);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown(){
+			if (this.reports != null)
+				this.app.stopParallelReports(this.reports);
+			if (this.app != null)
+				this.app.close();
+			if (this.sizedPool)
+				System.clearProperty("pool.maxSize");
+		}
+	}
+
+	private static final String[] STATUSES = {"PA", "AC", "AV", "WL"};
+
+	//7
+	@Benchmark
+	public Object statusPerDoctor(Db db) throws SQLException {
+		return db.app.parallelStatusPerDoctor(db.reports);
+	}
+
+	//8
+	@Benchmark
+	public Object patientsCountWithStatus(Db db) throws SQLException {
+		return db.app.parallelPatientsCountWithStatus(db.reports,
+			STATUSES[ThreadLocalRandom.current().nextInt(STATUSES.length)]);
+	}
+}
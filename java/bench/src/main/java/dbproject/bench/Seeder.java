@@ -0,0 +1,72 @@
+package dbproject.bench;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Fills the schema of sql/create.sql through the application's own loaders,
+ * reached through reflection like App: BulkLoader for data/*.csv at scale 1,
+ * DataGenerator for larger scales. Either way every table is truncated first
+ * (appointment_key included), the CSV parsing is BulkLoader's and the status
+ * counts and caches are rebuilt the way an application bulk load rebuilds
+ * them.
+ */
+final class Seeder{
+	//fixed so that every trial at a scale sees the same rows
+	private static final long GENERATOR_SEED = 42;
+
+	private Seeder(){}
+
+	/**
+	 * Replaces the contents of every table and refreshes the planner
+	 * statistics. Scale 1 loads the CSV files in dataDir; a larger scale
+	 * generates that many units of DataGenerator data instead.
+	 */
+	static void seed(String url, String user, File dataDir, int scale) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Class<?> poolClass = Class.forName("ConnectionPool");
+		Class<?> cacheClass = Class.forName("StatementCache");
+		Object pool = poolClass.getConstructor(String.class, String.class, String.class, int.class,
+				long.class, long.class, int.class, int.class)
+			.newInstance(url, user, "", threads,
+				poolClass.getField("DEFAULT_MAX_WAIT_MILLIS").get(null),
+				poolClass.getField("DEFAULT_IDLE_TIMEOUT_MILLIS").get(null),
+				poolClass.getField("DEFAULT_VALIDATION_TIMEOUT_SECS").get(null),
+				cacheClass.getField("DEFAULT_MAX_SIZE").get(null));
+		try{
+			Class<?> loaderClass = Class.forName("BulkLoader");
+			Object loader = loaderClass.getConstructor(poolClass).newInstance(pool);
+			if (scale == 1){
+				App.call(loaderClass.getMethod("loadAll", File.class, int.class, boolean.class),
+					loader, dataDir, threads, true);
+			}else{
+				App.call(loaderClass.getMethod("truncateAll"), loader);
+				Class<?> generatorClass = Class.forName("DataGenerator");
+				Object generator = generatorClass.getConstructor(int.class, long.class, LocalDate.class)
+					.newInstance(scale, GENERATOR_SEED, LocalDate.now());
+				Class<?> sinkClass = Class.forName("DataGenerator$Sink");
+				Object sink = Class.forName("DataGenerator$CopySink").getConstructor(poolClass).newInstance(pool);
+				App.call(generatorClass.getMethod("generate", sinkClass, int.class), generator, sink, threads);
+				Method finishLoad = loaderClass.getDeclaredMethod("finishLoad", poolClass, int.class);
+				finishLoad.setAccessible(true);
+				App.call(finishLoad, null, pool, threads);
+			}
+
+			Class<?> connClass = Class.forName("PooledConnection");
+			Object conn = App.call(poolClass.getMethod("borrow"), pool);
+			try{
+				Connection c = (Connection) App.call(connClass.getMethod("connection"), conn);
+				Statement stmt = c.createStatement();
+				stmt.execute("ANALYZE");
+				stmt.close();
+			}finally{
+				App.call(poolClass.getMethod("release", connClass), pool, conn);
+			}
+		}finally{
+			App.call(poolClass.getMethod("close"), pool);
+		}
+	}
+}
@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Exports the rows of a query as TSV, CSV, JSON lines or an aligned table
+# Example: ./export.sh "SELECT * FROM Appointment" appointments.csv --format csv
+java -cp lib/*:bin/ ResultSink $DBNAME $PORT $USER "$@"
@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Streams ../data/*.csv into the tables created by sql/create.sql
+# Example: ./load.sh --truncate --threads 4
+java -cp lib/*:bin/ BulkLoader $DBNAME $PORT $USER ../data "$@"
@@ -0,0 +1,7 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Applies pending ../sql/migrations/V*.sql after sql/create.sql
+java -cp lib/*:bin/ SchemaMigrator $DBNAME $PORT $USER ../sql/migrations
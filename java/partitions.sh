@@ -0,0 +1,9 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Maintains the monthly partitions of Appointment (migration V005)
+# Example: ./partitions.sh ensure --months-ahead 12
+#          ./partitions.sh archive --before 2022-01
+java -cp lib/*:bin/ AppointmentPartitions $DBNAME $PORT $USER "$@"
@@ -0,0 +1,7 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Fails when a menu query seq-scans a table with --min-rows (default 10000) or more rows
+java -cp lib/*:bin/ PlanCheck $DBNAME $PORT $USER "$@"
@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Refreshes the materialized view behind report 8 (migration V004), once or periodically
+# Example: ./report8.sh --every 60
+java -cp lib/*:bin/ PatientsPerDoctorReport $DBNAME $PORT $USER "$@"
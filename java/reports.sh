@@ -0,0 +1,9 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Times reports 7 and 8 over 1, 2, 4 and 8 shards and prints the speed-up
+# Example: ./reports.sh --by department --shards 1,2,4,8 --status AC
+# The menu uses them with -Dreports.parallel=true [-Dreports.shardKey=department] [-Dreports.shards=4]
+java -Dpool.maxSize=9 -cp lib/*:bin/ ParallelReports $DBNAME $PORT $USER "$@"
@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Runs menu operations from a script (JSON lines or CSV, - for stdin) without prompts
+# Example: ./script.sh --script ops.jsonl --format jsonl > results.jsonl
+java -cp lib/*:bin/ DBproject $DBNAME $PORT $USER "$@"
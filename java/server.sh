@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Serves the menu operations as HTTP/JSON on the given port (default 8080)
+# Example: ./server.sh 8080
+java -Dpool.maxSize=32 -cp lib/*:bin/ ApiServer $DBNAME $PORT $USER "$@"
@@ -0,0 +1,717 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the menu operations as a small HTTP/JSON API, so many front-desk
+ * clients can share one DBproject and its connection pool:
+ *
+ *   POST /doctors                               {doctor_ID, name, specialty, did}
+ *   POST /patients                              {patient_ID, name, gtype, age, address, number_of_appts}
+ *   POST /appointments                          {appnt_ID, adate, time_slot, status}
+ *   POST /bookings                              {patient_ID, doctor_ID, appnt_ID}
+ *   POST /cancellations                         {patient_ID, appnt_ID}
+ *   GET  /doctors/{id}/appointments?from=&to=   option 5
+ *   GET  /departments/{name}/available?date=    option 6
+ *   GET  /doctors/{id}/slots?from=&to=&limit=   open slots overlapping a window,
+ *   GET  /departments/{name}/slots?from=&to=&limit=  from and to as 2026-10-18T14:00
+ *   GET  /search/earliest?specialty=&department=&hospital=&from=&to=&limit=
+ *                                               option 11, earliest available appointments
+ *   GET  /reports/appointments-per-doctor       option 7
+ *   GET  /reports/patients-per-doctor?status=&source=live|view|auto
+ *                                               option 8, with the staleness of its source
+ *   POST /reports/patients-per-doctor/refresh   refreshes the view behind option 8
+ *   GET  /metrics                               latency per endpoint, pool, capacity and waitlist counters
+ *   GET  /metrics/prometheus                    database call metrics, see QueryMetrics
+ *
+ * Each request runs on its own virtual thread when the JVM has them
+ * (Java 21+); otherwise on a bounded pool of -Dserver.threads platform
+ * threads. Either way the connection pool (-Dpool.maxSize) bounds how many
+ * requests use the database at once; the rest wait up to
+ * -Dpool.maxWaitMillis and then get 503.
+ *
+ */
+
+public class ApiServer{
+	public static final int DEFAULT_HTTP_PORT = 8080;
+	public static final int DEFAULT_THREADS = 256;
+	public static final int DEFAULT_QUEUE = 10000;
+	public static final int DEFAULT_SLOT_LIMIT = 20;
+
+	/**
+	 * A parsed request.
+	 */
+	static final class Request{
+		final String method;
+		final String[] path;
+		final Map<String, String> query;
+		final String body;
+
+		Request(String method, String[] path, Map<String, String> query, String body){
+			this.method = method;
+			this.path = path;
+			this.query = query;
+			this.body = body;
+		}
+
+		String param(String name){
+			String v = this.query.get(name);
+			if (v == null || v.isEmpty())
+				throw new IllegalArgumentException("missing query parameter " + name);
+			return v;
+		}
+
+		Map<String, Object> json(){
+			return Json.parseObject(this.body);
+		}
+	}
+
+	/**
+	 * A JSON response.
+	 */
+	static final class Response{
+		static final String JSON = "application/json; charset=utf-8";
+
+		final int status;
+		final String body;
+		final String contentType;
+
+		Response(int status, String body){
+			this(status, body, JSON);
+		}
+
+		Response(int status, String body, String contentType){
+			this.status = status;
+			this.body = body;
+			this.contentType = contentType;
+		}
+	}
+
+	interface Handler{
+		Response handle(Request request) throws Exception;
+	}
+
+	/**
+	 * One endpoint. Pattern segments in braces match any path segment.
+	 */
+	static final class Route{
+		final String name;
+		final String method;
+		final String[] pattern;
+		final Handler handler;
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		Route(String name, String method, String pattern, Handler handler){
+			this.name = name;
+			this.method = method;
+			this.pattern = split(pattern);
+			this.handler = handler;
+		}
+
+		boolean matches(String[] path){
+			if (path.length != this.pattern.length)
+				return false;
+			for (int i = 0; i < path.length; ++i)
+				if (!this.pattern[i].startsWith("{") && !this.pattern[i].equals(path[i]))
+					return false;
+			return true;
+		}
+	}
+
+	private final DBproject _esql;
+	private final List<Route> _routes = new ArrayList<Route>();
+	private final ExecutorService _executor;
+	private final boolean _virtualThreads;
+	private final HttpServer _server;
+
+	public ApiServer(DBproject esql, int httpPort) throws IOException {
+		this._esql = esql;
+		ExecutorService virtual = newVirtualThreadExecutor();
+		this._virtualThreads = virtual != null;
+		this._executor = virtual != null ? virtual : newBoundedExecutor(
+			Integer.getInteger("server.threads", DEFAULT_THREADS), Integer.getInteger("server.queue", DEFAULT_QUEUE));
+
+		this._routes.add(new Route("addDoctor", "POST", "/doctors", this::addDoctor));
+		this._routes.add(new Route("addPatient", "POST", "/patients", this::addPatient));
+		this._routes.add(new Route("addAppointment", "POST", "/appointments", this::addAppointment));
+		this._routes.add(new Route("makeAppointment", "POST", "/bookings", this::makeAppointment));
+		this._routes.add(new Route("cancelAppointment", "POST", "/cancellations", this::cancelAppointment));
+		this._routes.add(new Route("appointmentsOfDoctor", "GET", "/doctors/{id}/appointments", this::appointmentsOfDoctor));
+		this._routes.add(new Route("availableOfDepartment", "GET", "/departments/{name}/available", this::availableOfDepartment));
+		this._routes.add(new Route("openSlotsOfDoctor", "GET", "/doctors/{id}/slots", this::openSlotsOfDoctor));
+		this._routes.add(new Route("openSlotsOfDepartment", "GET", "/departments/{name}/slots", this::openSlotsOfDepartment));
+		this._routes.add(new Route("earliestAvailable", "GET", "/search/earliest", this::earliestAvailable));
+		this._routes.add(new Route("appointmentsPerDoctor", "GET", "/reports/appointments-per-doctor", this::appointmentsPerDoctor));
+		this._routes.add(new Route("patientsPerDoctor", "GET", "/reports/patients-per-doctor", this::patientsPerDoctor));
+		this._routes.add(new Route("refreshPatientsPerDoctor", "POST", "/reports/patients-per-doctor/refresh", this::refreshPatientsPerDoctor));
+		this._routes.add(new Route("metrics", "GET", "/metrics", this::metrics));
+		this._routes.add(new Route("prometheus", "GET", "/metrics/prometheus", this::prometheus));
+
+		this._server = HttpServer.create(new InetSocketAddress(httpPort), Integer.getInteger("server.backlog", 1024));
+		this._server.createContext("/", this::exchange);
+		this._server.setExecutor(this._executor);
+	}
+
+	public void start(){
+		this._server.start();
+	}
+
+	/**
+	 * Stops accepting requests, waits up to delaySecs for running ones and
+	 * shuts the executor down. The DBproject is left open.
+	 */
+	public void stop(int delaySecs){
+		this._server.stop(delaySecs);
+		this._executor.shutdown();
+	}
+
+	public boolean usesVirtualThreads(){
+		return this._virtualThreads;
+	}
+
+	public int getPort(){
+		return this._server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Executors.newVirtualThreadPerTaskExecutor() when this JVM
+	 *         has it, otherwise null
+	 */
+	static ExecutorService newVirtualThreadExecutor(){
+		try{
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		}catch (ReflectiveOperationException e){
+			return null;
+		}//end try
+	}
+
+	//callers run the task themselves when the queue is full, which slows down accepting
+	private static ExecutorService newBoundedExecutor(int threads, int queue){
+		final AtomicInteger n = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(queue), r -> {
+				Thread t = new Thread(r, "api-worker-" + n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private void exchange(HttpExchange ex) throws IOException {
+		long start = System.nanoTime();
+		Route route = null;
+		Response response;
+		try{
+			String[] path = split(ex.getRequestURI().getRawPath());
+			boolean pathFound = false;
+			for (Route r : this._routes){
+				if (!r.matches(path))
+					continue;
+				pathFound = true;
+				if (r.method.equals(ex.getRequestMethod())){
+					route = r;
+					break;
+				}//end if
+			}//end for
+			if (route == null){
+				response = pathFound ? error(405, "method not allowed") : error(404, "no such endpoint");
+			}else{
+				String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+				QueryMetrics.Scope scope = QueryMetrics.operation(route.name);
+				try{
+					response = route.handler.handle(new Request(ex.getRequestMethod(), path,
+						parseQuery(ex.getRequestURI().getRawQuery()), body));
+				}finally{
+					scope.close();
+				}//end try
+			}//end if
+		}catch (IllegalArgumentException | DateTimeParseException e){
+			response = error(400, e.getMessage());
+		}catch (SQLTransientException e){
+			response = error(503, e.getMessage());
+		}catch (SQLException e){
+			//integrity constraint violations are the client's fault
+			String state = e.getSQLState();
+			response = error(state != null && state.startsWith("23") ? 409 : 500, e.getMessage());
+		}catch (Exception e){
+			response = error(500, String.valueOf(e.getMessage()));
+		}//end try
+
+		byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().set("Content-Type", response.contentType);
+		ex.sendResponseHeaders(response.status, bytes.length);
+		OutputStream out = ex.getResponseBody();
+		out.write(bytes);
+		out.close();
+		if (route != null)
+			route.latency.record(System.nanoTime() - start);
+	}
+
+	private Response addDoctor(Request r) throws SQLException {
+		Map<String, Object> o = r.json();
+		int id = Json.intField(o, "doctor_ID");
+		this._esql.addDoctor(id, Json.stringField(o, "name"), Json.stringField(o, "specialty"), Json.intField(o, "did"));
+		return new Response(201, "{\"doctor_ID\":" + id + "}");
+	}
+
+	private Response addPatient(Request r) throws SQLException {
+		Map<String, Object> o = r.json();
+		int id = Json.intField(o, "patient_ID");
+		this._esql.addPatient(id, Json.stringField(o, "name"), Json.stringField(o, "gtype").toUpperCase(),
+			Json.intField(o, "age"), (String) o.get("address"),
+			o.get("number_of_appts") == null ? 0 : Json.intField(o, "number_of_appts"));
+		return new Response(201, "{\"patient_ID\":" + id + "}");
+	}
+
+	private Response addAppointment(Request r) throws SQLException {
+		Map<String, Object> o = r.json();
+		int id = Json.intField(o, "appnt_ID");
+		this._esql.addAppointment(id, DBproject.parseDate(Json.stringField(o, "adate")),
+			Json.stringField(o, "time_slot"), Json.stringField(o, "status").toUpperCase());
+		return new Response(201, "{\"appnt_ID\":" + id + "}");
+	}
+
+	private Response makeAppointment(Request r) throws SQLException {
+		Map<String, Object> o = r.json();
+		return booking(this._esql.makeAppointment(Json.intField(o, "patient_ID"),
+			Json.intField(o, "doctor_ID"), Json.intField(o, "appnt_ID")));
+	}
+
+	private Response cancelAppointment(Request r) throws SQLException {
+		Map<String, Object> o = r.json();
+		return booking(this._esql.cancelAppointment(Json.intField(o, "patient_ID"), Json.intField(o, "appnt_ID")));
+	}
+
+	private static Response booking(AppointmentBooker.Booking b){
+		StringBuilder sb = new StringBuilder("{\"outcome\":").append(Json.quote(b.outcome.name()))
+			.append(",\"previousStatus\":").append(Json.quote(b.previousStatus))
+			.append(",\"status\":").append(Json.quote(b.status))
+			.append(",\"attempts\":").append(b.attempts)
+			.append(",\"message\":").append(Json.quote(b.message)).append('}');
+		return new Response(b.outcome == AppointmentBooker.Outcome.REJECTED ? 409 : 200, sb.toString());
+	}
+
+	private Response appointmentsOfDoctor(Request r) throws SQLException {
+		int doctorID = Integer.parseInt(r.path[1]);
+		LocalDate from = DBproject.parseDate(r.param("from"));
+		LocalDate to = DBproject.parseDate(r.param("to"));
+		AvailabilityIndex index = this._esql.getAvailability();
+		if (index == null)
+			return ok(this._esql.executeQueryAndReturnColumns(DBproject.LIST_APPOINTMENTS_OF_DOCTOR_SQL, doctorID, from, to));
+		AvailabilityIndex.Slots slots = index.appointmentsOfDoctor(doctorID, from, to);
+		StringBuilder sb = new StringBuilder("{\"rows\":[");
+		for (int i = 0; i < slots.size(); ++i){
+			sb.append(i == 0 ? "{" : ",{")
+				.append("\"appnt_id\":").append(slots.getID(i))
+				.append(",\"adate\":").append(Json.quote(slots.getDate(i).toString()))
+				.append(",\"time_slot\":").append(Json.quote(slots.getTimeSlot(i)))
+				.append(",\"status\":").append(Json.quote(slots.getStatus(i))).append('}');
+		}//end for
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private Response availableOfDepartment(Request r) throws SQLException {
+		String dName = r.path[1];
+		LocalDate date = DBproject.parseDate(r.param("date"));
+		AvailabilityIndex index = this._esql.getAvailability();
+		if (index == null)
+			return ok(this._esql.listAvailableAppointmentsOfDepartment(dName, date));
+		AvailabilityIndex.Slots slots = index.availableOfDepartment(dName, date);
+		StringBuilder sb = new StringBuilder("{\"rows\":[");
+		for (int i = 0; i < slots.size(); ++i){
+			sb.append(i == 0 ? "{" : ",{")
+				.append("\"appnt_id\":").append(slots.getID(i))
+				.append(",\"time_slot\":").append(Json.quote(slots.getTimeSlot(i))).append('}');
+		}//end for
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private Response openSlotsOfDoctor(Request r) throws SQLException {
+		int doctorID = Integer.parseInt(r.path[1]);
+		return ok(this._esql.findOpenSlots(new int[]{ doctorID }, LocalDateTime.parse(r.param("from")), optionalTime(r, "to"),
+			slotLimit(r)));
+	}
+
+	private Response openSlotsOfDepartment(Request r) throws SQLException {
+		return ok(this._esql.findOpenSlotsOfDepartment(r.path[1], LocalDateTime.parse(r.param("from")), optionalTime(r, "to"),
+			slotLimit(r)));
+	}
+
+	private Response earliestAvailable(Request r) throws SQLException {
+		String hospital = optionalParam(r, "hospital");
+		LocalDateTime from = optionalTime(r, "from");
+		List<EarliestAvailableSearch.Hit> hits = this._esql.findEarliestAvailable(optionalParam(r, "specialty"),
+			optionalParam(r, "department"), hospital == null ? null : Integer.valueOf(hospital),
+			from == null ? LocalDateTime.now() : from, optionalTime(r, "to"), slotLimit(r));
+		StringBuilder sb = new StringBuilder("{\"rows\":[");
+		for (int i = 0; i < hits.size(); ++i){
+			EarliestAvailableSearch.Hit h = hits.get(i);
+			sb.append(i == 0 ? "{" : ",{")
+				.append("\"appnt_id\":").append(h.appointmentID)
+				.append(",\"adate\":").append(Json.quote(h.date.toString()))
+				.append(",\"time_slot\":").append(Json.quote(h.timeSlot))
+				.append(",\"starts\":").append(Json.quote(h.starts.toString()))
+				.append(",\"doctor_id\":").append(h.doctorID)
+				.append(",\"name\":").append(Json.quote(h.doctorName))
+				.append(",\"specialty\":").append(Json.quote(h.specialty))
+				.append(",\"department\":").append(Json.quote(h.department))
+				.append(",\"hid\":").append(h.hospitalID).append('}');
+		}//end for
+		return new Response(200, sb.append("]}").toString());
+	}
+
+	private static String optionalParam(Request r, String name){
+		String v = r.query.get(name);
+		return v == null || v.isEmpty() ? null : v;
+	}
+
+	private static LocalDateTime optionalTime(Request r, String name){
+		String v = optionalParam(r, name);
+		return v == null ? null : LocalDateTime.parse(v);
+	}
+
+	private static int slotLimit(Request r){
+		String v = r.query.get("limit");
+		int limit = v == null || v.isEmpty() ? DEFAULT_SLOT_LIMIT : Integer.parseInt(v);
+		if (limit <= 0 || limit > 1000)
+			throw new IllegalArgumentException("limit must be between 1 and 1000: " + limit);
+		return limit;
+	}
+
+	private Response appointmentsPerDoctor(Request r) throws SQLException {
+		return ok(this._esql.executeQueryAndReturnColumns(this._esql.getStatusReportSql()));
+	}
+
+	private Response patientsPerDoctor(Request r) throws SQLException {
+		String status = r.param("status").toUpperCase();
+		if (!BulkLoader.STATUS_DOMAIN.contains(status))
+			throw new IllegalArgumentException("status must be 'PA', 'AC', 'AV' or 'WL': " + status);
+		PatientsPerDoctorReport report = this._esql.getPatientsPerDoctorReport();
+		String source = r.query.get("source");
+		PatientsPerDoctorReport.Result result = source == null || source.isEmpty() ? report.run(status)
+			: report.run(status, PatientsPerDoctorReport.Source.valueOf(source.toUpperCase()));
+		return ok(result.rows, ",\"source\":" + Json.quote(result.source.name().toLowerCase())
+			+ ",\"asOf\":" + (result.asOf == null ? "null" : Json.quote(result.asOf))
+			+ ",\"stalenessMillis\":" + result.stalenessMillis);
+	}
+
+	private Response refreshPatientsPerDoctor(Request r) throws SQLException {
+		long millis = this._esql.getPatientsPerDoctorReport().refresh();
+		return new Response(200, "{\"refreshMillis\":" + millis + "}");
+	}
+
+	private Response metrics(Request r){
+		StringBuilder sb = new StringBuilder("{\"virtualThreads\":").append(this._virtualThreads)
+			.append(",\"pool\":").append(Json.quote(this._esql.getPool().stats()));
+		if (this._esql.getCapacity() != null)
+			sb.append(",\"capacity\":").append(Json.quote(this._esql.getCapacity().stats()));
+		WaitlistPromoter waitlist = this._esql.getWaitlistPromoter();
+		if (waitlist != null)
+			sb.append(",\"waitlist\":{\"promoted\":").append(waitlist.getPromotionCount())
+				.append(",\"promotionsPerSec\":").append(waitlist.getPromotionRate())
+				.append(",\"batches\":").append(waitlist.getBatchCount())
+				.append(",\"failures\":").append(waitlist.getFailureCount())
+				.append(",\"waiting\":").append(waitlist.getQueueDepth())
+				.append(",\"maxBatchWaiting\":").append(waitlist.getMaxBatchDepth())
+				.append(",\"pendingDoctors\":").append(waitlist.getPendingDoctorCount())
+				.append(",\"batchP99Ms\":").append(waitlist.getBatchLatency().percentile(0.99) / 1e6).append('}');
+		sb.append(",\"endpoints\":{");
+		for (int i = 0; i < this._routes.size(); ++i){
+			Route route = this._routes.get(i);
+			LatencyHistogram h = route.latency;
+			long n = h.getCount();
+			sb.append(i == 0 ? "" : ",").append(Json.quote(route.name)).append(":{")
+				.append("\"count\":").append(n)
+				.append(",\"meanMs\":").append(n == 0 ? 0.0 : h.getSumNanos() / 1e6 / n)
+				.append(",\"p50Ms\":").append(h.percentile(0.5) / 1e6)
+				.append(",\"p90Ms\":").append(h.percentile(0.9) / 1e6)
+				.append(",\"p99Ms\":").append(h.percentile(0.99) / 1e6)
+				.append(",\"maxMs\":").append(h.getMaxNanos() / 1e6)
+				.append(",\"buckets\":[");
+			for (int b = 0; b <= LatencyHistogram.getBucketCount(); ++b)
+				sb.append(b == 0 ? "" : ",").append(h.getBucket(b));
+			sb.append("]}");
+		}//end for
+		return new Response(200, sb.append("}}").toString());
+	}
+
+	private Response prometheus(Request r){
+		WaitlistPromoter waitlist = this._esql.getWaitlistPromoter();
+		return new Response(200, this._esql.getMetrics().prometheus(this._esql.getPool())
+			+ (waitlist == null ? "" : waitlist.prometheus()), "text/plain; version=0.0.4; charset=utf-8");
+	}
+
+	private static Response ok(ColumnarResult result){
+		return ok(result, "");
+	}
+
+	//extra: further fields of the response object, each with a leading comma
+	private static Response ok(ColumnarResult result, String extra){
+		StringBuilder sb = new StringBuilder("{\"rows\":");
+		Json.rows(sb, result);
+		return new Response(200, sb.append(extra).append('}').toString());
+	}
+
+	private static Response error(int status, String message){
+		return new Response(status, "{\"error\":" + Json.quote(message) + "}");
+	}
+
+	//decoded, non-empty path segments
+	static String[] split(String path){
+		List<String> segments = new ArrayList<String>();
+		for (String s : path.split("/"))
+			if (!s.isEmpty())
+				segments.add(URLDecoder.decode(s, StandardCharsets.UTF_8));
+		return segments.toArray(new String[0]);
+	}
+
+	static Map<String, String> parseQuery(String rawQuery){
+		Map<String, String> result = new HashMap<String, String>();
+		if (rawQuery == null)
+			return result;
+		for (String pair : rawQuery.split("&")){
+			int eq = pair.indexOf('=');
+			if (eq > 0)
+				result.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+					URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}//end for
+		return result;
+	}
+
+	/**
+	 * The little JSON the API needs: flat objects in, hand-built text out.
+	 */
+	static final class Json{
+		private Json(){
+		}
+
+		static String quote(String s){
+			if (s == null)
+				return "null";
+			StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+			for (int i = 0; i < s.length(); ++i){
+				char c = s.charAt(i);
+				switch (c){
+					case '"': sb.append("\\\""); break;
+					case '\\': sb.append("\\\\"); break;
+					case '\n': sb.append("\\n"); break;
+					case '\r': sb.append("\\r"); break;
+					case '\t': sb.append("\\t"); break;
+					default:
+						if (c < 0x20)
+							sb.append(String.format("\\u%04x", (int) c));
+						else
+							sb.append(c);
+				}
+			}//end for
+			return sb.append('"').toString();
+		}
+
+		/**
+		 * Appends the rows of result as an array of objects keyed by column
+		 * name; integer columns as numbers, everything else as strings.
+		 */
+		static void rows(StringBuilder sb, ColumnarResult result){
+			sb.append('[');
+			for (int row = 0; row < result.getRowCount(); ++row){
+				sb.append(row == 0 ? "{" : ",{");
+				for (int col = 0; col < result.getColumnCount(); ++col){
+					sb.append(col == 0 ? "" : ",").append(quote(result.getColumnName(col))).append(':');
+					int kind = result.getColumnKind(col);
+					if (result.isNull(row, col))
+						sb.append("null");
+					else if (kind == ColumnarResult.INT || kind == ColumnarResult.LONG)
+						sb.append(result.getLong(row, col));
+					else
+						sb.append(quote(result.getString(row, col)));
+				}//end for
+				sb.append('}');
+			}//end for
+			sb.append(']');
+		}
+
+		/**
+		 * Parses an object whose values are strings, numbers, booleans or
+		 * null. Numbers become Long or Double.
+		 *
+		 * @throws IllegalArgumentException when text is not such an object
+		 */
+		static Map<String, Object> parseObject(String text){
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			int[] pos = { skip(text, 0) };
+			expect(text, pos, '{');
+			if (peek(text, pos) == '}'){
+				++pos[0];
+				return result;
+			}//end if
+			while (true){
+				String key = string(text, pos);
+				expect(text, pos, ':');
+				result.put(key, value(text, pos));
+				char c = peek(text, pos);
+				++pos[0];
+				if (c == '}')
+					break;
+				if (c != ',')
+					throw new IllegalArgumentException("malformed JSON at offset " + (pos[0] - 1));
+			}//end while
+			return result;
+		}
+
+		static int intField(Map<String, Object> o, String key){
+			Object v = o.get(key);
+			if (v instanceof Long)
+				return Math.toIntExact((Long) v);
+			if (v instanceof String)
+				return Integer.parseInt(((String) v).trim());
+			throw new IllegalArgumentException("missing or non-integer field " + key);
+		}
+
+		static String stringField(Map<String, Object> o, String key){
+			Object v = o.get(key);
+			if (!(v instanceof String))
+				throw new IllegalArgumentException("missing or non-string field " + key);
+			return (String) v;
+		}
+
+		private static Object value(String text, int[] pos){
+			char c = peek(text, pos);
+			if (c == '"')
+				return string(text, pos);
+			int start = pos[0];
+			while (pos[0] < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos[0])) < 0)
+				++pos[0];
+			String token = text.substring(start, pos[0]);
+			pos[0] = skip(text, pos[0]);
+			switch (token){
+				case "null": return null;
+				case "true": return Boolean.TRUE;
+				case "false": return Boolean.FALSE;
+				default:
+					try{
+						return token.contains(".") || token.contains("e") || token.contains("E")
+							? (Object) Double.valueOf(token) : (Object) Long.valueOf(token);
+					}catch (NumberFormatException e){
+						throw new IllegalArgumentException("malformed JSON value " + token);
+					}//end try
+			}
+		}
+
+		private static String string(String text, int[] pos){
+			expect(text, pos, '"');
+			StringBuilder sb = new StringBuilder();
+			while (true){
+				if (pos[0] >= text.length())
+					throw new IllegalArgumentException("unterminated JSON string");
+				char c = text.charAt(pos[0]++);
+				if (c == '"')
+					break;
+				if (c != '\\'){
+					sb.append(c);
+					continue;
+				}//end if
+				if (pos[0] >= text.length())
+					throw new IllegalArgumentException("unterminated JSON string");
+				char e = text.charAt(pos[0]++);
+				switch (e){
+					case 'n': sb.append('\n'); break;
+					case 'r': sb.append('\r'); break;
+					case 't': sb.append('\t'); break;
+					case 'b': sb.append('\b'); break;
+					case 'f': sb.append('\f'); break;
+					case 'u':
+						if (pos[0] + 4 > text.length())
+							throw new IllegalArgumentException("malformed JSON escape");
+						sb.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+						pos[0] += 4;
+						break;
+					default: sb.append(e);
+				}
+			}//end while
+			pos[0] = skip(text, pos[0]);
+			return sb.toString();
+		}
+
+		private static void expect(String text, int[] pos, char c){
+			if (peek(text, pos) != c)
+				throw new IllegalArgumentException("expected '" + c + "' at offset " + pos[0]);
+			pos[0] = skip(text, pos[0] + 1);
+		}
+
+		private static char peek(String text, int[] pos){
+			pos[0] = skip(text, pos[0]);
+			if (pos[0] >= text.length())
+				throw new IllegalArgumentException("unexpected end of JSON");
+			return text.charAt(pos[0]);
+		}
+
+		private static int skip(String text, int i){
+			while (i < text.length() && Character.isWhitespace(text.charAt(i)))
+				++i;
+			return i;
+		}
+	}
+
+	/**
+	 * Runs the API until the process is stopped.
+	 *
+	 * @param args <dbname> <port> <user> [http port]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println("Usage: java [-classpath <classpath>] " + ApiServer.class.getName()
+				+ " <dbname> <port> <user> [http port]");
+			return;
+		}//end if
+		try{
+			final DBproject esql = new DBproject(args[0], args[1], args[2], "");
+			final ApiServer server = new ApiServer(esql, args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_HTTP_PORT);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				server.stop(2);
+				esql.cleanup();
+			}));
+			server.start();
+			System.out.println("Listening on port " + server.getPort() + " with "
+				+ (server.usesVirtualThreads() ? "virtual threads" : "a bounded thread pool")
+				+ ", connection pool of " + esql.getPool().getMaxSize());
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}//end try
+	}
+}
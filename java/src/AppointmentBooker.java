@@ -0,0 +1,393 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class books an appointment for a patient as a single transaction.
+ * The Appointment row is locked with SELECT ... FOR UPDATE, so concurrent
+ * bookers of the same slot are serialized on that row: the first one moves
+ * it from 'AV' to 'AC', later ones find it taken and are waitlisted ('WL').
+ * The booking is recorded in searches and counted in
+ * Patient.number_of_appts in the same transaction.
+ *
+ * A cancellation removes the patient's searches row in the same way. A
+ * slot left without patients is 'AV' again, one left with its holder
+ * only is 'AC'; the first waitlisted patient of a slot (migration V008)
+ * takes it over when its holder cancels.
+ *
+ * Serialization failures and deadlocks are retried a bounded number of
+ * times with a short randomized backoff.
+ *
+ */
+
+public class AppointmentBooker{
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+	//locks the slot and resolves the hospital through the doctor's department
+	static final String LOCK_SLOT_SQL =
+		"SELECT A.status, P.hid, A.adate FROM Appointment A, has_appointment H, Doctor D, Department P "
+		+ "WHERE A.appnt_ID = ? AND H.appt_id = A.appnt_ID AND H.doctor_id = ? "
+		+ "AND D.doctor_ID = H.doctor_id AND P.dept_ID = D.did "
+		+ "FOR UPDATE OF A";
+	//same for a partitioned Appointment (migration V005): the key's adate prunes it to one partition
+	static final String LOCK_SLOT_PARTITIONED_SQL =
+		"SELECT A.status, P.hid, A.adate FROM appointment_key K, Appointment A, has_appointment H, Doctor D, Department P "
+		+ "WHERE K.appnt_ID = ? AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate "
+		+ "AND H.appt_id = K.appnt_ID AND H.doctor_id = ? "
+		+ "AND D.doctor_ID = H.doctor_id AND P.dept_ID = D.did "
+		+ "FOR UPDATE OF A";
+	static final String SET_STATUS_SQL =
+		"UPDATE Appointment SET status = ? WHERE appnt_ID = ? AND adate = ?";
+	//keeps the patient from being deleted until the booking commits
+	static final String LOCK_PATIENT_SQL =
+		"SELECT 1 FROM Patient WHERE patient_ID = ? FOR KEY SHARE";
+	static final String ADD_SEARCH_SQL =
+		"INSERT INTO searches (hid, pid, aid) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+	static final String COUNT_APPOINTMENT_SQL =
+		"UPDATE Patient SET number_of_appts = COALESCE(number_of_appts, 0) + 1 WHERE patient_ID = ?";
+	//locks a slot by its ID alone, for cancellations
+	static final String LOCK_APPOINTMENT_SQL =
+		"SELECT A.status, A.adate FROM Appointment A WHERE A.appnt_ID = ? FOR UPDATE";
+	static final String LOCK_APPOINTMENT_PARTITIONED_SQL =
+		"SELECT A.status, A.adate FROM appointment_key K, Appointment A "
+		+ "WHERE K.appnt_ID = ? AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate "
+		+ "FOR UPDATE OF A";
+	static final String REMOVE_SEARCH_SQL =
+		"DELETE FROM searches WHERE pid = ? AND aid = ?";
+	static final String COUNT_SEARCHES_SQL =
+		"SELECT count(*) FROM searches WHERE aid = ?";
+	static final String UNCOUNT_APPOINTMENT_SQL =
+		"UPDATE Patient SET number_of_appts = GREATEST(COALESCE(number_of_appts, 0) - 1, 0) WHERE patient_ID = ?";
+
+	/**
+	 * How a booking request ended.
+	 */
+	public enum Outcome{
+		//the slot was available and now belongs to the patient
+		BOOKED,
+		//the slot was taken; the patient was added to its waitlist
+		WAITLISTED,
+		//the patient gave up the slot or their place on its waitlist
+		CANCELLED,
+		//nothing was changed, see Booking.message
+		REJECTED
+	}
+
+	/**
+	 * Result of one booking request.
+	 */
+	public static final class Booking{
+		public final Outcome outcome;
+		//status of the appointment before and after the request
+		public final String previousStatus;
+		public final String status;
+		public final int attempts;
+		public final String message;
+
+		Booking(Outcome outcome, String previousStatus, String status, int attempts, String message){
+			this.outcome = outcome;
+			this.previousStatus = previousStatus;
+			this.status = status;
+			this.attempts = attempts;
+			this.message = message;
+		}
+
+		@Override
+		public String toString(){
+			return this.outcome + (this.message == null ? "" : ": " + this.message);
+		}
+	}
+
+	private final ConnectionPool _pool;
+	private final int _maxAttempts;
+	//LOCK_SLOT_SQL or LOCK_SLOT_PARTITIONED_SQL
+	private final String _lockSlotSql;
+	//LOCK_APPOINTMENT_SQL or LOCK_APPOINTMENT_PARTITIONED_SQL
+	private final String _lockAppointmentSql;
+	private final AtomicLong _retries = new AtomicLong();
+
+	public AppointmentBooker(ConnectionPool pool) throws SQLException {
+		this(pool, Integer.getInteger("booking.maxAttempts", DEFAULT_MAX_ATTEMPTS));
+	}
+
+	public AppointmentBooker(ConnectionPool pool, int maxAttempts) throws SQLException {
+		this._pool = pool;
+		this._maxAttempts = Math.max(1, maxAttempts);
+		boolean partitioned = AppointmentPartitions.isInstalled(pool);
+		this._lockSlotSql = partitioned ? LOCK_SLOT_PARTITIONED_SQL : LOCK_SLOT_SQL;
+		this._lockAppointmentSql = partitioned ? LOCK_APPOINTMENT_PARTITIONED_SQL : LOCK_APPOINTMENT_SQL;
+	}
+
+	/**
+	 * @return how many transactions were retried after a serialization
+	 *         failure or deadlock
+	 */
+	public long getRetryCount(){
+		return this._retries.get();
+	}
+
+	/**
+	 * Books appointment apptID of doctor doctorID for patient patientID.
+	 *
+	 * @return the outcome of the request
+	 * @throws java.sql.SQLException when the transaction fails for a reason
+	 *         other than a retryable conflict, or keeps conflicting
+	 */
+	public Booking book(final int patientID, final int doctorID, final int apptID) throws SQLException {
+		return retrying((conn, attempt) -> bookOnce(conn, patientID, doctorID, apptID, attempt));
+	}
+
+	/**
+	 * Cancels the booking or waitlist place of patient patientID on
+	 * appointment apptID.
+	 *
+	 * @return CANCELLED with the new status of the slot, or REJECTED when
+	 *         the patient holds no place on it
+	 * @throws java.sql.SQLException when the transaction fails for a reason
+	 *         other than a retryable conflict, or keeps conflicting
+	 */
+	public Booking cancel(final int patientID, final int apptID) throws SQLException {
+		return retrying((conn, attempt) -> cancelOnce(conn, patientID, apptID, attempt));
+	}
+
+	/**
+	 * One attempt of a transaction on a borrowed connection.
+	 */
+	private interface Attempt{
+		Booking run(PooledConnection conn, int attempt) throws SQLException;
+	}
+
+	private Booking retrying(Attempt tx) throws SQLException {
+		for (int attempt = 1; ; ++attempt){
+			PooledConnection conn = this._pool.borrow();
+			try{
+				return tx.run(conn, attempt);
+			}catch (SQLException e){
+				if (!isRetryable(e) || attempt >= this._maxAttempts)
+					throw e;
+				this._retries.incrementAndGet();
+			}finally{
+				//rolls back anything left open and restores autocommit
+				this._pool.release(conn);
+			}//end try
+			backoff(attempt);
+		}//end for
+	}
+
+	private Booking bookOnce(PooledConnection conn, int patientID, int doctorID, int apptID, int attempt) throws SQLException {
+		Connection c = conn.connection();
+		c.setAutoCommit(false);
+
+		PreparedStatement lock = DBproject.prepare(conn, this._lockSlotSql, new Object[]{ apptID, doctorID });
+		ResultSet rs = lock.executeQuery();
+		if (!rs.next()){
+			rs.close();
+			c.rollback();
+			return new Booking(Outcome.REJECTED, null, null, attempt,
+				"appointment " + apptID + " does not belong to doctor " + doctorID);
+		}//end if
+		String status = rs.getString(1);
+		int hospitalID = rs.getInt(2);
+		Date date = rs.getDate(3);
+		rs.close();
+
+		String next;
+		Outcome outcome;
+		if ("AV".equals(status)){
+			next = "AC";
+			outcome = Outcome.BOOKED;
+		}else if ("AC".equals(status) || "WL".equals(status)){
+			next = "WL";
+			outcome = Outcome.WAITLISTED;
+		}else{
+			c.rollback();
+			return new Booking(Outcome.REJECTED, status, status, attempt,
+				"appointment " + apptID + " has status " + status + " and cannot be booked");
+		}//end if
+
+		//checked before the searches row, whose foreign key would fail with an error instead
+		rs = DBproject.prepare(conn, LOCK_PATIENT_SQL, new Object[]{ patientID }).executeQuery();
+		boolean patientExists = rs.next();
+		rs.close();
+		if (!patientExists){
+			c.rollback();
+			return new Booking(Outcome.REJECTED, status, status, attempt, "no patient with ID " + patientID);
+		}//end if
+		if (DBproject.prepare(conn, ADD_SEARCH_SQL, new Object[]{ hospitalID, patientID, apptID }).executeUpdate() == 0){
+			c.rollback();
+			return new Booking(Outcome.REJECTED, status, status, attempt,
+				"patient " + patientID + " already holds appointment " + apptID);
+		}//end if
+		DBproject.prepare(conn, COUNT_APPOINTMENT_SQL, new Object[]{ patientID }).executeUpdate();
+		if (!next.equals(status))
+			DBproject.prepare(conn, SET_STATUS_SQL, new Object[]{ next, apptID, date }).executeUpdate();
+
+		c.commit();
+		return new Booking(outcome, status, next, attempt, null);
+	}
+
+	private Booking cancelOnce(PooledConnection conn, int patientID, int apptID, int attempt) throws SQLException {
+		Connection c = conn.connection();
+		c.setAutoCommit(false);
+
+		ResultSet rs = DBproject.prepare(conn, this._lockAppointmentSql, new Object[]{ apptID }).executeQuery();
+		if (!rs.next()){
+			rs.close();
+			c.rollback();
+			return new Booking(Outcome.REJECTED, null, null, attempt, "no appointment with ID " + apptID);
+		}//end if
+		String status = rs.getString(1);
+		Date date = rs.getDate(2);
+		rs.close();
+		if (!"AC".equals(status) && !"WL".equals(status)){
+			c.rollback();
+			return new Booking(Outcome.REJECTED, status, status, attempt,
+				"appointment " + apptID + " has status " + status + " and cannot be cancelled");
+		}//end if
+
+		if (DBproject.prepare(conn, REMOVE_SEARCH_SQL, new Object[]{ patientID, apptID }).executeUpdate() == 0){
+			c.rollback();
+			return new Booking(Outcome.REJECTED, status, status, attempt,
+				"patient " + patientID + " holds no place on appointment " + apptID);
+		}//end if
+		DBproject.prepare(conn, UNCOUNT_APPOINTMENT_SQL, new Object[]{ patientID }).executeUpdate();
+
+		rs = DBproject.prepare(conn, COUNT_SEARCHES_SQL, new Object[]{ apptID }).executeQuery();
+		rs.next();
+		long remaining = rs.getLong(1);
+		rs.close();
+		String next = remaining == 0 ? "AV" : remaining == 1 ? "AC" : "WL";
+		if (!next.equals(status))
+			DBproject.prepare(conn, SET_STATUS_SQL, new Object[]{ next, apptID, date }).executeUpdate();
+
+		c.commit();
+		return new Booking(Outcome.CANCELLED, status, next, attempt, null);
+	}
+
+	/**
+	 * @return true for serialization failures (40001) and deadlocks (40P01)
+	 */
+	static boolean isRetryable(SQLException e){
+		for (SQLException cur = e; cur != null; cur = cur.getNextException()){
+			String state = cur.getSQLState();
+			if ("40001".equals(state) || "40P01".equals(state))
+				return true;
+		}//end for
+		return false;
+	}
+
+	static void backoff(int attempt){
+		long bound = Math.min(200, 5L << attempt);
+		try{
+			Thread.sleep(ThreadLocalRandom.current().nextLong(1, bound));
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}//end try
+	}
+
+	/**
+	 * Measures booking throughput with several threads competing for the
+	 * slots of one doctor. Each thread repeatedly books a random 'AV' or
+	 * 'AC' slot of the doctor for a random patient. This changes the data,
+	 * so run it against a scratch database.
+	 *
+	 * @param args <dbname> <port> <user> <doctor ID> [threads] [bookings per thread]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 4){
+			System.err.println("Usage: java [-classpath <classpath>] " + AppointmentBooker.class.getName()
+				+ " <dbname> <port> <user> <doctor ID> [threads] [bookings per thread]");
+			return;
+		}//end if
+		final int doctorID = Integer.parseInt(args[3]);
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+		final int perThread = args.length > 5 ? Integer.parseInt(args[5]) : 100;
+
+		String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+		ConnectionPool pool = new ConnectionPool(url, args[2], "", threads,
+			ConnectionPool.DEFAULT_MAX_WAIT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+			ConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECS, StatementCache.DEFAULT_MAX_SIZE);
+		try{
+			final AppointmentBooker booker = new AppointmentBooker(pool);
+			final int[] slots = intColumn(pool, "SELECT H.appt_id FROM has_appointment H, Appointment A "
+				+ "WHERE H.doctor_id = " + doctorID + " AND A.appnt_ID = H.appt_id AND A.status IN ('AV', 'AC')");
+			final int[] patients = intColumn(pool, "SELECT patient_ID FROM Patient");
+			if (slots.length == 0 || patients.length == 0){
+				System.err.println("Doctor " + doctorID + " has no open slots or there are no patients");
+				return;
+			}//end if
+
+			final AtomicLong[] outcomes = new AtomicLong[Outcome.values().length];
+			for (int i = 0; i < outcomes.length; ++i)
+				outcomes[i] = new AtomicLong();
+			final AtomicLong errors = new AtomicLong();
+			List<Thread> workers = new ArrayList<Thread>();
+			long start = System.nanoTime();
+			for (int t = 0; t < threads; ++t){
+				Thread w = new Thread(() -> {
+					ThreadLocalRandom rnd = ThreadLocalRandom.current();
+					for (int i = 0; i < perThread; ++i){
+						try{
+							Booking b = booker.book(patients[rnd.nextInt(patients.length)], doctorID,
+								slots[rnd.nextInt(slots.length)]);
+							outcomes[b.outcome.ordinal()].incrementAndGet();
+						}catch (SQLException e){
+							errors.incrementAndGet();
+						}//end try
+					}//end for
+				});
+				w.start();
+				workers.add(w);
+			}//end for
+			for (Thread w : workers)
+				w.join();
+			double secs = (System.nanoTime() - start) / 1e9;
+			long total = (long) threads * perThread;
+			System.out.printf("%d bookers, %d requests on %d slots in %.2f s: %.0f bookings/sec%n",
+				threads, total, slots.length, secs, total / secs);
+			for (Outcome o : Outcome.values())
+				System.out.println("  " + o + ": " + outcomes[o.ordinal()].get());
+			System.out.println("  errors: " + errors.get() + ", retries: " + booker.getRetryCount());
+		}finally{
+			pool.close();
+		}//end try
+	}
+
+	private static int[] intColumn(ConnectionPool pool, String query) throws SQLException {
+		PooledConnection conn = pool.borrow();
+		try{
+			ResultSet rs = conn.connection().createStatement().executeQuery(query);
+			int[] values = new int[16];
+			int n = 0;
+			while (rs.next()){
+				if (n == values.length)
+					values = Arrays.copyOf(values, n * 2);
+				values[n++] = rs.getInt(1);
+			}//end while
+			rs.getStatement().close();
+			return Arrays.copyOf(values, n);
+		}finally{
+			pool.release(conn);
+		}//end try
+	}
+}
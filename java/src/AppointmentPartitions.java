@@ -0,0 +1,301 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class maintains the monthly partitions of Appointment (migration
+ * V005), named appointment_pYYYYMM:
+ *
+ *   ensure   creates the partitions up to a future month, plus one for
+ *            every month that has rows in appointment_default, moving
+ *            those rows into it
+ *   archive  detaches the partitions before a month, keeping them as
+ *            appointment_archive_YYYYMM, or drops them
+ *
+ * Both run each partition in its own short transaction. Detaching removes
+ * rows without firing row triggers, so archive() afterwards rebuilds the
+ * status counts and tells change feed listeners to reload, as after a bulk
+ * load.
+ *
+ */
+
+public class AppointmentPartitions{
+	public static final int DEFAULT_MONTHS_AHEAD = 12;
+	private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+	private static final String PREFIX = "appointment_p";
+
+	static final String INSTALLED_SQL =
+		"SELECT count(*) FROM pg_partitioned_table T, pg_class C "
+		+ "WHERE C.oid = T.partrelid AND C.relname = 'appointment'";
+	static final String PARTITIONS_SQL =
+		"SELECT C.relname FROM pg_inherits I, pg_class C, pg_class P "
+		+ "WHERE I.inhrelid = C.oid AND I.inhparent = P.oid AND P.relname = 'appointment' "
+		+ "ORDER BY C.relname";
+	static final String DEFAULT_MONTHS_SQL =
+		"SELECT DISTINCT date_trunc('month', adate)::date FROM appointment_default ORDER BY 1";
+	static final String DEFAULT_ROWS_SQL =
+		"SELECT count(*) FROM appointment_default";
+	//the partition's rows are already keyed, announced and counted
+	static final String SUPPRESS_ROW_TRIGGERS_SQL =
+		"SET LOCAL dbproject.appointment_key = 'off'; "
+		+ "SET LOCAL dbproject.change_feed = 'off'; "
+		+ "SET LOCAL dbproject.status_counts = 'off'";
+
+	private final ConnectionPool _pool;
+
+	public AppointmentPartitions(ConnectionPool pool){
+		this._pool = pool;
+	}
+
+	/**
+	 * @return true when migration V005 has been applied
+	 */
+	public static boolean isInstalled(ConnectionPool pool) throws SQLException {
+		PooledConnection conn = pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(INSTALLED_SQL);
+			boolean installed = rs.next() && rs.getInt(1) > 0;
+			stmt.close();
+			return installed;
+		}finally{
+			pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * @return the months that have a partition, in order
+	 */
+	public List<YearMonth> list() throws SQLException {
+		List<YearMonth> months = new ArrayList<YearMonth>();
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(PARTITIONS_SQL);
+			while (rs.next()){
+				YearMonth m = monthOf(rs.getString(1));
+				if (m != null)
+					months.add(m);
+			}//end while
+			stmt.close();
+		}finally{
+			this._pool.release(conn);
+		}//end try
+		return months;
+	}
+
+	/**
+	 * @return the number of rows outside every monthly partition
+	 */
+	public long defaultRows() throws SQLException {
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(DEFAULT_ROWS_SQL);
+			long rows = rs.next() ? rs.getLong(1) : 0;
+			stmt.close();
+			return rows;
+		}finally{
+			this._pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Creates the missing partitions from this month through the given one,
+	 * and one for every month with rows in appointment_default.
+	 *
+	 * @param through the last month to cover
+	 * @return the partitions created, in order
+	 * @throws java.sql.SQLException when a partition cannot be created
+	 */
+	public List<String> ensure(YearMonth through) throws SQLException {
+		TreeSet<YearMonth> wanted = new TreeSet<YearMonth>();
+		for (YearMonth m = YearMonth.now(); !m.isAfter(through); m = m.plusMonths(1))
+			wanted.add(m);
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(DEFAULT_MONTHS_SQL);
+			while (rs.next())
+				wanted.add(YearMonth.from(rs.getDate(1).toLocalDate()));
+			stmt.close();
+		}finally{
+			this._pool.release(conn);
+		}//end try
+		wanted.removeAll(list());
+
+		List<String> created = new ArrayList<String>();
+		for (YearMonth m : wanted)
+			created.add(create(m));
+		return created;
+	}
+
+	/**
+	 * Detaches every partition of a month before the given one.
+	 *
+	 * @param before the first month to keep
+	 * @param drop drop the detached partitions instead of keeping them as
+	 *        appointment_archive_YYYYMM
+	 * @param threads the parallelism of the status count rebuild
+	 * @return the partitions detached, in order
+	 * @throws java.sql.SQLException when a partition cannot be detached
+	 */
+	public List<String> archive(YearMonth before, boolean drop, int threads) throws SQLException {
+		List<String> detached = new ArrayList<String>();
+		for (YearMonth m : list()){
+			if (!m.isBefore(before))
+				break;
+			String name = nameOf(m);
+			PooledConnection conn = this._pool.borrow();
+			try{
+				Connection c = conn.connection();
+				c.setAutoCommit(false);
+				Statement stmt = c.createStatement();
+				stmt.execute("ALTER TABLE Appointment DETACH PARTITION " + name);
+				if (drop)
+					stmt.execute("DROP TABLE " + name);
+				else
+					stmt.execute("ALTER TABLE " + name + " RENAME TO appointment_archive_" + m.format(SUFFIX));
+				stmt.close();
+				c.commit();
+			}finally{
+				//rolls back a failed step and restores autocommit
+				this._pool.release(conn);
+			}//end try
+			detached.add(name);
+		}//end for
+		if (!detached.isEmpty())
+			BulkLoader.finishLoad(this._pool, threads);
+		return detached;
+	}
+
+	//creates the partition of month m, moving its rows out of appointment_default
+	private String create(YearMonth m) throws SQLException {
+		String name = nameOf(m);
+		LocalDate from = m.atDay(1);
+		LocalDate to = m.plusMonths(1).atDay(1);
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Connection c = conn.connection();
+			c.setAutoCommit(false);
+			Statement stmt = c.createStatement();
+			stmt.execute(SUPPRESS_ROW_TRIGGERS_SQL);
+			stmt.execute("CREATE TABLE " + name + " (LIKE Appointment INCLUDING ALL)");
+			PreparedStatement move = c.prepareStatement("WITH moved AS (DELETE FROM appointment_default "
+				+ "WHERE adate >= ? AND adate < ? RETURNING appnt_ID, adate, time_slot, status) "
+				+ "INSERT INTO " + name + " (appnt_ID, adate, time_slot, status) SELECT * FROM moved");
+			DBproject.bind(move, new Object[]{ from, to });
+			move.executeUpdate();
+			move.close();
+			//creates the partition's indexes and triggers from the parent's
+			stmt.execute("ALTER TABLE Appointment ATTACH PARTITION " + name
+				+ " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+			stmt.close();
+			c.commit();
+		}finally{
+			this._pool.release(conn);
+		}//end try
+		return name;
+	}
+
+	static String nameOf(YearMonth m){
+		return PREFIX + m.format(SUFFIX);
+	}
+
+	//the month of a partition name, or null for appointment_default
+	static YearMonth monthOf(String name){
+		if (!name.startsWith(PREFIX))
+			return null;
+		return YearMonth.parse(name.substring(PREFIX.length()), SUFFIX);
+	}
+
+	/**
+	 * Lists, creates or archives partitions.
+	 *
+	 * @param args <dbname> <port> <user> list | ensure [--months-ahead N]
+	 *        | archive --before YYYY-MM [--drop] [--threads N]
+	 */
+	public static void main(String[] args){
+		String usage = "Usage: java [-classpath <classpath>] " + AppointmentPartitions.class.getName()
+			+ " <dbname> <port> <user> list | ensure [--months-ahead N] | archive --before YYYY-MM [--drop] [--threads N]";
+		if (args.length < 4){
+			System.err.println(usage);
+			return;
+		}//end if
+		int monthsAhead = DEFAULT_MONTHS_AHEAD;
+		YearMonth before = null;
+		boolean drop = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 4; i < args.length; ++i){
+			switch (args[i]){
+				case "--months-ahead": monthsAhead = Integer.parseInt(args[++i]); break;
+				case "--before": before = YearMonth.parse(args[++i]); break;
+				case "--drop": drop = true; break;
+				case "--threads": threads = Integer.parseInt(args[++i]); break;
+				default: System.err.println(usage); return;
+			}//end switch
+		}//end for
+		if ("archive".equals(args[3]) && before == null){
+			System.err.println(usage);
+			return;
+		}//end if
+
+		String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+		ConnectionPool pool = new ConnectionPool(url, args[2], "", Math.max(1, threads),
+			ConnectionPool.DEFAULT_MAX_WAIT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+			ConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECS, StatementCache.DEFAULT_MAX_SIZE);
+		boolean ok = true;
+		try{
+			AppointmentPartitions partitions = new AppointmentPartitions(pool);
+			if (!isInstalled(pool))
+				throw new SQLException("Appointment is not partitioned, apply migration V005");
+			switch (args[3]){
+				case "list":
+					List<YearMonth> months = partitions.list();
+					System.out.println(months.size() + " monthly partition(s)"
+						+ (months.isEmpty() ? "" : " from " + months.get(0) + " to " + months.get(months.size() - 1))
+						+ ", " + partitions.defaultRows() + " row(s) in appointment_default");
+					break;
+				case "ensure":
+					for (String name : partitions.ensure(YearMonth.now().plusMonths(monthsAhead)))
+						System.out.println("Created " + name);
+					break;
+				case "archive":
+					for (String name : partitions.archive(before, drop, threads))
+						System.out.println((drop ? "Dropped " : "Archived ") + name);
+					break;
+				default:
+					System.err.println(usage);
+					ok = false;
+			}//end switch
+		}catch (SQLException e){
+			System.err.println(e.getMessage());
+			ok = false;
+		}finally{
+			pool.close();
+		}//end try
+		if (!ok)
+			System.exit(1);
+	}
+}
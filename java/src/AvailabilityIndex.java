@@ -0,0 +1,624 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of the open appointments ('AV' and 'AC'), so menu
+ * options 5 and 6 can be answered without a round trip.
+ *
+ * For every doctor the index keeps, per day, the appointments of that day
+ * as parallel primitive arrays sorted by appnt_ID: the status, the parsed
+ * start and end minute of the time_slot and the time_slot text itself.
+ * A second map keyed by department name (request_maintenance) holds only
+ * the 'AV' appointments of the department's doctors in the same layout.
+ *
+ * The index is built by rebuild() from one scan and kept current by the
+ * writers through statusChanged(), put() and refresh(). Day entries are
+ * immutable and replaced on change, so readers never lock; writers are
+ * serialized on the index. As a ChangeFeed listener the index also
+ * follows changes made by other clients. Appointments changed while
+ * rebuild() scans are remembered and reloaded with refresh() once the new
+ * index is swapped in. Doctors added to request_maintenance after the
+ * scan are only seen after the next rebuild().
+ *
+ */
+
+public class AvailabilityIndex implements ChangeFeed.Listener{
+	static final String SCAN_SQL =
+		"SELECT H.doctor_id, A.appnt_ID, A.adate, A.time_slot, A.status "
+		+ "FROM Appointment A, has_appointment H "
+		+ "WHERE H.appt_id = A.appnt_ID AND (A.status = 'AV' OR A.status = 'AC')";
+	static final String DEPARTMENTS_SQL =
+		"SELECT DISTINCT dept_name, did FROM request_maintenance";
+	static final String APPOINTMENT_SQL =
+		"SELECT H.doctor_id, A.appnt_ID, A.adate, A.time_slot, A.status "
+		+ "FROM Appointment A, has_appointment H "
+		+ "WHERE A.appnt_ID = ? AND H.appt_id = A.appnt_ID";
+
+	static final byte AV = 0;
+	static final byte AC = 1;
+	private static final String[] STATUS_NAMES = { "AV", "AC" };
+
+	/**
+	 * The open appointments of one doctor (or department) on one day,
+	 * sorted by appnt_ID. Never modified once published.
+	 */
+	static final class Day{
+		static final Day EMPTY = new Day(new int[0], new byte[0], new short[0], new short[0], new String[0]);
+
+		final int[] ids;
+		final byte[] status;
+		//minutes after midnight, -1 when the time_slot could not be parsed
+		final short[] start;
+		final short[] end;
+		final String[] slots;
+
+		Day(int[] ids, byte[] status, short[] start, short[] end, String[] slots){
+			this.ids = ids;
+			this.status = status;
+			this.start = start;
+			this.end = end;
+			this.slots = slots;
+		}
+
+		int size(){
+			return this.ids.length;
+		}
+
+		/**
+		 * @return a copy with the appointment inserted, or replaced when its
+		 *         ID is already present
+		 */
+		Day with(int id, byte st, String slot){
+			int pos = Arrays.binarySearch(this.ids, id);
+			if (pos >= 0){
+				Day copy = new Day(this.ids, this.status.clone(), this.start.clone(), this.end.clone(), this.slots.clone());
+				copy.set(pos, id, st, slot);
+				return copy;
+			}//end if
+			pos = -pos - 1;
+			int n = size();
+			Day copy = new Day(new int[n + 1], new byte[n + 1], new short[n + 1], new short[n + 1], new String[n + 1]);
+			copy.copyFrom(this, 0, 0, pos);
+			copy.copyFrom(this, pos, pos + 1, n - pos);
+			copy.set(pos, id, st, slot);
+			return copy;
+		}
+
+		//fills one position of a day that is not published yet
+		private void set(int pos, int id, byte st, String slot){
+			TimeSlot range;
+			try{
+				range = TimeSlot.parse(slot);
+			}catch (IllegalArgumentException e){
+				range = null;
+			}//end try
+			this.ids[pos] = id;
+			this.status[pos] = st;
+			this.start[pos] = (short) (range == null ? -1 : range.getStartMinute());
+			this.end[pos] = (short) (range == null ? -1 : range.getEndMinute());
+			this.slots[pos] = slot;
+		}
+
+		/**
+		 * @return a copy without the appointment, null when that leaves the
+		 *         day empty, or this when the ID is not present
+		 */
+		Day without(int id){
+			int pos = Arrays.binarySearch(this.ids, id);
+			if (pos < 0)
+				return this;
+			int n = size();
+			if (n == 1)
+				return null;
+			Day copy = new Day(new int[n - 1], new byte[n - 1], new short[n - 1], new short[n - 1], new String[n - 1]);
+			copy.copyFrom(this, 0, 0, pos);
+			copy.copyFrom(this, pos + 1, pos, n - pos - 1);
+			return copy;
+		}
+
+		private void copyFrom(Day src, int from, int to, int len){
+			System.arraycopy(src.ids, from, this.ids, to, len);
+			System.arraycopy(src.status, from, this.status, to, len);
+			System.arraycopy(src.start, from, this.start, to, len);
+			System.arraycopy(src.end, from, this.end, to, len);
+			System.arraycopy(src.slots, from, this.slots, to, len);
+		}
+	}
+
+	/**
+	 * Appointments returned by a lookup, in (adate, appnt_ID) order.
+	 */
+	public static final class Slots{
+		private int _count = 0;
+		private int[] _ids = new int[16];
+		private int[] _days = new int[16];
+		private byte[] _status = new byte[16];
+		private short[] _start = new short[16];
+		private short[] _end = new short[16];
+		private String[] _slots = new String[16];
+
+		void addAll(int day, Day d){
+			int n = d.size();
+			if (this._count + n > this._ids.length){
+				int capacity = Math.max(this._ids.length * 2, this._count + n);
+				this._ids = Arrays.copyOf(this._ids, capacity);
+				this._days = Arrays.copyOf(this._days, capacity);
+				this._status = Arrays.copyOf(this._status, capacity);
+				this._start = Arrays.copyOf(this._start, capacity);
+				this._end = Arrays.copyOf(this._end, capacity);
+				this._slots = Arrays.copyOf(this._slots, capacity);
+			}//end if
+			System.arraycopy(d.ids, 0, this._ids, this._count, n);
+			Arrays.fill(this._days, this._count, this._count + n, day);
+			System.arraycopy(d.status, 0, this._status, this._count, n);
+			System.arraycopy(d.start, 0, this._start, this._count, n);
+			System.arraycopy(d.end, 0, this._end, this._count, n);
+			System.arraycopy(d.slots, 0, this._slots, this._count, n);
+			this._count += n;
+		}
+
+		public int size(){ return this._count; }
+		public int getID(int i){ return this._ids[i]; }
+		public LocalDate getDate(int i){ return LocalDate.ofEpochDay(this._days[i]); }
+		public String getTimeSlot(int i){ return this._slots[i]; }
+		public String getStatus(int i){ return STATUS_NAMES[this._status[i]]; }
+		//minutes after midnight, -1 when the time_slot could not be parsed
+		public int getStartMinute(int i){ return this._start[i]; }
+		public int getEndMinute(int i){ return this._end[i]; }
+	}
+
+	private final ConnectionPool _pool;
+	//doctor_ID -> epoch day -> open appointments
+	private volatile Map<Integer, ConcurrentSkipListMap<Integer, Day>> _byDoctor =
+		new ConcurrentHashMap<Integer, ConcurrentSkipListMap<Integer, Day>>();
+	//dept_name -> epoch day -> available appointments
+	private volatile Map<String, ConcurrentSkipListMap<Integer, Day>> _byDepartment =
+		new ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Day>>();
+	//doctor_ID -> names of the departments it serves
+	private volatile Map<Integer, String[]> _departmentsOfDoctor = new ConcurrentHashMap<Integer, String[]>();
+	//appnt_ID -> (doctor_ID << 32 | epoch day) of every doctor the appointment is indexed under
+	private volatile Map<Integer, long[]> _locations = new ConcurrentHashMap<Integer, long[]>();
+
+	private final AtomicLong _lookups = new AtomicLong();
+	private final AtomicLong _updates = new AtomicLong();
+	private final AtomicLong _refreshes = new AtomicLong();
+	private volatile long _entries = 0;
+	private volatile long _buildMillis = 0;
+	//one rebuild() at a time
+	private final Object _rebuildLock = new Object();
+	//appointments changed since the running rebuild() started, null when none runs
+	private LinkedHashSet<Integer> _pending = null;
+	//appnt_ID -> value of _sequence at its latest change, so refresh() can tell a stale read
+	private final Map<Integer, Long> _changedAt = new HashMap<Integer, Long>();
+	private long _sequence = 0;
+
+	public AvailabilityIndex(ConnectionPool pool){
+		this._pool = pool;
+	}
+
+	/**
+	 * Replaces the whole index with the current contents of Appointment,
+	 * has_appointment and request_maintenance. Lookups keep seeing the
+	 * previous index until the new one is complete; the appointments that
+	 * changed meanwhile are then reloaded on top of it.
+	 *
+	 * @throws java.sql.SQLException when one of the scans or reloads fails
+	 */
+	public void rebuild() throws SQLException {
+		synchronized (this._rebuildLock){
+			Integer[] changed;
+			synchronized (this){
+				this._pending = new LinkedHashSet<Integer>();
+			}
+			try{
+				changed = build();
+			}finally{
+				synchronized (this){
+					this._pending = null;
+				}
+			}//end try
+			for (int apptID : changed)
+				refresh(apptID);
+		}
+	}
+
+	//scans the tables and swaps the new index in; returns the appointments changed during the scan
+	private Integer[] build() throws SQLException {
+		long start = System.nanoTime();
+		Map<Integer, ConcurrentSkipListMap<Integer, Day>> byDoctor = new ConcurrentHashMap<Integer, ConcurrentSkipListMap<Integer, Day>>();
+		Map<String, ConcurrentSkipListMap<Integer, Day>> byDepartment = new ConcurrentHashMap<String, ConcurrentSkipListMap<Integer, Day>>();
+		Map<Integer, String[]> departments = new ConcurrentHashMap<Integer, String[]>();
+		Map<Integer, long[]> locations = new ConcurrentHashMap<Integer, long[]>();
+		long entries = 0;
+
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(DEPARTMENTS_SQL);
+			Map<Integer, String[]> names = new HashMap<Integer, String[]>();
+			while (rs.next()){
+				String[] old = names.get(rs.getInt(2));
+				String[] grown = old == null ? new String[1] : Arrays.copyOf(old, old.length + 1);
+				grown[grown.length - 1] = rs.getString(1);
+				names.put(rs.getInt(2), grown);
+			}//end while
+			rs.close();
+			stmt.close();
+			departments.putAll(names);
+
+			//one builder per (doctor, day); rows are sorted when the builders are frozen
+			Map<Long, Builder> builders = new HashMap<Long, Builder>();
+			DBproject.stream(conn, SCAN_SQL, DBproject.DEFAULT_FETCH_SIZE, r -> {
+				byte st = "AV".equals(r.getString(5)) ? AV : AC;
+				long key = location(r.getInt(1), (int) r.getDate(3).toLocalDate().toEpochDay());
+				builders.computeIfAbsent(key, k -> new Builder()).add(r.getInt(2), st, r.getString(4));
+				return true;
+			}, null);
+
+			Map<String, Map<Integer, Builder>> departmentBuilders = new HashMap<String, Map<Integer, Builder>>();
+			for (Map.Entry<Long, Builder> e : builders.entrySet()){
+				int doctorID = (int) (e.getKey() >> 32);
+				int day = (int) (long) e.getKey();
+				Day d = e.getValue().freeze();
+				byDoctor.computeIfAbsent(doctorID, k -> new ConcurrentSkipListMap<Integer, Day>()).put(day, d);
+				for (int id : d.ids)
+					locations.merge(id, new long[]{ e.getKey() }, AvailabilityIndex::concat);
+				entries += d.size();
+				String[] depts = departments.get(doctorID);
+				if (depts == null)
+					continue;
+				for (String dept : depts){
+					Builder b = departmentBuilders.computeIfAbsent(dept, k -> new HashMap<Integer, Builder>())
+						.computeIfAbsent(day, k -> new Builder());
+					for (int i = 0; i < d.size(); ++i){
+						if (d.status[i] == AV)
+							b.add(d.ids[i], AV, d.slots[i]);
+					}//end for
+				}//end for
+			}//end for
+			for (Map.Entry<String, Map<Integer, Builder>> e : departmentBuilders.entrySet()){
+				ConcurrentSkipListMap<Integer, Day> days = new ConcurrentSkipListMap<Integer, Day>();
+				for (Map.Entry<Integer, Builder> b : e.getValue().entrySet()){
+					if (b.getValue().size() > 0)
+						days.put(b.getKey(), b.getValue().freeze());
+				}//end for
+				byDepartment.put(e.getKey(), days);
+			}//end for
+		}finally{
+			this._pool.release(conn);
+		}//end try
+
+		synchronized (this){
+			this._byDoctor = byDoctor;
+			this._byDepartment = byDepartment;
+			this._departmentsOfDoctor = departments;
+			this._locations = locations;
+			this._entries = entries;
+			this._buildMillis = (System.nanoTime() - start) / 1000000;
+			//later changes go straight into the new index
+			Integer[] changed = this._pending.toArray(new Integer[0]);
+			this._pending = null;
+			return changed;
+		}
+	}
+
+	/**
+	 * Open appointments of a doctor between two dates, both inclusive.
+	 * Same rows as LIST_APPOINTMENTS_OF_DOCTOR_SQL.
+	 */
+	public Slots appointmentsOfDoctor(int doctorID, LocalDate from, LocalDate to){
+		this._lookups.incrementAndGet();
+		Slots result = new Slots();
+		if (from.isAfter(to))
+			return result;
+		NavigableMap<Integer, Day> days = this._byDoctor.get(doctorID);
+		if (days == null)
+			return result;
+		for (Map.Entry<Integer, Day> e : days.subMap((int) from.toEpochDay(), true, (int) to.toEpochDay(), true).entrySet())
+			result.addAll(e.getKey(), e.getValue());
+		return result;
+	}
+
+	/**
+	 * Available appointments of a department on one day. Same rows as
+	 * LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT_SQL.
+	 */
+	public Slots availableOfDepartment(String deptName, LocalDate date){
+		this._lookups.incrementAndGet();
+		Slots result = new Slots();
+		NavigableMap<Integer, Day> days = this._byDepartment.get(deptName);
+		int day = (int) date.toEpochDay();
+		Day d = days == null ? null : days.get(day);
+		if (d != null)
+			result.addAll(day, d);
+		return result;
+	}
+
+	/**
+	 * Records a new status of an appointment, e.g. after a booking. An
+	 * appointment that leaves 'AV'/'AC' is dropped; one that is not
+	 * indexed yet is looked up with refresh().
+	 *
+	 * @param apptID the appointment that changed
+	 * @param status its new status
+	 * @throws java.sql.SQLException when the appointment had to be looked up
+	 *         and the lookup failed
+	 */
+	public void statusChanged(int apptID, String status) throws SQLException {
+		boolean open = "AV".equals(status) || "AC".equals(status);
+		boolean lost = false;
+		synchronized (this){
+			changed(apptID);
+			long[] locs = this._locations.get(apptID);
+			if (locs != null){
+				this._updates.incrementAndGet();
+				for (long loc : locs){
+					int doctorID = (int) (loc >> 32);
+					int day = (int) loc;
+					if (!open){
+						unplace(doctorID, day, apptID);
+						continue;
+					}//end if
+					NavigableMap<Integer, Day> days = this._byDoctor.get(doctorID);
+					Day d = days == null ? null : days.get(day);
+					int pos = d == null ? -1 : Arrays.binarySearch(d.ids, apptID);
+					if (pos < 0){
+						//the location outlived its day entry, reload below
+						lost = true;
+						continue;
+					}//end if
+					place(doctorID, day, apptID, "AV".equals(status) ? AV : AC, d.slots[pos]);
+				}//end for
+				if (!open)
+					this._locations.remove(apptID);
+				if (!lost)
+					return;
+			}//end if
+		}
+		if (open)
+			refresh(apptID);
+	}
+
+	/**
+	 * Indexes an appointment of a doctor, e.g. right after it was inserted
+	 * together with its has_appointment row. Statuses other than 'AV' and
+	 * 'AC' remove the appointment instead.
+	 */
+	public synchronized void put(int doctorID, int apptID, LocalDate date, String timeSlot, String status){
+		this._updates.incrementAndGet();
+		changed(apptID);
+		remove(apptID, doctorID);
+		if (!"AV".equals(status) && !"AC".equals(status))
+			return;
+		int day = (int) date.toEpochDay();
+		place(doctorID, day, apptID, "AV".equals(status) ? AV : AC, timeSlot);
+		this._locations.merge(apptID, new long[]{ location(doctorID, day) }, AvailabilityIndex::concat);
+	}
+
+	/**
+	 * Reloads one appointment and its doctors from the database, for
+	 * writers that do not know the appointment's row. The row is read
+	 * outside the lock; when another change of the appointment is applied
+	 * meanwhile the read may predate it, so it is read again rather than
+	 * applied.
+	 *
+	 * @throws java.sql.SQLException when the lookup fails
+	 */
+	public void refresh(int apptID) throws SQLException {
+		PooledConnection conn = this._pool.borrow();
+		try{
+			boolean applied = false;
+			while (!applied){
+				this._refreshes.incrementAndGet();
+				Long seen;
+				synchronized (this){
+					seen = this._changedAt.get(apptID);
+				}
+				ResultSet rs = DBproject.prepare(conn, APPOINTMENT_SQL, new Object[]{ apptID }).executeQuery();
+				synchronized (this){
+					applied = Objects.equals(seen, this._changedAt.get(apptID));
+					if (applied){
+						changed(apptID);
+						remove(apptID, -1);
+						while (rs.next())
+							put(rs.getInt(1), apptID, rs.getDate(3).toLocalDate(), rs.getString(4), rs.getString(5));
+					}//end if
+				}
+				rs.close();
+			}//end while
+		}finally{
+			this._pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Applies a change feed notification. Updates to an open status are
+	 * reloaded because the payload does not carry adate and time_slot.
+	 */
+	@Override
+	public void apply(ChangeFeed.Change change) throws SQLException {
+		if (change.op == ChangeFeed.TRUNCATE){
+			if (change.table == ChangeFeed.APPOINTMENT || change.table == ChangeFeed.HAS_APPOINTMENT)
+				rebuild();
+			return;
+		}//end if
+		if (change.table == ChangeFeed.APPOINTMENT){
+			int apptID = change.getIntKey(0);
+			String status = change.op == ChangeFeed.DELETE ? "" : change.getKey(1);
+			if (!"AV".equals(status) && !"AC".equals(status))
+				statusChanged(apptID, status);
+			else
+				refresh(apptID);
+		}else if (change.table == ChangeFeed.HAS_APPOINTMENT){
+			refresh(change.getIntKey(0));
+		}//end if
+	}
+
+	@Override
+	public void resync() throws SQLException {
+		rebuild();
+	}
+
+	//stamps a change of an appointment and remembers it for the running rebuild() to reload,
+	//called holding the lock
+	private void changed(int apptID){
+		this._changedAt.put(apptID, ++this._sequence);
+		if (this._pending != null)
+			this._pending.add(apptID);
+	}
+
+	//drops an appointment from every doctor (doctorID -1) or from one doctor
+	private void remove(int apptID, int doctorID){
+		long[] locs = this._locations.get(apptID);
+		if (locs == null)
+			return;
+		long[] kept = new long[locs.length];
+		int n = 0;
+		for (long loc : locs){
+			if (doctorID == -1 || (int) (loc >> 32) == doctorID)
+				unplace((int) (loc >> 32), (int) loc, apptID);
+			else
+				kept[n++] = loc;
+		}//end for
+		if (n == 0)
+			this._locations.remove(apptID);
+		else
+			this._locations.put(apptID, Arrays.copyOf(kept, n));
+	}
+
+	private void place(int doctorID, int day, int apptID, byte st, String slot){
+		ConcurrentSkipListMap<Integer, Day> days = this._byDoctor.computeIfAbsent(doctorID, k -> new ConcurrentSkipListMap<Integer, Day>());
+		Day old = days.getOrDefault(day, Day.EMPTY);
+		if (Arrays.binarySearch(old.ids, apptID) < 0)
+			++this._entries;
+		days.put(day, old.with(apptID, st, slot));
+		for (String dept : this._departmentsOfDoctor.getOrDefault(doctorID, new String[0])){
+			ConcurrentSkipListMap<Integer, Day> deptDays = this._byDepartment.computeIfAbsent(dept, k -> new ConcurrentSkipListMap<Integer, Day>());
+			Day d = deptDays.getOrDefault(day, Day.EMPTY);
+			d = st == AV ? d.with(apptID, AV, slot) : d.without(apptID);
+			if (d == null)
+				deptDays.remove(day);
+			else
+				deptDays.put(day, d);
+		}//end for
+	}
+
+	private void unplace(int doctorID, int day, int apptID){
+		ConcurrentSkipListMap<Integer, Day> days = this._byDoctor.get(doctorID);
+		Day d = days == null ? null : days.get(day);
+		if (d == null)
+			return;
+		Day rest = d.without(apptID);
+		if (rest != d)
+			--this._entries;
+		if (rest == null)
+			days.remove(day);
+		else
+			days.put(day, rest);
+		for (String dept : this._departmentsOfDoctor.getOrDefault(doctorID, new String[0])){
+			ConcurrentSkipListMap<Integer, Day> deptDays = this._byDepartment.get(dept);
+			Day dd = deptDays == null ? null : deptDays.get(day);
+			if (dd == null)
+				continue;
+			dd = dd.without(apptID);
+			if (dd == null)
+				deptDays.remove(day);
+			else
+				deptDays.put(day, dd);
+		}//end for
+	}
+
+	private static long location(int doctorID, int day){
+		return ((long) doctorID << 32) | (day & 0xffffffffL);
+	}
+
+	private static long[] concat(long[] a, long[] b){
+		long[] c = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, c, a.length, b.length);
+		return c;
+	}
+
+	/**
+	 * Collects the rows of one (doctor, day) or (department, day) during a
+	 * rebuild. A department sees an appointment once per doctor of the
+	 * department it is linked to; freeze() keeps it once.
+	 */
+	private static final class Builder{
+		private int _count = 0;
+		private int[] _ids = new int[4];
+		private byte[] _status = new byte[4];
+		private String[] _slots = new String[4];
+
+		void add(int id, byte st, String slot){
+			if (this._count == this._ids.length){
+				this._ids = Arrays.copyOf(this._ids, this._count * 2);
+				this._status = Arrays.copyOf(this._status, this._count * 2);
+				this._slots = Arrays.copyOf(this._slots, this._count * 2);
+			}//end if
+			this._ids[this._count] = id;
+			this._status[this._count] = st;
+			this._slots[this._count] = slot;
+			++this._count;
+		}
+
+		int size(){
+			return this._count;
+		}
+
+		Day freeze(){
+			//sort positions by appnt_ID; IDs are non-negative so (id, position) packs into a long
+			long[] order = new long[this._count];
+			for (int i = 0; i < this._count; ++i)
+				order[i] = ((long) this._ids[i] << 32) | i;
+			Arrays.sort(order);
+			int n = 0;
+			for (int i = 0; i < this._count; ++i){
+				if (i == 0 || order[i] >>> 32 != order[i - 1] >>> 32)
+					order[n++] = order[i];
+			}//end for
+			Day d = new Day(new int[n], new byte[n], new short[n], new short[n], new String[n]);
+			for (int i = 0; i < n; ++i){
+				int src = (int) order[i];
+				d.set(i, this._ids[src], this._status[src], this._slots[src]);
+			}//end for
+			return d;
+		}
+	}
+
+	public long getLookupCount(){ return this._lookups.get(); }
+	public long getEntryCount(){ return this._entries; }
+
+	/**
+	 * @return a one-line summary of the index size and counters
+	 */
+	public String stats(){
+		return String.format("doctors=%d departments=%d entries=%d buildMs=%d lookups=%d updates=%d refreshes=%d",
+			this._byDoctor.size(), this._byDepartment.size(), this._entries, this._buildMillis,
+			this._lookups.get(), this._updates.get(), this._refreshes.get());
+	}
+}
@@ -0,0 +1,314 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class inserts many Doctor, Patient or Appointment records read from
+ * CSV lines using JDBC batches. With reWriteBatchedInserts on the JDBC URL
+ * the driver folds each batch into multi-row INSERTs, so a batch costs one
+ * round trip instead of one per row.
+ *
+ * A batch runs under a savepoint. When it fails, it is rolled back to the
+ * savepoint and replayed row by row, each row under its own savepoint, so
+ * the rows that fail are reported and all other rows are kept.
+ *
+ */
+
+public class BatchInserter{
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_COMMIT_INTERVAL = 5000;
+
+	/**
+	 * The kinds of record accepted, with their CSV layout (the same as the
+	 * files under data/).
+	 */
+	public enum RecordType{
+		DOCTOR(DBproject.ADD_DOCTOR_SQL, "doctor_ID,name,specialty,did"){
+			Object[] parse(String[] f){
+				need(f, 4);
+				return new Object[]{ Integer.valueOf(f[0]), f[1], f[2], Integer.valueOf(f[3]) };
+			}
+		},
+		PATIENT(DBproject.ADD_PATIENT_SQL, "patient_ID,name,gtype,age,address,number_of_appts"){
+			Object[] parse(String[] f){
+				need(f, 6);
+				String gender = f[2].toUpperCase();
+				if (!BulkLoader.GENDER_DOMAIN.contains(gender))
+					throw new IllegalArgumentException("gtype must be 'M' or 'F', got '" + f[2] + "'");
+				return new Object[]{ Integer.valueOf(f[0]), f[1], gender, Integer.valueOf(f[3]),
+					f[4].isEmpty() ? null : f[4], f[5].isEmpty() ? null : Integer.valueOf(f[5]) };
+			}
+		},
+		APPOINTMENT(DBproject.ADD_APPOINTMENT_SQL, "appnt_ID,adate,time_slot,status"){
+			Object[] parse(String[] f){
+				need(f, 4);
+				String status = f[3].toUpperCase();
+				if (!BulkLoader.STATUS_DOMAIN.contains(status))
+					throw new IllegalArgumentException("status must be one of " + BulkLoader.STATUS_DOMAIN + ", got '" + f[3] + "'");
+				return new Object[]{ Integer.valueOf(f[0]), DBproject.parseDate(f[1]),
+					f[2].isEmpty() ? null : f[2], status };
+			}
+		};
+
+		final String sql;
+		final String layout;
+
+		RecordType(String sql, String layout){
+			this.sql = sql;
+			this.layout = layout;
+		}
+
+		/**
+		 * @return the expected CSV columns, e.g. for a prompt
+		 */
+		public String layout(){
+			return this.layout;
+		}
+
+		/**
+		 * Converts CSV fields into the bind values of the INSERT.
+		 *
+		 * @throws java.lang.IllegalArgumentException when a field is invalid
+		 */
+		abstract Object[] parse(String[] fields);
+
+		private static void need(String[] f, int n){
+			if (f.length != n)
+				throw new IllegalArgumentException("expected " + n + " fields, got " + f.length);
+		}
+	}
+
+	/**
+	 * A line that could not be inserted.
+	 */
+	public static final class RowError{
+		public final long line;
+		public final String input;
+		public final String message;
+
+		RowError(long line, String input, String message){
+			this.line = line;
+			this.input = input;
+			this.message = message;
+		}
+
+		@Override
+		public String toString(){
+			return "line " + this.line + ": " + this.message + " [" + this.input + "]";
+		}
+	}
+
+	/**
+	 * Outcome of one insert run.
+	 */
+	public static final class Result{
+		public long inserted;
+		public long batches;
+		public long millis;
+		public final List<RowError> errors = new ArrayList<RowError>();
+
+		@Override
+		public String toString(){
+			return String.format("%d inserted, %d failed, %d batches in %d ms",
+				this.inserted, this.errors.size(), this.batches, this.millis);
+		}
+	}
+
+	private final ConnectionPool _pool;
+	private final int _batchSize;
+	private final int _commitInterval;
+
+	public BatchInserter(ConnectionPool pool){
+		this(pool, Integer.getInteger("batch.size", DEFAULT_BATCH_SIZE),
+			Integer.getInteger("batch.commitInterval", DEFAULT_COMMIT_INTERVAL));
+	}
+
+	/**
+	 * @param pool the pool to borrow a connection from
+	 * @param batchSize rows sent per executeBatch()
+	 * @param commitInterval rows inserted between commits
+	 */
+	public BatchInserter(ConnectionPool pool, int batchSize, int commitInterval){
+		if (batchSize <= 0 || commitInterval <= 0)
+			throw new IllegalArgumentException("batch size and commit interval must be positive");
+		this._pool = pool;
+		this._batchSize = batchSize;
+		this._commitInterval = commitInterval;
+	}
+
+	/**
+	 * Reads CSV records of one type and inserts them in batches. Blank lines
+	 * are skipped, or end the input when stopAtBlankLine is set (for typing
+	 * records at the console).
+	 *
+	 * @param type the kind of record on each line
+	 * @param in the CSV lines
+	 * @param stopAtBlankLine treat a blank line as end of input
+	 * @return the counts and the rows that failed
+	 * @throws java.sql.SQLException when the connection fails outside a row
+	 * @throws java.io.IOException when reading the input fails
+	 */
+	public Result insert(RecordType type, final BufferedReader in, final boolean stopAtBlankLine) throws SQLException, IOException {
+		final long[] lineNo = { 0 };
+		return insert(type, () -> {
+			String line;
+			while ((line = in.readLine()) != null){
+				++lineNo[0];
+				if (!line.trim().isEmpty())
+					return new Record(null, line, lineNo[0]);
+				if (stopAtBlankLine)
+					break;
+			}//end while
+			return null;
+		});
+	}
+
+	/**
+	 * Inserts records that were already split into fields, e.g. by a script
+	 * that mixes record types with other operations, in the same batches
+	 * and commit intervals as above.
+	 *
+	 * @param type the kind of every record
+	 * @param records the fields of each record
+	 * @param lines the input line of each record, for the errors
+	 * @return the counts and the rows that failed
+	 * @throws java.sql.SQLException when the connection fails outside a row
+	 */
+	public Result insert(RecordType type, final List<String[]> records, final List<Long> lines) throws SQLException {
+		final int[] next = { 0 };
+		return insert(type, () -> {
+			int i = next[0]++;
+			return i < records.size() ? new Record(records.get(i), String.join(",", records.get(i)), lines.get(i)) : null;
+		});
+	}
+
+	/**
+	 * One input record: its fields, or null when input is a CSV line still
+	 * to be split, and where it came from.
+	 */
+	private static final class Record{
+		final String[] fields;
+		final String input;
+		final long line;
+
+		Record(String[] fields, String input, long line){
+			this.fields = fields;
+			this.input = input;
+			this.line = line;
+		}
+	}
+
+	/**
+	 * Supplies the records of one insert run.
+	 */
+	private interface RecordSource<E extends Exception>{
+		//null at the end of the input
+		Record next() throws E;
+	}
+
+	//the batching and commit loop shared by both inputs
+	private <E extends Exception> Result insert(RecordType type, RecordSource<E> source) throws SQLException, E {
+		Result result = new Result();
+		long start = System.nanoTime();
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Connection c = conn.connection();
+			c.setAutoCommit(false);
+			PreparedStatement stmt = conn.statements().get(type.sql);
+
+			List<Object[]> params = new ArrayList<Object[]>(this._batchSize);
+			List<String> inputs = new ArrayList<String>(this._batchSize);
+			List<Long> lines = new ArrayList<Long>(this._batchSize);
+			long sinceCommit = 0;
+			Record r;
+			while ((r = source.next()) != null){
+				try{
+					params.add(type.parse(r.fields != null ? r.fields : BulkLoader.split(r.input)));
+					inputs.add(r.input);
+					lines.add(r.line);
+				}catch (RuntimeException e){
+					result.errors.add(new RowError(r.line, r.input, e.getMessage()));
+					continue;
+				}//end try
+				if (params.size() == this._batchSize){
+					sinceCommit += flush(c, stmt, params, inputs, lines, result);
+					if (sinceCommit >= this._commitInterval){
+						c.commit();
+						sinceCommit = 0;
+					}//end if
+				}//end if
+			}//end while
+			flush(c, stmt, params, inputs, lines, result);
+			c.commit();
+		}finally{
+			//rolls back whatever was not committed and restores autocommit
+			this._pool.release(conn);
+		}//end try
+		result.millis = (System.nanoTime() - start) / 1000000;
+		return result;
+	}
+
+	/**
+	 * Sends the pending rows as one batch, falling back to row-at-a-time
+	 * inserts when the batch fails.
+	 *
+	 * @return the number of rows sent
+	 */
+	private long flush(Connection c, PreparedStatement stmt, List<Object[]> params, List<String> inputs,
+			List<Long> lines, Result result) throws SQLException {
+		int n = params.size();
+		if (n == 0)
+			return 0;
+		++result.batches;
+		Savepoint batch = c.setSavepoint();
+		try{
+			for (Object[] p : params){
+				DBproject.bind(stmt, p);
+				stmt.addBatch();
+			}//end for
+			stmt.executeBatch();
+			c.releaseSavepoint(batch);
+			result.inserted += n;
+		}catch (BatchUpdateException e){
+			stmt.clearBatch();
+			c.rollback(batch);
+			//the failing position is not reliable with rewritten inserts, so
+			//replay the batch one row at a time
+			for (int i = 0; i < n; ++i){
+				Savepoint row = c.setSavepoint();
+				try{
+					DBproject.bind(stmt, params.get(i));
+					stmt.executeUpdate();
+					c.releaseSavepoint(row);
+					++result.inserted;
+				}catch (SQLException rowError){
+					c.rollback(row);
+					result.errors.add(new RowError(lines.get(i), inputs.get(i), rowError.getMessage()));
+				}//end try
+			}//end for
+		}//end try
+		params.clear();
+		inputs.clear();
+		lines.clear();
+		return n;
+	}
+}
@@ -0,0 +1,479 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * This class loads the hospital CSV files from the client machine with
+ * COPY ... FROM STDIN, so the files no longer have to be copied into the
+ * server's data directory. Tables whose foreign keys are satisfied are
+ * loaded in parallel, each on its own pooled connection.
+ *
+ * Rows whose gtype or status fall outside the _GENDER and _STATUS domains
+ * are rejected on the client and reported, instead of aborting the COPY of
+ * the whole table.
+ *
+ */
+
+public class BulkLoader{
+	//bytes buffered before they are handed to the COPY stream
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	static final Set<String> GENDER_DOMAIN = new HashSet<String>(Arrays.asList("F", "M"));
+	static final Set<String> STATUS_DOMAIN = new HashSet<String>(Arrays.asList("PA", "AC", "AV", "WL"));
+
+	/**
+	 * A table, the CSV file it is loaded from and the tables its foreign
+	 * keys reference.
+	 */
+	public static final class Table{
+		final String name;
+		final String file;
+		final String[] columns;
+		final String[] dependsOn;
+		//column index checked against domain, or -1
+		final int domainColumn;
+		final Set<String> domain;
+
+		Table(String name, String file, String[] columns, String[] dependsOn, int domainColumn, Set<String> domain){
+			this.name = name;
+			this.file = file;
+			this.columns = columns;
+			this.dependsOn = dependsOn;
+			this.domainColumn = domainColumn;
+			this.domain = domain;
+		}
+
+		public String getName(){ return this.name; }
+		public String getFile(){ return this.file; }
+		public String[] getColumns(){ return this.columns.clone(); }
+
+		String copySql(){
+			return "COPY " + this.name + " (" + String.join(", ", this.columns) + ") FROM STDIN WITH (FORMAT csv)";
+		}
+	}
+
+	private static String[] cols(String... c){ return c; }
+
+	//every table of sql/create.sql, parents before children
+	public static final Table[] TABLES = {
+		new Table("Hospital", "hospital.csv", cols("hospital_ID", "name"), cols(), -1, null),
+		new Table("Patient", "patient.csv", cols("patient_ID", "name", "gtype", "age", "address", "number_of_appts"), cols(), 2, GENDER_DOMAIN),
+		new Table("Appointment", "appointment.csv", cols("appnt_ID", "adate", "time_slot", "status"), cols(), 3, STATUS_DOMAIN),
+		new Table("Department", "department.csv", cols("dept_ID", "name", "hid"), cols("Hospital"), -1, null),
+		new Table("Staff", "staff.csv", cols("staff_ID", "name", "hid"), cols("Hospital"), -1, null),
+		new Table("Doctor", "doctor.csv", cols("doctor_ID", "name", "specialty", "did"), cols("Department"), -1, null),
+		new Table("request_maintenance", "request_maintenance.csv", cols("patient_per_hour", "dept_name", "time_slot", "did", "sid"), cols("Doctor", "Staff"), -1, null),
+		new Table("searches", "searches.csv", cols("hid", "pid", "aid"), cols("Hospital", "Patient", "Appointment"), -1, null),
+		new Table("schedules", "schedules.csv", cols("appt_id", "staff_id"), cols("Appointment", "Staff"), -1, null),
+		new Table("has_appointment", "has_appointment.csv", cols("appt_id", "doctor_id"), cols("Appointment", "Doctor"), -1, null)
+	};
+
+	/**
+	 * @param name a table name, compared case-insensitively
+	 * @return the table description
+	 * @throws java.lang.IllegalArgumentException when the table is unknown
+	 */
+	public static Table table(String name){
+		for (Table t : TABLES)
+			if (t.name.equalsIgnoreCase(name))
+				return t;
+		throw new IllegalArgumentException("Unknown table " + name);
+	}
+
+	/**
+	 * Outcome of loading one table.
+	 */
+	public static final class Result{
+		public final String table;
+		public long rows;
+		public long rejected;
+		public long millis;
+
+		Result(String table){
+			this.table = table;
+		}
+
+		public double rowsPerSecond(){
+			return this.millis == 0 ? this.rows * 1000.0 : this.rows * 1000.0 / this.millis;
+		}
+
+		@Override
+		public String toString(){
+			return String.format("%-20s %10d rows %6d rejected %8d ms %12.0f rows/sec",
+				this.table, this.rows, this.rejected, this.millis, rowsPerSecond());
+		}
+	}
+
+	private final ConnectionPool _pool;
+
+	public BulkLoader(ConnectionPool pool){
+		this._pool = pool;
+	}
+
+	/**
+	 * Loads every table from dataDir. A table starts as soon as all the
+	 * tables it references are loaded, so independent tables run at the
+	 * same time on up to threads connections.
+	 *
+	 * @param dataDir directory holding the CSV files named in TABLES
+	 * @param threads number of tables loaded concurrently
+	 * @param truncate empty the tables first
+	 * @return one result per table, in TABLES order
+	 * @throws java.sql.SQLException when a table fails to load
+	 */
+	public List<Result> loadAll(final File dataDir, int threads, boolean truncate) throws SQLException {
+		if (truncate)
+			truncateAll();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			Map<String, CompletableFuture<Result>> done = new HashMap<String, CompletableFuture<Result>>();
+			List<CompletableFuture<Result>> ordered = new ArrayList<CompletableFuture<Result>>();
+			for (final Table t : TABLES){
+				CompletableFuture<?>[] deps = new CompletableFuture<?>[t.dependsOn.length];
+				for (int i = 0; i < deps.length; ++i)
+					deps[i] = done.get(t.dependsOn[i]);
+				CompletableFuture<Result> f = CompletableFuture.allOf(deps).thenApplyAsync(v -> {
+					try{
+						return loadFile(t, new File(dataDir, t.file));
+					}catch (Exception e){
+						throw new CompletionException(e);
+					}//end try
+				}, executor);
+				done.put(t.name, f);
+				ordered.add(f);
+			}//end for
+
+			List<Result> results = new ArrayList<Result>();
+			for (CompletableFuture<Result> f : ordered)
+				results.add(f.join());
+			finishLoad(this._pool, threads);
+			return results;
+		}catch (CompletionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException)
+				throw (SQLException) cause;
+			throw new SQLException("Bulk load failed: " + cause.getMessage(), cause);
+		}finally{
+			executor.shutdownNow();
+		}//end try
+	}
+
+	/**
+	 * Turns the per-row maintenance triggers off or back on for the session
+	 * of c: the change feed (migration V002) and the status counts (V003).
+	 * Bulk loads switch them off and call finishLoad() afterwards.
+	 */
+	static void setRowTriggers(Connection c, boolean on) throws SQLException {
+		Statement stmt = c.createStatement();
+		if (on){
+			stmt.execute("RESET dbproject.change_feed");
+			stmt.execute("RESET dbproject.status_counts");
+		}else{
+			stmt.execute("SET dbproject.change_feed = 'off'");
+			stmt.execute("SET dbproject.status_counts = 'off'");
+		}//end if
+		stmt.close();
+	}
+
+	/**
+	 * Catches up on what the row triggers skipped during a bulk load:
+	 * rebuilds the status counts when they are installed and tells change
+	 * feed listeners to reload. When Appointment is partitioned, rows that
+	 * fell into appointment_default first get partitions of their months.
+	 *
+	 * @param threads the parallelism of the status count rebuild
+	 * @throws java.sql.SQLException when a step fails
+	 */
+	static void finishLoad(ConnectionPool pool, int threads) throws SQLException {
+		if (AppointmentPartitions.isInstalled(pool)){
+			AppointmentPartitions partitions = new AppointmentPartitions(pool);
+			if (partitions.defaultRows() > 0)
+				partitions.ensure(YearMonth.now());
+		}//end if
+		if (StatusCounts.isInstalled(pool))
+			new StatusCounts(pool).rebuild(threads);
+		announceReload(pool);
+	}
+
+	/**
+	 * Tells change feed listeners to rebuild their caches, see ChangeFeed.
+	 *
+	 * @throws java.sql.SQLException when the notification cannot be sent
+	 */
+	static void announceReload(ConnectionPool pool) throws SQLException {
+		PooledConnection conn = pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			stmt.execute("SELECT pg_notify('" + ChangeFeed.CHANNEL + "', '" + ChangeFeed.RELOAD_PAYLOAD
+				+ "|' || (extract(epoch FROM clock_timestamp()) * 1000)::bigint)");
+			stmt.close();
+		}finally{
+			pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Empties every table in one statement, including the appointment keys
+	 * of a partitioned Appointment (migration V005).
+	 *
+	 * @throws java.sql.SQLException when the truncate fails
+	 */
+	public void truncateAll() throws SQLException {
+		StringBuilder sql = new StringBuilder("TRUNCATE ");
+		for (int i = 0; i < TABLES.length; ++i)
+			sql.append(i == 0 ? "" : ", ").append(TABLES[i].name);
+		PooledConnection conn = this._pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT to_regclass('appointment_key') IS NOT NULL");
+			if (rs.next() && rs.getBoolean(1))
+				sql.append(", appointment_key");
+			rs.close();
+			stmt.executeUpdate(sql.toString());
+			stmt.close();
+		}finally{
+			this._pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Streams one CSV file into its table.
+	 *
+	 * @param t the table to load
+	 * @param csv the file to read
+	 * @return the load statistics
+	 * @throws java.sql.SQLException when the COPY fails
+	 * @throws java.io.IOException when the file cannot be read
+	 */
+	public Result loadFile(Table t, File csv) throws SQLException, IOException {
+		Reader in = new InputStreamReader(new FileInputStream(csv), StandardCharsets.UTF_8);
+		try{
+			return load(t, in);
+		}finally{
+			in.close();
+		}//end try
+	}
+
+	/**
+	 * Streams CSV rows from a reader into a table on a pooled connection.
+	 *
+	 * @param t the table to load
+	 * @param in CSV rows in the column order of t, one per line
+	 * @return the load statistics
+	 * @throws java.sql.SQLException when the COPY fails
+	 * @throws java.io.IOException when the reader fails
+	 */
+	public Result load(Table t, Reader in) throws SQLException, IOException {
+		PooledConnection conn = this._pool.borrow();
+		try{
+			return copy(conn.connection(), t, in);
+		}finally{
+			this._pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Runs COPY FROM STDIN for t on c, rejecting rows outside the table's
+	 * domain. Nothing but the current line and the copy buffer is kept in
+	 * memory.
+	 */
+	static Result copy(Connection c, Table t, Reader in) throws SQLException, IOException {
+		Result result = new Result(t.name);
+		long start = System.nanoTime();
+
+		//CSV dates such as 1/13/2020 are month first; the connection goes
+		//back to the pool, so the setting is reset with the triggers
+		Statement stmt = c.createStatement();
+		try{
+			stmt.execute("SET DateStyle TO 'ISO, MDY'");
+			setRowTriggers(c, false);
+			return copyRows(c, t, in, result, start);
+		}finally{
+			try{
+				setRowTriggers(c, true);
+			}finally{
+				stmt.execute("RESET DateStyle");
+				stmt.close();
+			}//end try
+		}//end try
+	}
+
+	private static Result copyRows(Connection c, Table t, Reader in, Result result, long start) throws SQLException, IOException {
+		BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, COPY_BUFFER_SIZE);
+		CopyIn copy = c.unwrap(PGConnection.class).getCopyAPI().copyIn(t.copySql());
+		try{
+			byte[] buf = new byte[COPY_BUFFER_SIZE];
+			int len = 0;
+			long lineNo = 0;
+			String line;
+			while ((line = reader.readLine()) != null){
+				++lineNo;
+				if (line.isEmpty())
+					continue;
+				if (t.domainColumn >= 0){
+					String v = field(line, t.domainColumn);
+					if (v == null || !t.domain.contains(v)){
+						++result.rejected;
+						System.err.println(t.file + ":" + lineNo + ": rejected, '" + v
+							+ "' is not in " + t.domain);
+						continue;
+					}//end if
+				}//end if
+				byte[] row = (line + "\n").getBytes(StandardCharsets.UTF_8);
+				if (len + row.length > buf.length){
+					copy.writeToCopy(buf, 0, len);
+					len = 0;
+				}//end if
+				if (row.length > buf.length){
+					copy.writeToCopy(row, 0, row.length);
+				}else{
+					System.arraycopy(row, 0, buf, len, row.length);
+					len += row.length;
+				}//end if
+			}//end while
+			if (len > 0)
+				copy.writeToCopy(buf, 0, len);
+			result.rows = copy.endCopy();
+		}finally{
+			if (copy.isActive())
+				copy.cancelCopy();
+		}//end try
+		result.millis = (System.nanoTime() - start) / 1000000;
+		return result;
+	}
+
+	/**
+	 * Returns the index-th field of a CSV line, honouring double quotes.
+	 */
+	static String field(String line, int index){
+		String[] fields = split(line);
+		return index < fields.length ? fields[index] : null;
+	}
+
+	/**
+	 * Splits a CSV line into its fields. Quoted fields may contain commas
+	 * and doubled quotes; unquoted fields are trimmed.
+	 *
+	 * @param line one CSV record without its line terminator
+	 * @return the fields of the record
+	 */
+	public static String[] split(String line){
+		List<String> fields = new ArrayList<String>();
+		int n = line.length();
+		int i = 0;
+		while (true){
+			if (i < n && line.charAt(i) == '"'){
+				StringBuilder value = new StringBuilder();
+				++i;
+				while (i < n){
+					char ch = line.charAt(i);
+					if (ch == '"'){
+						if (i + 1 < n && line.charAt(i + 1) == '"'){
+							value.append('"');
+							i += 2;
+							continue;
+						}//end if
+						++i;
+						break;
+					}//end if
+					value.append(ch);
+					++i;
+				}//end while
+				fields.add(value.toString());
+				int comma = line.indexOf(',', i);
+				if (comma < 0)
+					break;
+				i = comma + 1;
+			}else{
+				int comma = line.indexOf(',', i);
+				int end = comma < 0 ? n : comma;
+				fields.add(line.substring(i, end).trim());
+				if (comma < 0)
+					break;
+				i = comma + 1;
+			}//end if
+		}//end while
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	/**
+	 * Loads the CSV files of a data directory into an existing schema.
+	 *
+	 * @param args <dbname> <port> <user> [data dir] [--threads N] [--truncate]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println("Usage: java [-classpath <classpath>] " + BulkLoader.class.getName()
+				+ " <dbname> <port> <user> [data dir] [--threads N] [--truncate]");
+			return;
+		}//end if
+		File dataDir = new File("../data");
+		int threads = 4;
+		boolean truncate = false;
+		for (int i = 3; i < args.length; ++i){
+			if (args[i].equals("--threads"))
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("--truncate"))
+				truncate = true;
+			else
+				dataDir = new File(args[i]);
+		}//end for
+
+		String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+		ConnectionPool pool = new ConnectionPool(url, args[2], "", threads,
+			ConnectionPool.DEFAULT_MAX_WAIT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+			ConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECS, StatementCache.DEFAULT_MAX_SIZE);
+		try{
+			long start = System.nanoTime();
+			List<Result> results = new BulkLoader(pool).loadAll(dataDir, threads, truncate);
+			long rows = 0;
+			for (Result r : results){
+				System.out.println(r);
+				rows += r.rows;
+			}//end for
+			long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+			System.out.printf("Loaded %d rows in %d ms (%.0f rows/sec)%n", rows, millis, rows * 1000.0 / millis);
+		}catch (Exception e){
+			System.err.println("Bulk load failed: " + e.getMessage());
+		}finally{
+			pool.close();
+		}//end try
+	}
+}
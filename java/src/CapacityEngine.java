@@ -0,0 +1,408 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admits bookings against the capacity recorded in request_maintenance,
+ * before they reach the database.
+ *
+ * Each request_maintenance row lets a doctor see patient_per_hour patients
+ * per hour during its time_slot; the rows of one doctor and time_slot, one
+ * per staff member, add up. So every doctor has a few windows per day,
+ * each with a capacity of patient_per_hour times the window's hours. An
+ * appointment belongs to the window of its doctor that contains the start
+ * of its time slot, on its date.
+ *
+ * resync() loads the windows and the appointments of the next
+ * -Dcapacity.horizonDays days into a counter table: one counter per
+ * (doctor, day, window) holding the number of its slots that are taken,
+ * a map from appnt_ID to its counter and the set of slots whose holder
+ * is counted. Only a booking that takes a free slot ('AV' to 'AC') uses
+ * up capacity: admit() is then a hash lookup and a compare-and-set on the
+ * counter, so such a booking for a full window is turned away without a
+ * round trip. A request for a slot that is already held ('AC' or 'WL')
+ * can only join its waitlist, whose patients wait for the holder's place
+ * rather than adding one, so it is admitted without a ticket; the
+ * waitlist, and WaitlistPromoter moving it onto free slots (which admit()
+ * gates again), keep working while the window is full. Appointments the
+ * table does not know (outside every window, beyond the horizon or added
+ * since the last resync) are admitted and left to the database.
+ *
+ * The table is rebuilt at start and every -Dcapacity.resyncSeconds, which
+ * also corrects counts after restarts, bookings by other clients and
+ * admissions that were in flight while the previous table was replaced.
+ *
+ */
+
+public class CapacityEngine{
+	public static final int DEFAULT_HORIZON_DAYS = 90;
+	public static final long DEFAULT_RESYNC_SECONDS = 300;
+
+	static final String WINDOWS_SQL =
+		"SELECT did, time_slot, sum(patient_per_hour) FROM request_maintenance "
+		+ "GROUP BY did, time_slot ORDER BY did, time_slot";
+	//slots of the doctors with windows; the holder of an 'AC' or 'WL' slot takes up capacity
+	static final String SLOTS_SQL =
+		"SELECT H.doctor_id, A.appnt_ID, A.adate, A.time_slot, A.status FROM Appointment A, has_appointment H "
+		+ "WHERE H.appt_id = A.appnt_ID AND A.adate >= ? AND A.adate <= ? "
+		+ "AND A.status IN ('AV', 'AC', 'WL') "
+		+ "AND H.doctor_id IN (SELECT did FROM request_maintenance)";
+
+	/**
+	 * The counters of one resync. Replaced as a whole, never resized.
+	 */
+	private static final class Table{
+		static final Table EMPTY = new Table(new HashMap<Integer, Integer>(), new int[0], new int[0], new int[0], new TimeSlot[0]);
+
+		//appnt_ID -> counter
+		final Map<Integer, Integer> counterOf;
+		//appnt_IDs whose holder is counted in taken
+		final Set<Integer> held = ConcurrentHashMap.newKeySet();
+		//per counter: taken slots, capacity, doctor, epoch day and window
+		final AtomicIntegerArray taken;
+		final int[] capacity;
+		final int[] doctor;
+		final int[] day;
+		final TimeSlot[] window;
+
+		Table(Map<Integer, Integer> counterOf, int[] capacity, int[] doctor, int[] day, TimeSlot[] window){
+			this.counterOf = counterOf;
+			this.taken = new AtomicIntegerArray(capacity.length);
+			this.capacity = capacity;
+			this.doctor = doctor;
+			this.day = day;
+			this.window = window;
+		}
+	}
+
+	/**
+	 * A slot taken from a counter by admit(), to be given back with
+	 * release() when the booking does not go through.
+	 */
+	public static final class Ticket{
+		//admitted without a counter
+		static final Ticket UNTRACKED = new Ticket(null, -1, -1);
+
+		private final Table _table;
+		private final int _counter;
+		private final int _apptID;
+
+		Ticket(Table table, int counter, int apptID){
+			this._table = table;
+			this._counter = counter;
+			this._apptID = apptID;
+		}
+
+		public boolean isTracked(){
+			return this._table != null;
+		}
+	}
+
+	private final DBproject _esql;
+	private final int _horizonDays;
+	private volatile Table _table = Table.EMPTY;
+	private ScheduledExecutorService _resyncer;
+
+	//counters
+	private final AtomicLong _admitted = new AtomicLong();
+	private final AtomicLong _untracked = new AtomicLong();
+	private final AtomicLong _held = new AtomicLong();
+	private final AtomicLong _rejected = new AtomicLong();
+	private final AtomicLong _released = new AtomicLong();
+	private final AtomicLong _resyncs = new AtomicLong();
+	private final AtomicLong _resyncFailures = new AtomicLong();
+	private volatile int _windowCount = 0;
+	private volatile long _resyncMillis = 0;
+
+	public CapacityEngine(DBproject esql){
+		this(esql, Integer.getInteger("capacity.horizonDays", DEFAULT_HORIZON_DAYS));
+	}
+
+	public CapacityEngine(DBproject esql, int horizonDays){
+		if (horizonDays <= 0)
+			throw new IllegalArgumentException("horizon must be positive: " + horizonDays);
+		this._esql = esql;
+		this._horizonDays = horizonDays;
+	}
+
+	/**
+	 * Admits a request for appointment apptID. A free slot is admitted
+	 * when its window has room, taking one slot of the window; a slot that
+	 * already has a holder is always admitted, since the request can only
+	 * join its waitlist.
+	 *
+	 * @return the ticket of the taken slot, Ticket.UNTRACKED when the
+	 *         appointment is not in the table or already held, or null when
+	 *         it is free and its window is full
+	 */
+	public Ticket admit(int apptID){
+		Table t = this._table;
+		Integer counter = t.counterOf.get(apptID);
+		if (counter == null){
+			this._untracked.incrementAndGet();
+			return Ticket.UNTRACKED;
+		}//end if
+		if (t.held.contains(apptID)){
+			this._held.incrementAndGet();
+			return Ticket.UNTRACKED;
+		}//end if
+		int i = counter;
+		int cap = t.capacity[i];
+		int n;
+		do{
+			n = t.taken.get(i);
+			if (n >= cap){
+				this._rejected.incrementAndGet();
+				return null;
+			}//end if
+		}while (!t.taken.compareAndSet(i, n, n + 1));
+		if (!t.held.add(apptID)){
+			//another request took the slot meanwhile, this one joins its waitlist
+			decrement(t, i);
+			this._held.incrementAndGet();
+			return Ticket.UNTRACKED;
+		}//end if
+		this._admitted.incrementAndGet();
+		return new Ticket(t, i, apptID);
+	}
+
+	/**
+	 * Gives back the slot of a booking that was admitted but not booked,
+	 * e.g. because it was waitlisted, rejected or failed.
+	 */
+	public void release(Ticket ticket){
+		if (ticket == null || !ticket.isTracked())
+			return;
+		if (ticket._table.held.remove(ticket._apptID))
+			decrement(ticket._table, ticket._counter);
+	}
+
+	/**
+	 * Records that appointment apptID was freed, e.g. by a cancellation
+	 * that left it 'AV'.
+	 */
+	public void freed(int apptID){
+		Table t = this._table;
+		Integer counter = t.counterOf.get(apptID);
+		if (counter != null && t.held.remove(apptID))
+			decrement(t, counter);
+	}
+
+	private void decrement(Table t, int i){
+		int n;
+		do{
+			n = t.taken.get(i);
+			if (n == 0)
+				return;
+		}while (!t.taken.compareAndSet(i, n, n - 1));
+		this._released.incrementAndGet();
+	}
+
+	/**
+	 * @return why appointment apptID cannot be admitted, e.g. "doctor 7 is
+	 *         fully booked from 8:00 to 10:00 on 2026-10-19 (4 of 4)"
+	 */
+	public String describe(int apptID){
+		Table t = this._table;
+		Integer counter = t.counterOf.get(apptID);
+		if (counter == null)
+			return "appointment " + apptID + " has no capacity limit";
+		int i = counter;
+		return String.format("doctor %d is fully booked from %s to %s on %s (%d of %d)", t.doctor[i],
+			TimeSlot.format(t.window[i].getStartMinute()), TimeSlot.format(t.window[i].getEndMinute()),
+			LocalDate.ofEpochDay(t.day[i]), t.taken.get(i), t.capacity[i]);
+	}
+
+	/**
+	 * Rebuilds the counter table from request_maintenance and the
+	 * appointments of the horizon. Admissions keep using the previous
+	 * table until the new one is complete.
+	 *
+	 * @throws java.sql.SQLException when one of the scans fails
+	 */
+	public void resync() throws SQLException {
+		long start = System.nanoTime();
+		Map<Integer, TimeSlot[]> windows = new HashMap<Integer, TimeSlot[]>();
+		Map<Integer, int[]> capacities = new HashMap<Integer, int[]>();
+		int windowCount = 0;
+
+		final Map<Integer, Integer> counterOf = new HashMap<Integer, Integer>();
+		final List<Integer> held = new ArrayList<Integer>();
+		//(doctor, day, window) -> counter, and the counters in order
+		final Map<Long, Integer> counters = new HashMap<Long, Integer>();
+		final List<long[]> rows = new ArrayList<long[]>();
+		PooledConnection conn = this._esql.getPool().borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(WINDOWS_SQL);
+			while (rs.next()){
+				TimeSlot w;
+				try{
+					w = TimeSlot.parse(rs.getString(2));
+				}catch (IllegalArgumentException e){
+					continue;
+				}//end try
+				int doctorID = rs.getInt(1);
+				int cap = (int) Math.max(1, rs.getLong(3) * w.getMinutes() / 60);
+				TimeSlot[] old = windows.get(doctorID);
+				TimeSlot[] grown = old == null ? new TimeSlot[1] : Arrays.copyOf(old, old.length + 1);
+				grown[grown.length - 1] = w;
+				windows.put(doctorID, grown);
+				int[] oldCaps = capacities.get(doctorID);
+				int[] grownCaps = oldCaps == null ? new int[1] : Arrays.copyOf(oldCaps, oldCaps.length + 1);
+				grownCaps[grownCaps.length - 1] = cap;
+				capacities.put(doctorID, grownCaps);
+				++windowCount;
+			}//end while
+			rs.close();
+			stmt.close();
+
+			LocalDate today = LocalDate.now();
+			DBproject.stream(conn, SLOTS_SQL, DBproject.DEFAULT_FETCH_SIZE, r -> {
+				int doctorID = r.getInt(1);
+				TimeSlot slot;
+				try{
+					slot = TimeSlot.parse(r.getString(4));
+				}catch (IllegalArgumentException | NullPointerException e){
+					return true;
+				}//end try
+				int w = windowOf(windows.get(doctorID), slot.getStartMinute());
+				if (w < 0)
+					return true;
+				int day = (int) r.getDate(3).toLocalDate().toEpochDay();
+				long key = ((long) doctorID << 32) | ((long) day << 8) | w;
+				Integer counter = counters.get(key);
+				if (counter == null){
+					counter = rows.size();
+					counters.put(key, counter);
+					rows.add(new long[]{ doctorID, day, w, capacities.get(doctorID)[w], 0 });
+				}//end if
+				//an appointment of two doctors counts for the first one
+				if (counterOf.putIfAbsent(r.getInt(2), counter) == null && !"AV".equals(r.getString(5))){
+					++rows.get(counter)[4];
+					held.add(r.getInt(2));
+				}//end if
+				return true;
+			}, new Object[]{ today, today.plusDays(this._horizonDays) });
+		}finally{
+			this._esql.getPool().release(conn);
+		}//end try
+
+		int n = rows.size();
+		int[] capacity = new int[n];
+		int[] doctor = new int[n];
+		int[] day = new int[n];
+		TimeSlot[] window = new TimeSlot[n];
+		for (int i = 0; i < n; ++i){
+			long[] row = rows.get(i);
+			doctor[i] = (int) row[0];
+			day[i] = (int) row[1];
+			window[i] = windows.get(doctor[i])[(int) row[2]];
+			capacity[i] = (int) row[3];
+		}//end for
+		Table table = new Table(counterOf, capacity, doctor, day, window);
+		for (int i = 0; i < n; ++i)
+			table.taken.set(i, (int) rows.get(i)[4]);
+		table.held.addAll(held);
+
+		this._table = table;
+		this._windowCount = windowCount;
+		this._resyncs.incrementAndGet();
+		this._resyncMillis = (System.nanoTime() - start) / 1000000;
+	}
+
+	//index of the first window containing minute, or -1
+	private static int windowOf(TimeSlot[] windows, int minute){
+		if (windows == null)
+			return -1;
+		for (int i = 0; i < windows.length; ++i)
+			if (windows[i].contains(minute))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Resyncs every period seconds until stop(). Failures are counted and
+	 * retried at the next period.
+	 */
+	public synchronized void resyncEvery(long seconds){
+		if (seconds <= 0 || this._resyncer != null)
+			return;
+		this._resyncer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "capacity-resync");
+			t.setDaemon(true);
+			return t;
+		});
+		this._resyncer.scheduleWithFixedDelay(() -> {
+			try{
+				resync();
+			}catch (SQLException e){
+				this._resyncFailures.incrementAndGet();
+			}//end try
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stop(){
+		if (this._resyncer != null)
+			this._resyncer.shutdownNow();
+		this._resyncer = null;
+	}
+
+	public long getAdmittedCount(){ return this._admitted.get(); }
+	public long getUntrackedCount(){ return this._untracked.get(); }
+	public long getHeldCount(){ return this._held.get(); }
+	public long getRejectedCount(){ return this._rejected.get(); }
+	public long getReleasedCount(){ return this._released.get(); }
+	public long getResyncCount(){ return this._resyncs.get(); }
+	public long getResyncFailureCount(){ return this._resyncFailures.get(); }
+
+	/**
+	 * @return the number of (doctor, day, window) counters with no room left
+	 */
+	public int getFullCount(){
+		Table t = this._table;
+		int full = 0;
+		for (int i = 0; i < t.capacity.length; ++i)
+			if (t.taken.get(i) >= t.capacity[i])
+				++full;
+		return full;
+	}
+
+	/**
+	 * @return a one-line summary of the table size and counters
+	 */
+	public String stats(){
+		Table t = this._table;
+		return String.format("windows=%d counters=%d slots=%d full=%d admitted=%d rejected=%d untracked=%d "
+				+ "held=%d released=%d resyncs=%d resyncFailures=%d resyncMs=%d",
+			this._windowCount, t.capacity.length, t.counterOf.size(), getFullCount(), getAdmittedCount(),
+			getRejectedCount(), getUntrackedCount(), getHeldCount(), getReleasedCount(), getResyncCount(),
+			getResyncFailureCount(), this._resyncMillis);
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * This class keeps client-side caches coherent across DBproject instances.
+ * The triggers of migrations V002 and V009 send a NOTIFY on channel
+ * dbproject_changes for every committed change to Appointment, Doctor,
+ * has_appointment, searches, Department, Hospital and request_maintenance.
+ * A background thread LISTENs on a
+ * dedicated connection and hands each change, in commit order, to the
+ * registered listeners.
+ *
+ * pgjdbc only reads notifications while it talks to the server, so the
+ * thread sends a trivial query every pollMillis. When the connection is
+ * lost, notifications sent in between are gone: after reconnecting, every
+ * listener is told to resync. Bulk loads send a single reload notice
+ * instead of one notification per row, which is handled the same way.
+ *
+ * Lag is measured from the send time in the payload (database clock) to
+ * the time the change is applied (client clock), so clock skew between
+ * the two hosts shows up in it.
+ *
+ */
+
+public class ChangeFeed{
+	public static final String CHANNEL = "dbproject_changes";
+	public static final long DEFAULT_POLL_MILLIS = 250;
+	public static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+
+	//payload tables
+	public static final char APPOINTMENT = 'A';
+	public static final char DOCTOR = 'D';
+	public static final char HAS_APPOINTMENT = 'H';
+	public static final char SEARCHES = 'S';
+	public static final char DEPARTMENT = 'E';
+	public static final char HOSPITAL = 'O';
+	public static final char REQUEST_MAINTENANCE = 'M';
+	public static final char ALL = '*';
+	//payload operations
+	public static final char INSERT = 'I';
+	public static final char UPDATE = 'U';
+	public static final char DELETE = 'D';
+	public static final char TRUNCATE = 'T';
+	public static final char RELOAD = 'R';
+
+	//sent by bulk loads, followed by |<epoch ms>
+	static final String RELOAD_PAYLOAD = "*|R";
+
+	/**
+	 * One decoded notification: <table>|<op>|<key>...|<sent at, epoch ms>.
+	 */
+	public static final class Change{
+		public final char table;
+		public final char op;
+		public final long sentAtMillis;
+		private final String[] _keys;
+
+		Change(char table, char op, String[] keys, long sentAtMillis){
+			this.table = table;
+			this.op = op;
+			this._keys = keys;
+			this.sentAtMillis = sentAtMillis;
+		}
+
+		public int getKeyCount(){ return this._keys.length; }
+		public String getKey(int i){ return this._keys[i]; }
+		public int getIntKey(int i){ return Integer.parseInt(this._keys[i]); }
+
+		/**
+		 * @return the change, or null when payload is not in the feed's format
+		 */
+		static Change parse(String payload){
+			String[] parts = payload.split("\\|", -1);
+			if (parts.length < 3 || parts[0].length() != 1 || parts[1].length() != 1)
+				return null;
+			try{
+				String[] keys = new String[parts.length - 3];
+				System.arraycopy(parts, 2, keys, 0, keys.length);
+				return new Change(parts[0].charAt(0), parts[1].charAt(0), keys, Long.parseLong(parts[parts.length - 1]));
+			}catch (NumberFormatException e){
+				return null;
+			}//end try
+		}
+
+		@Override
+		public String toString(){
+			return this.table + "|" + this.op + (this._keys.length == 0 ? "" : "|" + String.join("|", this._keys));
+		}
+	}
+
+	/**
+	 * A cache that follows the feed. Both methods run on the feed's thread.
+	 */
+	public interface Listener{
+		/**
+		 * Applies one change. Changes that the listener cannot apply
+		 * precisely should invalidate more rather than less.
+		 */
+		void apply(Change change) throws SQLException;
+
+		/**
+		 * Discards or reloads everything, because changes may have been
+		 * missed.
+		 */
+		void resync() throws SQLException;
+	}
+
+	private final ConnectionPool _pool;
+	private final long _pollMillis;
+	private final List<Listener> _listeners = new CopyOnWriteArrayList<Listener>();
+	private volatile boolean _running = false;
+	private Thread _thread;
+	private Connection _connection;
+
+	//counters
+	private final AtomicLong _received = new AtomicLong();
+	private final AtomicLong _malformed = new AtomicLong();
+	private final AtomicLong _failures = new AtomicLong();
+	private final AtomicLong _reconnects = new AtomicLong();
+	private final AtomicLong _resyncs = new AtomicLong();
+	private final AtomicLong _lagTotalMillis = new AtomicLong();
+	private volatile long _lagMaxMillis = 0;
+	private volatile long _lastLagMillis = 0;
+	private volatile long _lastReceivedAt = 0;
+
+	public ChangeFeed(ConnectionPool pool){
+		this(pool, Long.getLong("change.feed.pollMillis", DEFAULT_POLL_MILLIS));
+	}
+
+	public ChangeFeed(ConnectionPool pool, long pollMillis){
+		this._pool = pool;
+		this._pollMillis = Math.max(1, pollMillis);
+	}
+
+	public void addListener(Listener listener){
+		this._listeners.add(listener);
+	}
+
+	/**
+	 * Starts listening. The LISTEN is issued before this returns, so caches
+	 * loaded afterwards miss no change.
+	 *
+	 * @throws java.sql.SQLException when the first connection fails
+	 */
+	public synchronized void start() throws SQLException {
+		if (this._running)
+			return;
+		this._connection = listen();
+		this._running = true;
+		this._thread = new Thread(this::run, "change-feed-listener");
+		this._thread.setDaemon(true);
+		this._thread.start();
+	}
+
+	/**
+	 * Stops the listener thread and closes its connection.
+	 */
+	public void stop(){
+		Thread t;
+		synchronized (this){
+			this._running = false;
+			t = this._thread;
+			this._thread = null;
+		}
+		if (t == null)
+			return;
+		t.interrupt();
+		try{
+			t.join(this._pollMillis + 1000);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}//end try
+	}
+
+	private Connection listen() throws SQLException {
+		Connection c = this._pool.openDedicated();
+		try{
+			Statement stmt = c.createStatement();
+			stmt.execute("LISTEN " + CHANNEL);
+			stmt.close();
+			return c;
+		}catch (SQLException e){
+			closeQuietly(c);
+			throw e;
+		}//end try
+	}
+
+	private void run(){
+		long delay = this._pollMillis;
+		while (this._running){
+			try{
+				if (this._connection == null){
+					this._connection = listen();
+					this._reconnects.incrementAndGet();
+					resyncAll();
+					delay = this._pollMillis;
+				}//end if
+				poll(this._connection);
+				Thread.sleep(this._pollMillis);
+			}catch (SQLException e){
+				closeQuietly(this._connection);
+				this._connection = null;
+				try{
+					Thread.sleep(delay);
+				}catch (InterruptedException ie){
+					break;
+				}//end try
+				delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MILLIS);
+			}catch (InterruptedException e){
+				break;
+			}//end try
+		}//end while
+		closeQuietly(this._connection);
+		this._connection = null;
+	}
+
+	//a round trip makes the driver read notifications that have arrived
+	private void poll(Connection c) throws SQLException {
+		Statement stmt = c.createStatement();
+		stmt.execute("SELECT 1");
+		stmt.close();
+		PGNotification[] notifications = c.unwrap(PGConnection.class).getNotifications();
+		if (notifications == null)
+			return;
+		for (PGNotification n : notifications)
+			dispatch(n.getParameter());
+	}
+
+	void dispatch(String payload){
+		this._received.incrementAndGet();
+		this._lastReceivedAt = System.currentTimeMillis();
+		Change change = Change.parse(payload);
+		if (change == null){
+			this._malformed.incrementAndGet();
+			return;
+		}//end if
+		if (change.op == RELOAD){
+			resyncAll();
+		}else{
+			for (Listener l : this._listeners){
+				try{
+					l.apply(change);
+				}catch (Exception e){
+					//the listener may now be out of date
+					this._failures.incrementAndGet();
+					resync(l);
+				}//end try
+			}//end for
+		}//end if
+		long lag = Math.max(0, System.currentTimeMillis() - change.sentAtMillis);
+		this._lastLagMillis = lag;
+		this._lagTotalMillis.addAndGet(lag);
+		if (lag > this._lagMaxMillis)
+			this._lagMaxMillis = lag;
+	}
+
+	private void resyncAll(){
+		this._resyncs.incrementAndGet();
+		for (Listener l : this._listeners)
+			resync(l);
+	}
+
+	private void resync(Listener l){
+		try{
+			l.resync();
+		}catch (Exception e){
+			this._failures.incrementAndGet();
+		}//end try
+	}
+
+	private static void closeQuietly(Connection c){
+		if (c == null)
+			return;
+		try{
+			c.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+
+	public long getReceivedCount(){ return this._received.get(); }
+	public long getMalformedCount(){ return this._malformed.get(); }
+	public long getFailureCount(){ return this._failures.get(); }
+	public long getReconnectCount(){ return this._reconnects.get(); }
+	public long getResyncCount(){ return this._resyncs.get(); }
+	public long getLastLagMillis(){ return this._lastLagMillis; }
+	public long getMaxLagMillis(){ return this._lagMaxMillis; }
+
+	/**
+	 * @return milliseconds since the last notification, -1 before the first
+	 */
+	public long getMillisSinceLastChange(){
+		long last = this._lastReceivedAt;
+		return last == 0 ? -1 : System.currentTimeMillis() - last;
+	}
+
+	/**
+	 * @return a one-line summary of the feed counters
+	 */
+	public String stats(){
+		long received = getReceivedCount();
+		long applied = received - getMalformedCount();
+		return String.format("received=%d malformed=%d failures=%d reconnects=%d resyncs=%d "
+				+ "lastLagMs=%d avgLagMs=%.1f maxLagMs=%d",
+			received, getMalformedCount(), getFailureCount(), getReconnectCount(), getResyncCount(),
+			this._lastLagMillis, applied == 0 ? 0.0 : (double) this._lagTotalMillis.get() / applied, this._lagMaxMillis);
+	}
+}
@@ -0,0 +1,261 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Column-oriented query result. Integer columns are kept in int[] or
+ * long[] arrays and DATE columns as int[] epoch days, so a result with
+ * mostly numeric columns costs a few arrays instead of a String and a
+ * list per cell. Any other type is stored as String. getString() converts
+ * numeric and date cells on demand.
+ *
+ * Rows are appended with add() while a query is streamed; the container
+ * is read-only afterwards.
+ *
+ */
+
+public class ColumnarResult{
+	//storage kind of a column
+	public static final int INT = 0;
+	public static final int LONG = 1;
+	public static final int DATE = 2;
+	public static final int STRING = 3;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final String[] _names;
+	private final int[] _kinds;
+	//one array per column, int[] / long[] / String[] depending on its kind
+	private final Object[] _data;
+	private final BitSet[] _nulls;
+	private int _rowCount = 0;
+	private int _capacity = INITIAL_CAPACITY;
+
+	/**
+	 * Creates an empty result shaped after the columns of rsmd.
+	 *
+	 * @param rsmd metadata of the result set that will be appended
+	 * @throws java.sql.SQLException when the metadata cannot be read
+	 */
+	public ColumnarResult(ResultSetMetaData rsmd) throws SQLException {
+		int numCol = rsmd.getColumnCount();
+		this._names = new String[numCol];
+		this._kinds = new int[numCol];
+		this._data = new Object[numCol];
+		this._nulls = new BitSet[numCol];
+		for (int i = 0; i < numCol; ++i){
+			this._names[i] = rsmd.getColumnName(i + 1);
+			this._kinds[i] = kindOf(rsmd.getColumnType(i + 1));
+			this._data[i] = allocate(this._kinds[i], this._capacity);
+			this._nulls[i] = new BitSet();
+		}//end for
+	}
+
+	private static int kindOf(int sqlType){
+		switch (sqlType){
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+				return INT;
+			case Types.BIGINT:
+				return LONG;
+			case Types.DATE:
+				return DATE;
+			default:
+				return STRING;
+		}
+	}
+
+	private static Object allocate(int kind, int capacity){
+		switch (kind){
+			case INT:
+			case DATE:
+				return new int[capacity];
+			case LONG:
+				return new long[capacity];
+			default:
+				return new String[capacity];
+		}
+	}
+
+	/**
+	 * Appends the row rs is positioned on.
+	 *
+	 * @param rs a result set with the columns this container was created for
+	 * @throws java.sql.SQLException when a value cannot be read
+	 */
+	public void add(ResultSet rs) throws SQLException {
+		if (this._rowCount == this._capacity)
+			grow();
+		int row = this._rowCount;
+		for (int i = 0; i < this._kinds.length; ++i){
+			int col = i + 1;
+			switch (this._kinds[i]){
+				case INT:
+					((int[]) this._data[i])[row] = rs.getInt(col);
+					break;
+				case LONG:
+					((long[]) this._data[i])[row] = rs.getLong(col);
+					break;
+				case DATE:
+					java.sql.Date d = rs.getDate(col);
+					if (d != null)
+						((int[]) this._data[i])[row] = (int) d.toLocalDate().toEpochDay();
+					break;
+				default:
+					((String[]) this._data[i])[row] = rs.getString(col);
+					break;
+			}
+			if (rs.wasNull())
+				this._nulls[i].set(row);
+		}//end for
+		++this._rowCount;
+	}
+
+	private void grow(){
+		this._capacity *= 2;
+		for (int i = 0; i < this._data.length; ++i){
+			Object a = this._data[i];
+			if (a instanceof int[])
+				this._data[i] = Arrays.copyOf((int[]) a, this._capacity);
+			else if (a instanceof long[])
+				this._data[i] = Arrays.copyOf((long[]) a, this._capacity);
+			else
+				this._data[i] = Arrays.copyOf((String[]) a, this._capacity);
+		}//end for
+	}
+
+	public int getRowCount(){ return this._rowCount; }
+	public int getColumnCount(){ return this._names.length; }
+
+	/**
+	 * @param col zero-based column index
+	 * @return the column label reported by the driver
+	 */
+	public String getColumnName(int col){
+		return this._names[col];
+	}
+
+	/**
+	 * @param col zero-based column index
+	 * @return one of INT, LONG, DATE or STRING
+	 */
+	public int getColumnKind(int col){
+		return this._kinds[col];
+	}
+
+	/**
+	 * @param name a column label, compared case-insensitively
+	 * @return the zero-based index of the column
+	 * @throws java.lang.IllegalArgumentException when there is no such column
+	 */
+	public int findColumn(String name){
+		for (int i = 0; i < this._names.length; ++i)
+			if (this._names[i].equalsIgnoreCase(name))
+				return i;
+		throw new IllegalArgumentException("No column named " + name);
+	}
+
+	public boolean isNull(int row, int col){
+		checkRow(row);
+		return this._nulls[col].get(row);
+	}
+
+	/**
+	 * @return the value of an INT or DATE column (epoch day); 0 when null
+	 */
+	public int getInt(int row, int col){
+		checkRow(row);
+		Object a = this._data[col];
+		if (a instanceof int[])
+			return ((int[]) a)[row];
+		if (a instanceof long[])
+			return Math.toIntExact(((long[]) a)[row]);
+		throw new IllegalStateException("Column " + this._names[col] + " is not numeric");
+	}
+
+	/**
+	 * @return the value of an INT, LONG or DATE column; 0 when null
+	 */
+	public long getLong(int row, int col){
+		checkRow(row);
+		Object a = this._data[col];
+		if (a instanceof long[])
+			return ((long[]) a)[row];
+		if (a instanceof int[])
+			return ((int[]) a)[row];
+		throw new IllegalStateException("Column " + this._names[col] + " is not numeric");
+	}
+
+	/**
+	 * @return the value of a DATE column, or null
+	 */
+	public LocalDate getDate(int row, int col){
+		if (this._kinds[col] != DATE)
+			throw new IllegalStateException("Column " + this._names[col] + " is not a date");
+		return isNull(row, col) ? null : LocalDate.ofEpochDay(((int[]) this._data[col])[row]);
+	}
+
+	/**
+	 * Returns any cell as text, formatting numeric and date cells on
+	 * demand. Dates use the ISO form, as Postgres prints them.
+	 *
+	 * @return the value as a String, or null
+	 */
+	public String getString(int row, int col){
+		if (isNull(row, col))
+			return null;
+		switch (this._kinds[col]){
+			case INT:
+				return Integer.toString(((int[]) this._data[col])[row]);
+			case LONG:
+				return Long.toString(((long[]) this._data[col])[row]);
+			case DATE:
+				return LocalDate.ofEpochDay(((int[]) this._data[col])[row]).toString();
+			default:
+				return ((String[]) this._data[col])[row];
+		}
+	}
+
+	/**
+	 * @return the backing array of an INT or DATE column; only the first
+	 *         getRowCount() entries are meaningful
+	 */
+	public int[] intColumn(int col){
+		if (!(this._data[col] instanceof int[]))
+			throw new IllegalStateException("Column " + this._names[col] + " is not an int column");
+		return (int[]) this._data[col];
+	}
+
+	/**
+	 * @return the backing array of a LONG column; only the first
+	 *         getRowCount() entries are meaningful
+	 */
+	public long[] longColumn(int col){
+		if (!(this._data[col] instanceof long[]))
+			throw new IllegalStateException("Column " + this._names[col] + " is not a long column");
+		return (long[]) this._data[col];
+	}
+
+	private void checkRow(int row){
+		if (row < 0 || row >= this._rowCount)
+			throw new IndexOutOfBoundsException("row " + row + " of " + this._rowCount);
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a bounded pool of physical PostgreSQL connections.
+ * At most maxSize connections exist at any time; a caller that cannot get
+ * one within maxWaitMillis receives an SQLException. Connections are
+ * validated when they are checked out and closed once they have been idle
+ * longer than idleTimeoutMillis.
+ *
+ */
+
+public class ConnectionPool{
+	public static final int DEFAULT_MAX_SIZE = 8;
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 5000;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+	public static final int DEFAULT_VALIDATION_TIMEOUT_SECS = 2;
+	public static final int DEFAULT_PREPARE_THRESHOLD = 5;
+
+	private final String _url;
+	private final String _user;
+	private final String _passwd;
+	private final int _maxSize;
+	private final long _maxWaitMillis;
+	private final long _idleTimeoutMillis;
+	private final int _validationTimeoutSecs;
+	private final int _statementCacheSize;
+
+	//one permit per connection that may be handed out
+	private final Semaphore _permits;
+	//most recently released connections are at the head
+	private final LinkedBlockingDeque<PooledConnection> _idle = new LinkedBlockingDeque<PooledConnection>();
+	private final ScheduledExecutorService _reaper;
+	private volatile boolean _closed = false;
+
+	//counters
+	private final AtomicInteger _active = new AtomicInteger();
+	private final AtomicLong _created = new AtomicLong();
+	private final AtomicLong _borrowCount = new AtomicLong();
+	private final AtomicLong _waitCount = new AtomicLong();
+	private final AtomicLong _waitNanosTotal = new AtomicLong();
+	private final AtomicLong _waitNanosMax = new AtomicLong();
+	private final AtomicLong _timeouts = new AtomicLong();
+	private final AtomicLong _validationFailures = new AtomicLong();
+	private final AtomicLong _idleEvictions = new AtomicLong();
+	private final StatementCache.Stats _statementStats = new StatementCache.Stats();
+
+	public ConnectionPool(String url, String user, String passwd){
+		this(url, user, passwd, DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT_MILLIS,
+			DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_VALIDATION_TIMEOUT_SECS, StatementCache.DEFAULT_MAX_SIZE);
+	}
+
+	public ConnectionPool(String url, String user, String passwd, int maxSize,
+			long maxWaitMillis, long idleTimeoutMillis, int validationTimeoutSecs,
+			int statementCacheSize){
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("pool size must be positive: " + maxSize);
+		this._url = url;
+		this._user = user;
+		this._passwd = passwd;
+		this._maxSize = maxSize;
+		this._maxWaitMillis = maxWaitMillis;
+		this._idleTimeoutMillis = idleTimeoutMillis;
+		this._validationTimeoutSecs = validationTimeoutSecs;
+		this._statementCacheSize = statementCacheSize;
+		this._permits = new Semaphore(maxSize, true);
+
+		this._reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "connection-pool-reaper");
+			t.setDaemon(true);
+			return t;
+		});
+		long period = Math.max(1000, idleTimeoutMillis / 2);
+		this._reaper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Checks out a connection, waiting at most maxWaitMillis for one to
+	 * become available. Idle connections are validated before they are
+	 * returned; a new physical connection is opened when none is idle.
+	 *
+	 * @return a connection that must be given back through release()
+	 * @throws java.sql.SQLException when the pool is closed, the wait timed
+	 *         out or a new connection could not be opened
+	 */
+	public PooledConnection borrow() throws SQLException {
+		if (this._closed)
+			throw new SQLException("Connection pool is closed");
+
+		long start = System.nanoTime();
+		boolean acquired;
+		try{
+			acquired = this._permits.tryAcquire(this._maxWaitMillis, TimeUnit.MILLISECONDS);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection", e);
+		}//end try
+		long waited = System.nanoTime() - start;
+		recordWait(waited);
+		if (!acquired){
+			this._timeouts.incrementAndGet();
+			throw new SQLTransientConnectionException("Timed out after " + this._maxWaitMillis
+				+ " ms waiting for a connection (" + this._maxSize + " in use)");
+		}//end if
+
+		try{
+			PooledConnection conn;
+			while ((conn = this._idle.pollFirst()) != null){
+				if (isUsable(conn)){
+					conn.markBorrowed();
+					this._active.incrementAndGet();
+					this._borrowCount.incrementAndGet();
+					return conn;
+				}//end if
+				this._validationFailures.incrementAndGet();
+				conn.closeQuietly();
+			}//end while
+
+			conn = new PooledConnection(DriverManager.getConnection(this._url, this._user, this._passwd),
+				this._statementCacheSize, this._statementStats);
+			conn.markBorrowed();
+			this._created.incrementAndGet();
+			this._active.incrementAndGet();
+			this._borrowCount.incrementAndGet();
+			return conn;
+		}catch (SQLException e){
+			this._permits.release();
+			throw e;
+		}catch (RuntimeException e){
+			this._permits.release();
+			throw e;
+		}//end try
+	}
+
+	/**
+	 * Returns a connection to the pool. Connections left in a failed
+	 * transaction are rolled back; connections that cannot be reset are
+	 * closed instead of being reused. Releasing a connection that was
+	 * already released or invalidated does nothing.
+	 *
+	 * @param conn the connection obtained from borrow()
+	 */
+	public void release(PooledConnection conn){
+		if (conn == null || !conn.takeBack())
+			return;
+		this._active.decrementAndGet();
+		try{
+			Connection c = conn.connection();
+			if (this._closed || c.isClosed()){
+				conn.closeQuietly();
+				return;
+			}//end if
+			if (!c.getAutoCommit()){
+				c.rollback();
+				c.setAutoCommit(true);
+			}//end if
+			conn.statements().trim();
+			conn.markReleased();
+			this._idle.offerFirst(conn);
+		}catch (SQLException e){
+			conn.closeQuietly();
+		}finally{
+			this._permits.release();
+		}//end try
+	}
+
+	/**
+	 * Closes a connection that the caller knows to be broken instead of
+	 * returning it to the pool. Does nothing when the connection was
+	 * already released or invalidated.
+	 *
+	 * @param conn the connection obtained from borrow()
+	 */
+	public void invalidate(PooledConnection conn){
+		if (conn == null || !conn.takeBack())
+			return;
+		this._active.decrementAndGet();
+		conn.closeQuietly();
+		this._permits.release();
+	}
+
+	/**
+	 * Closes every idle connection and stops handing out new ones.
+	 * Connections that are still borrowed are closed when released.
+	 */
+	public void close(){
+		this._closed = true;
+		this._reaper.shutdownNow();
+		PooledConnection conn;
+		while ((conn = this._idle.pollFirst()) != null)
+			conn.closeQuietly();
+	}
+
+	/**
+	 * Opens a physical connection with the pool's settings that is not
+	 * counted against maxSize, for long-lived sessions such as LISTEN.
+	 * The caller closes it.
+	 *
+	 * @return a new connection
+	 * @throws java.sql.SQLException when the connection cannot be opened
+	 */
+	public Connection openDedicated() throws SQLException {
+		return DriverManager.getConnection(this._url, this._user, this._passwd);
+	}
+
+	private boolean isUsable(PooledConnection conn){
+		try{
+			return conn.connection().isValid(this._validationTimeoutSecs);
+		}catch (SQLException e){
+			return false;
+		}//end try
+	}
+
+	private void recordWait(long nanos){
+		this._waitCount.incrementAndGet();
+		this._waitNanosTotal.addAndGet(nanos);
+		long max;
+		do{
+			max = this._waitNanosMax.get();
+		}while (nanos > max && !this._waitNanosMax.compareAndSet(max, nanos));
+	}
+
+	//closes connections that have been idle longer than the idle timeout
+	private void evictIdle(){
+		long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(this._idleTimeoutMillis);
+		Iterator<PooledConnection> it = this._idle.descendingIterator();
+		while (it.hasNext()){
+			PooledConnection conn = it.next();
+			if (conn.lastReleased() - cutoff < 0 && this._idle.removeLastOccurrence(conn)){
+				this._idleEvictions.incrementAndGet();
+				conn.closeQuietly();
+			}//end if
+		}//end while
+	}
+
+	public int getMaxSize(){ return this._maxSize; }
+	public int getActiveCount(){ return this._active.get(); }
+	public int getIdleCount(){ return this._idle.size(); }
+	public int getWaitingCount(){ return this._permits.getQueueLength(); }
+	public long getCreatedCount(){ return this._created.get(); }
+	public long getBorrowCount(){ return this._borrowCount.get(); }
+	public long getTimeoutCount(){ return this._timeouts.get(); }
+	public long getValidationFailureCount(){ return this._validationFailures.get(); }
+	public long getIdleEvictionCount(){ return this._idleEvictions.get(); }
+	public long getTotalWaitMillis(){ return TimeUnit.NANOSECONDS.toMillis(this._waitNanosTotal.get()); }
+	public long getMaxWaitMillis(){ return TimeUnit.NANOSECONDS.toMillis(this._waitNanosMax.get()); }
+	public StatementCache.Stats getStatementStats(){ return this._statementStats; }
+
+	/**
+	 * @return a one-line summary of the pool counters
+	 */
+	public String stats(){
+		long waits = this._waitCount.get();
+		double avgWait = waits == 0 ? 0.0 : this._waitNanosTotal.get() / 1e6 / waits;
+		return String.format("active=%d idle=%d waiting=%d max=%d created=%d borrows=%d "
+				+ "avgWaitMs=%.3f maxWaitMs=%d timeouts=%d invalid=%d evicted=%d statements[%s]",
+			getActiveCount(), getIdleCount(), getWaitingCount(), this._maxSize,
+			getCreatedCount(), getBorrowCount(), avgWait, getMaxWaitMillis(), getTimeoutCount(),
+			getValidationFailureCount(), getIdleEvictionCount(), this._statementStats);
+	}
+}
@@ -14,6 +14,9 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -21,6 +24,12 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -31,25 +40,239 @@ import java.util.ArrayList;
  */
 
 public class DBproject{
-	//reference to physical database connection
-	private Connection _connection = null;
+	//pool of physical database connections shared by all callers
+	private final ConnectionPool _pool;
+	//books appointments (menu option 4) on connections of _pool
+	private final AppointmentBooker _booker;
+	//doctors, departments and hospitals by key
+	private final ReferenceCache _refCache;
+	//open appointments in memory, null unless -Davailability.index=true
+	private final AvailabilityIndex _availability;
+	//keeps the caches above current across instances, null unless -Dchange.feed=true
+	private final ChangeFeed _changeFeed;
+	//admits bookings against request_maintenance capacity, null unless -Dcapacity.engine=true
+	private final CapacityEngine _capacity;
+	//moves waitlisted patients to freed slots, null unless -Dwaitlist.promoter=true
+	private final WaitlistPromoter _waitlist;
+	//latency, rows and errors of every call below, by menu operation and query shape
+	private final QueryMetrics _metrics = new QueryMetrics ();
+	//query of report 7: the pre-aggregated counts when installed, else the GROUP BY
+	private final String _statusReportSql;
+	//report 8, live or from its materialized view
+	private final PatientsPerDoctorReport _patientsReport;
+	//reports 7 and 8 over doctor, department or hospital shards, null unless -Dreports.parallel=true
+	private final ParallelReports _parallelReports;
+	//earliest available appointments by specialty, department and hospital
+	private final EarliestAvailableSearch _earliest = new EarliestAvailableSearch (this);
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	//rows fetched per round trip by the streaming helpers
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+	//how far findOpenSlots() looks when the window has no end
+	public static final int DEFAULT_SLOT_SEARCH_DAYS = 31;
+
+	//SQL templates of the menu queries; bound through the prepared statement cache
+	static final String ADD_DOCTOR_SQL =
+		"INSERT INTO Doctor (doctor_ID, name, specialty, did) VALUES (?, ?, ?, ?)";
+	static final String ADD_PATIENT_SQL =
+		"INSERT INTO Patient (patient_ID, name, gtype, age, address, number_of_appts) VALUES (?, ?, ?, ?, ?, ?)";
+	static final String ADD_APPOINTMENT_SQL =
+		"INSERT INTO Appointment (appnt_ID, adate, time_slot, status) VALUES (?, ?, ?, ?)";
+	static final String LIST_APPOINTMENTS_OF_DOCTOR_SQL =
+		"SELECT A.appnt_ID, A.adate, A.time_slot, A.status "
+		+ "FROM Appointment A, has_appointment H "
+		+ "WHERE H.doctor_id = ? AND H.appt_id = A.appnt_ID AND (A.status = 'AV' OR A.status = 'AC') "
+		+ "AND A.adate >= ? AND A.adate <= ?";
+	static final String LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT_SQL =
+		"SELECT A.appnt_ID, A.time_slot "
+		+ "FROM Appointment A, request_maintenance M, has_appointment H "
+		+ "WHERE M.dept_name = ? AND M.did = H.doctor_id AND H.appt_id = A.appnt_ID "
+		+ "AND A.status = 'AV' AND A.adate = ?";
+	//same as above once the department name is resolved to doctors through the reference cache
+	static final String LIST_AVAILABLE_APPOINTMENTS_OF_DOCTORS_SQL =
+		"SELECT A.appnt_ID, A.time_slot "
+		+ "FROM Appointment A, has_appointment H "
+		+ "WHERE H.doctor_id = ANY (?) AND H.appt_id = A.appnt_ID "
+		+ "AND A.status = 'AV' AND A.adate = ?";
+	//open slots of doctors overlapping a time window, earliest first (migration V006);
+	//the adate bounds prune the partitions, the day before covers slots running past midnight
+	static final String OPEN_SLOTS_SQL =
+		"SELECT A.appnt_ID, H.doctor_id, A.adate, A.time_slot, lower(A.slot) AS starts, upper(A.slot) AS ends "
+		+ "FROM Appointment A, has_appointment H "
+		+ "WHERE H.doctor_id = ANY (?) AND H.appt_id = A.appnt_ID AND A.status = 'AV' "
+		+ "AND A.slot && tsrange(?::timestamp, ?::timestamp) AND A.adate >= ? AND A.adate <= ? "
+		+ "ORDER BY lower(A.slot), A.appnt_ID LIMIT ?";
+	static final String STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_SQL =
+		"SELECT D.doctor_ID, D.name, D.specialty, A.status, count(A.status) AS C "
+		+ "FROM Doctor D, Appointment A, has_appointment H "
+		+ "WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = H.appt_id "
+		+ "GROUP BY D.doctor_ID, D.name, D.specialty, A.status "
+		+ "ORDER BY C Desc";
+	//report 7 read from the counts kept by migration V003, in cnt order
+	static final String STATUS_COUNTS_PER_DOCTOR_SQL =
+		"SELECT D.doctor_ID, D.name, D.specialty, S.status, S.cnt AS C "
+		+ "FROM doctor_status_count S, Doctor D "
+		+ "WHERE S.cnt > 0 AND D.doctor_ID = S.doctor_id "
+		+ "ORDER BY S.cnt DESC";
+	//metrics label of the booking transaction (AppointmentBooker)
+	static final String BOOKING_SHAPE = "BOOK appointment (AppointmentBooker transaction)";
+	static final String CANCELLATION_SHAPE = "CANCEL appointment (AppointmentBooker transaction)";
+	static final String PATIENTS_COUNT_WITH_STATUS_SQL =
+		"SELECT D.doctor_ID, D.name, D.specialty, count(S.pid) AS C "
+		+ "FROM Doctor D, Searches S, has_appointment H, Appointment A "
+		+ "WHERE H.doctor_id = D.doctor_ID AND A.status = ? AND A.appnt_ID = S.aid AND H.appt_id = S.aid "
+		+ "GROUP BY D.doctor_ID, D.name, D.specialty";
 	
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
+		// rejects bad report options before anything is connected or started
+		if (Boolean.getBoolean("reports.parallel"))
+			ParallelReports.checkProperties();
 		System.out.print("Connecting to database...");
+		ConnectionPool pool = null;
 		try{
 			// constructs the connection URL
 			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
 			System.out.println ("Connection URL: " + url + "\n");
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// cached PreparedStatements become server-side statements after this many uses
+			url += "?prepareThreshold=" + Integer.getInteger("pool.prepareThreshold", ConnectionPool.DEFAULT_PREPARE_THRESHOLD);
+			// lets the driver send JDBC batches of INSERTs as multi-row INSERTs
+			url += "&reWriteBatchedInserts=true";
+			
+			// creates the pool, sized by -Dpool.maxSize etc. when given
+			pool = new ConnectionPool(url, user, passwd,
+				Integer.getInteger("pool.maxSize", ConnectionPool.DEFAULT_MAX_SIZE),
+				Long.getLong("pool.maxWaitMillis", ConnectionPool.DEFAULT_MAX_WAIT_MILLIS),
+				Long.getLong("pool.idleTimeoutMillis", ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS),
+				Integer.getInteger("pool.validationTimeoutSecs", ConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECS),
+				Integer.getInteger("pool.statementCacheSize", StatementCache.DEFAULT_MAX_SIZE));
+			
+			// obtain a physical connection up front so a bad URL fails here
+			pool.release(pool.borrow());
 	        System.out.println("Done");
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
 	        System.out.println("Make sure you started postgres on this machine");
 	        System.exit(-1);
 		}
+		this._pool = pool;
+		this._booker = new AppointmentBooker(pool);
+		this._statusReportSql = StatusCounts.isInstalled(pool)
+			? STATUS_COUNTS_PER_DOCTOR_SQL : STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR_SQL;
+		this._patientsReport = new PatientsPerDoctorReport(this);
+		this._patientsReport.refreshEvery(Long.getLong("report8.refreshSeconds", 0));
+		this._parallelReports = Boolean.getBoolean("reports.parallel") ? new ParallelReports(this) : null;
+		this._refCache = new ReferenceCache(pool);
+		this._metrics.dumpEvery (Long.getLong ("metrics.dumpSeconds", 0));
+		this._availability = Boolean.getBoolean("availability.index") ? new AvailabilityIndex(pool) : null;
+		if (Boolean.getBoolean("capacity.engine")){
+			this._capacity = new CapacityEngine(this);
+			this._capacity.resync();
+			this._capacity.resyncEvery(Long.getLong("capacity.resyncSeconds", CapacityEngine.DEFAULT_RESYNC_SECONDS));
+			System.out.println("Capacity engine: " + this._capacity.stats());
+		}else{
+			this._capacity = null;
+		}//end if
+		this._waitlist = Boolean.getBoolean("waitlist.promoter") ? new WaitlistPromoter(this) : null;
+		if (Boolean.getBoolean("change.feed")){
+			//listen before the index is loaded so no change falls in between
+			this._changeFeed = new ChangeFeed(pool);
+			this._changeFeed.addListener(this._refCache);
+			if (this._availability != null)
+				this._changeFeed.addListener(this._availability);
+			if (this._waitlist != null)
+				this._changeFeed.addListener(this._waitlist);
+			this._changeFeed.start();
+		}else{
+			this._changeFeed = null;
+		}//end if
+		if (this._availability != null){
+			this._availability.rebuild();
+			System.out.println("Availability index: " + this._availability.stats());
+		}//end if
+		if (this._waitlist != null)
+			this._waitlist.start();
+	}
+	
+	/**
+	 * @return the connection pool backing this instance, e.g. to read its counters
+	 */
+	public ConnectionPool getPool(){
+		return this._pool;
+	}
+	
+	/**
+	 * @return the transactional booking service behind MakeAppointment
+	 */
+	public AppointmentBooker getBooker(){
+		return this._booker;
+	}
+	
+	/**
+	 * @return the read-through cache of doctors, departments and hospitals
+	 */
+	public ReferenceCache getReferenceCache(){
+		return this._refCache;
+	}
+	
+	/**
+	 * @return the in-memory index of open appointments, or null when it is
+	 *         not enabled
+	 */
+	public AvailabilityIndex getAvailability(){
+		return this._availability;
+	}
+	
+	/**
+	 * @return the change feed that keeps the caches current, or null when
+	 *         it is not enabled
+	 */
+	public ChangeFeed getChangeFeed(){
+		return this._changeFeed;
+	}
+	
+	/**
+	 * @return the admission control of bookings by doctor capacity, or null
+	 *         when it is not enabled
+	 */
+	public CapacityEngine getCapacity(){
+		return this._capacity;
+	}
+	
+	/**
+	 * @return the background promoter of waitlisted patients, or null when
+	 *         it is not enabled
+	 */
+	public WaitlistPromoter getWaitlistPromoter(){
+		return this._waitlist;
+	}
+	
+	/**
+	 * @return reports 7 and 8 computed over shards in parallel, or null
+	 *         when -Dreports.parallel is not true
+	 */
+	public ParallelReports getParallelReports(){
+		return this._parallelReports;
+	}
+	
+	/**
+	 * @return the query of report 7 (menu option 7) for this database
+	 */
+	public String getStatusReportSql(){
+		return this._statusReportSql;
+	}
+	
+	/**
+	 * @return report 8 (menu option 8), read live or from its materialized view
+	 */
+	public PatientsPerDoctorReport getPatientsPerDoctorReport(){
+		return this._patientsReport;
+	}
+	
+	/**
+	 * @return the instrumentation of the database calls
+	 */
+	public QueryMetrics getMetrics(){
+		return this._metrics;
 	}
 	
 	/**
@@ -60,14 +283,28 @@ public class DBproject{
 	 * @throws java.sql.SQLException when update failed
 	 * */
 	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+		QueryMetrics.Call call = this._metrics.start (sql, null);
+		try{
+			PooledConnection conn = this._pool.borrow ();
+			call.borrowed ();
+			try{
+				// creates a statement object
+				Statement stmt = conn.connection ().createStatement ();
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+				// issues the update instruction
+				call.addRows (stmt.executeUpdate (sql));
 
-		// close the instruction
-	    stmt.close ();
+				// close the instruction
+			    stmt.close ();
+			}finally{
+				this._pool.release (conn);
+			}
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
 	}//end executeUpdate
 
 	/**
@@ -80,37 +317,7 @@ public class DBproject{
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
 	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
-			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
+		return executeQueryAndPrintResult (query, (Object[]) null);
 	}
 	
 	/**
@@ -123,31 +330,7 @@ public class DBproject{
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
 	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
-		
-		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+		return executeQueryAndReturnResult (query, (Object[]) null);
 	}//end executeQueryAndReturnResult
 	
 	/**
@@ -159,51 +342,700 @@ public class DBproject{
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
 	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+		QueryMetrics.Call call = this._metrics.start (query, null);
+		try{
+			PooledConnection conn = this._pool.borrow ();
+			call.borrowed ();
+			try{
+				//creates a statement object
+				Statement stmt = conn.connection ().createStatement ();
+
+				//issues the query instruction
+				ResultSet rs = stmt.executeQuery (query);
+
+				int rowCount = 0;
+
+				//iterates through the result set and count nuber of results.
+				if(rs.next()){
+					rowCount++;
+				}//end while
+				stmt.close ();
+				call.addRows (rowCount);
+				return rowCount;
+			}finally{
+				this._pool.release (conn);
+			}
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
+	}
+	
+	/**
+	 * Method to execute a parameterized update SQL statement.  The SQL
+	 * template uses '?' placeholders which are bound, in order, to params.
+	 * The PreparedStatement is cached per connection, so repeated calls
+	 * with the same template skip parsing and planning.
+	 * 
+	 * @param sql the SQL template
+	 * @param params the values bound to the placeholders
+	 * @return the number of rows affected
+	 * @throws java.sql.SQLException when update failed
+	 */
+	public int executeUpdate (String sql, Object... params) throws SQLException {
+		QueryMetrics.Call call = this._metrics.start (sql, params);
+		try{
+			PooledConnection conn = this._pool.borrow ();
+			call.borrowed ();
+			try{
+				PreparedStatement stmt = prepare (conn, sql, params);
+				int rowCount = stmt.executeUpdate ();
+				call.addRows (rowCount);
+				return rowCount;
+			}finally{
+				this._pool.release (conn);
+			}
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
+	}//end executeUpdate
 
-		int rowCount = 0;
+	/**
+	 * Parameterized form of executeQueryAndPrintResult(String).  Rows are
+	 * streamed as they arrive to the sink chosen by -Doutput.format and
+	 * -Doutput.file (tab separated on standard out by default), see
+	 * ResultSink.
+	 * 
+	 * @param query the SQL template
+	 * @param params the values bound to the placeholders
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		ResultSink sink = openOutput ();
+		try{
+			return (int) exportQuery (sink, query, params);
+		}finally{
+			closeOutput (sink);
+		}
+	}
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
+	/**
+	 * Streams the rows of a query into sink.  The sink is flushed but left
+	 * open, so several queries can be written to one file.
+	 * 
+	 * @param sink where the rows are written
+	 * @param query the SQL template, or plain SQL when params is null
+	 * @param params the values bound to the placeholders, or null
+	 * @return the number of rows returned
+	 * @throws java.sql.SQLException when failed to execute the query or to
+	 *         write its rows
+	 */
+	public long exportQuery (ResultSink sink, String query, Object... params) throws SQLException {
+		long rowCount = streamQuery (query, DEFAULT_FETCH_SIZE, sink, params);
+		try{
+			sink.flush ();
+		}catch (IOException e){
+			throw new SQLException ("Writing the result failed: " + e.getMessage (), e);
+		}
 		return rowCount;
 	}
-	
+
+	/**
+	 * Prints rows that were already fetched in the format of
+	 * executeQueryAndPrintResult().
+	 * 
+	 * @param result the rows to print
+	 * @return the number of rows printed
+	 */
+	public static int printColumns (ColumnarResult result) {
+		ResultSink sink = openOutput ();
+		try{
+			return sink.write (result);
+		}catch (IOException e){
+			throw new UncheckedIOException (e);
+		}finally{
+			closeOutput (sink);
+		}
+	}
+
+	/**
+	 * @return the sink configured by the output.* properties
+	 * @throws java.lang.IllegalArgumentException when -Doutput.format is
+	 *         unknown or -Doutput.file cannot be opened
+	 */
+	private static ResultSink openOutput () {
+		try{
+			return ResultSink.fromProperties ();
+		}catch (IOException e){
+			throw new IllegalArgumentException ("Cannot open " + System.getProperty ("output.file") + ": " + e.getMessage (), e);
+		}
+	}
+
+	/**
+	 * Prints the rows of a parallel report in the format of
+	 * executeQueryAndPrintResult().
+	 * 
+	 * @param result the merged rows to print
+	 * @return the number of rows printed
+	 */
+	public static int printReport (ParallelReports.Result result) {
+		ResultSink sink = openOutput ();
+		try{
+			return result.write (sink);
+		}catch (IOException e){
+			throw new UncheckedIOException (e);
+		}finally{
+			closeOutput (sink);
+		}
+	}
+
+	/**
+	 * Prints appointments found in the availability index in the format of
+	 * executeQueryAndPrintResult(), as the query they stand in for would.
+	 * 
+	 * @param slots the appointments to print
+	 * @param columns the columns to print, out of appnt_id, adate,
+	 *        time_slot and status
+	 * @return the number of rows printed
+	 */
+	public static int printSlots (AvailabilityIndex.Slots slots, String... columns) {
+		//a query without rows prints nothing, not even its header
+		if (slots.size () == 0)
+			return 0;
+		boolean[] numeric = new boolean[columns.length];
+		for (int col = 0; col < columns.length; ++col)
+			numeric[col] = "appnt_id".equals (columns[col]);
+		ResultSink sink = openOutput ();
+		try{
+			sink.columns (columns, numeric);
+			String[] cells = new String[columns.length];
+			for (int i = 0; i < slots.size (); ++i){
+				for (int col = 0; col < columns.length; ++col){
+					switch (columns[col]){
+						case "appnt_id": cells[col] = String.valueOf (slots.getID (i)); break;
+						case "adate": cells[col] = slots.getDate (i).toString (); break;
+						case "time_slot": cells[col] = slots.getTimeSlot (i); break;
+						case "status": cells[col] = slots.getStatus (i); break;
+						default: throw new IllegalArgumentException ("no column " + columns[col] + " in the availability index");
+					}
+				}
+				sink.write (cells);
+			}
+			return slots.size ();
+		}catch (IOException e){
+			throw new UncheckedIOException (e);
+		}finally{
+			closeOutput (sink);
+		}
+	}
+
+	private static void closeOutput (ResultSink sink) {
+		try{
+			sink.close ();
+		}catch (IOException e){
+			throw new UncheckedIOException (e);
+		}
+	}
+
 	/**
-	 * Method to fetch the last value from sequence. This
-	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * Parameterized form of executeQueryAndReturnResult(String).  The rows
+	 * are fetched DEFAULT_FETCH_SIZE at a time while the list is built.
 	 * 
-	 * @param sequence name of the DB sequence
-	 * @return current value of a sequence
+	 * @param query the SQL template
+	 * @param params the values bound to the placeholders
+	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	
-	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+		//iterates through the result set and saves the data returned by the query.
+		final List<List<String>> result = new ArrayList<List<String>>();
+		streamQuery (query, DEFAULT_FETCH_SIZE, rs -> {
+			int numCol = rs.getMetaData ().getColumnCount ();
+			List<String> record = new ArrayList<String>(numCol);
+			for (int i=1; i<=numCol; ++i)
+				record.add(rs.getString (i));
+			result.add(record);
+			return true;
+		}, params);
+		return result;
+	}//end executeQueryAndReturnResult
+
+	/**
+	 * Method to execute a query and return its rows in column-oriented
+	 * form.  Integer and date columns are stored in primitive arrays, so
+	 * large numeric reports avoid a String and a list per cell.
+	 * 
+	 * @param query the SQL template, or plain SQL when params is null
+	 * @param params the values bound to the placeholders, or null
+	 * @return the query result, one array per column
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult executeQueryAndReturnColumns (String query, Object... params) throws SQLException {
+		final ColumnarResult[] result = new ColumnarResult[1];
+		QueryMetrics.Call call = this._metrics.start (query, params);
+		try{
+			PooledConnection conn = this._pool.borrow ();
+			call.borrowed ();
+			try{
+				stream (conn, query, DEFAULT_FETCH_SIZE, rs -> {
+					if (result[0] == null)
+						result[0] = new ColumnarResult (rs.getMetaData ());
+					result[0].add (rs);
+					return true;
+				}, params, call);
+				if (result[0] == null){
+					//no rows: the column layout still comes from the statement
+					PreparedStatement ps = prepare (conn, query, params == null ? new Object[0] : params);
+					result[0] = new ColumnarResult (ps.getMetaData ());
+				}//end if
+				return result[0];
+			}finally{
+				this._pool.release (conn);
+			}
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Parameterized form of executeQuery(String).
+	 * 
+	 * @param query the SQL template
+	 * @param params the values bound to the placeholders
+	 * @return the number of rows returned (0 or 1)
+	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public void cleanup(){
+	public int executeQuery (String query, Object... params) throws SQLException {
+		QueryMetrics.Call call = this._metrics.start (query, params);
+		try{
+			PooledConnection conn = this._pool.borrow ();
+			call.borrowed ();
+			try{
+				ResultSet rs = prepare (conn, query, params).executeQuery ();
+				int rowCount = rs.next () ? 1 : 0;
+				rs.close ();
+				call.addRows (rowCount);
+				return rowCount;
+			}finally{
+				this._pool.release (conn);
+			}
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
+	}
+
+	/**
+	 * Method to execute a query and hand each row to a callback as soon as
+	 * it arrives.  Autocommit is turned off for the duration of the query so
+	 * the driver reads through a server-side cursor, fetchSize rows at a
+	 * time; memory use therefore stays constant however many rows match.
+	 * 
+	 * @param query the SQL template, or plain SQL when params is null
+	 * @param fetchSize the number of rows fetched per round trip
+	 * @param handler called once per row; returning false stops the scan
+	 * @param params the values bound to the placeholders, or null
+	 * @return the number of rows handed to handler
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public long streamQuery (String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+		QueryMetrics.Call call = this._metrics.start (query, params);
+		try{
+			PooledConnection conn = this._pool.borrow ();
+			call.borrowed ();
+			try{
+				return stream (conn, query, fetchSize, handler, params, call);
+			}finally{
+				this._pool.release (conn);
+			}
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
+	}
+
+	/**
+	 * Opens a cursor over the rows of a query for callers that prefer to
+	 * pull rows.  The cursor keeps its pooled connection until closed.
+	 * 
+	 * @param query the SQL template, or plain SQL when params is null
+	 * @param fetchSize the number of rows fetched per round trip
+	 * @param params the values bound to the placeholders, or null
+	 * @return an open cursor
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public QueryCursor openCursor (String query, int fetchSize, Object... params) throws SQLException {
+		return new QueryCursor (this._pool, query, fetchSize, params);
+	}
+
+	/**
+	 * Runs query on an already borrowed connection, see streamQuery().
+	 */
+	static long stream (PooledConnection conn, String query, int fetchSize, RowHandler handler, Object[] params) throws SQLException {
+		return stream (conn, query, fetchSize, handler, params, null);
+	}
+
+	/**
+	 * Same as above, adding the rows and the bytes of their column values
+	 * to call when it is not null.
+	 */
+	static long stream (PooledConnection conn, String query, int fetchSize, RowHandler handler, Object[] params,
+			QueryMetrics.Call call) throws SQLException {
+		Connection c = conn.connection ();
+		boolean autoCommit = c.getAutoCommit ();
+		Statement stmt = null;
+		ResultSet rs = null;
 		try{
-			if (this._connection != null){
-				this._connection.close ();
+			//the driver only uses a server-side cursor inside a transaction
+			if (autoCommit)
+				c.setAutoCommit (false);
+			if (params == null){
+				stmt = c.createStatement ();
+				stmt.setFetchSize (fetchSize);
+				rs = stmt.executeQuery (query);
+			}else{
+				PreparedStatement ps = prepare (conn, query, params);
+				ps.setFetchSize (fetchSize);
+				rs = ps.executeQuery ();
+			}//end if
+			long rowCount = 0;
+			long bytes = 0;
+			int numCol = call == null ? 0 : rs.getMetaData ().getColumnCount ();
+			while (rs.next ()){
+				++rowCount;
+				//getBytes hands out the value as received, without converting it
+				for (int i = 1; i <= numCol; ++i){
+					byte[] value = rs.getBytes (i);
+					bytes += value == null ? 0 : value.length;
+				}//end for
+				if (!handler.row (rs))
+					break;
+			}//end while
+			if (call != null){
+				call.addRows (rowCount);
+				call.addBytes (bytes);
 			}//end if
+			return rowCount;
+		}finally{
+			if (rs != null)
+				rs.close ();
+			if (stmt != null)
+				stmt.close ();
+			//ends the read-only transaction
+			if (autoCommit)
+				c.setAutoCommit (true);
+		}
+	}
+
+	/**
+	 * @return hit/miss counters of the prepared statement caches
+	 */
+	public StatementCache.Stats getStatementStats(){
+		return this._pool.getStatementStats ();
+	}
+
+	/**
+	 * Looks up the cached PreparedStatement for sql on conn and binds params.
+	 */
+	static PreparedStatement prepare (PooledConnection conn, String sql, Object[] params) throws SQLException {
+		PreparedStatement stmt = conn.statements ().get (sql);
+		try{
+			bind (stmt, params);
 		}catch (SQLException e){
-	         // ignored.
-		}//end try
+			conn.statements ().remove (sql);
+			throw e;
+		}
+		return stmt;
+	}
+
+	/**
+	 * Binds typed values to the placeholders of stmt. Supported types are
+	 * Integer, Long, Short, Double, Boolean, String, java.sql.Date,
+	 * java.time.LocalDate, java.sql.Timestamp, int[] (as integer[]) and null.
+	 */
+	static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+		if (params == null)
+			return;
+		for (int i = 0; i < params.length; ++i){
+			Object v = params[i];
+			int idx = i + 1;
+			if (v == null)
+				stmt.setNull (idx, Types.NULL);
+			else if (v instanceof Integer)
+				stmt.setInt (idx, (Integer) v);
+			else if (v instanceof Long)
+				stmt.setLong (idx, (Long) v);
+			else if (v instanceof Short)
+				stmt.setShort (idx, (Short) v);
+			else if (v instanceof Double)
+				stmt.setDouble (idx, (Double) v);
+			else if (v instanceof Boolean)
+				stmt.setBoolean (idx, (Boolean) v);
+			else if (v instanceof String)
+				stmt.setString (idx, (String) v);
+			else if (v instanceof java.sql.Date)
+				stmt.setDate (idx, (java.sql.Date) v);
+			else if (v instanceof LocalDate)
+				stmt.setDate (idx, java.sql.Date.valueOf ((LocalDate) v));
+			else if (v instanceof Timestamp)
+				stmt.setTimestamp (idx, (Timestamp) v);
+			else if (v instanceof int[])
+				stmt.setArray (idx, stmt.getConnection ().createArrayOf ("integer", boxed ((int[]) v)));
+			else
+				stmt.setObject (idx, v);
+		}//end for
+	}
+
+	private static Integer[] boxed (int[] values){
+		Integer[] result = new Integer[values.length];
+		for (int i = 0; i < values.length; ++i)
+			result[i] = values[i];
+		return result;
+	}
+
+	/**
+	 * Method to add a doctor and drop it from the reference cache.
+	 * 
+	 * @throws java.sql.SQLException when failed to execute the insert
+	 */
+	public void addDoctor (int docID, String name, String specialty, int deptID) throws SQLException {
+		executeUpdate (ADD_DOCTOR_SQL, docID, name, specialty, deptID);
+		this._refCache.invalidateDoctor (docID);
+	}
+
+	/**
+	 * Method to add a patient.
+	 * 
+	 * @throws IllegalArgumentException when gender is not 'F' or 'M'
+	 * @throws java.sql.SQLException when failed to execute the insert
+	 */
+	public void addPatient (int pID, String name, String gender, int age, String address, int numApt) throws SQLException {
+		if (!BulkLoader.GENDER_DOMAIN.contains (gender))
+			throw new IllegalArgumentException ("gender must be 'F' or 'M': " + gender);
+		executeUpdate (ADD_PATIENT_SQL, pID, name, gender, age, address, numApt);
+	}
+
+	/**
+	 * Method to add an appointment with its time slot in text form.
+	 * 
+	 * @throws IllegalArgumentException when timeSlot is not a slot like
+	 *         8:00-10:00 or status is not 'PA', 'AC', 'AV' or 'WL'
+	 * @throws java.sql.SQLException when failed to execute the insert
+	 */
+	public void addAppointment (int apptID, LocalDate date, String timeSlot, String status) throws SQLException {
+		addAppointment (apptID, date, TimeSlot.parse (timeSlot), status);
+	}
+
+	/**
+	 * Method to add an appointment. The availability index picks it up once
+	 * it is linked to a doctor.
+	 * 
+	 * @throws IllegalArgumentException when status is not 'PA', 'AC', 'AV' or 'WL'
+	 * @throws java.sql.SQLException when failed to execute the insert
+	 */
+	public void addAppointment (int apptID, LocalDate date, TimeSlot timeSlot, String status) throws SQLException {
+		if (!BulkLoader.STATUS_DOMAIN.contains (status))
+			throw new IllegalArgumentException ("status must be 'PA', 'AC', 'AV' or 'WL': " + status);
+		executeUpdate (ADD_APPOINTMENT_SQL, apptID, date, timeSlot.toString (), status);
+		if (this._availability != null)
+			this._availability.refresh (apptID);
+	}
+
+	/**
+	 * Method to book an appointment for a patient, see AppointmentBooker,
+	 * and record the new status in the availability index.
+	 * 
+	 * @return the outcome of the request
+	 * @throws java.sql.SQLException when the booking transaction fails
+	 */
+	public AppointmentBooker.Booking makeAppointment (int pID, int docID, int apptID) throws SQLException {
+		//a full window is turned away before the database is asked
+		CapacityEngine.Ticket ticket = null;
+		if (this._capacity != null){
+			ticket = this._capacity.admit (apptID);
+			if (ticket == null)
+				return new AppointmentBooker.Booking (AppointmentBooker.Outcome.REJECTED, null, null, 0,
+					this._capacity.describe (apptID));
+		}//end if
+		AppointmentBooker.Booking booking = null;
+		//the booking borrows its own connection, so its wait is part of the latency only
+		QueryMetrics.Call call = this._metrics.start (BOOKING_SHAPE, new Object[]{ pID, docID, apptID });
+		try{
+			booking = this._booker.book (pID, docID, apptID);
+			call.addRows (booking.outcome == AppointmentBooker.Outcome.REJECTED ? 0 : 1);
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+			//only a booked slot takes up capacity
+			if (ticket != null && (booking == null || booking.outcome != AppointmentBooker.Outcome.BOOKED))
+				this._capacity.release (ticket);
+		}
+		if (this._availability != null && booking.outcome != AppointmentBooker.Outcome.REJECTED)
+			this._availability.statusChanged (apptID, booking.status);
+		return booking;
+	}
+
+	/**
+	 * Method to cancel a patient's booking or waitlist place, see
+	 * AppointmentBooker.cancel(). A slot that becomes available is handed
+	 * to the doctor's waitlist by the promoter when it runs.
+	 * 
+	 * @return the outcome of the request
+	 * @throws java.sql.SQLException when the cancellation transaction fails
+	 */
+	public AppointmentBooker.Booking cancelAppointment (int pID, int apptID) throws SQLException {
+		AppointmentBooker.Booking booking;
+		QueryMetrics.Call call = this._metrics.start (CANCELLATION_SHAPE, new Object[]{ pID, apptID });
+		try{
+			booking = this._booker.cancel (pID, apptID);
+			call.addRows (booking.outcome == AppointmentBooker.Outcome.REJECTED ? 0 : 1);
+		}catch (SQLException e){
+			call.failed (e);
+			throw e;
+		}finally{
+			call.end ();
+		}
+		if (booking.outcome == AppointmentBooker.Outcome.REJECTED)
+			return booking;
+		if (this._availability != null)
+			this._availability.statusChanged (apptID, booking.status);
+		if ("AV".equals (booking.status)){
+			if (this._capacity != null)
+				this._capacity.freed (apptID);
+			if (this._waitlist != null)
+				this._waitlist.slotFreed (apptID);
+		}//end if
+		return booking;
+	}
+
+	/**
+	 * Method to list the available appointments of a department on a date.
+	 * The department name is resolved to its doctors through the reference
+	 * cache, so only the appointment lookup reaches the database.
+	 * 
+	 * @param dName the department name as stored in request_maintenance
+	 * @param date the appointment date
+	 * @return appnt_ID and time_slot of each available appointment
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult listAvailableAppointmentsOfDepartment (String dName, LocalDate date) throws SQLException {
+		int[] doctors = this._refCache.doctorsOfDepartment (dName);
+		return executeQueryAndReturnColumns (LIST_AVAILABLE_APPOINTMENTS_OF_DOCTORS_SQL, doctors, date);
+	}
+
+	/**
+	 * Method to find the available appointments of doctors whose time slot
+	 * overlaps a window, e.g. the next open slots after 14:00. Needs the
+	 * slot ranges of migration V006.
+	 * 
+	 * @param doctorIDs the doctors to search
+	 * @param from the start of the window
+	 * @param to the end of the window, or null for DEFAULT_SLOT_SEARCH_DAYS
+	 *        after from
+	 * @param limit the most slots to return
+	 * @return appnt_ID, doctor_id, adate, time_slot, starts and ends of each
+	 *         slot, earliest first
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ColumnarResult findOpenSlots (int[] doctorIDs, LocalDateTime from, LocalDateTime to, int limit) throws SQLException {
+		if (to == null)
+			to = from.plusDays (DEFAULT_SLOT_SEARCH_DAYS);
+		if (!to.isAfter (from))
+			throw new IllegalArgumentException ("the window must end after it starts: " + from + " to " + to);
+		return executeQueryAndReturnColumns (OPEN_SLOTS_SQL, doctorIDs, Timestamp.valueOf (from), Timestamp.valueOf (to),
+			from.toLocalDate ().minusDays (1), to.toLocalDate (), limit);
+	}
+
+	/**
+	 * Same as findOpenSlots() for the doctors of a department, resolved
+	 * through the reference cache.
+	 */
+	public ColumnarResult findOpenSlotsOfDepartment (String dName, LocalDateTime from, LocalDateTime to, int limit) throws SQLException {
+		return findOpenSlots (this._refCache.doctorsOfDepartment (dName), from, to, limit);
+	}
+
+	/**
+	 * Method to find the k earliest available appointments of the doctors
+	 * of a specialty and/or department, see EarliestAvailableSearch.
+	 * 
+	 * @param specialty Doctor.specialty, or null for any
+	 * @param department Department.name, or null for any
+	 * @param hospitalID Department.hid, or null for any
+	 * @param from the earliest start
+	 * @param to the end of the window, or null for the default window
+	 * @param k the number of appointments to find
+	 * @return up to k appointments, earliest first
+	 * @throws java.sql.SQLException when failed to execute a query
+	 */
+	public List<EarliestAvailableSearch.Hit> findEarliestAvailable (String specialty, String department, Integer hospitalID,
+			LocalDateTime from, LocalDateTime to, int k) throws SQLException {
+		return this._earliest.search (specialty, department, hospitalID, from, to, k);
+	}
+
+	/**
+	 * Parses a date typed at a prompt. Accepts MM/DD/YYYY, MM/DD/YY and
+	 * the ISO form YYYY-MM-DD.
+	 * 
+	 * @param text the user input
+	 * @return the parsed date
+	 * @throws java.lang.IllegalArgumentException when the text is not a date
+	 */
+	public static LocalDate parseDate (String text){
+		String t = text == null ? "" : text.trim ();
+		for (DateTimeFormatter f : DATE_FORMATS){
+			try{
+				return LocalDate.parse (t, f);
+			}catch (DateTimeParseException e){
+				continue;
+			}
+		}//end for
+		throw new IllegalArgumentException ("'" + text + "' is not a date, use MM/DD/YYYY");
+	}
+
+	private static final DateTimeFormatter[] DATE_FORMATS = {
+		DateTimeFormatter.ofPattern ("M/d/yyyy"),
+		DateTimeFormatter.ofPattern ("M/d/yy"),
+		DateTimeFormatter.ISO_LOCAL_DATE
+	};
+
+	/**
+	 * Method to close the pooled physical connections.
+	 */
+	public void cleanup(){
+		this._metrics.close ();
+		if (this._patientsReport != null){
+			this._patientsReport.stop ();
+		}//end if
+		if (this._waitlist != null){
+			this._waitlist.stop ();
+		}//end if
+		if (this._parallelReports != null){
+			this._parallelReports.stop ();
+		}//end if
+		if (this._capacity != null){
+			this._capacity.stop ();
+		}//end if
+		if (this._changeFeed != null){
+			this._changeFeed.stop ();
+		}//end if
+		if (this._pool != null){
+			this._pool.close ();
+		}//end if
 	}//end cleanup
 
 	/**
@@ -212,10 +1044,14 @@ public class DBproject{
 	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	 */
 	public static void main (String[] args) {
+		if (args.length > 3) {
+			// headless: operations from a script, results as JSON lines or CSV
+			System.exit (ScriptRunner.run (args));
+		}//end if
 		if (args.length != 3) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port> <user> [--script <file>|- [--format jsonl|csv]]");
 			return;
 		}//end if
 		
@@ -252,25 +1088,49 @@ public class DBproject{
 				System.out.println("6. List all available appointments of a given department");
 				System.out.println("7. List total number of different types of appointments per doctor in descending order");
 				System.out.println("8. Find total number of patients per doctor with a given status");
+				System.out.println("10. Batch add Doctors, Patients or Appointments from a file");
+				System.out.println("11. Find the earliest available appointments by specialty, department or hospital");
 				System.out.println("9. < EXIT");
 				
-				switch (readChoice()){
-					case 1: AddDoctor(esql); break;
-					case 2: AddPatient(esql); break;
-					case 3: AddAppointment(esql); break;
-					case 4: MakeAppointment(esql); break;
-					case 5: ListAppointmentsOfDoctor(esql); break;
-					case 6: ListAvailableAppointmentsOfDepartment(esql); break;
-					case 7: ListStatusNumberOfAppointmentsPerDoctor(esql); break;
-					case 8: FindPatientsCountWithStatus(esql); break;
-					case 9: keepon = false; break;
-				}
+				int choice = readChoice();
+				String operation = choice >= 1 && choice < MENU_OPERATIONS.length ? MENU_OPERATIONS[choice] : "Menu";
+				QueryMetrics.Scope scope = QueryMetrics.operation(operation);
+				try{
+					switch (choice){
+						case 1: AddDoctor(esql); break;
+						case 2: AddPatient(esql); break;
+						case 3: AddAppointment(esql); break;
+						case 4: MakeAppointment(esql); break;
+						case 5: ListAppointmentsOfDoctor(esql); break;
+						case 6: ListAvailableAppointmentsOfDepartment(esql); break;
+						case 7: ListStatusNumberOfAppointmentsPerDoctor(esql); break;
+						case 8: FindPatientsCountWithStatus(esql); break;
+						case 9: keepon = false; break;
+						case 10: BatchAdd(esql); break;
+						case 11: FindEarliestAvailable(esql); break;
+					}
+				}finally{
+					scope.close();
+				}//end try
 			}
 		}catch(Exception e){
 			System.err.println (e.getMessage ());
 		}finally{
 			try{
 				if(esql != null) {
+					if (Boolean.getBoolean("pool.stats")){
+						System.out.println("Connection pool: " + esql.getPool().stats());
+						System.out.println("Reference cache:\n" + esql.getReferenceCache().stats());
+						if (esql.getAvailability() != null)
+							System.out.println("Availability index: " + esql.getAvailability().stats());
+						if (esql.getChangeFeed() != null)
+							System.out.println("Change feed: " + esql.getChangeFeed().stats());
+						if (esql.getCapacity() != null)
+							System.out.println("Capacity engine: " + esql.getCapacity().stats());
+						if (esql.getWaitlistPromoter() != null)
+							System.out.println("Waitlist promoter: " + esql.getWaitlistPromoter().stats());
+						System.out.print("Database calls:\n" + esql.getMetrics().summary());
+					}
 					System.out.print("Disconnecting from database...");
 					esql.cleanup ();
 					System.out.println("Done\n\nBye !");
@@ -281,6 +1141,11 @@ public class DBproject{
 		}
 	}
 
+	//metrics labels of the menu options, by choice number
+	private static final String[] MENU_OPERATIONS = { null, "AddDoctor", "AddPatient", "AddAppointment",
+		"MakeAppointment", "ListAppointmentsOfDoctor", "ListAvailableAppointmentsOfDepartment",
+		"ListStatusNumberOfAppointmentsPerDoctor", "FindPatientsCountWithStatus", "Exit", "BatchAdd", "FindEarliestAvailable" };
+
 	public static int readChoice() {
 		int input;
 		// returns only if a correct value is given.
@@ -315,8 +1180,6 @@ public class DBproject{
 		String specialty;
 		int deptID;
 
-		String query;	
-
 		//gets values for each of these variables
 		//retrieves docID
 		while(true)
@@ -359,7 +1222,7 @@ public class DBproject{
 		//retrives specialty
 		while(true)
 		{
-			System.out.print("Please input Doctor's Specialty: ")
+			System.out.print("Please input Doctor's Specialty: ");
 			try
 			{
 				specialty = in.readLine();
@@ -379,10 +1242,10 @@ public class DBproject{
 		//retrieves deptID
 		while(true)
 		{
-			System.out.print("Please input Department ID: ")
+			System.out.print("Please input Department ID: ");
 			try
 			{
-				deptID = Integer.parseInt(readLine());
+				deptID = Integer.parseInt(in.readLine());
 				break;
 			}
 			catch (Exception e)
@@ -395,8 +1258,7 @@ public class DBproject{
 		//now to combine all the queries and add it to the database
 		try
 		{
-			query = "INSERT INTO Doctor_works_dept (doctor_ID, name, specialty, did) VALUES (" + docID " , '" + name + "', '" + specialty + "', " + deptID + " );";
-			esql.executeUpdate(query);
+			esql.addDoctor(docID, name, specialty, deptID);
 		}
 		catch (Exception e)
 		{
@@ -426,8 +1288,6 @@ public class DBproject{
 		int age;
 		String address;
 
-		String query;
-
 		//retrieves patient id
 		while(true)
 		{
@@ -435,6 +1295,7 @@ public class DBproject{
 			try
 			{
 				pID = Integer.parseInt(in.readLine());
+				break;
 			}
 			catch(Exception e)
 			{
@@ -454,6 +1315,7 @@ public class DBproject{
 				{
 					throw new RuntimeException("Invalid input! The Patient's name cannot be empty.");
 				}
+				break;
 			}
 			catch (Exception e)
 			{
@@ -468,11 +1330,12 @@ public class DBproject{
 			System.out.print("Please enter Patient's gender(Use 'M' or 'F': ");
 			try
 			{
-				gender  = in.readLine();
-				if(gender != "M" || gender != "F")
+				gender  = in.readLine().trim().toUpperCase();
+				if(!BulkLoader.GENDER_DOMAIN.contains(gender))
 				{
 					throw new RuntimeException("Invalid input! The only valid input for a Patient's gender is 'M' or 'F'.");
 				}
+				break;
 			}
 			catch (Exception e)
 			{
@@ -488,6 +1351,7 @@ public class DBproject{
 			try
 			{
 				age = Integer.parseInt(in.readLine());
+				break;
 			}
 			catch(Exception e)
 			{
@@ -503,6 +1367,7 @@ public class DBproject{
 			try
 			{
 				address = in.readLine();
+				break;
 			}
 			catch(Exception e)
 			{
@@ -518,6 +1383,7 @@ public class DBproject{
 			try
 			{
 				numApt = Integer.parseInt(in.readLine());
+				break;
 			}
 			catch(Exception e)
 			{
@@ -529,8 +1395,7 @@ public class DBproject{
 		//combine queries and add to database
 		try
 		{
-			query = "INSERT INTO Patient(patient_ID, name, gtype, age, address, number_of_appts) VALUES (" + pID + ", '" + name + "', '" + gender + "', " + age + ", '" + address + "', " + numApt + ");");
-			esql.executeUpdate(query);
+			esql.addPatient(pID, name, gender, age, address, numApt);
 		}
 		catch (Exception e)
 		{
@@ -554,11 +1419,10 @@ public class DBproject{
 		String dateM;
 		String dateD;
 		String dateY;
-		String timeSlotStart;
-		String timeSlotEnd;
+		int timeSlotStart;
+		TimeSlot timeSlot;
 		String status;
-
-		String query;
+		LocalDate date;
 
 		//retrieves appointment id
 		while(true)
@@ -567,6 +1431,7 @@ public class DBproject{
 			try
 			{
 				apptID = Integer.parseInt(in.readLine());
+				break;
 			}
 			catch(Exception e)
 			{
@@ -582,6 +1447,7 @@ public class DBproject{
 			try
 			{
 				dateM = in.readLine();
+				break;
 			}
 			catch(Exception e)
 			{
@@ -597,6 +1463,7 @@ public class DBproject{
 			try
 			{
 				dateD = in.readLine();
+				break;
 			}
 			catch(Exception e)
 			{
@@ -608,10 +1475,13 @@ public class DBproject{
 		//retrieves appointment day(year)
 		while(true)
 		{
-			System.out.print("Please enter the month of the Appointment: ");
+			System.out.print("Please enter the year of the Appointment: ");
 			try
 			{
-				dateM = in.readLine();
+				dateY = in.readLine();
+				//validates the whole date once all three parts are known
+				date = parseDate(dateM + "/" + dateD + "/" + dateY);
+				break;
 			}
 			catch(Exception e)
 			{
@@ -626,7 +1496,8 @@ public class DBproject{
 			System.out.print("Please enter the Appointment Start time slot(Using hours:minutes. i.e. 2:00 or 17:00): ");
 			try
 			{
-				timeSlotStart = in.readLine();
+				timeSlotStart = TimeSlot.parseTime(in.readLine());
+				break;
 			}
 			catch(Exception e)
 			{
@@ -641,7 +1512,8 @@ public class DBproject{
 			System.out.print("Please enter the Appointment End time slot(Using hours:minutes. i.e. 2:00 or 17:00): ");
 			try
 			{
-				timeSlotEnd = in.readLine();
+				timeSlot = new TimeSlot(timeSlotStart, TimeSlot.parseTime(in.readLine()));
+				break;
 			}
 			catch(Exception e)
 			{
@@ -656,11 +1528,12 @@ public class DBproject{
 			System.out.print("Please enter the status of the Appointment: ");
 			try
 			{
-				status = in.readLine();
-				if(status != 'PA' || status != 'AC' || status != 'AV' || status != 'WL')
+				status = in.readLine().trim().toUpperCase();
+				if(!BulkLoader.STATUS_DOMAIN.contains(status))
 				{
 					throw new RuntimeException("Invalid input! The only valid input for an Appointment Status is 'PA' or 'AC' or 'AV' or 'WL'.");
 				}
+				break;
 			}
 			catch(Exception e)
 			{
@@ -673,8 +1546,7 @@ public class DBproject{
 		try
 		{
 			//VALUES (apptID, 'dateM/dateD/dateY', 'timeSlotStart-timeSlotEnd', 'status')
-			query = "INSERT INTO Appointment(appnt_ID, adate, time_slot, status) VALUES (" + apptID + ", '" + dateM + "/" +dateD + "/" + dateY "', '" + timeSlotStart + "-" + timeSlotEnd + "', '" + status + "');");
-			esql.executeUpdate(query);
+			esql.addAppointment(apptID, date, timeSlot, status);
 		}
 		catch (Exception e)
 		{
@@ -683,8 +1555,162 @@ public class DBproject{
 	}
 
 
+	public static void BatchAdd(DBproject esql) {//10
+		// Reads many Doctor, Patient or Appointment records as CSV lines (same layout as data/*.csv)
+		// from a file or the console and inserts them in JDBC batches
+
+		BatchInserter.RecordType type;
+		String path;
+
+		//record type
+		while(true)
+		{
+			System.out.print("Please enter the record type (doctor, patient or appointment): ");
+			try
+			{
+				type = BatchInserter.RecordType.valueOf(in.readLine().trim().toUpperCase());
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! The record type must be doctor, patient or appointment.");
+				continue;
+			}
+		}
+
+		//file, or console input when left empty
+		while(true)
+		{
+			System.out.print("Please enter the CSV file path (leave empty to type the records): ");
+			try
+			{
+				path = in.readLine().trim();
+				if(path.length() > 0 && !new File(path).canRead())
+				{
+					throw new RuntimeException("Cannot read " + path);
+				}
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		try
+		{
+			BatchInserter inserter = new BatchInserter(esql.getPool());
+			BatchInserter.Result result;
+			if(path.length() == 0)
+			{
+				System.out.println("Enter one record per line as " + type.layout() + ", then an empty line:");
+				result = inserter.insert(type, in, true);
+			}
+			else
+			{
+				BufferedReader file = new BufferedReader(new FileReader(path));
+				try
+				{
+					result = inserter.insert(type, file, false);
+				}
+				finally
+				{
+					file.close();
+				}
+			}
+			if(type == BatchInserter.RecordType.DOCTOR)
+			{
+				esql.getReferenceCache().invalidateDoctors();
+			}
+			if(type == BatchInserter.RecordType.APPOINTMENT && esql.getAvailability() != null)
+			{
+				esql.getAvailability().rebuild();
+			}
+			for(BatchInserter.RowError error : result.errors)
+			{
+				System.out.println("Rejected " + error);
+			}
+			System.out.println(result);
+		}
+		catch (Exception e)
+		{
+			System.err.println("Batch insert failed. Error message: " + e.getMessage());
+		}
+	}
+
 	public static void MakeAppointment(DBproject esql) {//4
 		// Given a patient, a doctor and an appointment of the doctor that s/he wants to take, add an appointment to the DB
+
+		// One transaction (see AppointmentBooker): lock the Appointment row, AV -> AC or AC/WL -> WL,
+		// INSERT INTO searches (hid, pid, aid) and increment Patient.number_of_appts
+
+		int pID;
+		int docID;
+		int apptID;
+
+		//patient
+		while(true)
+		{
+			System.out.print("Please enter Patient ID: ");
+			try
+			{
+				pID = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		//doctor
+		while(true)
+		{
+			System.out.print("Please enter Doctor ID: ");
+			try
+			{
+				docID = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		//appointment
+		while(true)
+		{
+			System.out.print("Please enter Appointment ID: ");
+			try
+			{
+				apptID = Integer.parseInt(in.readLine());
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		try
+		{
+			AppointmentBooker.Booking booking = esql.makeAppointment(pID, docID, apptID);
+			switch(booking.outcome)
+			{
+				case BOOKED: System.out.println("Appointment " + apptID + " booked for patient " + pID + "."); break;
+				case WAITLISTED: System.out.println("Appointment " + apptID + " is taken, patient " + pID + " was added to its waitlist."); break;
+				default: System.out.println("Appointment not made: " + booking.message); break;
+			}
+		}
+		catch (Exception e)
+		{
+			System.err.println("Query failed! " + e.getMessage());
+		}
 	}
 
 	public static void ListAppointmentsOfDoctor(DBproject esql) {//5
@@ -697,9 +1723,8 @@ public class DBproject{
 		// Note: D.doctor_ID, startDate, endDate is user inputted
 
 		int docID;
-		String startDate;
-		String endDate;
-		String query;
+		LocalDate startDate;
+		LocalDate endDate;
 
 		//docID
 		while(true)
@@ -723,7 +1748,7 @@ public class DBproject{
 			System.out.print("Please enter a start date for your search(Use MM/DD/YY): ");
 			try 
 			{
-				startDate = in.readLine();
+				startDate = parseDate(in.readLine());
 				break;
 			}
 			catch(Exception e)
@@ -739,7 +1764,7 @@ public class DBproject{
 			System.out.print("Please enter an end date for your search(Use MM/DD/YY): ");
 			try 
 			{
-				endDate = in.readLine();
+				endDate = parseDate(in.readLine());
 				break;
 			}
 			catch(Exception e)
@@ -752,8 +1777,13 @@ public class DBproject{
 		//combine queries
 		try
 		{
-			query = "SELECT A.appnt_ID from Appointment A, Doctor D has_appointment H where H.doctor_id = " + docID + "AND H.appt_id = A.appnt_ID AND (A.status = 'AV' or A.status = 'AC') AND A.adate => " + startDate + " AND A.adate <= " + endDate;
-			esql.executeUpdate(query);
+			if(esql.getAvailability() != null)
+			{
+				AvailabilityIndex.Slots slots = esql.getAvailability().appointmentsOfDoctor(docID, startDate, endDate);
+				printSlots(slots, "appnt_id", "adate", "time_slot", "status");
+				return;
+			}
+			esql.executeQueryAndPrintResult(LIST_APPOINTMENTS_OF_DOCTOR_SQL, docID, startDate, endDate);
 		}
 		catch (Exception e) 
 		{
@@ -770,8 +1800,7 @@ public class DBproject{
 		// dName and date is user inputted
 
 		String dName;
-		String date;
-		String query;
+		LocalDate date;
 
 		//dName
 		while(true)
@@ -795,7 +1824,7 @@ public class DBproject{
 			System.out.print("Please enter a specified date(Use MM/DD/YY): ");
 			try
 			{
-				date = in.readLine();
+				date = parseDate(in.readLine());
 				break;
 			}
 			catch(Exception e)
@@ -808,8 +1837,19 @@ public class DBproject{
 		//query
 		try
 		{
-			query = "SELECT A.appnt_ID FROM Appointment A, Department D, request_maintenance M, has_appointment H WHERE M.dept_name = \'" + dName + "\' AND M.did = H.doctor_id AND H.appt_id = A.appnt_ID AND A.status = 'AV' AND A.adate = \'" + date + "\'";
-			esql.executeUpdate(query);
+			if(esql.getAvailability() != null)
+			{
+				AvailabilityIndex.Slots slots = esql.getAvailability().availableOfDepartment(dName, date);
+				printSlots(slots, "appnt_id", "time_slot");
+				return;
+			}
+			int[] doctors = esql.getReferenceCache().doctorsOfDepartment(dName);
+			if(doctors.length == 0)
+			{
+				System.out.println("No doctors found for department " + dName);
+				return;
+			}
+			esql.executeQueryAndPrintResult(LIST_AVAILABLE_APPOINTMENTS_OF_DOCTORS_SQL, doctors, date);
 		}
 		catch (Exception e) 
 		{
@@ -828,15 +1868,15 @@ public class DBproject{
 		// GROUP BY D.doctor_ID, D.name, D.specialty, A.status
 		// ORDER BY C Desc
 
-		String query;
-
 		try
 		{
-			query = "SELECT D.doctor_ID, D.name, D.specialty, A.status, count(A.status) AS C "
-				+ "FROM Doctor D, Appointment A, has_appointment H "
-				+ "WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = H.appt_id "
-				+ "GROUP BY D.doctor_ID, D.name, D.specialty, A.status "
-				+ "ORDER BY C Desc;";
+			if (esql.getParallelReports() != null){
+				ParallelReports.Result result = esql.getParallelReports().statusPerDoctor();
+				printReport(result);
+				System.out.println(result.describe());
+			}else{
+				esql.executeQueryAndPrintResult(esql.getStatusReportSql());
+			}
 		}
 		catch(Exception e)
 		{
@@ -859,13 +1899,127 @@ public class DBproject{
 		try
 		{
 			System.out.print("Please enter the appointment status: ");
-			String status = in.readLine();
+			String status = in.readLine().trim().toUpperCase();
+
+			if (esql.getParallelReports() != null){
+				ParallelReports.Result result = esql.getParallelReports().patientsCountWithStatus(status);
+				printReport(result);
+				System.out.println(result.describe());
+				return;
+			}
+			PatientsPerDoctorReport.Result result = esql.getPatientsPerDoctorReport().run(status);
+			printColumns(result.rows);
+			System.out.println(result.describe());
+		}
+		catch(Exception e)
+		{
+			System.err.println("Query failed! " + e.getMessage());
+		}
+	}
+
+	public static void FindEarliestAvailable(DBproject esql) {//11
+		// For a specialty and/or department, optionally in one hospital, find the k earliest available appointments
+		// from a given date on, see EarliestAvailableSearch
+
+		String specialty;
+		String department;
+		Integer hospitalID;
+		LocalDateTime from;
+		int k;
+
+		//specialty and department, at least one of them
+		while(true)
+		{
+			try
+			{
+				System.out.print("Please enter the specialty (leave empty for any): ");
+				specialty = in.readLine().trim();
+				System.out.print("Please enter the Department name (leave empty for any): ");
+				department = in.readLine().trim();
+				if(specialty.isEmpty() && department.isEmpty())
+				{
+					throw new RuntimeException("a specialty or a department name is required");
+				}
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		//hospital
+		while(true)
+		{
+			System.out.print("Please enter the hospital ID (leave empty for any): ");
+			try
+			{
+				String text = in.readLine().trim();
+				hospitalID = text.isEmpty() ? null : Integer.valueOf(text);
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
 
-			String query = "SELECT D.doctor_ID, D.name, D.specialty, count(S.pid) AS C "
-							+ "FROM Doctor D, Searches S, has_appointment H, Appointment A "
-							+ "WHERE H.doctor_id = D.doctor_ID AND A.status = " + status + " AND A.appnt_ID = S.aid AND H.appt_id = S.aid "
-							+ "GROUP BY D.doctor_ID, D.name, D.specialty;";
-			esql.executeUpdate(query);
+		//first date
+		while(true)
+		{
+			System.out.print("Please enter the first date(Use MM/DD/YY, leave empty for now): ");
+			try
+			{
+				String text = in.readLine().trim();
+				from = text.isEmpty() ? LocalDateTime.now() : parseDate(text).atStartOfDay();
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		//number of appointments
+		while(true)
+		{
+			System.out.print("Please enter how many appointments to list (leave empty for 10): ");
+			try
+			{
+				String text = in.readLine().trim();
+				k = text.isEmpty() ? 10 : Integer.parseInt(text);
+				if(k <= 0)
+				{
+					throw new RuntimeException("the number must be positive");
+				}
+				break;
+			}
+			catch(Exception e)
+			{
+				System.out.println("Invalid input! " + e.getMessage());
+				continue;
+			}
+		}
+
+		//query
+		try
+		{
+			List<EarliestAvailableSearch.Hit> hits = esql.findEarliestAvailable(specialty.isEmpty() ? null : specialty,
+				department.isEmpty() ? null : department, hospitalID, from, null, k);
+			if(hits.isEmpty())
+			{
+				System.out.println("No available appointments found");
+				return;
+			}
+			System.out.println("appnt_id\tadate\ttime_slot\tdoctor_id\tname\tspecialty\tdepartment\thid\t");
+			for(EarliestAvailableSearch.Hit h : hits)
+			{
+				System.out.println(h.appointmentID + "\t" + h.date + "\t" + h.timeSlot + "\t" + h.doctorID + "\t"
+					+ h.doctorName + "\t" + h.specialty + "\t" + h.department + "\t" + h.hospitalID + "\t");
+			}
 		}
 		catch(Exception e)
 		{
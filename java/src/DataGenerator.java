@@ -0,0 +1,611 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * This class generates a synthetic hospital dataset of any size, shaped
+ * like the files under data/. Every value of a row is a pure function of
+ * the seed and the row's ID (each row draws from its own splitmix64
+ * stream), so foreign keys can be resolved without remembering earlier
+ * rows: the doctor of appointment a is doctorOf(a), the hospital of
+ * doctor d is hospitalOfDoctor(d), and so on. Nothing but the chunk being
+ * written is held in memory, and any range of IDs can be produced by any
+ * thread.
+ *
+ * Rows go either to CSV files (same layout as data/, readable by
+ * BulkLoader and sql/load.sql) or straight into the database through
+ * COPY FROM STDIN, one COPY per chunk, tables in foreign key order.
+ *
+ */
+
+public class DataGenerator{
+	//rows per unit of scale factor
+	public static final int HOSPITALS_PER_SCALE = 5;
+	public static final int STAFF_PER_HOSPITAL = 50;
+	public static final int DOCTORS_PER_HOSPITAL = 50;
+	public static final int PATIENTS_PER_HOSPITAL = 500;
+	public static final int APPOINTMENTS_PER_HOSPITAL = 1000;
+	//share of doctors with a request_maintenance row
+	private static final double MAINTAINED_DOCTORS = 0.4;
+	//most patients waiting behind the holder of a 'WL' slot
+	static final int MAX_WAITING = 3;
+
+	//rows generated per task
+	private static final int CHUNK_ROWS = 10000;
+
+	//the 25 department names of data/department.csv; each hospital has all of them
+	static final String[] DEPARTMENTS = {
+		"Accident and emergency", "Allergy and Immunology", "Cardiology", "Dermatology", "Endocrinology",
+		"Finance", "Gastroenterology", "General Surgery", "Human Resources", "ICU",
+		"Microbiology", "Neurology", "Nutrition", "Obstetrics/Gynecology", "Oncology",
+		"Ophthalmology", "Otolaryngology", "Pain Management", "Patient Services", "Pediatric",
+		"Pharmacy", "Psychiatry", "Radiology", "Rheumatology", "Urology"
+	};
+	//departments doctors work in, with the specialty of their doctors
+	private static final int[] CLINICAL = { 1, 2, 3, 4, 6, 11, 12, 13, 14, 15, 16, 19, 21, 22, 24 };
+	private static final String[] SPECIALTIES = {
+		"Allergist", "Cardiologist", "Dermatologist", "Endocrinologist", "Gastroenterologist",
+		"Neurologist", "Nutritionist", "gynecologist", "Oncologist", "Ophthalmologist",
+		"Otolaryngologist", "Pediatrician", "Psychiatrist", "Radiologist", "Urologist"
+	};
+	//relative share of doctors per clinical department, after data/doctor.csv
+	private static final int[] SPECIALTY_WEIGHTS = { 20, 33, 15, 14, 15, 15, 30, 10, 16, 11, 15, 19, 9, 17, 11 };
+	//time slots of data/appointment.csv with their frequencies
+	private static final String[] TIME_SLOTS = {
+		"14:00-16:00", "8:00-10:00", "13:00-15:00", "8:00-10:30", "8:00-17:00", "8:00-10:50", "10:00-17:00", "10:00-15:00"
+	};
+	private static final int[] TIME_SLOT_WEIGHTS = { 185, 89, 70, 48, 47, 45, 36, 30 };
+
+	private static final String[] FIRST_NAMES = {
+		"Armand", "Alberto", "Wyatt", "Alvin", "Carrie", "Calvin", "Camille", "Lindsey", "Maria", "James",
+		"Olivia", "Noah", "Emma", "Liam", "Ava", "Mason", "Sophia", "Ethan", "Isabella", "Lucas",
+		"Mia", "Logan", "Amelia", "Aiden", "Harper", "Elijah", "Evelyn", "Grace", "Daniel", "Chloe"
+	};
+	private static final String[] LAST_NAMES = {
+		"Enderle", "Scarlett", "Ruoff", "Saunders", "Cortez", "Morrison", "Holmes", "Sullivan", "Newton", "Garcia",
+		"Smith", "Johnson", "Williams", "Brown", "Jones", "Miller", "Davis", "Rodriguez", "Martinez", "Lee",
+		"Walker", "Hall", "Young", "King", "Wright", "Lopez", "Hill", "Scott", "Green", "Adams"
+	};
+	private static final String[] STREETS = {
+		"Chapel Drive", "Bald Hill Street", "Campfire Ave.", "Oak Lane", "Maple Street", "Sunset Blvd.",
+		"Pine Road", "Cedar Court", "Elm Street", "Lake View Drive", "Hillcrest Ave.", "Mill Road"
+	};
+	private static final String[] CITIES = {
+		"Melbourne", "Baton Rouge", "Cockeysville", "Riverside", "Los Angeles", "San Francisco",
+		"Palo Alto", "Irvine", "San Diego", "Sacramento", "Fresno", "Oakland"
+	};
+
+	//salts that give every table its own random stream for the same ID
+	private static final long SALT_HOSPITAL = 0x1L, SALT_STAFF = 0x2L, SALT_DOCTOR = 0x3L, SALT_PATIENT = 0x4L,
+		SALT_APPOINTMENT = 0x5L, SALT_MAINTENANCE = 0x6L, SALT_SEARCHES = 0x7L;
+
+	private final long _seed;
+	private final int _hospitals;
+	private final int _doctors;
+	private final int _patients;
+	private final int _appointments;
+	private final int _staff;
+	//appointments fall in [_firstDate, _firstDate + _days); before _today they are past
+	private final LocalDate _firstDate;
+	private final int _days;
+	private final LocalDate _today;
+	//place k of appointment a belongs to patient (a * stride + offset + k) mod patients,
+	//a bijection in a for each k, so the places of a patient can be enumerated
+	private final long _patientStride;
+	private final long _patientStrideInverse;
+	private final long _patientOffset;
+
+	/**
+	 * @param scale multiplies the per-hospital row counts; scale 1 is five hospitals
+	 * @param seed seed of every random choice
+	 * @param today dates before it get status 'PA'
+	 */
+	public DataGenerator(int scale, long seed, LocalDate today){
+		if (scale <= 0)
+			throw new IllegalArgumentException("scale must be positive: " + scale);
+		this._seed = seed;
+		this._hospitals = HOSPITALS_PER_SCALE * scale;
+		this._doctors = DOCTORS_PER_HOSPITAL * this._hospitals;
+		this._patients = PATIENTS_PER_HOSPITAL * this._hospitals;
+		this._appointments = APPOINTMENTS_PER_HOSPITAL * this._hospitals;
+		this._staff = STAFF_PER_HOSPITAL * this._hospitals;
+		this._today = today;
+		//two years of history and six months of bookable slots
+		this._firstDate = today.minusYears(2);
+		this._days = (int) (today.plusMonths(6).toEpochDay() - this._firstDate.toEpochDay());
+		Rnd r = new Rnd(seed, SALT_SEARCHES, 0);
+		BigInteger patients = BigInteger.valueOf(this._patients);
+		long stride = 1 + r.nextInt(this._patients - 1);
+		while (!BigInteger.valueOf(stride).gcd(patients).equals(BigInteger.ONE))
+			stride = stride % (this._patients - 1) + 1;
+		this._patientStride = stride;
+		this._patientStrideInverse = BigInteger.valueOf(stride).modInverse(patients).longValue();
+		this._patientOffset = r.nextInt(this._patients);
+	}
+
+	/**
+	 * @return the number of rows generated for a table of BulkLoader.TABLES
+	 */
+	public long rowCount(String table){
+		switch (table){
+			case "Hospital": return this._hospitals;
+			case "Department": return (long) this._hospitals * DEPARTMENTS.length;
+			case "Staff": return this._staff;
+			case "Doctor": return this._doctors;
+			case "Patient": return this._patients;
+			case "Appointment":
+			case "has_appointment":
+			case "schedules":
+			case "searches":
+				//the appointment IDs; searches has no row for a free slot and
+				//several for a waitlisted one, see writeRow()
+				return this._appointments;
+			case "request_maintenance": return this._doctors;
+			default: throw new IllegalArgumentException("Unknown table " + table);
+		}
+	}
+
+	//---------------------------------------------------------------
+	// deterministic randomness
+	//---------------------------------------------------------------
+
+	/**
+	 * A splitmix64 stream seeded by (generator seed, table salt, row ID).
+	 */
+	static final class Rnd{
+		private long _state;
+
+		Rnd(long seed, long salt, long id){
+			//mixing twice keeps neighbouring IDs from getting related streams
+			this._state = mix(mix(seed ^ (salt * 0x9E3779B97F4A7C15L)) + id);
+		}
+
+		long nextLong(){
+			return mix(this._state += 0x9E3779B97F4A7C15L);
+		}
+
+		private static long mix(long z){
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		int nextInt(int bound){
+			return (int) ((nextLong() >>> 1) % bound);
+		}
+
+		double nextDouble(){
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+
+		int weighted(int[] weights){
+			int total = 0;
+			for (int w : weights)
+				total += w;
+			int r = nextInt(total);
+			for (int i = 0; i < weights.length; ++i){
+				r -= weights[i];
+				if (r < 0)
+					return i;
+			}//end for
+			return weights.length - 1;
+		}
+
+		<T> T pick(T[] values){
+			return values[nextInt(values.length)];
+		}
+	}
+
+	//---------------------------------------------------------------
+	// foreign keys as functions of IDs
+	//---------------------------------------------------------------
+
+	int hospitalOfDoctor(int doctorID){
+		return new Rnd(this._seed, SALT_DOCTOR, doctorID).nextInt(this._hospitals);
+	}
+
+	//index into CLINICAL / SPECIALTIES
+	private int clinicalOfDoctor(int doctorID){
+		Rnd r = new Rnd(this._seed, SALT_DOCTOR, doctorID);
+		r.nextInt(this._hospitals);
+		return r.weighted(SPECIALTY_WEIGHTS);
+	}
+
+	int departmentOfDoctor(int doctorID){
+		return hospitalOfDoctor(doctorID) * DEPARTMENTS.length + CLINICAL[clinicalOfDoctor(doctorID)];
+	}
+
+	/**
+	 * @return the patient in place place of an appointment's searches
+	 *         rows: 0 is the holder, 1 and up its waitlist in order
+	 */
+	int patientOf(int apptID, int place){
+		return (int) (((long) apptID * this._patientStride + this._patientOffset + place) % this._patients);
+	}
+
+	/**
+	 * @return the number of searches rows of a patient, over every place
+	 *         patientOf() gives it, i.e. its number_of_appts
+	 */
+	int appointmentsOfPatient(int patientID){
+		int count = 0;
+		for (int place = 0; place <= MAX_WAITING; ++place){
+			long first = Math.floorMod((long) patientID - this._patientOffset - place, (long) this._patients)
+				* this._patientStrideInverse % this._patients;
+			for (long a = first; a < this._appointments; a += this._patients){
+				if (new AppointmentRow((int) a).patients > place)
+					++count;
+			}//end for
+		}//end for
+		return count;
+	}
+
+	//staff IDs are contiguous per hospital
+	int staffOfHospital(int hospitalID, Rnd r){
+		return hospitalID * STAFF_PER_HOSPITAL + r.nextInt(STAFF_PER_HOSPITAL);
+	}
+
+	/**
+	 * The random choices of one appointment, drawn in a fixed order.
+	 */
+	final class AppointmentRow{
+		final int id;
+		final int doctor;
+		final LocalDate date;
+		final String timeSlot;
+		final String status;
+		//searches rows: none when free, the holder, and for 'WL' the waitlist behind it
+		final int patients;
+		final int staff;
+
+		AppointmentRow(int id){
+			Rnd r = new Rnd(DataGenerator.this._seed, SALT_APPOINTMENT, id);
+			this.id = id;
+			//a quarter of the doctors carry half of the appointments
+			this.doctor = r.nextDouble() < 0.5
+				? r.nextInt(Math.max(1, DataGenerator.this._doctors / 4))
+				: r.nextInt(DataGenerator.this._doctors);
+			LocalDate d = DataGenerator.this._firstDate.plusDays(r.nextInt(DataGenerator.this._days));
+			//clinics rarely open at weekends
+			if ((d.getDayOfWeek() == DayOfWeek.SATURDAY || d.getDayOfWeek() == DayOfWeek.SUNDAY) && r.nextDouble() < 0.9)
+				d = d.plusDays(d.getDayOfWeek() == DayOfWeek.SATURDAY ? 2 : 1);
+			this.date = d;
+			this.timeSlot = TIME_SLOTS[r.weighted(TIME_SLOT_WEIGHTS)];
+			if (d.isBefore(DataGenerator.this._today)){
+				this.status = "PA";
+			}else{
+				//later dates are less likely to be booked already
+				double ahead = (d.toEpochDay() - DataGenerator.this._today.toEpochDay()) / 183.0;
+				double p = r.nextDouble();
+				double booked = 0.7 - 0.4 * ahead;
+				this.status = p < booked ? "AC" : p < booked + 0.08 ? "WL" : "AV";
+			}//end if
+			//drawn for every status so that the draws after it do not depend on the status
+			int waiting = 1 + r.nextInt(MAX_WAITING);
+			this.patients = "AV".equals(this.status) ? 0 : "WL".equals(this.status) ? 1 + waiting : 1;
+			this.staff = staffOfHospital(hospitalOfDoctor(this.doctor), r);
+		}
+	}
+
+	//---------------------------------------------------------------
+	// rows
+	//---------------------------------------------------------------
+
+	/**
+	 * Appends the CSV rows for ID id of table to out: one, none when the
+	 * table has no row for that ID (searches of free slots, doctors without
+	 * a request_maintenance row), or for the searches of a waitlisted slot
+	 * the holder's row followed by the waitlist's. The rows of one slot go
+	 * to one COPY in this order, so searches.request_seq (migration V008)
+	 * numbers them as holder first, waitlist after.
+	 *
+	 * @return the number of rows appended
+	 */
+	int writeRow(String table, int id, StringBuilder out){
+		switch (table){
+			case "Hospital":{
+				Rnd r = new Rnd(this._seed, SALT_HOSPITAL, id);
+				out.append(id).append(',').append(r.pick(CITIES)).append(" Medical Center ").append(id).append('\n');
+				break;
+			}
+			case "Department":
+				out.append(id).append(',').append(DEPARTMENTS[id % DEPARTMENTS.length]).append(',')
+					.append(id / DEPARTMENTS.length).append('\n');
+				break;
+			case "Staff":{
+				Rnd r = new Rnd(this._seed, SALT_STAFF, id);
+				out.append(id).append(',').append(r.pick(FIRST_NAMES)).append(' ').append(r.pick(LAST_NAMES))
+					.append(',').append(id / STAFF_PER_HOSPITAL).append('\n');
+				break;
+			}
+			case "Doctor":{
+				Rnd r = new Rnd(this._seed, SALT_DOCTOR ^ 0x100L, id);
+				out.append(id).append(',').append(r.pick(FIRST_NAMES)).append(' ').append(r.pick(LAST_NAMES))
+					.append(',').append(SPECIALTIES[clinicalOfDoctor(id)]).append(',').append(departmentOfDoctor(id)).append('\n');
+				break;
+			}
+			case "Patient":{
+				Rnd r = new Rnd(this._seed, SALT_PATIENT, id);
+				//ages skew towards adults and the elderly
+				int age = Math.min(99, (int) (Math.max(r.nextDouble(), r.nextDouble()) * 95));
+				out.append(id).append(',').append(r.pick(FIRST_NAMES)).append(' ').append(r.pick(LAST_NAMES))
+					.append(',').append(r.nextDouble() < 0.5 ? 'F' : 'M').append(',').append(age)
+					.append(',').append(1000 + r.nextInt(9000)).append(' ').append(r.pick(STREETS)).append(' ').append(r.pick(CITIES))
+					.append(',').append(appointmentsOfPatient(id)).append('\n');
+				break;
+			}
+			case "Appointment":{
+				AppointmentRow a = new AppointmentRow(id);
+				out.append(id).append(',').append(a.date).append(',').append(a.timeSlot).append(',').append(a.status).append('\n');
+				break;
+			}
+			case "has_appointment":
+				out.append(id).append(',').append(new AppointmentRow(id).doctor).append('\n');
+				break;
+			case "schedules":
+				out.append(id).append(',').append(new AppointmentRow(id).staff).append('\n');
+				break;
+			case "searches":{
+				AppointmentRow a = new AppointmentRow(id);
+				int hospitalID = hospitalOfDoctor(a.doctor);
+				for (int place = 0; place < a.patients; ++place)
+					out.append(hospitalID).append(',').append(patientOf(id, place)).append(',').append(id).append('\n');
+				return a.patients;
+			}
+			case "request_maintenance":{
+				Rnd r = new Rnd(this._seed, SALT_MAINTENANCE, id);
+				if (r.nextDouble() < MAINTAINED_DOCTORS){
+					int dept = departmentOfDoctor(id);
+					out.append(1 + r.nextInt(3)).append(',').append(DEPARTMENTS[dept % DEPARTMENTS.length])
+						.append(',').append(TIME_SLOTS[r.weighted(TIME_SLOT_WEIGHTS)]).append(',').append(id)
+						.append(',').append(staffOfHospital(hospitalOfDoctor(id), r)).append('\n');
+					return 1;
+				}//end if
+				return 0;
+			}
+			default:
+				throw new IllegalArgumentException("Unknown table " + table);
+		}
+		return 1;
+	}
+
+	//---------------------------------------------------------------
+	// output
+	//---------------------------------------------------------------
+
+	/**
+	 * Receives the rows of one chunk of a table. Called from several
+	 * threads at once.
+	 */
+	public interface Sink{
+		void write(BulkLoader.Table table, byte[] rows, int length) throws Exception;
+	}
+
+	/**
+	 * Generates every table with threads workers, tables in foreign key
+	 * order and the chunks of each table in parallel.
+	 *
+	 * @return rows written per table
+	 * @throws java.lang.Exception when a sink fails
+	 */
+	public Map<String, Long> generate(Sink sink, int threads) throws Exception {
+		Map<String, Long> counts = new HashMap<String, Long>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			for (final BulkLoader.Table t : BulkLoader.TABLES){
+				final long n = rowCount(t.getName());
+				final AtomicLong rows = new AtomicLong();
+				List<Future<?>> chunks = new ArrayList<Future<?>>();
+				for (long from = 0; from < n; from += CHUNK_ROWS){
+					final int lo = (int) from;
+					final int hi = (int) Math.min(n, from + CHUNK_ROWS);
+					chunks.add(executor.submit(() -> {
+						StringBuilder out = new StringBuilder((hi - lo) * 48);
+						long written = 0;
+						for (int id = lo; id < hi; ++id)
+							written += writeRow(t.getName(), id, out);
+						byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+						sink.write(t, bytes, bytes.length);
+						rows.addAndGet(written);
+						return null;
+					}));
+				}//end for
+				//the next table's foreign keys need this one complete
+				for (Future<?> f : chunks)
+					f.get();
+				counts.put(t.getName(), rows.get());
+			}//end for
+		}finally{
+			executor.shutdownNow();
+		}//end try
+		return counts;
+	}
+
+	/**
+	 * Writes each table to <dir>/<table file>, e.g. data/appointment.csv.
+	 * Chunks are appended as they complete, so row order varies with the
+	 * thread count while the set of rows does not.
+	 */
+	public static final class CsvSink implements Sink, AutoCloseable{
+		private final File _dir;
+		private final Map<String, FileChannel> _files = new HashMap<String, FileChannel>();
+
+		public CsvSink(File dir){
+			this._dir = dir;
+		}
+
+		private synchronized FileChannel channel(BulkLoader.Table t) throws IOException {
+			FileChannel ch = this._files.get(t.getName());
+			if (ch == null){
+				ch = new FileOutputStream(new File(this._dir, t.getFile())).getChannel();
+				this._files.put(t.getName(), ch);
+			}//end if
+			return ch;
+		}
+
+		@Override
+		public void write(BulkLoader.Table t, byte[] rows, int length) throws IOException {
+			FileChannel ch = channel(t);
+			ByteBuffer buf = ByteBuffer.wrap(rows, 0, length);
+			synchronized (ch){
+				while (buf.hasRemaining())
+					ch.write(buf);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			for (FileChannel ch : this._files.values())
+				ch.close();
+			this._files.clear();
+		}
+	}
+
+	/**
+	 * Loads each chunk with its own COPY FROM STDIN on a pooled connection.
+	 */
+	public static final class CopySink implements Sink{
+		private final ConnectionPool _pool;
+
+		public CopySink(ConnectionPool pool){
+			this._pool = pool;
+		}
+
+		@Override
+		public void write(BulkLoader.Table t, byte[] rows, int length) throws SQLException {
+			PooledConnection conn = this._pool.borrow();
+			try{
+				BulkLoader.setRowTriggers(conn.connection(), false);
+				CopyIn copy = conn.connection().unwrap(PGConnection.class).getCopyAPI().copyIn(t.copySql());
+				try{
+					copy.writeToCopy(rows, 0, length);
+					copy.endCopy();
+				}finally{
+					if (copy.isActive())
+						copy.cancelCopy();
+					BulkLoader.setRowTriggers(conn.connection(), true);
+				}//end try
+			}finally{
+				this._pool.release(conn);
+			}//end try
+		}
+	}
+
+	/**
+	 * Generates a dataset into CSV files or straight into a database.
+	 *
+	 * @param args --scale N [--seed S] [--threads T] [--today YYYY-MM-DD]
+	 *             (--out <dir> | --copy <dbname> <port> <user> [--truncate])
+	 */
+	public static void main(String[] args){
+		int scale = 1;
+		long seed = 42;
+		int threads = Runtime.getRuntime().availableProcessors();
+		LocalDate today = LocalDate.now();
+		File out = null;
+		String[] db = null;
+		boolean truncate = false;
+		try{
+			for (int i = 0; i < args.length; ++i){
+				switch (args[i]){
+					case "--scale": scale = Integer.parseInt(args[++i]); break;
+					case "--seed": seed = Long.parseLong(args[++i]); break;
+					case "--threads": threads = Integer.parseInt(args[++i]); break;
+					case "--today": today = LocalDate.parse(args[++i]); break;
+					case "--out": out = new File(args[++i]); break;
+					case "--copy": db = new String[]{ args[++i], args[++i], args[++i] }; break;
+					case "--truncate": truncate = true; break;
+					default: throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}//end for
+			if ((out == null) == (db == null))
+				throw new IllegalArgumentException("Give exactly one of --out and --copy");
+		}catch (RuntimeException e){
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java [-classpath <classpath>] " + DataGenerator.class.getName()
+				+ " --scale N [--seed S] [--threads T] [--today YYYY-MM-DD]"
+				+ " (--out <dir> | --copy <dbname> <port> <user> [--truncate])");
+			return;
+		}//end try
+
+		DataGenerator gen = new DataGenerator(scale, seed, today);
+		long start = System.nanoTime();
+		Map<String, Long> counts;
+		try{
+			if (out != null){
+				out.mkdirs();
+				CsvSink sink = new CsvSink(out);
+				try{
+					counts = gen.generate(sink, threads);
+				}finally{
+					sink.close();
+				}//end try
+			}else{
+				String url = "jdbc:postgresql://localhost:" + db[1] + "/" + db[0];
+				ConnectionPool pool = new ConnectionPool(url, db[2], "", threads,
+					ConnectionPool.DEFAULT_MAX_WAIT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+					ConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECS, StatementCache.DEFAULT_MAX_SIZE);
+				try{
+					if (truncate)
+						new BulkLoader(pool).truncateAll();
+					counts = gen.generate(new CopySink(pool), threads);
+					BulkLoader.finishLoad(pool, threads);
+					PooledConnection conn = pool.borrow();
+					try{
+						Statement stmt = conn.connection().createStatement();
+						stmt.execute("ANALYZE");
+						stmt.close();
+					}finally{
+						pool.release(conn);
+					}//end try
+				}finally{
+					pool.close();
+				}//end try
+			}//end if
+		}catch (Exception e){
+			System.err.println("Generation failed: " + e.getMessage());
+			return;
+		}//end try
+
+		long total = 0;
+		for (BulkLoader.Table t : BulkLoader.TABLES){
+			long n = counts.get(t.getName());
+			total += n;
+			System.out.printf("%-20s %12d rows%n", t.getName(), n);
+		}//end for
+		double secs = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Generated %d rows in %.1f s (%.0f rows/sec)%n", total, secs, total / secs);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the earliest available appointments of the doctors matching a
+ * specialty and/or department name, optionally in one hospital
+ * (Department.hid), e.g. "the soonest AV slot for cardiology, anywhere".
+ *
+ * Each query takes, for every matching doctor, that doctor's earliest
+ * open slots in a time segment (a LATERAL subquery with LIMIT, so each
+ * doctor contributes a short sorted stream), and keeps the earliest k
+ * across doctors. The window is searched in segments that double in
+ * length, starting with -Dsearch.firstSegmentDays (default 7), and the
+ * search stops at the first segment that completes the k results. Most
+ * searches are answered by the first segment, which reads only the
+ * partitions of its dates; a window of n days takes at most
+ * log2(n / 7) + 1 queries.
+ *
+ */
+
+public class EarliestAvailableSearch{
+	public static final int DEFAULT_FIRST_SEGMENT_DAYS = 7;
+	public static final int DEFAULT_WINDOW_DAYS = 90;
+
+	//filters of the SQL variants, by bit
+	private static final int SPECIALTY = 1;
+	private static final int DEPARTMENT = 2;
+	private static final int HOSPITAL = 4;
+
+	static final String EARLIEST_SQL =
+		"SELECT S.appnt_ID, D.doctor_ID, D.name, D.specialty, P.name AS department, P.hid, S.adate, S.time_slot "
+		+ "FROM Doctor D, Department P, LATERAL ("
+		+ "SELECT A.appnt_ID, A.adate, A.time_slot, lower(A.slot) AS starts "
+		+ "FROM has_appointment H, Appointment A "
+		+ "WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = H.appt_id AND A.status = 'AV' "
+		+ "AND A.adate >= ? AND A.adate <= ? AND lower(A.slot) >= ? AND lower(A.slot) < ? "
+		+ "ORDER BY lower(A.slot), A.appnt_ID LIMIT ?) S "
+		+ "WHERE P.dept_ID = D.did";
+	//one statement per combination of filters, so each is prepared once
+	private static final String[] SQL = new String[8];
+	static{
+		for (int filters = 0; filters < SQL.length; ++filters)
+			SQL[filters] = EARLIEST_SQL
+				+ ((filters & SPECIALTY) != 0 ? " AND D.specialty = ?" : "")
+				+ ((filters & DEPARTMENT) != 0 ? " AND P.name = ?" : "")
+				+ ((filters & HOSPITAL) != 0 ? " AND P.hid = ?" : "")
+				+ " ORDER BY S.starts, S.appnt_ID LIMIT ?";
+	}
+
+	/**
+	 * @return the query for the filters that are not null; its parameters
+	 *         are the first and last date, the first and end start time, the
+	 *         limit per doctor, the filters and the limit
+	 */
+	static String sqlFor(String specialty, String department, Integer hospitalID){
+		return SQL[(specialty != null ? SPECIALTY : 0) | (department != null ? DEPARTMENT : 0)
+			| (hospitalID != null ? HOSPITAL : 0)];
+	}
+
+	/**
+	 * An available appointment found by a search.
+	 */
+	public static final class Hit{
+		public final int appointmentID;
+		public final int doctorID;
+		public final String doctorName;
+		public final String specialty;
+		public final String department;
+		public final int hospitalID;
+		public final LocalDate date;
+		public final String timeSlot;
+		public final LocalDateTime starts;
+
+		Hit(int appointmentID, int doctorID, String doctorName, String specialty, String department,
+				int hospitalID, LocalDate date, String timeSlot){
+			this.appointmentID = appointmentID;
+			this.doctorID = doctorID;
+			this.doctorName = doctorName;
+			this.specialty = specialty;
+			this.department = department;
+			this.hospitalID = hospitalID;
+			this.date = date;
+			this.timeSlot = timeSlot;
+			//rows with a slot are the ones TimeSlot parses
+			this.starts = TimeSlot.parse(timeSlot).startOn(date);
+		}
+	}
+
+	private final DBproject _esql;
+	private final int _firstSegmentDays;
+
+	public EarliestAvailableSearch(DBproject esql){
+		this(esql, Integer.getInteger("search.firstSegmentDays", DEFAULT_FIRST_SEGMENT_DAYS));
+	}
+
+	public EarliestAvailableSearch(DBproject esql, int firstSegmentDays){
+		this._esql = esql;
+		this._firstSegmentDays = Math.max(1, firstSegmentDays);
+	}
+
+	/**
+	 * Finds the k earliest available appointments starting in a window.
+	 *
+	 * @param specialty Doctor.specialty, or null for any
+	 * @param department Department.name, or null for any
+	 * @param hospitalID Department.hid, or null for any
+	 * @param from the earliest start
+	 * @param to the end of the window, or null for DEFAULT_WINDOW_DAYS after from
+	 * @param k the number of appointments to find
+	 * @return up to k appointments, earliest first
+	 * @throws IllegalArgumentException when neither specialty nor department
+	 *         is given, the window is empty or k is not positive
+	 * @throws java.sql.SQLException when a query fails
+	 */
+	public List<Hit> search(String specialty, String department, Integer hospitalID,
+			LocalDateTime from, LocalDateTime to, int k) throws SQLException {
+		if (specialty == null && department == null)
+			throw new IllegalArgumentException("a specialty or a department name is required");
+		if (to == null)
+			to = from.plusDays(DEFAULT_WINDOW_DAYS);
+		if (!to.isAfter(from))
+			throw new IllegalArgumentException("the window must end after it starts: " + from + " to " + to);
+		if (k <= 0)
+			throw new IllegalArgumentException("k must be positive: " + k);
+
+		String sql = sqlFor(specialty, department, hospitalID);
+		List<Hit> hits = new ArrayList<Hit>(Math.min(k, 1024));
+		LocalDateTime start = from;
+		long days = this._firstSegmentDays;
+		while (hits.size() < k && start.isBefore(to)){
+			LocalDateTime end = start.plusDays(days);
+			if (end.isAfter(to))
+				end = to;
+			//segments are disjoint and ascending, so every hit of this one follows the previous ones
+			int missing = k - hits.size();
+			List<Object> params = new ArrayList<Object>();
+			Collections.addAll(params, start.toLocalDate(), end.toLocalDate(),
+				Timestamp.valueOf(start), Timestamp.valueOf(end), missing);
+			if (specialty != null)
+				params.add(specialty);
+			if (department != null)
+				params.add(department);
+			if (hospitalID != null)
+				params.add(hospitalID);
+			params.add(missing);
+
+			ColumnarResult rows = this._esql.executeQueryAndReturnColumns(sql, params.toArray());
+			for (int i = 0; i < rows.getRowCount(); ++i)
+				hits.add(new Hit(rows.getInt(i, 0), rows.getInt(i, 1), rows.getString(i, 2), rows.getString(i, 3),
+					rows.getString(i, 4), rows.getInt(i, 5), rows.getDate(i, 6), rows.getString(i, 7)));
+			start = end;
+			days *= 2;
+		}//end while
+		return hits;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with fixed, doubling bucket bounds from
+ * 50 microseconds to about 52 seconds plus one overflow bucket.
+ * Percentiles are reported as the upper bound of the bucket they fall in,
+ * so they overstate the true value by at most a factor of two.
+ *
+ */
+
+public class LatencyHistogram{
+	//upper bounds in nanoseconds, doubling from 50 us; the last bucket is unbounded
+	private static final long[] BOUNDS = new long[21];
+	static{
+		long b = 50000;
+		for (int i = 0; i < BOUNDS.length; ++i, b *= 2)
+			BOUNDS[i] = b;
+	}
+
+	private final AtomicLongArray _buckets = new AtomicLongArray(BOUNDS.length + 1);
+	private final AtomicLong _count = new AtomicLong();
+	private final AtomicLong _sumNanos = new AtomicLong();
+	private final AtomicLong _maxNanos = new AtomicLong();
+
+	/**
+	 * Records one observation.
+	 *
+	 * @param nanos the elapsed time in nanoseconds
+	 */
+	public void record(long nanos){
+		int i = 0;
+		while (i < BOUNDS.length && nanos > BOUNDS[i])
+			++i;
+		this._buckets.incrementAndGet(i);
+		this._count.incrementAndGet();
+		this._sumNanos.addAndGet(nanos);
+		long max;
+		do{
+			max = this._maxNanos.get();
+		}while (nanos > max && !this._maxNanos.compareAndSet(max, nanos));
+	}
+
+	public long getCount(){ return this._count.get(); }
+	public long getSumNanos(){ return this._sumNanos.get(); }
+	public long getMaxNanos(){ return this._maxNanos.get(); }
+
+	/**
+	 * @return the number of bucket bounds; bucket getBucketCount() is the
+	 *         overflow bucket
+	 */
+	public static int getBucketCount(){
+		return BOUNDS.length;
+	}
+
+	/**
+	 * @return the inclusive upper bound of bucket i in nanoseconds
+	 */
+	public static long getBound(int i){
+		return BOUNDS[i];
+	}
+
+	/**
+	 * @return the observations in bucket i; i == getBucketCount() is the
+	 *         overflow bucket
+	 */
+	public long getBucket(int i){
+		return this._buckets.get(i);
+	}
+
+	/**
+	 * @param q the quantile, between 0 and 1
+	 * @return the upper bound of the bucket holding quantile q in
+	 *         nanoseconds, the maximum for the overflow bucket, 0 when empty
+	 */
+	public long percentile(double q){
+		long total = 0;
+		long[] counts = new long[BOUNDS.length + 1];
+		for (int i = 0; i < counts.length; ++i)
+			total += counts[i] = this._buckets.get(i);
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(q * total));
+		long seen = 0;
+		for (int i = 0; i < BOUNDS.length; ++i){
+			seen += counts[i];
+			if (seen >= rank)
+				return Math.min(BOUNDS[i], getMaxNanos());
+		}//end for
+		return getMaxNanos();
+	}
+
+	/**
+	 * @return count, mean, p50, p90, p99 and max in milliseconds
+	 */
+	@Override
+	public String toString(){
+		long n = getCount();
+		return String.format("count=%d meanMs=%.3f p50Ms=%.3f p90Ms=%.3f p99Ms=%.3f maxMs=%.3f",
+			n, n == 0 ? 0.0 : getSumNanos() / 1e6 / n, percentile(0.5) / 1e6, percentile(0.9) / 1e6,
+			percentile(0.99) / 1e6, getMaxNanos() / 1e6);
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A thread-safe, size-bounded LRU map whose entries also expire after a
+ * fixed time to live. Values are loaded on a miss by the Loader given to
+ * get(); a null value is cached too, so repeated lookups of a missing key
+ * do not reach the database either.
+ *
+ * Loads run outside the lock. A load that overlaps an invalidation does
+ * not store its (possibly stale) value.
+ *
+ */
+
+public class LruCache<K, V>{
+	/**
+	 * Loads the value of a key that is not cached.
+	 */
+	public interface Loader<K, V>{
+		V load(K key) throws SQLException;
+	}
+
+	private static final class Entry<V>{
+		final V value;
+		final long expiresAt;
+
+		Entry(V value, long expiresAt){
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final String _name;
+	private final int _maxEntries;
+	private final long _ttlNanos;
+	private final LinkedHashMap<K, Entry<V>> _entries;
+	//bumped by every invalidation; loads started under an older value are discarded
+	private long _generation = 0;
+
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+	private final AtomicLong _evictions = new AtomicLong();
+	private final AtomicLong _expirations = new AtomicLong();
+	private final AtomicLong _invalidations = new AtomicLong();
+
+	/**
+	 * @param name label used in stats()
+	 * @param maxEntries entries kept before the least recently used is evicted
+	 * @param ttlMillis time an entry stays valid, or 0 for no expiry
+	 */
+	public LruCache(String name, final int maxEntries, long ttlMillis){
+		this._name = name;
+		this._maxEntries = maxEntries;
+		this._ttlNanos = ttlMillis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this._entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest){
+				if (size() <= maxEntries)
+					return false;
+				LruCache.this._evictions.incrementAndGet();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached value of key, loading it on a miss or expiry.
+	 *
+	 * @throws java.sql.SQLException when the loader fails; nothing is cached
+	 */
+	public V get(K key, Loader<K, V> loader) throws SQLException {
+		long generation;
+		synchronized (this){
+			Entry<V> e = this._entries.get(key);
+			if (e != null){
+				if (System.nanoTime() - e.expiresAt < 0){
+					this._hits.incrementAndGet();
+					return e.value;
+				}//end if
+				this._entries.remove(key);
+				this._expirations.incrementAndGet();
+			}//end if
+			generation = this._generation;
+		}
+		this._misses.incrementAndGet();
+		V value = loader.load(key);
+		synchronized (this){
+			if (generation == this._generation)
+				this._entries.put(key, new Entry<V>(value, expiry()));
+		}
+		return value;
+	}
+
+	/**
+	 * Stores a value known to be current, e.g. right after writing it.
+	 */
+	public synchronized void put(K key, V value){
+		this._entries.put(key, new Entry<V>(value, expiry()));
+	}
+
+	private long expiry(){
+		long now = System.nanoTime();
+		return this._ttlNanos == Long.MAX_VALUE ? now + (Long.MAX_VALUE >> 1) : now + this._ttlNanos;
+	}
+
+	public synchronized void invalidate(K key){
+		++this._generation;
+		this._invalidations.incrementAndGet();
+		this._entries.remove(key);
+	}
+
+	/**
+	 * Drops every entry whose key matches.
+	 */
+	public synchronized void invalidateIf(Predicate<K> matches){
+		++this._generation;
+		this._invalidations.incrementAndGet();
+		Iterator<K> it = this._entries.keySet().iterator();
+		while (it.hasNext())
+			if (matches.test(it.next()))
+				it.remove();
+	}
+
+	public synchronized void invalidateAll(){
+		++this._generation;
+		this._invalidations.incrementAndGet();
+		this._entries.clear();
+	}
+
+	public synchronized int size(){ return this._entries.size(); }
+	public int getMaxEntries(){ return this._maxEntries; }
+	public long getHits(){ return this._hits.get(); }
+	public long getMisses(){ return this._misses.get(); }
+	public long getEvictions(){ return this._evictions.get(); }
+	public long getExpirations(){ return this._expirations.get(); }
+	public long getInvalidations(){ return this._invalidations.get(); }
+
+	/**
+	 * @return a one-line summary of the counters
+	 */
+	public String stats(){
+		long hits = getHits();
+		long total = hits + getMisses();
+		return String.format("%s: size=%d/%d hits=%d misses=%d hitRatio=%.3f evicted=%d expired=%d invalidations=%d",
+			this._name, size(), this._maxEntries, hits, getMisses(), total == 0 ? 0.0 : (double) hits / total,
+			getEvictions(), getExpirations(), getInvalidations());
+	}
+}
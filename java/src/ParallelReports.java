@@ -0,0 +1,639 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports 7 and 8 computed in parallel. The doctors are split into shards
+ * by doctor_ID range, by department or by hospital (Department.hid); a
+ * fork/join pool runs the aggregate of each shard on its own pooled
+ * connection and merges the partial counts on the way back up, and the
+ * merged rows are sorted by count, doctor and status so every run prints
+ * the same order.
+ *
+ * The shards read one snapshot: a coordinating connection exports it with
+ * pg_export_snapshot() and each shard imports it, so the report is as
+ * consistent as the serial query. That connection is held for the whole
+ * report, so at most pool.maxSize - 1 shards run at once; with a pool of
+ * one connection the shards run one after the other, each in its own
+ * transaction.
+ *
+ * The menu uses it for options 7 and 8 when -Dreports.parallel=true;
+ * -Dreports.shardKey picks doctor (default), department or hospital and
+ * -Dreports.shards the number of shards (default: the number of
+ * processors).
+ *
+ * Report 7 is aggregated from Appointment and has_appointment in every
+ * shard; it does not read the doctor_status_count table of migration V003
+ * that the serial report 7 uses when it is installed, so it costs a scan
+ * of the base tables either way.
+ *
+ */
+
+public class ParallelReports{
+	static final String SNAPSHOT_SQL = "SELECT pg_export_snapshot()";
+	static final String DOCTOR_BOUNDS_SQL = "SELECT min(doctor_ID), max(doctor_ID) FROM Doctor";
+	//doctors per department, largest first, for balancing the shards
+	static final String DEPARTMENT_SIZES_SQL =
+		"SELECT did, count(*) FROM Doctor GROUP BY did ORDER BY 2 DESC, 1";
+	static final String HOSPITAL_SIZES_SQL =
+		"SELECT P.hid, count(*) FROM Doctor D, Department P WHERE P.dept_ID = D.did "
+		+ "GROUP BY P.hid ORDER BY 2 DESC, 1";
+	static final String STATUS_SHARD_SQL =
+		"SELECT D.doctor_ID, D.name, D.specialty, A.status, count(A.status) AS C "
+		+ "FROM Doctor D, Appointment A, has_appointment H "
+		+ "WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = H.appt_id AND %s "
+		+ "GROUP BY D.doctor_ID, D.name, D.specialty, A.status";
+	static final String PATIENTS_SHARD_SQL =
+		"SELECT D.doctor_ID, D.name, D.specialty, count(S.pid) AS C "
+		+ "FROM Doctor D, Searches S, has_appointment H, Appointment A "
+		+ "WHERE H.doctor_id = D.doctor_ID AND A.status = ? AND A.appnt_ID = S.aid AND H.appt_id = S.aid AND %s "
+		+ "GROUP BY D.doctor_ID, D.name, D.specialty";
+
+	/**
+	 * How the doctors are split into shards.
+	 */
+	public enum ShardKey{
+		DOCTOR("D.doctor_ID BETWEEN ? AND ?"),
+		DEPARTMENT("D.did = ANY (?)"),
+		HOSPITAL("D.did IN (SELECT dept_ID FROM Department WHERE hid = ANY (?))");
+
+		final String statusSql;
+		final String patientsSql;
+
+		ShardKey(String predicate){
+			this.statusSql = String.format(STATUS_SHARD_SQL, predicate);
+			this.patientsSql = String.format(PATIENTS_SHARD_SQL, predicate);
+		}
+
+		/**
+		 * @param name a key name in any case
+		 * @return the key
+		 * @throws java.lang.IllegalArgumentException when there is no such key
+		 */
+		public static ShardKey parse(String name){
+			try{
+				return valueOf(name.trim().toUpperCase());
+			}catch (IllegalArgumentException e){
+				throw new IllegalArgumentException("shard key must be one of " + Arrays.toString(values())
+					+ ", got '" + name + "'");
+			}//end try
+		}
+	}
+
+	/**
+	 * A row of a report: the count of one doctor, and for report 7 of one
+	 * status.
+	 */
+	public static final class Row{
+		public final int doctorID;
+		public final String name;
+		public final String specialty;
+		//null in report 8
+		public final String status;
+		public long count;
+
+		Row(int doctorID, String name, String specialty, String status, long count){
+			this.doctorID = doctorID;
+			this.name = name;
+			this.specialty = specialty;
+			this.status = status;
+			this.count = count;
+		}
+
+		String key(){
+			return this.status == null ? Integer.toString(this.doctorID) : this.doctorID + "/" + this.status;
+		}
+	}
+
+	//count descending, then doctor and status, so ties print in one order
+	static final Comparator<Row> ORDER = (a, b) -> {
+		if (a.count != b.count)
+			return a.count > b.count ? -1 : 1;
+		if (a.doctorID != b.doctorID)
+			return a.doctorID < b.doctorID ? -1 : 1;
+		if (a.status == null || b.status == null)
+			return a.status == null ? (b.status == null ? 0 : -1) : 1;
+		return a.status.compareTo(b.status);
+	};
+
+	/**
+	 * The merged rows of one report and how they were computed.
+	 */
+	public static final class Result{
+		public final List<Row> rows;
+		public final ShardKey key;
+		public final int shards;
+		public final int parallelism;
+		public final long millis;
+		//the longest shard query, the lower bound of millis
+		public final long slowestShardMillis;
+		private final boolean _withStatus;
+
+		Result(List<Row> rows, ShardKey key, int shards, int parallelism, long millis, long slowestShardMillis,
+				boolean withStatus){
+			this.rows = rows;
+			this.key = key;
+			this.shards = shards;
+			this.parallelism = parallelism;
+			this.millis = millis;
+			this.slowestShardMillis = slowestShardMillis;
+			this._withStatus = withStatus;
+		}
+
+		/**
+		 * Writes the rows with the columns of the serial query.
+		 *
+		 * @param sink where to write them
+		 * @return the number of rows written
+		 * @throws java.io.IOException when writing fails
+		 */
+		public int write(ResultSink sink) throws IOException {
+			if (this.rows.isEmpty())
+				return 0;
+			String[] cells;
+			if (this._withStatus){
+				sink.columns(new String[]{ "doctor_id", "name", "specialty", "status", "c" },
+					new boolean[]{ true, false, false, false, true });
+				cells = new String[5];
+			}else{
+				sink.columns(new String[]{ "doctor_id", "name", "specialty", "c" },
+					new boolean[]{ true, false, false, true });
+				cells = new String[4];
+			}//end if
+			for (Row r : this.rows){
+				cells[0] = Integer.toString(r.doctorID);
+				cells[1] = r.name;
+				cells[2] = r.specialty;
+				if (this._withStatus)
+					cells[3] = r.status;
+				cells[cells.length - 1] = Long.toString(r.count);
+				sink.write(cells);
+			}//end for
+			return this.rows.size();
+		}
+
+		/**
+		 * @return a one-line note on how the report was computed
+		 */
+		public String describe(){
+			return String.format("(%d shards by %s, %d at a time, %d ms, slowest shard %d ms)", this.shards,
+				this.key.name().toLowerCase(), this.parallelism, this.millis, this.slowestShardMillis);
+		}
+	}
+
+	private final DBproject _esql;
+	private final ShardKey _key;
+	private final int _shards;
+	private final ForkJoinPool _forkJoin;
+	private final int _parallelism;
+	//whether the shards share a snapshot, which costs one connection
+	private final boolean _sharedSnapshot;
+
+	public ParallelReports(DBproject esql){
+		this(esql, shardKeyProperty(), shardsProperty());
+	}
+
+	/**
+	 * Checks -Dreports.shardKey and -Dreports.shards, so that DBproject can
+	 * reject them before it connects and starts its background work.
+	 *
+	 * @throws java.lang.IllegalArgumentException when a value is invalid
+	 */
+	static void checkProperties(){
+		shardKeyProperty();
+		shardsProperty();
+	}
+
+	private static ShardKey shardKeyProperty(){
+		return ShardKey.parse(System.getProperty("reports.shardKey", "doctor"));
+	}
+
+	private static int shardsProperty(){
+		int shards = Integer.getInteger("reports.shards", Runtime.getRuntime().availableProcessors());
+		if (shards <= 0)
+			throw new IllegalArgumentException("reports.shards must be positive, got " + shards);
+		return shards;
+	}
+
+	/**
+	 * @param esql the application, for its pool and metrics
+	 * @param key how to split the doctors
+	 * @param shards the number of shards; fewer are used when there are
+	 *        fewer distinct keys
+	 */
+	public ParallelReports(DBproject esql, ShardKey key, int shards){
+		if (shards <= 0)
+			throw new IllegalArgumentException("the number of shards must be positive");
+		this._esql = esql;
+		this._key = key;
+		this._shards = shards;
+		int connections = esql.getPool().getMaxSize();
+		this._sharedSnapshot = connections > 1;
+		this._parallelism = Math.max(1, Math.min(shards, this._sharedSnapshot ? connections - 1 : 1));
+		this._forkJoin = new ForkJoinPool(this._parallelism);
+	}
+
+	public ShardKey getShardKey(){ return this._key; }
+	public int getShardCount(){ return this._shards; }
+	public int getParallelism(){ return this._parallelism; }
+
+	/**
+	 * Report 7: the number of appointments of each status per doctor.
+	 *
+	 * @return the merged rows, in ORDER
+	 * @throws java.sql.SQLException when a shard fails
+	 */
+	public Result statusPerDoctor() throws SQLException {
+		return run(this._key.statusSql, null);
+	}
+
+	/**
+	 * Report 8: the number of patients per doctor with appointments of the
+	 * given status.
+	 *
+	 * @param status the appointment status
+	 * @return the merged rows, in ORDER
+	 * @throws java.sql.SQLException when a shard fails
+	 */
+	public Result patientsCountWithStatus(String status) throws SQLException {
+		return run(this._key.patientsSql, status);
+	}
+
+	public void stop(){
+		this._forkJoin.shutdownNow();
+	}
+
+	private Result run(String sql, String status) throws SQLException {
+		long start = System.nanoTime();
+		boolean withStatus = status == null;
+		ConnectionPool pool = this._esql.getPool();
+		PooledConnection coordinator = pool.borrow();
+		Connection c = coordinator.connection();
+		int previous = c.getTransactionIsolation();
+		try{
+			String snapshot = null;
+			if (this._sharedSnapshot){
+				c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+				c.setAutoCommit(false);
+				Statement stmt = c.createStatement();
+				ResultSet rs = stmt.executeQuery(SNAPSHOT_SQL);
+				rs.next();
+				snapshot = rs.getString(1);
+				stmt.close();
+			}//end if
+			//the shards are planned in the snapshot they read
+			List<Object> keys = plan(c);
+			if (!this._sharedSnapshot){
+				//the only connection is needed by the shards
+				pool.release(coordinator);
+				coordinator = null;
+			}//end if
+			Shard[] shards = new Shard[keys.size()];
+			for (int i = 0; i < shards.length; ++i){
+				Object k = keys.get(i);
+				Object[] params = k instanceof int[] ? new Object[]{ k } : (Object[]) k;
+				if (status != null){
+					Object[] statusFirst = new Object[params.length + 1];
+					statusFirst[0] = status;
+					System.arraycopy(params, 0, statusFirst, 1, params.length);
+					params = statusFirst;
+				}//end if
+				shards[i] = new Shard(sql, params, withStatus, snapshot);
+			}//end for
+			Map<String, Row> merged = shards.length == 0 ? new HashMap<String, Row>()
+				: this._forkJoin.invoke(new Merge(shards, 0, shards.length));
+			if (coordinator != null)
+				c.commit();
+
+			List<Row> rows = new ArrayList<Row>(merged.values());
+			rows.sort(ORDER);
+			long slowest = 0;
+			for (Shard s : shards)
+				slowest = Math.max(slowest, s.nanos);
+			return new Result(rows, this._key, shards.length, Math.min(this._parallelism, Math.max(1, shards.length)),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), TimeUnit.NANOSECONDS.toMillis(slowest),
+				withStatus);
+		}catch (RuntimeException e){
+			for (Throwable t = e; t != null; t = t.getCause())
+				if (t instanceof ShardFailure)
+					throw ((ShardFailure) t).sqlCause;
+			throw e;
+		}finally{
+			if (coordinator != null){
+				try{
+					c.setAutoCommit(true);
+					c.setTransactionIsolation(previous);
+				}finally{
+					pool.release(coordinator);
+				}//end try
+			}//end if
+		}//end try
+	}
+
+	/**
+	 * Splits the key space into at most _shards parts.
+	 *
+	 * @return the bind values of the shard predicate of each shard: an
+	 *         Object[] {lo, hi} of doctor IDs or an int[] of department or
+	 *         hospital IDs
+	 */
+	private List<Object> plan(Connection c) throws SQLException {
+		List<Object> shards = new ArrayList<Object>();
+		Statement stmt = c.createStatement();
+		try{
+			if (this._key == ShardKey.DOCTOR){
+				ResultSet rs = stmt.executeQuery(DOCTOR_BOUNDS_SQL);
+				rs.next();
+				if (rs.getObject(1) == null)
+					return shards;
+				long lo = rs.getInt(1), hi = rs.getInt(2);
+				long span = hi - lo + 1;
+				long parts = Math.min(span, this._shards);
+				long step = (span + parts - 1) / parts;
+				for (long from = lo; from <= hi; from += step)
+					shards.add(new Object[]{ (int) from, (int) Math.min(hi, from + step - 1) });
+				return shards;
+			}//end if
+
+			//largest first into the lightest shard, so the shards get about
+			//the same number of doctors
+			List<int[]> sizes = new ArrayList<int[]>();
+			ResultSet rs = stmt.executeQuery(this._key == ShardKey.DEPARTMENT ? DEPARTMENT_SIZES_SQL : HOSPITAL_SIZES_SQL);
+			while (rs.next())
+				sizes.add(new int[]{ rs.getInt(1), rs.getInt(2) });
+			int n = Math.min(sizes.size(), this._shards);
+			long[] load = new long[n];
+			List<List<Integer>> members = new ArrayList<List<Integer>>();
+			for (int i = 0; i < n; ++i)
+				members.add(new ArrayList<Integer>());
+			for (int[] size : sizes){
+				int lightest = 0;
+				for (int i = 1; i < n; ++i)
+					if (load[i] < load[lightest])
+						lightest = i;
+				load[lightest] += size[1];
+				members.get(lightest).add(size[0]);
+			}//end for
+			for (List<Integer> ids : members){
+				int[] a = new int[ids.size()];
+				for (int i = 0; i < a.length; ++i)
+					a[i] = ids.get(i);
+				Arrays.sort(a);
+				shards.add(a);
+			}//end for
+			return shards;
+		}finally{
+			stmt.close();
+		}//end try
+	}
+
+	/**
+	 * The aggregate of one shard, run on its own connection.
+	 */
+	private final class Shard{
+		final String sql;
+		final Object[] params;
+		final boolean withStatus;
+		final String snapshot;
+		long nanos;
+
+		Shard(String sql, Object[] params, boolean withStatus, String snapshot){
+			this.sql = sql;
+			this.params = params;
+			this.withStatus = withStatus;
+			this.snapshot = snapshot;
+		}
+
+		Map<String, Row> run() throws SQLException {
+			long start = System.nanoTime();
+			ConnectionPool pool = ParallelReports.this._esql.getPool();
+			QueryMetrics.Call call = ParallelReports.this._esql.getMetrics().start(this.sql, this.params);
+			try{
+				PooledConnection conn = pool.borrow();
+				call.borrowed();
+				Connection c = conn.connection();
+				int previous = c.getTransactionIsolation();
+				try{
+					//read-only, but in a transaction either way so it can read the
+					//exported snapshot and so the driver streams the rows
+					if (this.snapshot != null)
+						c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+					c.setAutoCommit(false);
+					if (this.snapshot != null){
+						Statement stmt = c.createStatement();
+						//the id comes from pg_export_snapshot(), not from input
+						stmt.execute("SET TRANSACTION SNAPSHOT '" + this.snapshot + "'");
+						stmt.close();
+					}//end if
+					Map<String, Row> rows = new HashMap<String, Row>();
+					PreparedStatement stmt = DBproject.prepare(conn, this.sql, this.params);
+					ResultSet rs = stmt.executeQuery();
+					while (rs.next()){
+						Row r = this.withStatus
+							? new Row(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getLong(5))
+							: new Row(rs.getInt(1), rs.getString(2), rs.getString(3), null, rs.getLong(4));
+						merge(rows, r);
+					}//end while
+					rs.close();
+					c.commit();
+					call.addRows(rows.size());
+					return rows;
+				}finally{
+					try{
+						c.setAutoCommit(true);
+						c.setTransactionIsolation(previous);
+					}finally{
+						pool.release(conn);
+					}//end try
+				}//end try
+			}catch (SQLException e){
+				call.failed(e);
+				throw e;
+			}finally{
+				call.end();
+				this.nanos = System.nanoTime() - start;
+			}//end try
+		}
+	}
+
+	/**
+	 * Runs shards [from, to): one directly, more by forking the first half
+	 * and merging the two partial aggregates.
+	 */
+	private static final class Merge extends RecursiveTask<Map<String, Row>>{
+		private static final long serialVersionUID = 1L;
+
+		private final Shard[] _shards;
+		private final int _from;
+		private final int _to;
+
+		Merge(Shard[] shards, int from, int to){
+			this._shards = shards;
+			this._from = from;
+			this._to = to;
+		}
+
+		@Override
+		protected Map<String, Row> compute(){
+			if (this._to - this._from == 1){
+				try{
+					return this._shards[this._from].run();
+				}catch (SQLException e){
+					throw new ShardFailure(e);
+				}//end try
+			}//end if
+			int mid = (this._from + this._to) >>> 1;
+			Merge left = new Merge(this._shards, this._from, mid);
+			left.fork();
+			Map<String, Row> right = new Merge(this._shards, mid, this._to).compute();
+			Map<String, Row> partial = left.join();
+			//fold the smaller map into the larger
+			if (partial.size() < right.size()){
+				Map<String, Row> t = partial;
+				partial = right;
+				right = t;
+			}//end if
+			for (Row r : right.values())
+				merge(partial, r);
+			return partial;
+		}
+	}
+
+	private static void merge(Map<String, Row> into, Row r){
+		Row existing = into.putIfAbsent(r.key(), r);
+		if (existing != null)
+			existing.count += r.count;
+	}
+
+	/**
+	 * Carries the SQLException of a shard out of the fork/join pool.
+	 */
+	private static final class ShardFailure extends RuntimeException{
+		private static final long serialVersionUID = 1L;
+
+		final SQLException sqlCause;
+
+		ShardFailure(SQLException cause){
+			super(cause.getMessage(), cause);
+			this.sqlCause = cause;
+		}
+	}
+
+	/**
+	 * Runs reports 7 and 8 with 1 to N shards and prints how the time
+	 * scales, checking that every run merges to the rows of the 1-shard run.
+	 *
+	 * @param args dbname port user [--by doctor|department|hospital]
+	 *        [--shards 1,2,4,8] [--status AC] [--rounds N]
+	 */
+	public static void main(String[] args){
+		ShardKey key = ShardKey.DOCTOR;
+		String[] counts = { "1", "2", "4", "8" };
+		String status = "AC";
+		int rounds = 5;
+		boolean valid = args.length >= 3;
+		try{
+			for (int i = 3; i + 1 < args.length; i += 2){
+				if ("--by".equals(args[i]))
+					key = ShardKey.parse(args[i + 1]);
+				else if ("--shards".equals(args[i]))
+					counts = args[i + 1].split(",");
+				else if ("--status".equals(args[i]))
+					status = args[i + 1].toUpperCase();
+				else if ("--rounds".equals(args[i]))
+					rounds = Integer.parseInt(args[i + 1]);
+			}//end for
+		}catch (IllegalArgumentException e){
+			System.err.println(e.getMessage());
+			valid = false;
+		}//end try
+		//every shard count is timed over at least one round
+		if (!valid || rounds < 1){
+			System.err.println("Usage: java [-classpath <classpath>] " + ParallelReports.class.getName()
+				+ " <dbname> <port> <user> [--by doctor|department|hospital] [--shards 1,2,4,8]"
+				+ " [--status AC] [--rounds N]");
+			System.exit(1);
+		}//end if
+
+		DBproject esql = null;
+		try{
+			esql = new DBproject(args[0], args[1], args[2], "");
+			System.out.printf("%-8s %6s %9s %11s %9s %11s %s%n", "shards", "at once", "report 7", "speed-up",
+				"report 8", "speed-up", "rows");
+			List<Row> first7 = null, first8 = null;
+			long base7 = 0, base8 = 0;
+			for (String count : counts){
+				ParallelReports reports = new ParallelReports(esql, key, Integer.parseInt(count.trim()));
+				try{
+					long[] t7 = new long[rounds], t8 = new long[rounds];
+					Result r7 = null, r8 = null;
+					//one untimed round to warm the caches and the statements
+					reports.statusPerDoctor();
+					reports.patientsCountWithStatus(status);
+					for (int r = 0; r < rounds; ++r){
+						long start = System.nanoTime();
+						r7 = reports.statusPerDoctor();
+						t7[r] = System.nanoTime() - start;
+						start = System.nanoTime();
+						r8 = reports.patientsCountWithStatus(status);
+						t8[r] = System.nanoTime() - start;
+					}//end for
+					Arrays.sort(t7);
+					Arrays.sort(t8);
+					long m7 = t7[rounds / 2], m8 = t8[rounds / 2];
+					if (first7 == null){
+						first7 = r7.rows;
+						first8 = r8.rows;
+						base7 = m7;
+						base8 = m8;
+					}//end if
+					System.out.printf("%-8d %6d %7.1fms %10.2fx %7.1fms %10.2fx %d/%d%s%n", r7.shards, r7.parallelism,
+						m7 / 1e6, (double) base7 / m7, m8 / 1e6, (double) base8 / m8, r7.rows.size(), r8.rows.size(),
+						same(first7, r7.rows) && same(first8, r8.rows) ? "" : "  MISMATCH");
+				}finally{
+					reports.stop();
+				}//end try
+			}//end for
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}finally{
+			if (esql != null)
+				esql.cleanup();
+		}//end try
+	}
+
+	private static boolean same(List<Row> a, List<Row> b){
+		if (a.size() != b.size())
+			return false;
+		for (int i = 0; i < a.size(); ++i)
+			if (!a.get(i).key().equals(b.get(i).key()) || a.get(i).count != b.get(i).count)
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Report 8, patients per doctor with a given appointment status, read
+ * either live or from the materialized view of migration V004.
+ *
+ * The view is refreshed with REFRESH MATERIALIZED VIEW CONCURRENTLY, on
+ * demand through refresh() or every -Dreport8.refreshSeconds. Each result
+ * carries the time of the refresh it was read from, so callers can show
+ * how stale it is. In AUTO mode (-Dreport8.source, default auto) the view
+ * is read while it is at most -Dreport8.maxStalenessSeconds old and the
+ * live query runs otherwise.
+ *
+ */
+
+public class PatientsPerDoctorReport{
+	public static final long DEFAULT_MAX_STALENESS_SECONDS = 60;
+	static final String VIEW = "patients_per_doctor_status";
+
+	static final String INSTALLED_SQL =
+		"SELECT count(*) FROM pg_class WHERE relname = '" + VIEW + "'";
+	static final String FROM_VIEW_SQL =
+		"SELECT doctor_ID, name, specialty, C "
+		+ "FROM " + VIEW + " WHERE status = ?";
+	static final String REFRESHED_AT_SQL =
+		"SELECT refreshed_at::text, (extract(epoch FROM now() - refreshed_at) * 1000)::bigint "
+		+ "FROM matview_refresh WHERE name = '" + VIEW + "'";
+	static final String REFRESH_SQL =
+		"REFRESH MATERIALIZED VIEW CONCURRENTLY " + VIEW;
+	static final String MARK_REFRESHED_SQL =
+		"UPDATE matview_refresh SET refreshed_at = now() WHERE name = '" + VIEW + "'";
+
+	/**
+	 * Where a report is read from.
+	 */
+	public enum Source{
+		LIVE,
+		VIEW,
+		//the view while it is fresh enough, LIVE otherwise
+		AUTO
+	}
+
+	/**
+	 * The rows of one report and where they came from.
+	 */
+	public static final class Result{
+		public final ColumnarResult rows;
+		public final Source source;
+		//time of the refresh the rows were read from; null for LIVE
+		public final String asOf;
+		//age of that refresh when the report ran; 0 for LIVE
+		public final long stalenessMillis;
+
+		Result(ColumnarResult rows, Source source, String asOf, long stalenessMillis){
+			this.rows = rows;
+			this.source = source;
+			this.asOf = asOf;
+			this.stalenessMillis = stalenessMillis;
+		}
+
+		/**
+		 * @return a one-line note on where the rows came from
+		 */
+		public String describe(){
+			if (this.source == Source.LIVE)
+				return "(live)";
+			return String.format("(from %s, refreshed at %s, %.1f s ago)", VIEW, this.asOf, this.stalenessMillis / 1000.0);
+		}
+	}
+
+	private final DBproject _esql;
+	private final boolean _installed;
+	private final Source _defaultSource;
+	private final long _maxStalenessSeconds;
+	private final AtomicLong _refreshes = new AtomicLong();
+	private final AtomicLong _refreshFailures = new AtomicLong();
+	private ScheduledExecutorService _refresher;
+
+	public PatientsPerDoctorReport(DBproject esql) throws SQLException {
+		this(esql, Source.valueOf(System.getProperty("report8.source", "auto").toUpperCase()),
+			Long.getLong("report8.maxStalenessSeconds", DEFAULT_MAX_STALENESS_SECONDS));
+	}
+
+	public PatientsPerDoctorReport(DBproject esql, Source defaultSource, long maxStalenessSeconds) throws SQLException {
+		this._esql = esql;
+		this._defaultSource = defaultSource;
+		this._maxStalenessSeconds = maxStalenessSeconds;
+		this._installed = esql.executeQueryAndReturnColumns(INSTALLED_SQL).getLong(0, 0) > 0;
+	}
+
+	/**
+	 * @return true when migration V004 has been applied
+	 */
+	public boolean isInstalled(){
+		return this._installed;
+	}
+
+	/**
+	 * Runs the report from the default source.
+	 */
+	public Result run(String status) throws SQLException {
+		return run(status, this._defaultSource);
+	}
+
+	/**
+	 * Runs the report.
+	 *
+	 * @param status the appointment status
+	 * @param source where to read it from; VIEW falls back to LIVE when the
+	 *        view is not installed
+	 * @return the rows and the staleness of the source
+	 * @throws java.sql.SQLException when a query fails
+	 */
+	public Result run(String status, Source source) throws SQLException {
+		if (source != Source.LIVE && this._installed){
+			//read the refresh time first, so the rows are at least as fresh as reported
+			ColumnarResult refreshed = this._esql.executeQueryAndReturnColumns(REFRESHED_AT_SQL);
+			if (refreshed.getRowCount() > 0){
+				long age = refreshed.getLong(0, 1);
+				if (source == Source.VIEW || age <= this._maxStalenessSeconds * 1000)
+					return new Result(this._esql.executeQueryAndReturnColumns(FROM_VIEW_SQL, status),
+						Source.VIEW, refreshed.getString(0, 0), age);
+			}//end if
+		}//end if
+		return new Result(this._esql.executeQueryAndReturnColumns(DBproject.PATIENTS_COUNT_WITH_STATUS_SQL, status),
+			Source.LIVE, null, 0);
+	}
+
+	/**
+	 * Refreshes the view without blocking its readers and records the time
+	 * of the refresh.
+	 *
+	 * @return how long the refresh took, in milliseconds
+	 * @throws java.sql.SQLException when the view is not installed or the
+	 *         refresh fails
+	 */
+	public long refresh() throws SQLException {
+		if (!this._installed)
+			throw new SQLException("Materialized view " + VIEW + " is not installed, apply migration V004");
+		long start = System.nanoTime();
+		QueryMetrics.Call call = this._esql.getMetrics().start(REFRESH_SQL, null);
+		PooledConnection conn = null;
+		try{
+			conn = this._esql.getPool().borrow();
+			call.borrowed();
+			Connection c = conn.connection();
+			c.setAutoCommit(false);
+			Statement stmt = c.createStatement();
+			stmt.execute(REFRESH_SQL);
+			//now() is the start of this transaction, which the refresh's snapshot follows
+			stmt.executeUpdate(MARK_REFRESHED_SQL);
+			stmt.close();
+			c.commit();
+		}catch (SQLException e){
+			call.failed(e);
+			throw e;
+		}finally{
+			//rolls back a failed refresh and restores autocommit
+			this._esql.getPool().release(conn);
+			call.end();
+		}//end try
+		this._refreshes.incrementAndGet();
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+	}
+
+	/**
+	 * Refreshes the view every period seconds until stop(). Failures are
+	 * counted and retried at the next period.
+	 */
+	public synchronized void refreshEvery(long seconds){
+		if (seconds <= 0 || !this._installed || this._refresher != null)
+			return;
+		this._refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "report8-refresher");
+			t.setDaemon(true);
+			return t;
+		});
+		this._refresher.scheduleWithFixedDelay(() -> {
+			try{
+				refresh();
+			}catch (SQLException e){
+				this._refreshFailures.incrementAndGet();
+			}//end try
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stop(){
+		if (this._refresher != null)
+			this._refresher.shutdownNow();
+		this._refresher = null;
+	}
+
+	public long getRefreshCount(){ return this._refreshes.get(); }
+	public long getRefreshFailureCount(){ return this._refreshFailures.get(); }
+
+	/**
+	 * Refreshes the view once, or every N seconds until stopped.
+	 *
+	 * @param args <dbname> <port> <user> [--every N]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println("Usage: java [-classpath <classpath>] " + PatientsPerDoctorReport.class.getName()
+				+ " <dbname> <port> <user> [--every N]");
+			return;
+		}//end if
+		long every = 0;
+		for (int i = 3; i < args.length; ++i)
+			if ("--every".equals(args[i]) && i + 1 < args.length)
+				every = Long.parseLong(args[++i]);
+
+		DBproject esql = null;
+		try{
+			esql = new DBproject(args[0], args[1], args[2], "");
+			PatientsPerDoctorReport report = esql.getPatientsPerDoctorReport();
+			do{
+				System.out.println("Refreshed " + VIEW + " in " + report.refresh() + " ms");
+				if (every > 0)
+					Thread.sleep(every * 1000);
+			}while (every > 0);
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}finally{
+			if (esql != null)
+				esql.cleanup();
+		}//end try
+	}
+}
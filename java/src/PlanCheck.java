@@ -0,0 +1,305 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class runs EXPLAIN (ANALYZE, BUFFERS) on the menu queries with
+ * realistic parameters taken from the data and fails when a query reads a
+ * large table with a sequential scan, i.e. when the indexes of
+ * sql/migrations no longer serve it. Tables with fewer than minRows rows
+ * (pg_class.reltuples) are ignored, so the check only bites at scale; load
+ * a large dataset first, e.g. with DataGenerator.
+ *
+ * Report 7 aggregates every appointment and is expected to read them all,
+ * so only its form over doctor_status_count (migration V003) is checked,
+ * which must not touch the appointment tables. Report 8 may scan Doctor, but not the appointment
+ * side of its join.
+ *
+ * When Appointment is partitioned (migration V005) its partitions count
+ * as appointment, and the date range queries must also be pruned: a check
+ * fails when it reads more partitions than its dates span.
+ *
+ * The queries run inside a transaction that is rolled back, since EXPLAIN
+ * ANALYZE executes them (the booking lock query takes row locks).
+ *
+ */
+
+public class PlanCheck{
+	public static final long DEFAULT_MIN_ROWS = 10000;
+
+	private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\S+)");
+	private static final Pattern PARTITION = Pattern.compile(" on (appointment_(?:p\\d{6}|default))\\b");
+
+	/**
+	 * A query to explain and the tables it must not scan sequentially
+	 * (null means none of the tables).
+	 */
+	static final class Check{
+		final String name;
+		final String sql;
+		final Object[] params;
+		final Set<String> guarded;
+		//most Appointment partitions the query may read, -1 for any
+		int maxPartitions = -1;
+
+		Check(String name, String sql, Object[] params, String... guarded){
+			this.name = name;
+			this.sql = sql;
+			this.params = params;
+			this.guarded = guarded.length == 0 ? null : new HashSet<String>(Arrays.asList(guarded));
+		}
+
+		Check partitions(int max){
+			this.maxPartitions = max;
+			return this;
+		}
+	}
+
+	/**
+	 * A sequential scan that broke a check.
+	 */
+	static final class Violation{
+		final String check;
+		final String relation;
+		final long rows;
+		//what went wrong when it was not a sequential scan
+		final String detail;
+
+		Violation(String check, String relation, long rows){
+			this.check = check;
+			this.relation = relation;
+			this.rows = rows;
+			this.detail = null;
+		}
+
+		Violation(String check, String detail){
+			this.check = check;
+			this.relation = null;
+			this.rows = 0;
+			this.detail = detail;
+		}
+
+		@Override
+		public String toString(){
+			if (this.detail != null)
+				return this.check + ": " + this.detail;
+			return this.check + ": Seq Scan on " + this.relation + " (" + this.rows + " rows)";
+		}
+	}
+
+	private final Connection _connection;
+	private final long _minRows;
+	private final Map<String, Long> _relRows = new HashMap<String, Long>();
+
+	public PlanCheck(Connection connection, long minRows){
+		this._connection = connection;
+		this._minRows = minRows;
+	}
+
+	/**
+	 * Builds the checks for the menu queries, with parameters that select
+	 * the busiest doctor and department and a date with open slots.
+	 */
+	List<Check> checks() throws SQLException {
+		int doctor = queryInt("SELECT doctor_id FROM has_appointment GROUP BY doctor_id ORDER BY count(*) DESC LIMIT 1", 0);
+		String dept = queryString("SELECT dept_name FROM request_maintenance GROUP BY dept_name ORDER BY count(*) DESC LIMIT 1", "Cardiology");
+		LocalDate day = queryDate("SELECT adate FROM Appointment WHERE status = 'AV' GROUP BY adate ORDER BY count(*) DESC LIMIT 1", LocalDate.now());
+		int appt = queryInt("SELECT appt_id FROM has_appointment WHERE doctor_id = " + doctor + " LIMIT 1", 0);
+
+		List<Check> checks = new ArrayList<Check>();
+		//61 days span at most three months
+		checks.add(new Check("5 appointments of doctor", DBproject.LIST_APPOINTMENTS_OF_DOCTOR_SQL,
+			new Object[]{ doctor, day.minusDays(30), day.plusDays(30) }).partitions(3));
+		checks.add(new Check("6 available appointments of department", DBproject.LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT_SQL,
+			new Object[]{ dept, day }).partitions(1));
+		int[] deptDoctors = queryInts("SELECT DISTINCT did FROM request_maintenance WHERE dept_name = '" + dept.replace("'", "''") + "'");
+		checks.add(new Check("6 available appointments of department's doctors", DBproject.LIST_AVAILABLE_APPOINTMENTS_OF_DOCTORS_SQL,
+			new Object[]{ deptDoctors, day }).partitions(1));
+		if (queryInt("SELECT count(*) FROM pg_class WHERE relname = 'doctor_status_count'", 0) > 0)
+			checks.add(new Check("7 status counts per doctor", DBproject.STATUS_COUNTS_PER_DOCTOR_SQL,
+				new Object[0], "appointment", "has_appointment"));
+		checks.add(new Check("8 patients per doctor with status AC", DBproject.PATIENTS_COUNT_WITH_STATUS_SQL,
+			new Object[]{ "AC" }, "appointment", "searches", "has_appointment"));
+		if (queryInt("SELECT count(*) FROM pg_attribute WHERE attrelid = 'appointment'::regclass AND attname = 'slot'", 0) > 0){
+			checks.add(new Check("open slots of department's doctors after 14:00", DBproject.OPEN_SLOTS_SQL,
+				new Object[]{ deptDoctors, Timestamp.valueOf(day.atTime(14, 0)), Timestamp.valueOf(day.plusDays(1).atStartOfDay()),
+					day.minusDays(1), day, 20 }).partitions(2));
+			String specialty = queryString("SELECT specialty FROM Doctor GROUP BY specialty ORDER BY count(*) DESC LIMIT 1", "Cardiology");
+			checks.add(new Check("11 earliest available of a specialty", EarliestAvailableSearch.sqlFor(specialty, null, null),
+				new Object[]{ day, day.plusDays(7), Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(7).atStartOfDay()),
+					10, specialty, 10 }, "appointment", "has_appointment").partitions(2));
+		}//end if
+		//one status is a large share of the view, so only its source tables are guarded
+		if (queryInt(PatientsPerDoctorReport.INSTALLED_SQL, 0) > 0)
+			checks.add(new Check("8 patients per doctor from view", PatientsPerDoctorReport.FROM_VIEW_SQL,
+				new Object[]{ "AC" }, "appointment", "searches", "has_appointment"));
+		if (queryInt(AppointmentPartitions.INSTALLED_SQL, 0) > 0)
+			checks.add(new Check("4 booking lock", AppointmentBooker.LOCK_SLOT_PARTITIONED_SQL,
+				new Object[]{ appt, doctor }).partitions(1));
+		else
+			checks.add(new Check("4 booking lock", AppointmentBooker.LOCK_SLOT_SQL,
+				new Object[]{ appt, doctor }));
+		return checks;
+	}
+
+	/**
+	 * Explains every check, printing each plan.
+	 *
+	 * @return the sequential scans that broke a check
+	 * @throws java.sql.SQLException when a query cannot be explained
+	 */
+	public List<Violation> run() throws SQLException {
+		List<Violation> violations = new ArrayList<Violation>();
+		boolean autoCommit = this._connection.getAutoCommit();
+		this._connection.setAutoCommit(false);
+		try{
+			for (Check check : checks()){
+				System.out.println("== " + check.name);
+				PreparedStatement stmt = this._connection.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + check.sql);
+				DBproject.bind(stmt, check.params);
+				ResultSet rs = stmt.executeQuery();
+				Set<String> partitions = new HashSet<String>();
+				while (rs.next()){
+					String line = rs.getString(1);
+					System.out.println(line);
+					Matcher p = PARTITION.matcher(line);
+					if (p.find() && !line.contains("(never executed)"))
+						partitions.add(p.group(1));
+					Matcher m = SEQ_SCAN.matcher(line);
+					if (!m.find())
+						continue;
+					String rel = m.group(1).toLowerCase();
+					String table = PARTITION.matcher(" on " + rel).matches() ? "appointment" : rel;
+					long rows = relationRows(rel);
+					if (rows >= this._minRows && (check.guarded == null || check.guarded.contains(table)))
+						violations.add(new Violation(check.name, rel, rows));
+				}//end while
+				stmt.close();
+				if (check.maxPartitions >= 0 && partitions.size() > check.maxPartitions)
+					violations.add(new Violation(check.name, "reads " + partitions.size()
+						+ " Appointment partitions, at most " + check.maxPartitions + " expected"));
+				this._connection.rollback();
+			}//end for
+		}finally{
+			this._connection.rollback();
+			this._connection.setAutoCommit(autoCommit);
+		}//end try
+		return violations;
+	}
+
+	private long relationRows(String rel) throws SQLException {
+		Long rows = this._relRows.get(rel);
+		if (rows == null){
+			PreparedStatement stmt = this._connection.prepareStatement("SELECT reltuples::bigint FROM pg_class WHERE relname = ?");
+			stmt.setString(1, rel);
+			ResultSet rs = stmt.executeQuery();
+			rows = rs.next() ? rs.getLong(1) : 0L;
+			stmt.close();
+			this._relRows.put(rel, rows);
+		}//end if
+		return rows;
+	}
+
+	private int queryInt(String sql, int fallback) throws SQLException {
+		Statement stmt = this._connection.createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		int v = rs.next() ? rs.getInt(1) : fallback;
+		stmt.close();
+		return v;
+	}
+
+	private int[] queryInts(String sql) throws SQLException {
+		Statement stmt = this._connection.createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		List<Integer> values = new ArrayList<Integer>();
+		while (rs.next())
+			values.add(rs.getInt(1));
+		stmt.close();
+		int[] result = new int[values.size()];
+		for (int i = 0; i < result.length; ++i)
+			result[i] = values.get(i);
+		return result;
+	}
+
+	private String queryString(String sql, String fallback) throws SQLException {
+		Statement stmt = this._connection.createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		String v = rs.next() ? rs.getString(1) : fallback;
+		stmt.close();
+		return v;
+	}
+
+	private LocalDate queryDate(String sql, LocalDate fallback) throws SQLException {
+		Statement stmt = this._connection.createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		LocalDate v = rs.next() ? rs.getDate(1).toLocalDate() : fallback;
+		stmt.close();
+		return v;
+	}
+
+	/**
+	 * Runs the check and exits with status 1 when it fails.
+	 *
+	 * @param args <dbname> <port> <user> [--min-rows N]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println("Usage: java [-classpath <classpath>] " + PlanCheck.class.getName()
+				+ " <dbname> <port> <user> [--min-rows N]");
+			return;
+		}//end if
+		long minRows = DEFAULT_MIN_ROWS;
+		if (args.length > 4 && args[3].equals("--min-rows"))
+			minRows = Long.parseLong(args[4]);
+
+		String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+		List<Violation> violations;
+		try{
+			Connection c = DriverManager.getConnection(url, args[2], "");
+			try{
+				violations = new PlanCheck(c, minRows).run();
+			}finally{
+				c.close();
+			}//end try
+		}catch (SQLException e){
+			System.err.println("Plan check failed: " + e.getMessage());
+			System.exit(2);
+			return;
+		}//end try
+
+		if (violations.isEmpty()){
+			System.out.println("OK: no sequential scans on tables with " + minRows + "+ rows");
+			return;
+		}//end if
+		for (Violation v : violations)
+			System.err.println("FAIL " + v);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A physical connection owned by a ConnectionPool. Callers borrow one,
+ * use connection() for the duration of a single operation and hand it back
+ * with ConnectionPool.release().
+ *
+ */
+
+public class PooledConnection{
+	//reference to physical database connection
+	private final Connection _connection;
+	//prepared statements of this connection, most recently used last
+	private final StatementCache _statements;
+	//time (System.nanoTime) the connection was last returned to the pool
+	private long _lastReleased;
+	//whether a caller holds the connection; guards against a second release
+	private final AtomicBoolean _borrowed = new AtomicBoolean();
+
+	PooledConnection(Connection connection, int statementCacheSize, StatementCache.Stats stats){
+		this._connection = connection;
+		this._statements = new StatementCache(connection, statementCacheSize, stats);
+		this._lastReleased = System.nanoTime();
+	}
+
+	/**
+	 * @return the physical connection backing this pool entry
+	 */
+	public Connection connection(){
+		return this._connection;
+	}
+
+	/**
+	 * @return the prepared statement cache of this connection
+	 */
+	public StatementCache statements(){
+		return this._statements;
+	}
+
+	long lastReleased(){
+		return this._lastReleased;
+	}
+
+	void markReleased(){
+		this._lastReleased = System.nanoTime();
+	}
+
+	void markBorrowed(){
+		this._borrowed.set(true);
+	}
+
+	/**
+	 * @return true for the first call after markBorrowed(), false when the
+	 *         connection was already handed back
+	 */
+	boolean takeBack(){
+		return this._borrowed.compareAndSet(true, false);
+	}
+
+	/**
+	 * Closes the physical connection, ignoring errors.
+	 */
+	void closeQuietly(){
+		this._statements.clear();
+		try{
+			this._connection.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+}
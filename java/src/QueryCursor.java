@@ -0,0 +1,123 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the rows of a query that fetches them from the server
+ * fetchSize at a time, so memory use does not grow with the result. The
+ * cursor holds a pooled connection until it is closed; use it in a
+ * try-with-resources block.
+ *
+ */
+
+public class QueryCursor implements Iterator<List<String>>, AutoCloseable{
+	private final ConnectionPool _pool;
+	private PooledConnection _conn;
+	private final Statement _ownedStmt;
+	private final ResultSet _rs;
+	private final int _numCol;
+	private boolean _hasNext;
+
+	QueryCursor(ConnectionPool pool, String query, int fetchSize, Object[] params) throws SQLException {
+		this._pool = pool;
+		this._conn = pool.borrow();
+		try{
+			Connection c = this._conn.connection();
+			//the driver only uses a server-side cursor inside a transaction
+			c.setAutoCommit(false);
+			if (params == null){
+				this._ownedStmt = c.createStatement();
+				this._ownedStmt.setFetchSize(fetchSize);
+				this._rs = this._ownedStmt.executeQuery(query);
+			}else{
+				this._ownedStmt = null;
+				PreparedStatement stmt = DBproject.prepare(this._conn, query, params);
+				stmt.setFetchSize(fetchSize);
+				this._rs = stmt.executeQuery();
+			}//end if
+			this._numCol = this._rs.getMetaData().getColumnCount();
+			this._hasNext = this._rs.next();
+		}catch (SQLException e){
+			close();
+			throw e;
+		}//end try
+	}
+
+	/**
+	 * @return the number of columns in each row
+	 */
+	public int getColumnCount(){
+		return this._numCol;
+	}
+
+	/**
+	 * @return the underlying result set, e.g. for its metadata
+	 */
+	public ResultSet resultSet(){
+		return this._rs;
+	}
+
+	@Override
+	public boolean hasNext(){
+		return this._hasNext;
+	}
+
+	@Override
+	public List<String> next(){
+		if (!this._hasNext)
+			throw new NoSuchElementException();
+		try{
+			List<String> record = new ArrayList<String>(this._numCol);
+			for (int i = 1; i <= this._numCol; ++i)
+				record.add(this._rs.getString(i));
+			this._hasNext = this._rs.next();
+			if (!this._hasNext)
+				close();
+			return record;
+		}catch (SQLException e){
+			close();
+			throw new IllegalStateException("Failed to read row: " + e.getMessage(), e);
+		}//end try
+	}
+
+	/**
+	 * Closes the cursor and returns its connection to the pool. Safe to call
+	 * more than once.
+	 */
+	@Override
+	public void close(){
+		if (this._conn == null)
+			return;
+		this._hasNext = false;
+		try{
+			if (this._rs != null)
+				this._rs.close();
+			if (this._ownedStmt != null)
+				this._ownedStmt.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+		//release() rolls back the read-only transaction and restores autocommit
+		this._pool.release(this._conn);
+		this._conn = null;
+	}
+}
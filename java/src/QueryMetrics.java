@@ -0,0 +1,352 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Records every database call made through DBproject, labelled by the menu
+ * operation that issued it (see operation()) and by query shape: the SQL
+ * template, or for plain SQL the text with its literals replaced by '?'.
+ * Per label it keeps a latency histogram, call, error, row and wire byte
+ * counts and the time spent waiting for a pooled connection.
+ *
+ * Calls slower than -Dmetrics.slowQueryMillis (default 500, negative
+ * turns it off) are written with their bind values to the slow query log,
+ * -Dmetrics.slowQueryLog (default standard error). The counters are
+ * available as Prometheus text through prometheus(), and are printed
+ * every -Dmetrics.dumpSeconds when that is set.
+ *
+ */
+
+public class QueryMetrics{
+	public static final long DEFAULT_SLOW_QUERY_MILLIS = 500;
+	//distinct shapes kept before new ones are counted under OTHER_SHAPE
+	public static final int MAX_SHAPES = 256;
+	static final String OTHER_SHAPE = "(other)";
+	static final String NO_OPERATION = "none";
+
+	private static final ThreadLocal<String> OPERATION = ThreadLocal.withInitial(() -> NO_OPERATION);
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	/**
+	 * Restores the previous operation label when closed.
+	 */
+	public static final class Scope implements AutoCloseable{
+		private final String _previous;
+
+		Scope(String previous){
+			this._previous = previous;
+		}
+
+		@Override
+		public void close(){
+			OPERATION.set(this._previous);
+		}
+	}
+
+	/**
+	 * Labels the calls made by this thread until the scope is closed.
+	 *
+	 * @param name the operation, e.g. "AddDoctor"
+	 * @return the scope to close when the operation ends
+	 */
+	public static Scope operation(String name){
+		String previous = OPERATION.get();
+		OPERATION.set(name);
+		return new Scope(previous);
+	}
+
+	/**
+	 * Counters of one (operation, shape) pair.
+	 */
+	static final class Series{
+		final String operation;
+		final String shape;
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong rows = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong waitNanos = new AtomicLong();
+
+		Series(String operation, String shape){
+			this.operation = operation;
+			this.shape = shape;
+		}
+	}
+
+	/**
+	 * One call in progress. Not thread-safe; owned by the calling thread.
+	 */
+	public final class Call{
+		private final String _sql;
+		private final Object[] _params;
+		private final String _operation;
+		private final long _start = System.nanoTime();
+		private long _waitNanos = 0;
+		private long _rows = 0;
+		private long _bytes = 0;
+		private SQLException _error;
+
+		Call(String sql, Object[] params){
+			this._sql = sql;
+			this._params = params;
+			this._operation = OPERATION.get();
+		}
+
+		/**
+		 * Marks the moment a pooled connection was obtained; the time since
+		 * the call started counts as connection wait.
+		 */
+		public void borrowed(){
+			this._waitNanos = System.nanoTime() - this._start;
+		}
+
+		public void addRows(long n){
+			this._rows += n;
+		}
+
+		public void addBytes(long n){
+			this._bytes += n;
+		}
+
+		public void failed(SQLException e){
+			this._error = e;
+		}
+
+		/**
+		 * Records the call; must be called exactly once, in a finally block.
+		 */
+		public void end(){
+			long elapsed = System.nanoTime() - this._start;
+			Series s = series(this._operation, shapeOf(this._sql, this._params == null));
+			s.latency.record(elapsed);
+			s.rows.addAndGet(this._rows);
+			s.bytes.addAndGet(this._bytes);
+			s.waitNanos.addAndGet(this._waitNanos);
+			if (this._error != null)
+				s.errors.incrementAndGet();
+			if (QueryMetrics.this._slowNanos >= 0 && elapsed >= QueryMetrics.this._slowNanos)
+				logSlow(this, elapsed);
+		}
+	}
+
+	private final Map<String, Series> _series = new ConcurrentHashMap<String, Series>();
+	private final Map<String, String> _shapes = new ConcurrentHashMap<String, String>();
+	private final long _slowNanos;
+	private final PrintStream _slowLog;
+	private final AtomicLong _slowCount = new AtomicLong();
+	private ScheduledExecutorService _dumper;
+
+	public QueryMetrics(){
+		this(Long.getLong("metrics.slowQueryMillis", DEFAULT_SLOW_QUERY_MILLIS), openLog(System.getProperty("metrics.slowQueryLog")));
+	}
+
+	public QueryMetrics(long slowQueryMillis, PrintStream slowLog){
+		this._slowNanos = slowQueryMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+		this._slowLog = slowLog;
+	}
+
+	private static PrintStream openLog(String path){
+		if (path == null || path.isEmpty())
+			return System.err;
+		try{
+			return new PrintStream(new FileOutputStream(path, true), true, StandardCharsets.UTF_8.name());
+		}catch (IOException e){
+			System.err.println("Cannot open slow query log " + path + ": " + e.getMessage());
+			return System.err;
+		}//end try
+	}
+
+	/**
+	 * Starts timing a call.
+	 *
+	 * @param sql the SQL template or plain SQL
+	 * @param params the bind values, or null for plain SQL
+	 * @return the call to complete with end()
+	 */
+	public Call start(String sql, Object[] params){
+		return new Call(sql, params);
+	}
+
+	/**
+	 * Prints summary() every period seconds to standard error until close().
+	 */
+	public synchronized void dumpEvery(long seconds){
+		if (seconds <= 0 || this._dumper != null)
+			return;
+		this._dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "query-metrics-dump");
+			t.setDaemon(true);
+			return t;
+		});
+		this._dumper.scheduleAtFixedRate(() -> System.err.print(summary()), seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void close(){
+		if (this._dumper != null)
+			this._dumper.shutdownNow();
+		this._dumper = null;
+		if (this._slowLog != System.err)
+			this._slowLog.close();
+	}
+
+	public long getSlowQueryCount(){
+		return this._slowCount.get();
+	}
+
+	private Series series(String operation, String shape){
+		return this._series.computeIfAbsent(operation + '\u0000' + shape, k -> new Series(operation, shape));
+	}
+
+	//the SQL template itself, or plain SQL with literals replaced, capped at MAX_SHAPES
+	private String shapeOf(String sql, boolean plain){
+		String shape = this._shapes.get(sql);
+		if (shape != null)
+			return shape;
+		shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+		if (plain)
+			shape = NUMBER_LITERAL.matcher(STRING_LITERAL.matcher(shape).replaceAll("?")).replaceAll("?");
+		if (this._shapes.size() >= MAX_SHAPES)
+			return OTHER_SHAPE;
+		this._shapes.put(sql, shape);
+		return shape;
+	}
+
+	private void logSlow(Call call, long elapsed){
+		this._slowCount.incrementAndGet();
+		StringBuilder sb = new StringBuilder()
+			.append(LocalDateTime.now()).append(" SLOW ")
+			.append(String.format("%.1f", elapsed / 1e6)).append(" ms op=").append(call._operation)
+			.append(" waitMs=").append(String.format("%.1f", call._waitNanos / 1e6))
+			.append(" rows=").append(call._rows)
+			.append(call._error == null ? "" : " error=" + call._error.getSQLState())
+			.append(" sql=").append(WHITESPACE.matcher(call._sql.trim()).replaceAll(" "));
+		if (call._params != null)
+			sb.append(" binds=").append(Arrays.deepToString(call._params));
+		synchronized (this._slowLog){
+			this._slowLog.println(sb);
+		}
+	}
+
+	private List<Series> sortedSeries(){
+		List<Series> list = new ArrayList<Series>(this._series.values());
+		list.sort((a, b) -> a.operation.equals(b.operation) ? a.shape.compareTo(b.shape) : a.operation.compareTo(b.operation));
+		return list;
+	}
+
+	/**
+	 * @return one line per (operation, shape) with its latency and counters
+	 */
+	public String summary(){
+		StringBuilder sb = new StringBuilder();
+		for (Series s : sortedSeries()){
+			sb.append(s.operation).append(" | ").append(s.latency)
+				.append(" errors=").append(s.errors.get())
+				.append(" rows=").append(s.rows.get())
+				.append(" bytes=").append(s.bytes.get())
+				.append(String.format(" waitMs=%.1f", s.waitNanos.get() / 1e6))
+				.append(" | ").append(s.shape).append('\n');
+		}//end for
+		return sb.toString();
+	}
+
+	/**
+	 * Renders the counters in the Prometheus text exposition format.
+	 *
+	 * @param pool the pool whose gauges are included, or null
+	 * @return the exposition text
+	 */
+	public String prometheus(ConnectionPool pool){
+		List<Series> list = sortedSeries();
+		StringBuilder sb = new StringBuilder();
+		sb.append("# HELP dbproject_query_duration_seconds Time of a database call, connection wait included.\n")
+			.append("# TYPE dbproject_query_duration_seconds histogram\n");
+		for (Series s : list){
+			String labels = "operation=\"" + escape(s.operation) + "\",shape=\"" + escape(s.shape) + "\"";
+			long cumulative = 0;
+			for (int i = 0; i < LatencyHistogram.getBucketCount(); ++i){
+				cumulative += s.latency.getBucket(i);
+				sb.append("dbproject_query_duration_seconds_bucket{").append(labels)
+					.append(",le=\"").append(LatencyHistogram.getBound(i) / 1e9).append("\"} ").append(cumulative).append('\n');
+			}//end for
+			sb.append("dbproject_query_duration_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ")
+				.append(s.latency.getCount()).append('\n')
+				.append("dbproject_query_duration_seconds_sum{").append(labels).append("} ")
+				.append(s.latency.getSumNanos() / 1e9).append('\n')
+				.append("dbproject_query_duration_seconds_count{").append(labels).append("} ")
+				.append(s.latency.getCount()).append('\n');
+		}//end for
+		counter(sb, list, "dbproject_query_errors_total", "Database calls that raised an SQLException.", 0);
+		counter(sb, list, "dbproject_query_rows_total", "Rows returned or affected.", 1);
+		counter(sb, list, "dbproject_query_bytes_total", "Bytes of column values received.", 2);
+		counter(sb, list, "dbproject_connection_wait_seconds_total", "Time spent waiting for a pooled connection.", 3);
+		counter(sb, "dbproject_slow_queries_total", "Calls over the slow query threshold.", this._slowCount.get());
+		if (pool != null){
+			gauge(sb, "dbproject_pool_active", "Borrowed connections.", pool.getActiveCount());
+			gauge(sb, "dbproject_pool_idle", "Idle connections.", pool.getIdleCount());
+			gauge(sb, "dbproject_pool_waiting", "Threads waiting for a connection.", pool.getWaitingCount());
+			gauge(sb, "dbproject_pool_max", "Pool size limit.", pool.getMaxSize());
+			counter(sb, "dbproject_pool_timeouts_total", "Borrows that timed out.", pool.getTimeoutCount());
+		}//end if
+		return sb.toString();
+	}
+
+	private static void counter(StringBuilder sb, List<Series> list, String name, String help, int field){
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+			.append("# TYPE ").append(name).append(" counter\n");
+		for (Series s : list){
+			sb.append(name).append("{operation=\"").append(escape(s.operation))
+				.append("\",shape=\"").append(escape(s.shape)).append("\"} ");
+			switch (field){
+				case 0: sb.append(s.errors.get()); break;
+				case 1: sb.append(s.rows.get()); break;
+				case 2: sb.append(s.bytes.get()); break;
+				default: sb.append(s.waitNanos.get() / 1e9); break;
+			}
+			sb.append('\n');
+		}//end for
+	}
+
+	static void counter(StringBuilder sb, String name, String help, long value){
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+			.append("# TYPE ").append(name).append(" counter\n")
+			.append(name).append(' ').append(value).append('\n');
+	}
+
+	static void gauge(StringBuilder sb, String name, String help, long value){
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n')
+			.append("# TYPE ").append(name).append(" gauge\n")
+			.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static String escape(String label){
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
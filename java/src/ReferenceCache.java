@@ -0,0 +1,241 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * In-process read-through cache of the reference data the menu queries
+ * join against on every call: doctors, department IDs by name, the doctors
+ * that serve a department (request_maintenance) and hospitals. This data
+ * changes rarely, so each lookup reaches the database once per entry
+ * lifetime instead of once per request.
+ *
+ * Entries are bounded by -Dcache.maxEntries (default 10000) per map and
+ * expire after -Dcache.ttlSeconds (default 300). Writers call the
+ * invalidate methods for the entries they touch; changes made by other
+ * clients arrive through ChangeFeed when it is enabled.
+ *
+ */
+
+public class ReferenceCache implements ChangeFeed.Listener{
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_TTL_SECONDS = 300;
+
+	static final String DOCTOR_SQL =
+		"SELECT doctor_ID, name, specialty, did FROM Doctor WHERE doctor_ID = ?";
+	static final String DEPARTMENT_IDS_SQL =
+		"SELECT dept_ID FROM Department WHERE name = ? ORDER BY dept_ID";
+	static final String DOCTORS_OF_DEPARTMENT_SQL =
+		"SELECT DISTINCT did FROM request_maintenance WHERE dept_name = ? ORDER BY did";
+	static final String HOSPITAL_SQL =
+		"SELECT hospital_ID, name FROM Hospital WHERE hospital_ID = ?";
+
+	/**
+	 * A row of Doctor.
+	 */
+	public static final class Doctor{
+		public final int id;
+		public final String name;
+		public final String specialty;
+		public final int departmentID;
+
+		Doctor(int id, String name, String specialty, int departmentID){
+			this.id = id;
+			this.name = name;
+			this.specialty = specialty;
+			this.departmentID = departmentID;
+		}
+	}
+
+	/**
+	 * A row of Hospital.
+	 */
+	public static final class Hospital{
+		public final int id;
+		public final String name;
+
+		Hospital(int id, String name){
+			this.id = id;
+			this.name = name;
+		}
+	}
+
+	private final ConnectionPool _pool;
+	private final LruCache<Integer, Doctor> _doctors;
+	private final LruCache<String, int[]> _departmentIDs;
+	private final LruCache<String, int[]> _departmentDoctors;
+	private final LruCache<Integer, Hospital> _hospitals;
+
+	public ReferenceCache(ConnectionPool pool){
+		this(pool, Integer.getInteger("cache.maxEntries", DEFAULT_MAX_ENTRIES),
+			Long.getLong("cache.ttlSeconds", DEFAULT_TTL_SECONDS) * 1000);
+	}
+
+	public ReferenceCache(ConnectionPool pool, int maxEntries, long ttlMillis){
+		this._pool = pool;
+		this._doctors = new LruCache<Integer, Doctor>("doctors", maxEntries, ttlMillis);
+		this._departmentIDs = new LruCache<String, int[]>("departmentIDs", maxEntries, ttlMillis);
+		this._departmentDoctors = new LruCache<String, int[]>("departmentDoctors", maxEntries, ttlMillis);
+		this._hospitals = new LruCache<Integer, Hospital>("hospitals", maxEntries, ttlMillis);
+	}
+
+	/**
+	 * @return the doctor with this ID, or null when there is none
+	 */
+	public Doctor doctor(int doctorID) throws SQLException {
+		return this._doctors.get(doctorID, id -> {
+			PooledConnection conn = this._pool.borrow();
+			try{
+				ResultSet rs = DBproject.prepare(conn, DOCTOR_SQL, new Object[]{ id }).executeQuery();
+				Doctor d = rs.next() ? new Doctor(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4)) : null;
+				rs.close();
+				return d;
+			}finally{
+				this._pool.release(conn);
+			}//end try
+		});
+	}
+
+	/**
+	 * @return the dept_IDs of every department with this name (one per
+	 *         hospital), ascending; empty when there is none
+	 */
+	public int[] departmentIDs(String name) throws SQLException {
+		return this._departmentIDs.get(name, n -> ints(DEPARTMENT_IDS_SQL, n)).clone();
+	}
+
+	/**
+	 * @return the IDs of the doctors that request_maintenance lists for the
+	 *         department name, ascending
+	 */
+	public int[] doctorsOfDepartment(String name) throws SQLException {
+		return this._departmentDoctors.get(name, n -> ints(DOCTORS_OF_DEPARTMENT_SQL, n)).clone();
+	}
+
+	/**
+	 * @return the hospital with this ID, or null when there is none
+	 */
+	public Hospital hospital(int hospitalID) throws SQLException {
+		return this._hospitals.get(hospitalID, id -> {
+			PooledConnection conn = this._pool.borrow();
+			try{
+				ResultSet rs = DBproject.prepare(conn, HOSPITAL_SQL, new Object[]{ id }).executeQuery();
+				Hospital h = rs.next() ? new Hospital(rs.getInt(1), rs.getString(2)) : null;
+				rs.close();
+				return h;
+			}finally{
+				this._pool.release(conn);
+			}//end try
+		});
+	}
+
+	private int[] ints(String sql, Object param) throws SQLException {
+		PooledConnection conn = this._pool.borrow();
+		try{
+			PreparedStatement stmt = DBproject.prepare(conn, sql, new Object[]{ param });
+			ResultSet rs = stmt.executeQuery();
+			int[] values = new int[8];
+			int n = 0;
+			while (rs.next()){
+				if (n == values.length)
+					values = Arrays.copyOf(values, n * 2);
+				values[n++] = rs.getInt(1);
+			}//end while
+			rs.close();
+			return Arrays.copyOf(values, n);
+		}finally{
+			this._pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Drops a doctor after it was added, changed or removed.
+	 */
+	public void invalidateDoctor(int doctorID){
+		this._doctors.invalidate(doctorID);
+	}
+
+	/**
+	 * Drops every cached doctor, e.g. after a batch of inserts.
+	 */
+	public void invalidateDoctors(){
+		this._doctors.invalidateAll();
+	}
+
+	/**
+	 * Drops the department lookups of a name after Department or
+	 * request_maintenance rows with that name changed.
+	 */
+	public void invalidateDepartment(String name){
+		this._departmentIDs.invalidate(name);
+		this._departmentDoctors.invalidate(name);
+	}
+
+	/**
+	 * Drops the department lookups of every name, e.g. when the changed
+	 * rows' names are not known.
+	 */
+	public void invalidateDepartments(){
+		this._departmentIDs.invalidateAll();
+		this._departmentDoctors.invalidateAll();
+	}
+
+	public void invalidateHospital(int hospitalID){
+		this._hospitals.invalidate(hospitalID);
+	}
+
+	public void invalidateAll(){
+		this._doctors.invalidateAll();
+		this._departmentIDs.invalidateAll();
+		this._departmentDoctors.invalidateAll();
+		this._hospitals.invalidateAll();
+	}
+
+	/**
+	 * Drops the entries a change feed notification touches: the doctor or
+	 * hospitals it names, or every department lookup for a Department or
+	 * request_maintenance change (the payload carries no names).
+	 */
+	@Override
+	public void apply(ChangeFeed.Change change){
+		if (change.table == ChangeFeed.DOCTOR){
+			if (change.op == ChangeFeed.TRUNCATE)
+				invalidateDoctors();
+			else
+				invalidateDoctor(change.getIntKey(0));
+		}else if (change.table == ChangeFeed.HOSPITAL){
+			if (change.op == ChangeFeed.TRUNCATE)
+				this._hospitals.invalidateAll();
+			for (int i = 0; i < change.getKeyCount(); ++i)
+				invalidateHospital(change.getIntKey(i));
+		}else if (change.table == ChangeFeed.DEPARTMENT || change.table == ChangeFeed.REQUEST_MAINTENANCE){
+			invalidateDepartments();
+		}//end if
+	}
+
+	@Override
+	public void resync(){
+		invalidateAll();
+	}
+
+	/**
+	 * @return one line of counters per map
+	 */
+	public String stats(){
+		return this._doctors.stats() + "\n" + this._departmentIDs.stats() + "\n"
+			+ this._departmentDoctors.stats() + "\n" + this._hospitals.stats();
+	}
+}
@@ -0,0 +1,740 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Writes query results as text: tab separated (the format the menu has
+ * always printed), CSV, JSON lines, or an aligned table. Cells are encoded
+ * as UTF-8 straight into one reusable byte buffer, which is written out
+ * only when full and on flush(), to a FileChannel for files or to a stream
+ * such as System.out. A million-row listing is then a few hundred writes
+ * instead of several million synchronized prints.
+ *
+ * A sink is a RowHandler, so it can be passed to DBproject.streamQuery();
+ * the column names and types are read once, on the first row. The table
+ * format keeps the rows in memory until close() since the widths are only
+ * known at the end. A sink is used by one thread at a time.
+ *
+ * The menu picks the sink from -Doutput.format (tsv, csv, jsonl or table,
+ * default tsv) and -Doutput.file (appended to; default standard out).
+ *
+ */
+
+public abstract class ResultSink implements RowHandler, Closeable {
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The supported output formats.
+	 */
+	public enum Format{
+		TSV, CSV, JSONL, TABLE;
+
+		/**
+		 * @param name a format name in any case
+		 * @return the format
+		 * @throws java.lang.IllegalArgumentException when there is no such format
+		 */
+		public static Format parse(String name){
+			try{
+				return valueOf(name.trim().toUpperCase());
+			}catch (IllegalArgumentException e){
+				throw new IllegalArgumentException("output format must be one of " + Arrays.toString(values())
+					+ ", got '" + name + "'");
+			}//end try
+		}
+	}
+
+	//bytes reserved per char before encoding it: the longest is the six
+	//byte JSON escape of a control character
+	private static final int MAX_CHAR_BYTES = 6;
+	private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+	private final byte[] _buf;
+	private final ByteBuffer _bytes;
+	private final FileChannel _channel;
+	private final OutputStream _out;
+	private final boolean _closeTarget;
+	private int _pos;
+
+	String[] _names;
+	boolean[] _numeric;
+	private long _rows;
+
+	ResultSink(FileChannel channel, OutputStream out, boolean closeTarget, int bufferSize){
+		if (bufferSize < 64)
+			throw new IllegalArgumentException("buffer size must be at least 64 bytes");
+		this._buf = new byte[bufferSize];
+		this._bytes = ByteBuffer.wrap(this._buf);
+		this._channel = channel;
+		this._out = out;
+		this._closeTarget = closeTarget;
+	}
+
+	/**
+	 * Opens a sink over a stream. The stream is flushed but not closed by
+	 * close(), so System.out can be passed.
+	 *
+	 * @param format the output format
+	 * @param out the stream to write to
+	 * @param bufferSize the size of the encoding buffer in bytes
+	 * @return the sink
+	 */
+	public static ResultSink open(Format format, OutputStream out, int bufferSize){
+		return create(format, null, out, false, bufferSize);
+	}
+
+	/**
+	 * Opens a sink over a file, written through a FileChannel and closed by
+	 * close().
+	 *
+	 * @param format the output format
+	 * @param file the file to write, created when missing
+	 * @param append add to the end of the file instead of replacing it
+	 * @param bufferSize the size of the encoding buffer in bytes
+	 * @return the sink
+	 * @throws java.io.IOException when the file cannot be opened
+	 */
+	public static ResultSink open(Format format, Path file, boolean append, int bufferSize) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+		return create(format, channel, null, true, bufferSize);
+	}
+
+	/**
+	 * Opens the sink configured by -Doutput.format, -Doutput.file and
+	 * -Doutput.bufferSize, writing to standard out when no file is set.
+	 *
+	 * @return the sink
+	 * @throws java.io.IOException when the output file cannot be opened
+	 * @throws java.lang.IllegalArgumentException when the format is unknown
+	 */
+	public static ResultSink fromProperties() throws IOException {
+		Format format = Format.parse(System.getProperty("output.format", "tsv"));
+		int bufferSize = Integer.getInteger("output.bufferSize", DEFAULT_BUFFER_SIZE);
+		String file = System.getProperty("output.file");
+		if (file == null || file.isEmpty())
+			return open(format, System.out, bufferSize);
+		return open(format, Paths.get(file), true, bufferSize);
+	}
+
+	private static ResultSink create(Format format, FileChannel channel, OutputStream out, boolean closeTarget, int bufferSize){
+		switch (format){
+			case CSV: return new Csv(channel, out, closeTarget, bufferSize);
+			case JSONL: return new JsonLines(channel, out, closeTarget, bufferSize);
+			case TABLE: return new Table(channel, out, closeTarget, bufferSize);
+			default: return new Tsv(channel, out, closeTarget, bufferSize);
+		}
+	}
+
+	/**
+	 * Writes the current row of rs, and the header before the first row.
+	 *
+	 * @param rs the result set, positioned on the current row
+	 * @return true, to read all rows
+	 * @throws java.sql.SQLException when reading the row or writing it fails
+	 */
+	@Override
+	public boolean row(ResultSet rs) throws SQLException {
+		if (this._names == null)
+			begin(rs.getMetaData());
+		try{
+			for (int i = 0; i < this._names.length; ++i)
+				value(i, rs.getString(i + 1));
+			endRow();
+		}catch (IOException e){
+			throw new SQLException("Writing the result failed: " + e.getMessage(), e);
+		}//end try
+		++this._rows;
+		return true;
+	}
+
+	/**
+	 * Writes rows that were already fetched. Nothing is written when there
+	 * are no rows, as for a query.
+	 *
+	 * @param result the rows to write
+	 * @return the number of rows written
+	 * @throws java.io.IOException when writing fails
+	 */
+	public int write(ColumnarResult result) throws IOException {
+		if (result.getRowCount() == 0)
+			return 0;
+		if (this._names == null){
+			String[] names = new String[result.getColumnCount()];
+			boolean[] numeric = new boolean[names.length];
+			for (int col = 0; col < names.length; ++col){
+				names[col] = result.getColumnName(col);
+				numeric[col] = result.getColumnKind(col) == ColumnarResult.INT
+					|| result.getColumnKind(col) == ColumnarResult.LONG;
+			}//end for
+			begin(names, numeric);
+		}//end if
+		for (int row = 0; row < result.getRowCount(); ++row){
+			for (int col = 0; col < this._names.length; ++col)
+				value(col, result.getString(row, col));
+			endRow();
+			++this._rows;
+		}//end for
+		return result.getRowCount();
+	}
+
+	/**
+	 * Starts rows that are not read from a query, see write(String[]).
+	 *
+	 * @param names the column names
+	 * @param numeric which columns hold numbers, for the JSON and table
+	 *        formats
+	 * @throws java.io.IOException when writing the header fails
+	 * @throws java.lang.IllegalStateException when the columns are already set
+	 */
+	public void columns(String[] names, boolean[] numeric) throws IOException {
+		if (this._names != null)
+			throw new IllegalStateException("the columns are already set");
+		begin(names.clone(), numeric.clone());
+	}
+
+	/**
+	 * Writes one row given as text, after columns().
+	 *
+	 * @param cells the values of the row, null for SQL NULL
+	 * @throws java.io.IOException when writing fails
+	 */
+	public void write(String[] cells) throws IOException {
+		if (this._names == null || cells.length != this._names.length)
+			throw new IllegalArgumentException("expected " + (this._names == null ? 0 : this._names.length)
+				+ " cells, got " + cells.length);
+		for (int col = 0; col < cells.length; ++col)
+			value(col, cells[col]);
+		endRow();
+		++this._rows;
+	}
+
+	/**
+	 * @return the number of rows written so far
+	 */
+	public long getRowCount(){
+		return this._rows;
+	}
+
+	private void begin(ResultSetMetaData rsmd) throws SQLException {
+		String[] names = new String[rsmd.getColumnCount()];
+		boolean[] numeric = new boolean[names.length];
+		for (int i = 0; i < names.length; ++i){
+			names[i] = rsmd.getColumnName(i + 1);
+			switch (rsmd.getColumnType(i + 1)){
+				case Types.TINYINT: case Types.SMALLINT: case Types.INTEGER: case Types.BIGINT:
+				case Types.NUMERIC: case Types.DECIMAL: case Types.REAL: case Types.FLOAT: case Types.DOUBLE:
+					numeric[i] = true;
+					break;
+				default:
+					break;
+			}
+		}//end for
+		try{
+			begin(names, numeric);
+		}catch (IOException e){
+			throw new SQLException("Writing the result failed: " + e.getMessage(), e);
+		}//end try
+	}
+
+	private void begin(String[] names, boolean[] numeric) throws IOException {
+		this._names = names;
+		this._numeric = numeric;
+		header();
+	}
+
+	/**
+	 * Called once with _names and _numeric set, before the first row.
+	 */
+	abstract void header() throws IOException;
+
+	/**
+	 * Adds one cell of the current row.
+	 *
+	 * @param col zero-based column index
+	 * @param value the cell as text, or null
+	 */
+	abstract void value(int col, String value) throws IOException;
+
+	/**
+	 * Ends the current row.
+	 */
+	abstract void endRow() throws IOException;
+
+	/**
+	 * Writes whatever a format holds back until the end.
+	 */
+	void finish() throws IOException {
+	}
+
+	/**
+	 * Writes the buffered bytes to the file or stream and flushes the
+	 * stream.
+	 *
+	 * @throws java.io.IOException when writing fails
+	 */
+	public void flush() throws IOException {
+		drain();
+		if (this._out != null)
+			this._out.flush();
+	}
+
+	/**
+	 * Finishes the output and flushes it; closes the file, but not a stream
+	 * passed to open().
+	 *
+	 * @throws java.io.IOException when writing fails
+	 */
+	@Override
+	public void close() throws IOException {
+		try{
+			finish();
+			flush();
+		}finally{
+			if (this._closeTarget){
+				if (this._channel != null)
+					this._channel.close();
+				else
+					this._out.close();
+			}//end if
+		}//end try
+	}
+
+	private void drain() throws IOException {
+		if (this._pos == 0)
+			return;
+		if (this._channel != null){
+			this._bytes.clear().limit(this._pos);
+			while (this._bytes.hasRemaining())
+				this._channel.write(this._bytes);
+		}else{
+			this._out.write(this._buf, 0, this._pos);
+		}//end if
+		this._pos = 0;
+	}
+
+	private void reserve(int n) throws IOException {
+		if (this._pos + n > this._buf.length)
+			drain();
+	}
+
+	final void put(int b) throws IOException {
+		if (this._pos == this._buf.length)
+			drain();
+		this._buf[this._pos++] = (byte) b;
+	}
+
+	final void put(byte[] b) throws IOException {
+		put(b, 0, b.length);
+	}
+
+	final void put(byte[] b, int off, int len) throws IOException {
+		if (len > this._buf.length){
+			drain();
+			if (this._channel != null){
+				ByteBuffer whole = ByteBuffer.wrap(b, off, len);
+				while (whole.hasRemaining())
+					this._channel.write(whole);
+			}else{
+				this._out.write(b, off, len);
+			}//end if
+			return;
+		}//end if
+		reserve(len);
+		System.arraycopy(b, off, this._buf, this._pos, len);
+		this._pos += len;
+	}
+
+	final void putNull() throws IOException {
+		put(NULL);
+	}
+
+	final void spaces(int n) throws IOException {
+		for (int i = 0; i < n; ++i)
+			put(' ');
+	}
+
+	/**
+	 * Encodes s as UTF-8 into the buffer; an unpaired surrogate becomes '?'.
+	 */
+	final void putText(String s) throws IOException {
+		int n = s.length();
+		for (int i = 0; i < n; ++i){
+			char c = s.charAt(i);
+			if (c < 0x80){
+				put(c);
+				continue;
+			}//end if
+			reserve(MAX_CHAR_BYTES);
+			i = encode(s, i, c);
+		}//end for
+	}
+
+	/**
+	 * Encodes s as the body of a JSON string, escaping quotes, backslashes
+	 * and control characters.
+	 */
+	final void putJsonText(String s) throws IOException {
+		int n = s.length();
+		for (int i = 0; i < n; ++i){
+			char c = s.charAt(i);
+			if (c >= 0x80){
+				reserve(MAX_CHAR_BYTES);
+				i = encode(s, i, c);
+			}else if (c == '"' || c == '\\'){
+				put('\\');
+				put(c);
+			}else if (c == '\n'){
+				put('\\');
+				put('n');
+			}else if (c == '\r'){
+				put('\\');
+				put('r');
+			}else if (c == '\t'){
+				put('\\');
+				put('t');
+			}else if (c < 0x20){
+				reserve(MAX_CHAR_BYTES);
+				this._buf[this._pos++] = '\\';
+				this._buf[this._pos++] = 'u';
+				this._buf[this._pos++] = '0';
+				this._buf[this._pos++] = '0';
+				this._buf[this._pos++] = (byte) Character.forDigit(c >> 4, 16);
+				this._buf[this._pos++] = (byte) Character.forDigit(c & 0xF, 16);
+			}else{
+				put(c);
+			}//end if
+		}//end for
+	}
+
+	/**
+	 * Encodes the non-ASCII char c at s[i], with room for it reserved.
+	 *
+	 * @return the index of the last char consumed
+	 */
+	private int encode(String s, int i, char c){
+		byte[] b = this._buf;
+		if (c < 0x800){
+			b[this._pos++] = (byte) (0xC0 | (c >> 6));
+			b[this._pos++] = (byte) (0x80 | (c & 0x3F));
+		}else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))){
+			int cp = Character.toCodePoint(c, s.charAt(++i));
+			b[this._pos++] = (byte) (0xF0 | (cp >> 18));
+			b[this._pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			b[this._pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			b[this._pos++] = (byte) (0x80 | (cp & 0x3F));
+		}else if (Character.isSurrogate(c)){
+			b[this._pos++] = '?';
+		}else{
+			b[this._pos++] = (byte) (0xE0 | (c >> 12));
+			b[this._pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			b[this._pos++] = (byte) (0x80 | (c & 0x3F));
+		}//end if
+		return i;
+	}
+
+	/**
+	 * The tab separated output of executeQueryAndPrintResult(): every cell,
+	 * header included, is followed by a tab, and null prints as "null".
+	 */
+	private static final class Tsv extends ResultSink{
+		Tsv(FileChannel channel, OutputStream out, boolean closeTarget, int bufferSize){
+			super(channel, out, closeTarget, bufferSize);
+		}
+
+		void header() throws IOException {
+			for (String name : this._names){
+				putText(name);
+				put('\t');
+			}//end for
+			put('\n');
+		}
+
+		void value(int col, String value) throws IOException {
+			if (value == null)
+				putNull();
+			else
+				putText(value);
+			put('\t');
+		}
+
+		void endRow() throws IOException {
+			put('\n');
+		}
+	}
+
+	/**
+	 * RFC 4180 CSV with a header line. Cells holding a comma, quote or line
+	 * break are quoted; null is an empty cell.
+	 */
+	private static final class Csv extends ResultSink{
+		Csv(FileChannel channel, OutputStream out, boolean closeTarget, int bufferSize){
+			super(channel, out, closeTarget, bufferSize);
+		}
+
+		void header() throws IOException {
+			for (int i = 0; i < this._names.length; ++i)
+				value(i, this._names[i]);
+			endRow();
+		}
+
+		void value(int col, String value) throws IOException {
+			if (col > 0)
+				put(',');
+			if (value == null)
+				return;
+			if (!needsQuotes(value)){
+				putText(value);
+				return;
+			}//end if
+			put('"');
+			int from = 0;
+			for (int q = value.indexOf('"'); q >= 0; q = value.indexOf('"', from)){
+				putText(value.substring(from, q + 1));
+				put('"');
+				from = q + 1;
+			}//end for
+			putText(from == 0 ? value : value.substring(from));
+			put('"');
+		}
+
+		void endRow() throws IOException {
+			put('\r');
+			put('\n');
+		}
+
+		private static boolean needsQuotes(String value){
+			for (int i = 0; i < value.length(); ++i){
+				char c = value.charAt(i);
+				if (c == ',' || c == '"' || c == '\n' || c == '\r')
+					return true;
+			}//end for
+			return false;
+		}
+	}
+
+	/**
+	 * One JSON object per row, keyed by column name. Numeric columns are
+	 * written as numbers, everything else as strings; null is null.
+	 */
+	private static final class JsonLines extends ResultSink{
+		//'{"name":' or ',"name":' per column, encoded once
+		private byte[][] _keys;
+
+		JsonLines(FileChannel channel, OutputStream out, boolean closeTarget, int bufferSize){
+			super(channel, out, closeTarget, bufferSize);
+		}
+
+		void header(){
+			this._keys = new byte[this._names.length][];
+			for (int i = 0; i < this._names.length; ++i)
+				this._keys[i] = ((i == 0 ? "{" : ",") + ApiServer.Json.quote(this._names[i]) + ":")
+					.getBytes(StandardCharsets.UTF_8);
+		}
+
+		void value(int col, String value) throws IOException {
+			put(this._keys[col]);
+			if (value == null){
+				putNull();
+			}else if (this._numeric[col] && isNumber(value)){
+				putText(value);
+			}else{
+				put('"');
+				putJsonText(value);
+				put('"');
+			}//end if
+		}
+
+		void endRow() throws IOException {
+			if (this._keys.length == 0)
+				put('{');
+			put('}');
+			put('\n');
+		}
+
+		//NaN and Infinity are valid numeric values but not JSON numbers
+		private static boolean isNumber(String value){
+			if (value.isEmpty())
+				return false;
+			for (int i = 0; i < value.length(); ++i){
+				char c = value.charAt(i);
+				if (!(c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'))
+					return false;
+			}//end for
+			return true;
+		}
+	}
+
+	/**
+	 * An aligned table in the style of psql: the cells are encoded into one
+	 * growing byte array as they arrive while the widest cell of each
+	 * column is tracked, and the table is written by close(). Numeric
+	 * columns are right-aligned; null is blank.
+	 */
+	private static final class Table extends ResultSink{
+		private byte[] _cells = new byte[4096];
+		private int _used;
+		//per cell: the end offset in _cells and the width in characters
+		private int[] _ends = new int[256];
+		private int[] _widths = new int[256];
+		private int _count;
+		private int[] _columnWidths;
+
+		Table(FileChannel channel, OutputStream out, boolean closeTarget, int bufferSize){
+			super(channel, out, closeTarget, bufferSize);
+		}
+
+		void header(){
+			this._columnWidths = new int[this._names.length];
+			for (int i = 0; i < this._names.length; ++i)
+				this._columnWidths[i] = width(this._names[i]);
+		}
+
+		void value(int col, String value){
+			if (this._count == this._ends.length){
+				this._ends = Arrays.copyOf(this._ends, this._count * 2);
+				this._widths = Arrays.copyOf(this._widths, this._count * 2);
+			}//end if
+			int w = 0;
+			if (value != null){
+				byte[] b = value.getBytes(StandardCharsets.UTF_8);
+				if (this._used + b.length > this._cells.length){
+					long size = Math.max((long) this._cells.length * 2, (long) this._used + b.length);
+					if (size > Integer.MAX_VALUE - 8)
+						throw new IllegalStateException("result too large for the table format, use tsv or csv");
+					this._cells = Arrays.copyOf(this._cells, (int) size);
+				}//end if
+				System.arraycopy(b, 0, this._cells, this._used, b.length);
+				this._used += b.length;
+				w = width(value);
+			}//end if
+			this._ends[this._count] = this._used;
+			this._widths[this._count++] = w;
+			if (w > this._columnWidths[col])
+				this._columnWidths[col] = w;
+		}
+
+		void endRow(){
+		}
+
+		void finish() throws IOException {
+			if (this._names == null)
+				return;
+			int n = this._names.length;
+			for (int i = 0; i < n; ++i){
+				//psql centres the titles; left-aligned keeps it simple
+				put(i == 0 ? ' ' : '|');
+				if (i > 0)
+					put(' ');
+				putText(this._names[i]);
+				if (i < n - 1)
+					spaces(this._columnWidths[i] - width(this._names[i]) + 1);
+			}//end for
+			put('\n');
+			for (int i = 0; i < n; ++i){
+				if (i > 0)
+					put('+');
+				for (int k = 0; k < this._columnWidths[i] + 2; ++k)
+					put('-');
+			}//end for
+			put('\n');
+			int start = 0;
+			for (int cell = 0; cell < this._count; ++cell){
+				int col = cell % n;
+				put(col == 0 ? ' ' : '|');
+				if (col > 0)
+					put(' ');
+				int pad = this._columnWidths[col] - this._widths[cell];
+				if (this._numeric[col])
+					spaces(pad);
+				int end = this._ends[cell];
+				put(this._cells, start, end - start);
+				start = end;
+				if (col == n - 1)
+					put('\n');
+				else
+					spaces(this._numeric[col] ? 1 : pad + 1);
+			}//end for
+			long rows = n == 0 ? 0 : this._count / n;
+			put(("(" + rows + (rows == 1 ? " row)\n" : " rows)\n")).getBytes(StandardCharsets.US_ASCII));
+			this._cells = null;
+			this._ends = null;
+			this._widths = null;
+		}
+
+		//characters as displayed, counting a surrogate pair once
+		private static int width(String s){
+			return s.codePointCount(0, s.length());
+		}
+	}
+
+	/**
+	 * Exports the rows of a query to a file (or standard out) at the speed
+	 * of the disk rather than the console.
+	 *
+	 * @param args dbname port user query [file] [--format tsv|csv|jsonl|table]
+	 */
+	public static void main(String[] args){
+		if (args.length < 4){
+			System.err.println("Usage: java [-classpath <classpath>] " + ResultSink.class.getName()
+				+ " <dbname> <port> <user> <query> [file] [--format tsv|csv|jsonl|table]");
+			System.exit(1);
+		}//end if
+		String file = null;
+		Format format = Format.TSV;
+		for (int i = 4; i < args.length; ++i){
+			if ("--format".equals(args[i]) && i + 1 < args.length)
+				format = Format.parse(args[++i]);
+			else
+				file = args[i];
+		}//end for
+
+		DBproject esql = null;
+		try{
+			esql = new DBproject(args[0], args[1], args[2], "");
+			int bufferSize = Integer.getInteger("output.bufferSize", DEFAULT_BUFFER_SIZE);
+			long start = System.nanoTime();
+			long rows;
+			ResultSink sink = file == null ? open(format, System.out, bufferSize)
+				: open(format, Paths.get(file), false, bufferSize);
+			try{
+				rows = esql.exportQuery(sink, args[3]);
+			}finally{
+				sink.close();
+			}//end try
+			if (file != null)
+				System.err.println("Exported " + rows + " rows to " + file + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}finally{
+			if (esql != null)
+				esql.cleanup();
+		}//end try
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback used by DBproject.streamQuery(). It is invoked once per row with
+ * the result set positioned on that row; the row must be consumed before
+ * returning since the next call moves the cursor on.
+ *
+ */
+
+public interface RowHandler{
+	/**
+	 * @param rs the result set, positioned on the current row
+	 * @return true to keep reading, false to stop and close the cursor
+	 * @throws java.sql.SQLException when reading the row fails
+	 */
+	boolean row(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,159 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class applies the versioned schema migrations under sql/migrations
+ * on top of sql/create.sql. A migration is a file named
+ * V<version>__<description>.sql; pending files are applied in version
+ * order, each in its own transaction, and recorded in schema_version so
+ * they run exactly once per database.
+ *
+ */
+
+public class SchemaMigrator{
+	private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+	static final String CREATE_VERSION_TABLE_SQL =
+		"CREATE TABLE IF NOT EXISTS schema_version ("
+		+ "version INTEGER NOT NULL PRIMARY KEY, "
+		+ "description VARCHAR(128) NOT NULL, "
+		+ "applied_at TIMESTAMP NOT NULL DEFAULT now())";
+
+	/**
+	 * One migration file.
+	 */
+	static final class Migration{
+		final int version;
+		final String description;
+		final File file;
+
+		Migration(int version, String description, File file){
+			this.version = version;
+			this.description = description;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * @param dir the migrations directory
+	 * @return the migrations found in dir, by ascending version
+	 */
+	static List<Migration> list(File dir){
+		List<Migration> result = new ArrayList<Migration>();
+		File[] files = dir.listFiles();
+		if (files == null)
+			return result;
+		for (File f : files){
+			Matcher m = FILE_NAME.matcher(f.getName());
+			if (m.matches())
+				result.add(new Migration(Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '), f));
+		}//end for
+		result.sort((a, b) -> Integer.compare(a.version, b.version));
+		for (int i = 1; i < result.size(); ++i)
+			if (result.get(i).version == result.get(i - 1).version)
+				throw new IllegalStateException("Duplicate migration version " + result.get(i).version);
+		return result;
+	}
+
+	/**
+	 * Applies every migration of dir that c has not seen yet.
+	 *
+	 * @return the migrations applied by this call
+	 * @throws java.sql.SQLException when a migration fails; it is rolled back
+	 * @throws java.io.IOException when a file cannot be read
+	 */
+	public static List<Migration> migrate(Connection c, File dir) throws SQLException, IOException {
+		Statement stmt = c.createStatement();
+		stmt.execute(CREATE_VERSION_TABLE_SQL);
+		Set<Integer> applied = new HashSet<Integer>();
+		ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version");
+		while (rs.next())
+			applied.add(rs.getInt(1));
+		stmt.close();
+
+		List<Migration> done = new ArrayList<Migration>();
+		boolean autoCommit = c.getAutoCommit();
+		c.setAutoCommit(false);
+		try{
+			for (Migration m : list(dir)){
+				if (applied.contains(m.version))
+					continue;
+				String sql = new String(Files.readAllBytes(m.file.toPath()), StandardCharsets.UTF_8);
+				try{
+					Statement s = c.createStatement();
+					s.execute(sql);
+					s.close();
+					PreparedStatement record = c.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)");
+					record.setInt(1, m.version);
+					record.setString(2, m.description);
+					record.executeUpdate();
+					record.close();
+					c.commit();
+				}catch (SQLException e){
+					c.rollback();
+					throw new SQLException("Migration " + m.file.getName() + " failed: " + e.getMessage(), e.getSQLState(), e);
+				}//end try
+				done.add(m);
+			}//end for
+		}finally{
+			c.setAutoCommit(autoCommit);
+		}//end try
+		return done;
+	}
+
+	/**
+	 * Applies pending migrations.
+	 *
+	 * @param args <dbname> <port> <user> [migrations dir]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println("Usage: java [-classpath <classpath>] " + SchemaMigrator.class.getName()
+				+ " <dbname> <port> <user> [migrations dir]");
+			return;
+		}//end if
+		File dir = new File(args.length > 3 ? args[3] : "../sql/migrations");
+		String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+		try{
+			Connection c = DriverManager.getConnection(url, args[2], "");
+			try{
+				List<Migration> done = migrate(c, dir);
+				for (Migration m : done)
+					System.out.println("Applied V" + m.version + " " + m.description);
+				System.out.println(done.isEmpty() ? "Schema is up to date" : done.size() + " migration(s) applied");
+			}finally{
+				c.close();
+			}//end try
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}//end try
+	}
+}
@@ -0,0 +1,559 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the menu operations from a script instead of the prompts, for
+ * automation:
+ *
+ *   java DBproject <dbname> <port> <user> --script <file>|- [--format jsonl|csv]
+ *
+ * Each line of the script is one operation, either a JSON object with an
+ * "op" field and the fields of the matching API request, or a CSV record
+ * of the operation followed by its parameters in the order below. Blank
+ * lines and lines starting with # are skipped.
+ *
+ *   AddDoctor                               doctor_ID,name,specialty,did
+ *   AddPatient                              patient_ID,name,gtype,age,address,number_of_appts
+ *   AddAppointment                          appnt_ID,adate,time_slot,status
+ *   MakeAppointment                         patient_ID,doctor_ID,appnt_ID
+ *   CancelAppointment                       patient_ID,appnt_ID
+ *   ListAppointmentsOfDoctor                doctor_ID,from,to
+ *   ListAvailableAppointmentsOfDepartment   dept_name,date
+ *   ListStatusNumberOfAppointmentsPerDoctor
+ *   FindPatientsCountWithStatus             status
+ *   FindEarliestAvailable                   specialty,department,hospital,from,to,limit
+ *
+ * Operations run in script order, but consecutive Add operations of one
+ * kind are sent as JDBC batches through BatchInserter. Like menu option
+ * 10, a batch of doctors drops the cached doctors of the ReferenceCache.
+ * Added appointments are not put in the availability index, which only
+ * holds appointments linked to a doctor by has_appointment. Consecutive
+ * read-only operations run on -Dscript.threads connections at once (default
+ * 1). Groups hold at most -Dscript.groupSize operations.
+ *
+ * Every operation gets one result on standard output, in script order:
+ * a JSON object per line, or with --format csv the CSV records
+ * "line,op,ok[,details]", "line,op,row,<columns>" per result row and
+ * "line,op,error,message". Everything else goes to standard error. The
+ * exit status is 0 when every operation succeeded, 2 when some failed and
+ * 1 when the script could not be run.
+ *
+ */
+
+public class ScriptRunner{
+	public static final int DEFAULT_THREADS = 1;
+	public static final int DEFAULT_GROUP_SIZE = BatchInserter.DEFAULT_COMMIT_INTERVAL;
+
+	/**
+	 * Output formats.
+	 */
+	public enum Format{
+		JSONL,
+		CSV
+	}
+
+	/**
+	 * The operations a script may use, with their parameters in CSV order.
+	 */
+	enum Operation{
+		ADD_DOCTOR("AddDoctor", BatchInserter.RecordType.DOCTOR),
+		ADD_PATIENT("AddPatient", BatchInserter.RecordType.PATIENT),
+		ADD_APPOINTMENT("AddAppointment", BatchInserter.RecordType.APPOINTMENT),
+		MAKE_APPOINTMENT("MakeAppointment", false, "patient_ID", "doctor_ID", "appnt_ID"),
+		CANCEL_APPOINTMENT("CancelAppointment", false, "patient_ID", "appnt_ID"),
+		LIST_APPOINTMENTS_OF_DOCTOR("ListAppointmentsOfDoctor", true, "doctor_ID", "from", "to"),
+		LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT("ListAvailableAppointmentsOfDepartment", true, "dept_name", "date"),
+		LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR("ListStatusNumberOfAppointmentsPerDoctor", true),
+		FIND_PATIENTS_COUNT_WITH_STATUS("FindPatientsCountWithStatus", true, "status"),
+		FIND_EARLIEST_AVAILABLE("FindEarliestAvailable", true, "specialty", "department", "hospital", "from", "to", "limit");
+
+		final String label;
+		//the record an Add operation inserts, null for the others
+		final BatchInserter.RecordType record;
+		final boolean readOnly;
+		final String[] params;
+
+		Operation(String label, BatchInserter.RecordType record){
+			this.label = label;
+			this.record = record;
+			this.readOnly = false;
+			this.params = record.layout().split(",");
+		}
+
+		Operation(String label, boolean readOnly, String... params){
+			this.label = label;
+			this.record = null;
+			this.readOnly = readOnly;
+			this.params = params;
+		}
+
+		private static final Map<String, Operation> BY_LABEL = new HashMap<String, Operation>();
+		static{
+			for (Operation op : values())
+				BY_LABEL.put(op.label.toLowerCase(), op);
+		}
+
+		/**
+		 * @throws IllegalArgumentException when label names no operation
+		 */
+		static Operation of(String label){
+			Operation op = label == null ? null : BY_LABEL.get(label.trim().toLowerCase());
+			if (op == null)
+				throw new IllegalArgumentException("unknown operation " + label);
+			return op;
+		}
+	}
+
+	/**
+	 * One line of the script and, once run, its result.
+	 */
+	private static final class Command{
+		final long line;
+		final Operation op;
+		//parameters in CSV order, null when missing
+		final String[] args;
+
+		String error;
+		//outcome of MakeAppointment and CancelAppointment
+		AppointmentBooker.Booking booking;
+		ColumnarResult rows;
+		List<EarliestAvailableSearch.Hit> hits;
+
+		Command(long line, Operation op, String[] args){
+			this.line = line;
+			this.op = op;
+			this.args = args;
+		}
+
+		String arg(int i){
+			String v = i < this.args.length ? this.args[i] : null;
+			if (v == null || v.isEmpty())
+				throw new IllegalArgumentException("missing parameter " + this.op.params[i]);
+			return v;
+		}
+
+		String optional(int i){
+			String v = i < this.args.length ? this.args[i] : null;
+			return v == null || v.isEmpty() ? null : v;
+		}
+
+		int intArg(int i){
+			return Integer.parseInt(arg(i));
+		}
+	}
+
+	private final DBproject _esql;
+	private final Writer _out;
+	private final Format _format;
+	private final int _groupSize;
+	private final ExecutorService _readers;
+	private final BatchInserter _inserter;
+
+	private final List<Command> _adds = new ArrayList<Command>();
+	private final List<Command> _reads = new ArrayList<Command>();
+	private long _operations = 0;
+	private long _failures = 0;
+
+	public ScriptRunner(DBproject esql, Writer out, Format format){
+		this(esql, out, format, Integer.getInteger("script.threads", DEFAULT_THREADS),
+			Integer.getInteger("script.groupSize", DEFAULT_GROUP_SIZE));
+	}
+
+	/**
+	 * @param threads connections used at once by consecutive read-only
+	 *        operations
+	 * @param groupSize most operations batched or run at once
+	 */
+	public ScriptRunner(DBproject esql, Writer out, Format format, int threads, int groupSize){
+		if (threads <= 0 || groupSize <= 0)
+			throw new IllegalArgumentException("threads and group size must be positive: " + threads + ", " + groupSize);
+		this._esql = esql;
+		this._out = out;
+		this._format = format;
+		this._groupSize = groupSize;
+		this._readers = threads == 1 ? null : Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "script-reader");
+			t.setDaemon(true);
+			return t;
+		});
+		this._inserter = new BatchInserter(esql.getPool());
+	}
+
+	public long getOperationCount(){ return this._operations; }
+	public long getFailureCount(){ return this._failures; }
+
+	/**
+	 * Runs every operation of a script and writes their results.
+	 *
+	 * @param in the script
+	 * @throws java.io.IOException when reading the script or writing the
+	 *         results fails
+	 */
+	public void run(BufferedReader in) throws IOException {
+		try{
+			long lineNo = 0;
+			String line;
+			while ((line = in.readLine()) != null){
+				++lineNo;
+				String text = line.trim();
+				if (text.isEmpty() || text.startsWith("#"))
+					continue;
+				Command cmd;
+				try{
+					cmd = parse(lineNo, text);
+				}catch (RuntimeException e){
+					flush();
+					Command bad = new Command(lineNo, null, new String[0]);
+					bad.error = e.getMessage();
+					write(bad);
+					continue;
+				}//end try
+				submit(cmd);
+			}//end while
+			flush();
+		}finally{
+			if (this._readers != null)
+				this._readers.shutdownNow();
+			this._out.flush();
+		}//end try
+	}
+
+	/**
+	 * Parses one line, a JSON object or a CSV record.
+	 *
+	 * @throws IllegalArgumentException when the line is neither
+	 */
+	static Command parse(long lineNo, String text){
+		if (text.startsWith("{")){
+			Map<String, Object> o = ApiServer.Json.parseObject(text);
+			Object label = o.get("op");
+			Operation op = Operation.of(label == null ? null : label.toString());
+			String[] args = new String[op.params.length];
+			for (int i = 0; i < args.length; ++i){
+				Object v = o.get(op.params[i]);
+				args[i] = v == null ? null : v.toString();
+			}//end for
+			return new Command(lineNo, op, args);
+		}//end if
+		String[] fields = BulkLoader.split(text);
+		Operation op = Operation.of(fields[0]);
+		String[] args = new String[fields.length - 1];
+		System.arraycopy(fields, 1, args, 0, args.length);
+		return new Command(lineNo, op, args);
+	}
+
+	//queues or runs one operation, keeping script order
+	private void submit(Command cmd) throws IOException {
+		if (cmd.op.record != null){
+			flushReads();
+			if (!this._adds.isEmpty() && this._adds.get(0).op != cmd.op)
+				flushAdds();
+			this._adds.add(cmd);
+			if (this._adds.size() >= this._groupSize)
+				flushAdds();
+		}else if (cmd.op.readOnly){
+			flushAdds();
+			this._reads.add(cmd);
+			if (this._reads.size() >= this._groupSize)
+				flushReads();
+		}else{
+			flush();
+			execute(cmd);
+			write(cmd);
+		}//end if
+	}
+
+	private void flush() throws IOException {
+		flushAdds();
+		flushReads();
+	}
+
+	//inserts the queued Add operations as batches
+	private void flushAdds() throws IOException {
+		if (this._adds.isEmpty())
+			return;
+		Operation op = this._adds.get(0).op;
+		List<String[]> records = new ArrayList<String[]>(this._adds.size());
+		List<Long> lines = new ArrayList<Long>(this._adds.size());
+		for (Command cmd : this._adds){
+			String[] record = new String[cmd.args.length];
+			for (int i = 0; i < record.length; ++i)
+				record[i] = cmd.args[i] == null ? "" : cmd.args[i];
+			records.add(record);
+			lines.add(cmd.line);
+		}//end for
+		QueryMetrics.Scope scope = QueryMetrics.operation(op.label);
+		try{
+			BatchInserter.Result result = this._inserter.insert(op.record, records, lines);
+			Map<Long, String> errors = new HashMap<Long, String>();
+			for (BatchInserter.RowError e : result.errors)
+				errors.put(e.line, e.message);
+			for (Command cmd : this._adds)
+				cmd.error = errors.get(cmd.line);
+			if (op.record == BatchInserter.RecordType.DOCTOR && result.inserted > 0)
+				this._esql.getReferenceCache().invalidateDoctors();
+		}catch (SQLException e){
+			for (Command cmd : this._adds)
+				cmd.error = e.getMessage();
+		}finally{
+			scope.close();
+		}//end try
+		for (Command cmd : this._adds)
+			write(cmd);
+		this._adds.clear();
+		this._out.flush();
+	}
+
+	//runs the queued read-only operations, several at once when threads > 1
+	private void flushReads() throws IOException {
+		if (this._reads.isEmpty())
+			return;
+		if (this._readers == null){
+			for (Command cmd : this._reads)
+				execute(cmd);
+		}else{
+			List<Future<?>> running = new ArrayList<Future<?>>(this._reads.size());
+			for (Command cmd : this._reads)
+				running.add(this._readers.submit(() -> execute(cmd)));
+			for (Future<?> f : running){
+				try{
+					f.get();
+				}catch (InterruptedException e){
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while running the script", e);
+				}catch (ExecutionException e){
+					//execute() records its own failures
+					throw new IOException(e.getCause());
+				}//end try
+			}//end for
+		}//end if
+		for (Command cmd : this._reads)
+			write(cmd);
+		this._reads.clear();
+		this._out.flush();
+	}
+
+	//runs an operation other than Add, recording its result or error
+	private void execute(Command cmd){
+		QueryMetrics.Scope scope = QueryMetrics.operation(cmd.op.label);
+		try{
+			switch (cmd.op){
+				case MAKE_APPOINTMENT:
+					cmd.booking = this._esql.makeAppointment(cmd.intArg(0), cmd.intArg(1), cmd.intArg(2));
+					break;
+				case CANCEL_APPOINTMENT:
+					cmd.booking = this._esql.cancelAppointment(cmd.intArg(0), cmd.intArg(1));
+					break;
+				case LIST_APPOINTMENTS_OF_DOCTOR:
+					cmd.rows = this._esql.executeQueryAndReturnColumns(DBproject.LIST_APPOINTMENTS_OF_DOCTOR_SQL,
+						cmd.intArg(0), DBproject.parseDate(cmd.arg(1)), DBproject.parseDate(cmd.arg(2)));
+					break;
+				case LIST_AVAILABLE_APPOINTMENTS_OF_DEPARTMENT:
+					cmd.rows = this._esql.listAvailableAppointmentsOfDepartment(cmd.arg(0), DBproject.parseDate(cmd.arg(1)));
+					break;
+				case LIST_STATUS_NUMBER_OF_APPOINTMENTS_PER_DOCTOR:
+					cmd.rows = this._esql.executeQueryAndReturnColumns(this._esql.getStatusReportSql());
+					break;
+				case FIND_PATIENTS_COUNT_WITH_STATUS:
+					cmd.rows = this._esql.getPatientsPerDoctorReport().run(cmd.arg(0).toUpperCase()).rows;
+					break;
+				case FIND_EARLIEST_AVAILABLE:
+					String hospital = cmd.optional(2);
+					String from = cmd.optional(3);
+					String to = cmd.optional(4);
+					String limit = cmd.optional(5);
+					cmd.hits = this._esql.findEarliestAvailable(cmd.optional(0), cmd.optional(1),
+						hospital == null ? null : Integer.valueOf(hospital),
+						from == null ? LocalDateTime.now() : LocalDateTime.parse(from),
+						to == null ? null : LocalDateTime.parse(to),
+						limit == null ? ApiServer.DEFAULT_SLOT_LIMIT : Integer.parseInt(limit));
+					break;
+				default:
+					throw new IllegalArgumentException(cmd.op.label + " is not run one at a time");
+			}
+			if (cmd.booking != null && cmd.booking.outcome == AppointmentBooker.Outcome.REJECTED)
+				cmd.error = cmd.booking.message;
+		}catch (SQLException | RuntimeException e){
+			cmd.error = e.getMessage() == null ? e.toString() : e.getMessage();
+		}finally{
+			scope.close();
+		}//end try
+	}
+
+	private void write(Command cmd) throws IOException {
+		++this._operations;
+		if (cmd.error != null)
+			++this._failures;
+		String op = cmd.op == null ? "" : cmd.op.label;
+		if (this._format == Format.CSV){
+			writeCsv(cmd, op);
+			return;
+		}//end if
+		StringBuilder sb = new StringBuilder("{\"line\":").append(cmd.line)
+			.append(",\"op\":").append(ApiServer.Json.quote(op))
+			.append(",\"ok\":").append(cmd.error == null);
+		if (cmd.error != null)
+			sb.append(",\"error\":").append(ApiServer.Json.quote(cmd.error));
+		if (cmd.booking != null)
+			sb.append(",\"outcome\":").append(ApiServer.Json.quote(cmd.booking.outcome.name()))
+				.append(",\"previousStatus\":").append(ApiServer.Json.quote(cmd.booking.previousStatus))
+				.append(",\"status\":").append(ApiServer.Json.quote(cmd.booking.status));
+		if (cmd.rows != null){
+			sb.append(",\"rows\":");
+			ApiServer.Json.rows(sb, cmd.rows);
+		}//end if
+		if (cmd.hits != null){
+			sb.append(",\"rows\":[");
+			for (int i = 0; i < cmd.hits.size(); ++i){
+				EarliestAvailableSearch.Hit h = cmd.hits.get(i);
+				sb.append(i == 0 ? "{" : ",{")
+					.append("\"appnt_id\":").append(h.appointmentID)
+					.append(",\"adate\":").append(ApiServer.Json.quote(h.date.toString()))
+					.append(",\"time_slot\":").append(ApiServer.Json.quote(h.timeSlot))
+					.append(",\"starts\":").append(ApiServer.Json.quote(h.starts.toString()))
+					.append(",\"doctor_id\":").append(h.doctorID)
+					.append(",\"name\":").append(ApiServer.Json.quote(h.doctorName))
+					.append(",\"specialty\":").append(ApiServer.Json.quote(h.specialty))
+					.append(",\"department\":").append(ApiServer.Json.quote(h.department))
+					.append(",\"hid\":").append(h.hospitalID).append('}');
+			}//end for
+			sb.append(']');
+		}//end if
+		this._out.write(sb.append("}\n").toString());
+	}
+
+	private void writeCsv(Command cmd, String op) throws IOException {
+		String prefix = cmd.line + "," + csv(op) + ",";
+		if (cmd.error != null){
+			this._out.write(prefix + "error," + csv(cmd.error) + "\n");
+			return;
+		}//end if
+		if (cmd.booking != null){
+			this._out.write(prefix + "ok," + cmd.booking.outcome + "," + csv(cmd.booking.previousStatus) + ","
+				+ csv(cmd.booking.status) + "\n");
+			return;
+		}//end if
+		this._out.write(prefix + "ok\n");
+		if (cmd.rows != null){
+			for (int row = 0; row < cmd.rows.getRowCount(); ++row){
+				StringBuilder sb = new StringBuilder(prefix).append("row");
+				for (int col = 0; col < cmd.rows.getColumnCount(); ++col)
+					sb.append(',').append(csv(cmd.rows.getString(row, col)));
+				this._out.write(sb.append('\n').toString());
+			}//end for
+		}//end if
+		if (cmd.hits != null){
+			for (EarliestAvailableSearch.Hit h : cmd.hits)
+				this._out.write(prefix + "row," + h.appointmentID + "," + h.date + "," + csv(h.timeSlot) + "," + h.starts + ","
+					+ h.doctorID + "," + csv(h.doctorName) + "," + csv(h.specialty) + "," + csv(h.department) + ","
+					+ h.hospitalID + "\n");
+		}//end if
+	}
+
+	//quotes a CSV field when it needs it, in the form BulkLoader.split() reads
+	static String csv(String value){
+		if (value == null)
+			return "";
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.trim().length() == value.length())
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Connects, runs a script and exits with its status; see the class
+	 * comment for the arguments.
+	 *
+	 * @param args <dbname> <port> <user> --script <file>|- [--format jsonl|csv]
+	 */
+	public static void main(String[] args){
+		System.exit(run(args));
+	}
+
+	/**
+	 * Same as main() without exiting.
+	 *
+	 * @return 0 when every operation succeeded, 2 when some failed, 1 when
+	 *         the script could not be run
+	 */
+	public static int run(String[] args){
+		String script = null;
+		String formatName = Format.JSONL.name();
+		for (int i = 3; i < args.length; ++i){
+			if ("--script".equals(args[i]) && i + 1 < args.length)
+				script = args[++i];
+			else if ("--format".equals(args[i]) && i + 1 < args.length)
+				formatName = args[++i];
+		}//end for
+		Format format = null;
+		for (Format f : Format.values()){
+			if (f.name().equalsIgnoreCase(formatName))
+				format = f;
+		}//end for
+		if (args.length < 3 || script == null || format == null){
+			System.err.println("Usage: java [-classpath <classpath>] " + DBproject.class.getName()
+				+ " <dbname> <port> <user> --script <file>|- [--format jsonl|csv]");
+			return 1;
+		}//end if
+
+		//the results own standard output; connection messages go to standard error
+		PrintStream stdout = System.out;
+		System.setOut(System.err);
+		Writer out = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8), 1 << 16);
+		DBproject esql = null;
+		try{
+			InputStream input = "-".equals(script) ? System.in : new FileInputStream(script);
+			BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+			esql = new DBproject(args[0], args[1], args[2], "");
+			ScriptRunner runner = new ScriptRunner(esql, out, format);
+			long start = System.nanoTime();
+			try{
+				runner.run(in);
+			}finally{
+				in.close();
+			}//end try
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.err.printf("%d operations, %d failed in %.2f s: %.0f operations/sec%n", runner.getOperationCount(),
+				runner.getFailureCount(), secs, secs == 0 ? 0.0 : runner.getOperationCount() / secs);
+			return runner.getFailureCount() == 0 ? 0 : 2;
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			return 1;
+		}finally{
+			if (esql != null)
+				esql.cleanup();
+			System.setOut(stdout);
+		}//end try
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps the most recently used PreparedStatements of one
+ * connection, keyed by their SQL text. Reusing the same PreparedStatement
+ * lets the JDBC driver switch to a named server-side statement after
+ * prepareThreshold executions, so Postgres parses and plans the query once.
+ *
+ * A cache belongs to a single PooledConnection and is only used by the
+ * thread that currently holds that connection. While it is held, the
+ * cache may grow past its maximum size: a statement may still have a
+ * result set open, so the least recently used statements are only closed
+ * by trim() when the connection goes back to the pool.
+ *
+ */
+
+public class StatementCache{
+	public static final int DEFAULT_MAX_SIZE = 64;
+
+	private final Connection _connection;
+	private final int _maxSize;
+	private final Stats _stats;
+	//in access order, least recently used first
+	private final LinkedHashMap<String, PreparedStatement> _statements =
+		new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+
+	StatementCache(Connection connection, int maxSize, Stats stats){
+		this._connection = connection;
+		this._maxSize = maxSize;
+		this._stats = stats;
+	}
+
+	/**
+	 * Returns the cached statement for the SQL text, preparing it on a miss.
+	 * The statement stays owned by the cache: callers close their result
+	 * sets but never the statement itself.
+	 *
+	 * @param sql the SQL template with '?' placeholders
+	 * @return a prepared statement for sql
+	 * @throws java.sql.SQLException when the statement cannot be prepared
+	 */
+	public PreparedStatement get(String sql) throws SQLException {
+		PreparedStatement stmt = this._statements.get(sql);
+		if (stmt != null && !stmt.isClosed()){
+			this._stats.hit(sql);
+			return stmt;
+		}//end if
+		this._stats.miss(sql);
+		stmt = this._connection.prepareStatement(sql);
+		this._statements.put(sql, stmt);
+		return stmt;
+	}
+
+	/**
+	 * Drops a statement from the cache, e.g. after it failed in a way that
+	 * leaves it unusable.
+	 *
+	 * @param sql the SQL text the statement was cached under
+	 */
+	public void remove(String sql){
+		PreparedStatement stmt = this._statements.remove(sql);
+		if (stmt != null)
+			closeQuietly(stmt);
+	}
+
+	public int size(){
+		return this._statements.size();
+	}
+
+	/**
+	 * Closes the least recently used statements beyond the maximum size.
+	 * Called when the connection is released, so that no caller is still
+	 * reading a result of an evicted statement.
+	 */
+	void trim(){
+		Iterator<PreparedStatement> it = this._statements.values().iterator();
+		while (this._statements.size() > this._maxSize && it.hasNext()){
+			closeQuietly(it.next());
+			it.remove();
+			this._stats._evictions.incrementAndGet();
+		}//end while
+	}
+
+	/**
+	 * Closes every cached statement.
+	 */
+	void clear(){
+		for (PreparedStatement stmt : this._statements.values())
+			closeQuietly(stmt);
+		this._statements.clear();
+	}
+
+	private static void closeQuietly(PreparedStatement stmt){
+		try{
+			stmt.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+
+	/**
+	 * Hit/miss counters shared by all statement caches of a pool. Besides the
+	 * totals it records how often each SQL text was served from a cache, so
+	 * the menu's hot queries can be checked individually. Only the first
+	 * MAX_TRACKED_SQL texts are counted one by one, so ad hoc SQL cannot grow
+	 * the map without bound; later texts are counted under OTHER_SQL.
+	 */
+	public static class Stats{
+		public static final int MAX_TRACKED_SQL = 256;
+		public static final String OTHER_SQL = "(other)";
+
+		private final AtomicLong _hits = new AtomicLong();
+		private final AtomicLong _misses = new AtomicLong();
+		private final AtomicLong _evictions = new AtomicLong();
+		private final ConcurrentHashMap<String, AtomicLong> _hitsBySql = new ConcurrentHashMap<String, AtomicLong>();
+
+		void hit(String sql){
+			this._hits.incrementAndGet();
+			counter(sql).incrementAndGet();
+		}
+
+		void miss(String sql){
+			this._misses.incrementAndGet();
+			counter(sql);
+		}
+
+		private AtomicLong counter(String sql){
+			AtomicLong n = this._hitsBySql.get(sql);
+			if (n != null)
+				return n;
+			//the size check races with other threads, so the cap may be passed by a few
+			if (this._hitsBySql.size() >= MAX_TRACKED_SQL)
+				sql = OTHER_SQL;
+			return this._hitsBySql.computeIfAbsent(sql, k -> new AtomicLong());
+		}
+
+		public long getHits(){ return this._hits.get(); }
+		public long getMisses(){ return this._misses.get(); }
+		public long getEvictions(){ return this._evictions.get(); }
+
+		/**
+		 * @param sql the SQL text to look up
+		 * @return how many times sql was served from a cache; 0 for SQL not
+		 *         tracked individually
+		 */
+		public long getHits(String sql){
+			AtomicLong n = this._hitsBySql.get(sql);
+			return n == null ? 0 : n.get();
+		}
+
+		/**
+		 * @return a snapshot of the per-SQL hit counts
+		 */
+		public Map<String, Long> getHitsBySql(){
+			Map<String, Long> result = new LinkedHashMap<String, Long>();
+			for (Map.Entry<String, AtomicLong> e : this._hitsBySql.entrySet())
+				result.put(e.getKey(), e.getValue().get());
+			return result;
+		}
+
+		@Override
+		public String toString(){
+			long hits = getHits();
+			long total = hits + getMisses();
+			return String.format("hits=%d misses=%d evictions=%d hitRatio=%.3f",
+				hits, getMisses(), getEvictions(), total == 0 ? 0.0 : (double) hits / total);
+		}
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class checks and rebuilds doctor_status_count (migration V003), the
+ * per-doctor status counts that back report 7. Both recompute the counts
+ * from has_appointment and Appointment, split into doctor ID ranges that
+ * run in parallel on pooled connections.
+ *
+ * verify() compares each range inside one snapshot, so it may run while
+ * the application writes. rebuild() holds SHARE locks on the source
+ * tables for each range, which blocks writers of that moment until the
+ * range is replaced.
+ *
+ */
+
+public class StatusCounts{
+	//ranges per thread, so one dense range does not hold up the others
+	private static final int RANGES_PER_THREAD = 4;
+
+	static final String INSTALLED_SQL =
+		"SELECT to_regclass('doctor_status_count') IS NOT NULL";
+	static final String DOCTOR_BOUNDS_SQL =
+		"SELECT min(doctor_id), max(doctor_id) FROM has_appointment";
+	static final String LOCK_SOURCES_SQL =
+		"LOCK TABLE has_appointment, Appointment IN SHARE MODE";
+	static final String DELETE_RANGE_SQL =
+		"DELETE FROM doctor_status_count WHERE doctor_id BETWEEN ? AND ?";
+	static final String DELETE_OUTSIDE_SQL =
+		"DELETE FROM doctor_status_count WHERE doctor_id < ? OR doctor_id > ?";
+	static final String AGGREGATE =
+		"SELECT H.doctor_id, A.status, count(*) AS cnt FROM has_appointment H, Appointment A "
+		+ "WHERE H.doctor_id BETWEEN ? AND ? AND A.appnt_ID = H.appt_id AND A.status IS NOT NULL "
+		+ "GROUP BY H.doctor_id, A.status";
+	static final String INSERT_RANGE_SQL =
+		"INSERT INTO doctor_status_count (doctor_id, status, cnt) " + AGGREGATE;
+	static final String DIFF_RANGE_SQL =
+		"SELECT coalesce(E.doctor_id, C.doctor_id), coalesce(E.status, C.status), coalesce(E.cnt, 0), coalesce(C.cnt, 0) "
+		+ "FROM (" + AGGREGATE + ") E FULL JOIN "
+		+ "(SELECT doctor_id, status, cnt FROM doctor_status_count WHERE doctor_id BETWEEN ? AND ? AND cnt <> 0) C "
+		+ "ON C.doctor_id = E.doctor_id AND C.status = E.status "
+		+ "WHERE coalesce(E.cnt, 0) <> coalesce(C.cnt, 0) "
+		+ "ORDER BY 1, 2";
+	static final String COUNT_OUTSIDE_SQL =
+		"SELECT doctor_id, status, cnt FROM doctor_status_count "
+		+ "WHERE (doctor_id < ? OR doctor_id > ?) AND cnt <> 0 ORDER BY 1, 2";
+
+	/**
+	 * A count that differs from a fresh aggregate.
+	 */
+	public static final class Mismatch{
+		public final int doctorID;
+		public final String status;
+		public final long expected;
+		public final long actual;
+
+		Mismatch(int doctorID, String status, long expected, long actual){
+			this.doctorID = doctorID;
+			this.status = status;
+			this.expected = expected;
+			this.actual = actual;
+		}
+
+		@Override
+		public String toString(){
+			return "doctor " + this.doctorID + " status " + this.status + ": expected " + this.expected
+				+ ", table has " + this.actual;
+		}
+	}
+
+	private final ConnectionPool _pool;
+
+	public StatusCounts(ConnectionPool pool){
+		this._pool = pool;
+	}
+
+	/**
+	 * @return true when migration V003 has been applied
+	 */
+	public static boolean isInstalled(ConnectionPool pool) throws SQLException {
+		PooledConnection conn = pool.borrow();
+		try{
+			Statement stmt = conn.connection().createStatement();
+			ResultSet rs = stmt.executeQuery(INSTALLED_SQL);
+			boolean installed = rs.next() && rs.getBoolean(1);
+			stmt.close();
+			return installed;
+		}finally{
+			pool.release(conn);
+		}//end try
+	}
+
+	/**
+	 * Compares doctor_status_count with a fresh aggregate.
+	 *
+	 * @param threads the number of ranges checked at once
+	 * @return the differing counts, by doctor and status
+	 * @throws java.sql.SQLException when a range cannot be checked
+	 */
+	public List<Mismatch> verify(int threads) throws SQLException {
+		final int[] bounds = bounds();
+		List<Task<List<Mismatch>>> tasks = new ArrayList<Task<List<Mismatch>>>();
+		for (final int[] range : ranges(bounds, threads)){
+			tasks.add(c -> {
+				List<Mismatch> found = new ArrayList<Mismatch>();
+				PreparedStatement stmt = c.prepareStatement(DIFF_RANGE_SQL);
+				stmt.setInt(1, range[0]);
+				stmt.setInt(2, range[1]);
+				stmt.setInt(3, range[0]);
+				stmt.setInt(4, range[1]);
+				ResultSet rs = stmt.executeQuery();
+				while (rs.next())
+					found.add(new Mismatch(rs.getInt(1), rs.getString(2), rs.getLong(3), rs.getLong(4)));
+				stmt.close();
+				return found;
+			});
+		}//end for
+		tasks.add(c -> {
+			//counts of doctors that no longer have any appointment
+			List<Mismatch> found = new ArrayList<Mismatch>();
+			PreparedStatement stmt = c.prepareStatement(COUNT_OUTSIDE_SQL);
+			stmt.setInt(1, bounds[0]);
+			stmt.setInt(2, bounds[1]);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next())
+				found.add(new Mismatch(rs.getInt(1), rs.getString(2), 0, rs.getLong(3)));
+			stmt.close();
+			return found;
+		});
+
+		List<Mismatch> result = new ArrayList<Mismatch>();
+		//one snapshot per range for both sides of the comparison
+		for (List<Mismatch> found : run(tasks, threads, Connection.TRANSACTION_REPEATABLE_READ))
+			result.addAll(found);
+		return result;
+	}
+
+	/**
+	 * Recomputes doctor_status_count from scratch.
+	 *
+	 * @param threads the number of ranges rebuilt at once
+	 * @return the number of count rows written
+	 * @throws java.sql.SQLException when a range cannot be rebuilt; ranges
+	 *         done before stay rebuilt
+	 */
+	public long rebuild(int threads) throws SQLException {
+		final int[] bounds = bounds();
+		List<Task<Long>> tasks = new ArrayList<Task<Long>>();
+		for (final int[] range : ranges(bounds, threads)){
+			tasks.add(c -> {
+				lockSources(c);
+				return rebuildRange(c, range[0], range[1]);
+			});
+		}//end for
+		//doctors may have come or gone since bounds(): under the lock, drop the
+		//counts outside the current bounds and rebuild what the ranges missed
+		tasks.add(c -> {
+			lockSources(c);
+			int[] now = bounds(c);
+			PreparedStatement delete = c.prepareStatement(DELETE_OUTSIDE_SQL);
+			delete.setInt(1, now[0]);
+			delete.setInt(2, now[1]);
+			delete.executeUpdate();
+			delete.close();
+			long rows = 0;
+			if (now[1] < now[0])
+				return rows;
+			if (bounds[1] < bounds[0])
+				return rebuildRange(c, now[0], now[1]);
+			if (now[0] < bounds[0])
+				rows += rebuildRange(c, now[0], Math.min(now[1], bounds[0] - 1));
+			if (now[1] > bounds[1])
+				rows += rebuildRange(c, Math.max(now[0], bounds[1] + 1), now[1]);
+			return rows;
+		});
+
+		long rows = 0;
+		for (Long n : run(tasks, threads, Connection.TRANSACTION_READ_COMMITTED))
+			rows += n;
+		return rows;
+	}
+
+	private static void lockSources(Connection c) throws SQLException {
+		Statement lock = c.createStatement();
+		lock.execute(LOCK_SOURCES_SQL);
+		lock.close();
+	}
+
+	//replaces the counts of the doctors in [lo, hi], under lockSources()
+	private static long rebuildRange(Connection c, int lo, int hi) throws SQLException {
+		PreparedStatement delete = c.prepareStatement(DELETE_RANGE_SQL);
+		delete.setInt(1, lo);
+		delete.setInt(2, hi);
+		delete.executeUpdate();
+		delete.close();
+		PreparedStatement insert = c.prepareStatement(INSERT_RANGE_SQL);
+		insert.setInt(1, lo);
+		insert.setInt(2, hi);
+		long rows = insert.executeUpdate();
+		insert.close();
+		return rows;
+	}
+
+	/**
+	 * Work on one connection, run in its own transaction.
+	 */
+	private interface Task<T>{
+		T run(Connection c) throws SQLException;
+	}
+
+	private <T> List<T> run(List<Task<T>> tasks, int threads, final int isolation) throws SQLException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try{
+			List<Future<T>> futures = new ArrayList<Future<T>>();
+			for (final Task<T> task : tasks)
+				futures.add(executor.submit(() -> inTransaction(task, isolation)));
+			List<T> results = new ArrayList<T>();
+			for (Future<T> f : futures)
+				results.add(f.get());
+			return results;
+		}catch (ExecutionException e){
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException)
+				throw (SQLException) cause;
+			throw new SQLException("Status count task failed: " + cause.getMessage(), cause);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted", e);
+		}finally{
+			executor.shutdownNow();
+		}//end try
+	}
+
+	private <T> T inTransaction(Task<T> task, int isolation) throws SQLException {
+		PooledConnection conn = this._pool.borrow();
+		Connection c = conn.connection();
+		int previous = c.getTransactionIsolation();
+		try{
+			c.setTransactionIsolation(isolation);
+			c.setAutoCommit(false);
+			try{
+				T result = task.run(c);
+				c.commit();
+				return result;
+			}catch (SQLException e){
+				c.rollback();
+				throw e;
+			}//end try
+		}finally{
+			try{
+				c.setAutoCommit(true);
+				c.setTransactionIsolation(previous);
+			}finally{
+				this._pool.release(conn);
+			}//end try
+		}//end try
+	}
+
+	//min and max doctor_id of has_appointment; an empty range when there are none
+	private int[] bounds() throws SQLException {
+		PooledConnection conn = this._pool.borrow();
+		try{
+			return bounds(conn.connection());
+		}finally{
+			this._pool.release(conn);
+		}//end try
+	}
+
+	private static int[] bounds(Connection c) throws SQLException {
+		Statement stmt = c.createStatement();
+		ResultSet rs = stmt.executeQuery(DOCTOR_BOUNDS_SQL);
+		rs.next();
+		int[] bounds = rs.getObject(1) == null ? new int[]{ 0, -1 } : new int[]{ rs.getInt(1), rs.getInt(2) };
+		stmt.close();
+		return bounds;
+	}
+
+	static List<int[]> ranges(int[] bounds, int threads){
+		List<int[]> ranges = new ArrayList<int[]>();
+		if (bounds[1] < bounds[0])
+			return ranges;
+		long span = (long) bounds[1] - bounds[0] + 1;
+		long parts = Math.min(span, (long) Math.max(1, threads) * RANGES_PER_THREAD);
+		long step = (span + parts - 1) / parts;
+		for (long lo = bounds[0]; lo <= bounds[1]; lo += step)
+			ranges.add(new int[]{ (int) lo, (int) Math.min(bounds[1], lo + step - 1) });
+		return ranges;
+	}
+
+	/**
+	 * Verifies or rebuilds doctor_status_count.
+	 *
+	 * @param args <dbname> <port> <user> verify|rebuild [--threads N]
+	 */
+	public static void main(String[] args){
+		if (args.length < 4 || !("verify".equals(args[3]) || "rebuild".equals(args[3]))){
+			System.err.println("Usage: java [-classpath <classpath>] " + StatusCounts.class.getName()
+				+ " <dbname> <port> <user> verify|rebuild [--threads N]");
+			return;
+		}//end if
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 4; i < args.length; ++i)
+			if ("--threads".equals(args[i]) && i + 1 < args.length)
+				threads = Integer.parseInt(args[++i]);
+
+		String url = "jdbc:postgresql://localhost:" + args[1] + "/" + args[0];
+		ConnectionPool pool = new ConnectionPool(url, args[2], "", threads,
+			ConnectionPool.DEFAULT_MAX_WAIT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS,
+			ConnectionPool.DEFAULT_VALIDATION_TIMEOUT_SECS, StatementCache.DEFAULT_MAX_SIZE);
+		boolean ok = true;
+		try{
+			StatusCounts counts = new StatusCounts(pool);
+			long start = System.nanoTime();
+			if ("verify".equals(args[3])){
+				List<Mismatch> mismatches = counts.verify(threads);
+				for (Mismatch m : mismatches)
+					System.out.println(m);
+				ok = mismatches.isEmpty();
+				System.out.printf("%d mismatch(es) in %.2f s%n", mismatches.size(), (System.nanoTime() - start) / 1e9);
+			}else{
+				long rows = counts.rebuild(threads);
+				System.out.printf("Rebuilt %d count rows with %d threads in %.2f s%n", rows, threads,
+					(System.nanoTime() - start) / 1e9);
+			}//end if
+		}catch (SQLException e){
+			System.err.println(e.getMessage());
+			ok = false;
+		}finally{
+			pool.close();
+		}//end try
+		if (!ok)
+			System.exit(1);
+	}
+}
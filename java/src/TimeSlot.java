@@ -0,0 +1,164 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A time slot such as "8:00-10:00", the text form stored in time_slot.
+ * Times are minutes since midnight; a slot whose end is not after its
+ * start runs past midnight. Migration V006 derives the same ranges in SQL
+ * (dbproject_slot_minutes), so slots built here and slots parsed there
+ * agree.
+ *
+ */
+
+public final class TimeSlot{
+	public static final int MINUTES_PER_DAY = 24 * 60;
+
+	private final int _start;
+	private final int _end;
+
+	/**
+	 * @param start minutes since midnight, 0 to 1440
+	 * @param end minutes since midnight, 0 to 1440, different from start
+	 * @throws IllegalArgumentException when a time is out of range or the
+	 *         slot is empty
+	 */
+	public TimeSlot(int start, int end){
+		if (start < 0 || start > MINUTES_PER_DAY || end < 0 || end > MINUTES_PER_DAY)
+			throw new IllegalArgumentException("time out of range: " + start + "-" + end);
+		if (start == end)
+			throw new IllegalArgumentException("empty time slot: " + format(start) + "-" + format(end));
+		this._start = start;
+		this._end = end;
+	}
+
+	/**
+	 * @param text a slot in the form h:mm-h:mm, e.g. "8:00-10:00" or "17:00-19:30"
+	 * @return the slot
+	 * @throws IllegalArgumentException when text is not such a slot
+	 */
+	public static TimeSlot parse(String text){
+		int dash = text == null ? -1 : text.indexOf('-');
+		if (dash < 0)
+			throw new IllegalArgumentException("time slot must look like 8:00-10:00: " + text);
+		return new TimeSlot(parseTime(text.substring(0, dash)), parseTime(text.substring(dash + 1)));
+	}
+
+	/**
+	 * @param text a time of day in the form h:mm, 0:00 to 24:00, with
+	 *         ASCII digits and optional surrounding whitespace as V006's
+	 *         pattern allows
+	 * @return minutes since midnight
+	 * @throws IllegalArgumentException when text is not such a time
+	 */
+	public static int parseTime(String text){
+		int from = 0;
+		int to = text.length();
+		while (from < to && isSpace(text.charAt(from)))
+			++from;
+		while (to > from && isSpace(text.charAt(to - 1)))
+			--to;
+		String t = text.substring(from, to);
+		int colon = t.indexOf(':');
+		try{
+			if (colon < 1 || colon > 2 || t.length() != colon + 3)
+				throw new NumberFormatException();
+			//parseInt would also take a sign or non-ASCII digits
+			for (int i = 0; i < t.length(); ++i){
+				if (i != colon && (t.charAt(i) < '0' || t.charAt(i) > '9'))
+					throw new NumberFormatException();
+			}//end for
+			int h = Integer.parseInt(t.substring(0, colon));
+			int m = Integer.parseInt(t.substring(colon + 1));
+			if (h < 0 || m < 0 || m > 59 || h * 60 + m > MINUTES_PER_DAY)
+				throw new NumberFormatException();
+			return h * 60 + m;
+		}catch (NumberFormatException e){
+			throw new IllegalArgumentException("time must look like 8:00 or 17:30: " + text);
+		}//end try
+	}
+
+	//the characters of \s in V006's pattern
+	private static boolean isSpace(char c){
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	public int getStartMinute(){ return this._start; }
+	public int getEndMinute(){ return this._end; }
+
+	/**
+	 * @return true when the slot ends on the next day
+	 */
+	public boolean isOvernight(){
+		return this._end < this._start;
+	}
+
+	/**
+	 * @return the length of the slot in minutes
+	 */
+	public int getMinutes(){
+		return isOvernight() ? this._end + MINUTES_PER_DAY - this._start : this._end - this._start;
+	}
+
+	/**
+	 * @param minute minutes since midnight
+	 * @return true when minute falls in the slot; an overnight slot
+	 *         contains the minutes after its start and before its end
+	 */
+	public boolean contains(int minute){
+		return isOvernight() ? minute >= this._start || minute < this._end
+			: minute >= this._start && minute < this._end;
+	}
+
+	/**
+	 * @return when the slot starts on the given date
+	 */
+	public LocalDateTime startOn(LocalDate date){
+		return date.atStartOfDay().plusMinutes(this._start);
+	}
+
+	/**
+	 * @return when the slot ends if it starts on the given date
+	 */
+	public LocalDateTime endOn(LocalDate date){
+		return startOn(date).plusMinutes(getMinutes());
+	}
+
+	static String format(int minute){
+		int m = minute % 60;
+		return (minute / 60) + (m < 10 ? ":0" : ":") + m;
+	}
+
+	@Override
+	public boolean equals(Object o){
+		if (!(o instanceof TimeSlot))
+			return false;
+		TimeSlot other = (TimeSlot) o;
+		return this._start == other._start && this._end == other._end;
+	}
+
+	@Override
+	public int hashCode(){
+		return this._start * (MINUTES_PER_DAY + 1) + this._end;
+	}
+
+	/**
+	 * @return the text form stored in time_slot, e.g. "8:00-10:00"
+	 */
+	@Override
+	public String toString(){
+		return format(this._start) + "-" + format(this._end);
+	}
+}
@@ -0,0 +1,613 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Promotes waitlisted patients to the free slots of the same doctor.
+ *
+ * A doctor's waitlist holds the patients waitlisted on any of the doctor's
+ * 'WL' slots, behind each slot's holder, first come first served by
+ * searches.request_seq (migration V008). When slots of the doctor are
+ * 'AV' from now on, because a patient cancelled or a new slot was linked
+ * to the doctor, the first patients of the waitlist get the earliest of
+ * them: each one's searches row moves from the waitlisted slot to the free
+ * slot, which becomes 'AC', and a waitlisted slot with nobody left
+ * waiting is 'AC' again.
+ *
+ * Doctors are marked by the change feed and by DBproject's cancellations,
+ * and promoted in batches: every -Dwaitlist.batchMillis the marked
+ * doctors, up to -Dwaitlist.batchDoctors at a time, are promoted in one
+ * transaction that locks their waitlisted slots and skips free slots that
+ * a booking holds, or whose window is full when the CapacityEngine is
+ * enabled. Every -Dwaitlist.sweepSeconds a sweep marks each doctor
+ * with waiting patients and free slots, which catches changes made while
+ * the feed was off, and measures the depth of all waitlists.
+ *
+ */
+
+public class WaitlistPromoter implements ChangeFeed.Listener{
+	public static final long DEFAULT_BATCH_MILLIS = 200;
+	public static final int DEFAULT_BATCH_DOCTORS = 64;
+	public static final long DEFAULT_SWEEP_SECONDS = 30;
+
+	static final String INSTALLED_SQL =
+		"SELECT count(*) FROM pg_attribute WHERE attrelid = 'searches'::regclass AND attname = 'request_seq'";
+	//doctors with waiting patients and free slots
+	static final String SWEEP_SQL =
+		"SELECT DISTINCT H.doctor_id FROM Appointment W, has_appointment H "
+		+ "WHERE W.status = 'WL' AND H.appt_id = W.appnt_ID AND EXISTS ("
+		+ "SELECT 1 FROM has_appointment F, Appointment A "
+		+ "WHERE F.doctor_id = H.doctor_id AND A.appnt_ID = F.appt_id AND A.status = 'AV' AND A.adate >= ?)";
+	//patients waiting on any slot: every searches row of a 'WL' slot but its holder's
+	static final String DEPTH_SQL =
+		"SELECT count(*) - count(DISTINCT S.aid) FROM Appointment W, searches S "
+		+ "WHERE W.status = 'WL' AND S.aid = W.appnt_ID";
+	static final String DOCTORS_OF_SQL =
+		"SELECT DISTINCT doctor_id FROM has_appointment WHERE appt_id = ANY (?)";
+	//locks the waitlisted slots of doctors, in ID order
+	static final String LOCK_WAITLISTED_SQL =
+		"SELECT W.appnt_ID FROM Appointment W "
+		+ "WHERE W.status = 'WL' AND W.appnt_ID IN (SELECT H.appt_id FROM has_appointment H WHERE H.doctor_id = ANY (?)) "
+		+ "ORDER BY W.appnt_ID "
+		+ "FOR UPDATE OF W";
+	//the waitlists of doctors on the locked slots, in FIFO order
+	static final String WAITERS_SQL =
+		"SELECT H.doctor_id, S.pid, S.aid, W.adate FROM Appointment W, has_appointment H, searches S "
+		+ "WHERE H.doctor_id = ANY (?) AND W.appnt_ID = ANY (?) AND W.appnt_ID = H.appt_id AND W.status = 'WL' "
+		+ "AND S.aid = W.appnt_ID "
+		+ "AND S.request_seq > (SELECT min(F.request_seq) FROM searches F WHERE F.aid = S.aid) "
+		+ "ORDER BY S.request_seq";
+	//the earliest free slots of doctors, skipping those a booking has locked
+	static final String FREE_SLOTS_SQL =
+		"SELECT D.doctor_ID, P.hid, F.appnt_ID, F.adate FROM Doctor D, Department P, LATERAL ("
+		+ "SELECT A.appnt_ID, A.adate, lower(A.slot) AS starts FROM has_appointment H, Appointment A "
+		+ "WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = H.appt_id AND A.status = 'AV' "
+		+ "AND A.adate >= ? AND lower(A.slot) >= ? "
+		+ "ORDER BY lower(A.slot), A.appnt_ID LIMIT ? "
+		+ "FOR UPDATE OF A SKIP LOCKED) F "
+		+ "WHERE D.doctor_ID = ANY (?) AND P.dept_ID = D.did "
+		+ "ORDER BY D.doctor_ID, F.starts, F.appnt_ID";
+	//metrics label of the promotion transaction
+	static final String PROMOTION_SHAPE = "PROMOTE waitlist (WaitlistPromoter transaction)";
+
+	//a patient waiting on a slot
+	private static final class Waiter{
+		final int patientID;
+		final int apptID;
+		final Date date;
+
+		Waiter(int patientID, int apptID, Date date){
+			this.patientID = patientID;
+			this.apptID = apptID;
+			this.date = date;
+		}
+
+		long key(){
+			return key(this.patientID, this.apptID);
+		}
+
+		static long key(int patientID, int apptID){
+			return ((long) apptID << 32) | (patientID & 0xffffffffL);
+		}
+	}
+
+	//a free slot of a doctor
+	private static final class Slot{
+		final int hospitalID;
+		final int apptID;
+		final Date date;
+
+		Slot(int hospitalID, int apptID, Date date){
+			this.hospitalID = hospitalID;
+			this.apptID = apptID;
+			this.date = date;
+		}
+	}
+
+	private final DBproject _esql;
+	private final AvailabilityIndex _availability;
+	//capacity of the free slots, null when not enabled
+	private final CapacityEngine _capacity;
+	private final long _batchMillis;
+	private final int _batchDoctors;
+	private final long _sweepSeconds;
+	private final int _maxAttempts;
+
+	//doctors and appointments to look at in the next batch
+	private final Set<Integer> _doctors = ConcurrentHashMap.newKeySet();
+	private final Set<Integer> _appointments = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean _sweepRequested = new AtomicBoolean();
+	//one promotion run at a time
+	private final Object _running = new Object();
+	private ScheduledExecutorService _worker;
+
+	//counters
+	private final long _startNanos = System.nanoTime();
+	private final AtomicLong _promotions = new AtomicLong();
+	private final AtomicLong _batches = new AtomicLong();
+	private final AtomicLong _failures = new AtomicLong();
+	private final AtomicLong _retries = new AtomicLong();
+	private final AtomicLong _sweeps = new AtomicLong();
+	private final LatencyHistogram _batchLatency = new LatencyHistogram();
+	//patients waiting at the last sweep, and in the largest batch
+	private volatile long _queueDepth = 0;
+	private volatile long _maxBatchDepth = 0;
+
+	public WaitlistPromoter(DBproject esql) throws SQLException {
+		this(esql, Long.getLong("waitlist.batchMillis", DEFAULT_BATCH_MILLIS),
+			Integer.getInteger("waitlist.batchDoctors", DEFAULT_BATCH_DOCTORS),
+			Long.getLong("waitlist.sweepSeconds", DEFAULT_SWEEP_SECONDS));
+	}
+
+	/**
+	 * @throws java.sql.SQLException when migration V008 has not been applied
+	 */
+	public WaitlistPromoter(DBproject esql, long batchMillis, int batchDoctors, long sweepSeconds) throws SQLException {
+		if (batchMillis <= 0 || batchDoctors <= 0)
+			throw new IllegalArgumentException("batch period and size must be positive: " + batchMillis + ", " + batchDoctors);
+		if (esql.executeQueryAndReturnColumns(INSTALLED_SQL).getLong(0, 0) == 0)
+			throw new SQLException("searches.request_seq is missing, apply migration V008");
+		this._esql = esql;
+		this._availability = esql.getAvailability();
+		this._capacity = esql.getCapacity();
+		this._batchMillis = batchMillis;
+		this._batchDoctors = batchDoctors;
+		this._sweepSeconds = sweepSeconds;
+		this._maxAttempts = Math.max(1, Integer.getInteger("booking.maxAttempts", AppointmentBooker.DEFAULT_MAX_ATTEMPTS));
+	}
+
+	/**
+	 * Starts promoting in the background, beginning with a sweep.
+	 */
+	public synchronized void start(){
+		if (this._worker != null)
+			return;
+		this._sweepRequested.set(true);
+		this._worker = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "waitlist-promoter");
+			t.setDaemon(true);
+			return t;
+		});
+		this._worker.scheduleWithFixedDelay(this::drain, 0, this._batchMillis, TimeUnit.MILLISECONDS);
+		if (this._sweepSeconds > 0)
+			this._worker.scheduleWithFixedDelay(() -> this._sweepRequested.set(true),
+				this._sweepSeconds, this._sweepSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stop(){
+		if (this._worker != null)
+			this._worker.shutdownNow();
+		this._worker = null;
+	}
+
+	/**
+	 * Marks the doctors of a slot that may have become free, e.g. after a
+	 * cancellation, for the next batch.
+	 */
+	public void slotFreed(int apptID){
+		this._appointments.add(apptID);
+	}
+
+	/**
+	 * Marks a doctor whose waitlist should be promoted in the next batch.
+	 */
+	public void doctorChanged(int doctorID){
+		this._doctors.add(doctorID);
+	}
+
+	@Override
+	public void apply(ChangeFeed.Change change){
+		if (change.op == ChangeFeed.TRUNCATE || change.op == ChangeFeed.RELOAD){
+			this._sweepRequested.set(true);
+		}else if (change.table == ChangeFeed.APPOINTMENT){
+			if (change.op != ChangeFeed.DELETE && "AV".equals(change.getKey(1)))
+				slotFreed(change.getIntKey(0));
+		}else if (change.table == ChangeFeed.HAS_APPOINTMENT){
+			if (change.op != ChangeFeed.DELETE)
+				doctorChanged(change.getIntKey(1));
+		}//end if
+	}
+
+	@Override
+	public void resync(){
+		this._sweepRequested.set(true);
+	}
+
+	/**
+	 * Promotes every marked doctor now, in batches, on the calling thread.
+	 *
+	 * @return the number of patients promoted
+	 * @throws java.sql.SQLException when a query or a batch fails; the
+	 *         doctors of a failed batch stay marked
+	 */
+	public long promoteMarked() throws SQLException {
+		QueryMetrics.Scope scope = QueryMetrics.operation("WaitlistPromoter");
+		try{
+			synchronized (this._running){
+				return runOnce();
+			}//end synchronized
+		}finally{
+			scope.close();
+		}//end try
+	}
+
+	private long runOnce() throws SQLException {
+		if (this._sweepRequested.getAndSet(false)){
+			try{
+				sweep();
+			}catch (SQLException e){
+				this._sweepRequested.set(true);
+				throw e;
+			}//end try
+		}//end if
+		if (!this._appointments.isEmpty()){
+			int[] appts = take(this._appointments, Integer.MAX_VALUE);
+			ColumnarResult doctors;
+			try{
+				doctors = this._esql.executeQueryAndReturnColumns(DOCTORS_OF_SQL, appts);
+			}catch (SQLException e){
+				for (int a : appts)
+					this._appointments.add(a);
+				throw e;
+			}//end try
+			for (int i = 0; i < doctors.getRowCount(); ++i)
+				this._doctors.add(doctors.getInt(i, 0));
+		}//end if
+		long promoted = 0;
+		while (!this._doctors.isEmpty()){
+			int[] batch = take(this._doctors, this._batchDoctors);
+			try{
+				promoted += promote(batch);
+			}catch (SQLException e){
+				for (int d : batch)
+					this._doctors.add(d);
+				throw e;
+			}//end try
+		}//end while
+		return promoted;
+	}
+
+	//one run of the background worker
+	private void drain(){
+		try{
+			promoteMarked();
+		}catch (SQLException e){
+			this._failures.incrementAndGet();
+			System.err.println("Waitlist promotion failed: " + e.getMessage());
+		}catch (RuntimeException e){
+			this._failures.incrementAndGet();
+			System.err.println("Waitlist promotion failed: " + e);
+		}//end try
+	}
+
+	/**
+	 * Marks every doctor with waiting patients and free slots, and records
+	 * the depth of all waitlists.
+	 */
+	private void sweep() throws SQLException {
+		ColumnarResult doctors = this._esql.executeQueryAndReturnColumns(SWEEP_SQL, LocalDate.now());
+		for (int i = 0; i < doctors.getRowCount(); ++i)
+			this._doctors.add(doctors.getInt(i, 0));
+		this._queueDepth = this._esql.executeQueryAndReturnColumns(DEPTH_SQL).getLong(0, 0);
+		this._sweeps.incrementAndGet();
+	}
+
+	//removes and returns up to n marked IDs
+	private static int[] take(Set<Integer> marked, int n){
+		int[] ids = new int[Math.min(n, Math.max(1, marked.size()))];
+		int k = 0;
+		Iterator<Integer> it = marked.iterator();
+		while (k < ids.length && it.hasNext()){
+			ids[k++] = it.next();
+			it.remove();
+		}//end while
+		return k == ids.length ? ids : Arrays.copyOf(ids, k);
+	}
+
+	//promotes the waitlists of doctors in one transaction, retrying conflicts
+	private int promote(int[] doctors) throws SQLException {
+		long start = System.nanoTime();
+		QueryMetrics.Call call = this._esql.getMetrics().start(PROMOTION_SHAPE, null);
+		try{
+			for (int attempt = 1; ; ++attempt){
+				PooledConnection conn = this._esql.getPool().borrow();
+				if (attempt == 1)
+					call.borrowed();
+				List<int[]> changed;
+				try{
+					changed = promoteOnce(conn, doctors);
+				}catch (SQLException e){
+					if (!AppointmentBooker.isRetryable(e) || attempt >= this._maxAttempts)
+						throw e;
+					this._retries.incrementAndGet();
+					changed = null;
+				}finally{
+					//rolls back anything left open and restores autocommit
+					this._esql.getPool().release(conn);
+				}//end try
+				if (changed != null){
+					int promoted = updateIndex(changed);
+					call.addRows(promoted);
+					this._promotions.addAndGet(promoted);
+					this._batches.incrementAndGet();
+					this._batchLatency.record(System.nanoTime() - start);
+					return promoted;
+				}//end if
+				AppointmentBooker.backoff(attempt);
+			}//end for
+		}catch (SQLException e){
+			call.failed(e);
+			throw e;
+		}finally{
+			call.end();
+		}//end try
+	}
+
+	/**
+	 * @return the slots whose status changed, as {appnt_ID, 1 if promoted
+	 *         into, 0 if waitlisted before}
+	 */
+	private List<int[]> promoteOnce(PooledConnection conn, int[] doctors) throws SQLException {
+		List<CapacityEngine.Ticket> tickets = new ArrayList<CapacityEngine.Ticket>();
+		boolean committed = false;
+		try{
+			List<int[]> changed = promoteOnce(conn, doctors, tickets);
+			committed = true;
+			return changed;
+		}finally{
+			if (!committed){
+				clearBatches(conn);
+				for (CapacityEngine.Ticket t : tickets)
+					this._capacity.release(t);
+			}//end if
+		}//end try
+	}
+
+	//the cached statements must not keep the rows of a failed batch
+	private static void clearBatches(PooledConnection conn){
+		try{
+			conn.statements().get(AppointmentBooker.ADD_SEARCH_SQL).clearBatch();
+			conn.statements().get(AppointmentBooker.REMOVE_SEARCH_SQL).clearBatch();
+			conn.statements().get(AppointmentBooker.SET_STATUS_SQL).clearBatch();
+		}catch (SQLException e){
+			// ignored, the connection is rolled back or closed on release.
+		}//end try
+	}
+
+	//tickets: the capacity taken for the promotions, given back when they fail
+	private List<int[]> promoteOnce(PooledConnection conn, int[] doctors, List<CapacityEngine.Ticket> tickets) throws SQLException {
+		Connection c = conn.connection();
+		c.setAutoCommit(false);
+		List<int[]> changed = new ArrayList<int[]>();
+
+		//each doctor's waitlist, and how many patients wait on each slot
+		Map<Integer, List<Waiter>> waitlists = new LinkedHashMap<Integer, List<Waiter>>();
+		Map<Integer, Integer> waiting = new HashMap<Integer, Integer>();
+		Set<Long> seen = new HashSet<Long>();
+		int longest = 0;
+		//lock first and read the waitlists in a later statement, whose snapshot
+		//includes what the cancellations we waited for removed from searches
+		int[] locked = new int[16];
+		int n = 0;
+		ResultSet rs = DBproject.prepare(conn, LOCK_WAITLISTED_SQL, new Object[]{ doctors }).executeQuery();
+		while (rs.next()){
+			if (n == locked.length)
+				locked = Arrays.copyOf(locked, n * 2);
+			locked[n++] = rs.getInt(1);
+		}//end while
+		rs.close();
+		rs = DBproject.prepare(conn, WAITERS_SQL, new Object[]{ doctors, Arrays.copyOf(locked, n) }).executeQuery();
+		while (rs.next()){
+			Waiter w = new Waiter(rs.getInt(2), rs.getInt(3), rs.getDate(4));
+			List<Waiter> list = waitlists.computeIfAbsent(rs.getInt(1), d -> new ArrayList<Waiter>());
+			list.add(w);
+			longest = Math.max(longest, list.size());
+			if (seen.add(w.key()))
+				waiting.merge(w.apptID, 1, Integer::sum);
+		}//end while
+		rs.close();
+		if (seen.size() > this._maxBatchDepth)
+			this._maxBatchDepth = seen.size();
+		if (waitlists.isEmpty()){
+			c.commit();
+			return changed;
+		}//end if
+
+		LocalDateTime now = LocalDateTime.now();
+		Map<Integer, List<Slot>> free = new HashMap<Integer, List<Slot>>();
+		rs = DBproject.prepare(conn, FREE_SLOTS_SQL, new Object[]{ Date.valueOf(now.toLocalDate()), Timestamp.valueOf(now),
+			longest, doctors }).executeQuery();
+		while (rs.next())
+			free.computeIfAbsent(rs.getInt(1), d -> new ArrayList<Slot>()).add(new Slot(rs.getInt(2), rs.getInt(3), rs.getDate(4)));
+		rs.close();
+
+		//first waiter gets the earliest slot; a patient or slot shared by two doctors is used once
+		PreparedStatement add = conn.statements().get(AppointmentBooker.ADD_SEARCH_SQL);
+		PreparedStatement remove = conn.statements().get(AppointmentBooker.REMOVE_SEARCH_SQL);
+		PreparedStatement setStatus = conn.statements().get(AppointmentBooker.SET_STATUS_SQL);
+		Set<Long> promoted = new HashSet<Long>();
+		Set<Integer> taken = new HashSet<Integer>();
+		Map<Integer, Integer> left = new HashMap<Integer, Integer>(waiting);
+		Map<Integer, Date> datesOf = new HashMap<Integer, Date>();
+		for (Map.Entry<Integer, List<Waiter>> e : waitlists.entrySet()){
+			List<Slot> slots = free.get(e.getKey());
+			if (slots == null)
+				continue;
+			Iterator<Slot> next = slots.iterator();
+			for (Waiter w : e.getValue()){
+				if (promoted.contains(w.key()))
+					continue;
+				Slot s = null;
+				while (s == null && next.hasNext()){
+					s = next.next();
+					if (!taken.add(s.apptID)){
+						s = null;
+					}else if (this._capacity != null){
+						CapacityEngine.Ticket ticket = this._capacity.admit(s.apptID);
+						if (ticket == null)
+							s = null;
+						else
+							tickets.add(ticket);
+					}//end if
+				}//end while
+				if (s == null)
+					break;
+				promoted.add(w.key());
+				DBproject.bind(add, new Object[]{ s.hospitalID, w.patientID, s.apptID });
+				add.addBatch();
+				DBproject.bind(remove, new Object[]{ w.patientID, w.apptID });
+				remove.addBatch();
+				DBproject.bind(setStatus, new Object[]{ "AC", s.apptID, s.date });
+				setStatus.addBatch();
+				left.merge(w.apptID, -1, Integer::sum);
+				datesOf.put(w.apptID, w.date);
+				changed.add(new int[]{ s.apptID, 1 });
+			}//end for
+		}//end for
+		if (changed.isEmpty()){
+			c.commit();
+			return changed;
+		}//end if
+
+		//slots with nobody left waiting keep only their holder
+		for (Map.Entry<Integer, Date> e : datesOf.entrySet()){
+			if (left.get(e.getKey()) > 0)
+				continue;
+			DBproject.bind(setStatus, new Object[]{ "AC", e.getKey(), e.getValue() });
+			setStatus.addBatch();
+			changed.add(new int[]{ e.getKey(), 0 });
+		}//end for
+		add.executeBatch();
+		remove.executeBatch();
+		setStatus.executeBatch();
+		c.commit();
+		return changed;
+	}
+
+	//records committed status changes in the availability index
+	private int updateIndex(List<int[]> changed) throws SQLException {
+		int promoted = 0;
+		for (int[] ch : changed){
+			promoted += ch[1];
+			if (this._availability != null)
+				this._availability.statusChanged(ch[0], "AC");
+		}//end for
+		return promoted;
+	}
+
+	public long getPromotionCount(){ return this._promotions.get(); }
+	public long getBatchCount(){ return this._batches.get(); }
+	public long getFailureCount(){ return this._failures.get(); }
+	public long getRetryCount(){ return this._retries.get(); }
+	public long getSweepCount(){ return this._sweeps.get(); }
+	public long getQueueDepth(){ return this._queueDepth; }
+	public long getMaxBatchDepth(){ return this._maxBatchDepth; }
+	public int getPendingDoctorCount(){ return this._doctors.size(); }
+	public LatencyHistogram getBatchLatency(){ return this._batchLatency; }
+
+	/**
+	 * @return promotions per second since the promoter was created
+	 */
+	public double getPromotionRate(){
+		double secs = (System.nanoTime() - this._startNanos) / 1e9;
+		return secs <= 0 ? 0.0 : this._promotions.get() / secs;
+	}
+
+	/**
+	 * @return a one-line summary of the counters
+	 */
+	public String stats(){
+		return String.format("promoted=%d rate=%.2f/s batches=%d failed=%d retries=%d sweeps=%d "
+				+ "waiting=%d maxBatchWaiting=%d pendingDoctors=%d batch[%s]",
+			getPromotionCount(), getPromotionRate(), getBatchCount(), getFailureCount(), getRetryCount(),
+			getSweepCount(), getQueueDepth(), getMaxBatchDepth(), getPendingDoctorCount(), this._batchLatency);
+	}
+
+	/**
+	 * @return the counters in the Prometheus text exposition format
+	 */
+	public String prometheus(){
+		StringBuilder sb = new StringBuilder();
+		QueryMetrics.counter(sb, "dbproject_waitlist_promotions_total", "Waitlisted patients moved to a free slot.", getPromotionCount());
+		QueryMetrics.counter(sb, "dbproject_waitlist_batches_total", "Promotion transactions committed.", getBatchCount());
+		QueryMetrics.counter(sb, "dbproject_waitlist_failures_total", "Promotion runs that failed.", getFailureCount());
+		QueryMetrics.gauge(sb, "dbproject_waitlist_waiting", "Patients waiting at the last sweep.", getQueueDepth());
+		QueryMetrics.gauge(sb, "dbproject_waitlist_pending_doctors", "Doctors marked for the next batch.", getPendingDoctorCount());
+		sb.append("# HELP dbproject_waitlist_batch_seconds Time of a promotion transaction.\n")
+			.append("# TYPE dbproject_waitlist_batch_seconds summary\n")
+			.append("dbproject_waitlist_batch_seconds_sum ").append(this._batchLatency.getSumNanos() / 1e9).append('\n')
+			.append("dbproject_waitlist_batch_seconds_count ").append(this._batchLatency.getCount()).append('\n');
+		return sb.toString();
+	}
+
+	/**
+	 * Sweeps once and promotes every waitlist that has free slots, or keeps
+	 * doing so in the background until interrupted.
+	 *
+	 * @param args <dbname> <port> <user> [--watch]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println("Usage: java [-classpath <classpath>] " + WaitlistPromoter.class.getName()
+				+ " <dbname> <port> <user> [--watch]");
+			return;
+		}//end if
+		boolean watch = args.length > 3 && "--watch".equals(args[3]);
+
+		DBproject esql = null;
+		try{
+			esql = new DBproject(args[0], args[1], args[2], "");
+			WaitlistPromoter promoter = esql.getWaitlistPromoter() != null ? esql.getWaitlistPromoter() : new WaitlistPromoter(esql);
+			if (!watch){
+				promoter.resync();
+				System.out.println("Promoted " + promoter.promoteMarked() + " waitlisted patients");
+				System.out.println(promoter.stats());
+				return;
+			}//end if
+			promoter.start();
+			while (true){
+				Thread.sleep(Math.max(1, promoter._sweepSeconds) * 1000);
+				System.out.println(promoter.stats());
+			}//end while
+		}catch (Exception e){
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}finally{
+			if (esql != null)
+				esql.cleanup();
+		}//end try
+	}
+}
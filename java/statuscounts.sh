@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Checks or recomputes the per-doctor status counts of report 7 (migration V003)
+# Example: ./statuscounts.sh verify --threads 4
+java -cp lib/*:bin/ StatusCounts $DBNAME $PORT $USER "$@"
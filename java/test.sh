@@ -0,0 +1,15 @@
+#! /bin/bash
+# Compiles the sources with the unit tests under test/ and runs the tests,
+# all of them or the ones named; the tests need no database
+# Example: ./test.sh [StatementCacheTest ...]
+rm -rf test-bin && mkdir -p test-bin
+javac -cp "lib/*" src/*.java test/*.java -d test-bin/ || exit 1
+TESTS="$@"
+if [ -z "$TESTS" ]; then
+	TESTS=$(cd test && ls *Test.java | sed 's/\.java$//')
+fi
+STATUS=0
+for TEST in $TESTS; do
+	java -cp "lib/*:test-bin/" $TEST || STATUS=1
+done
+exit $STATUS
@@ -0,0 +1,62 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * BulkLoader's CSV splitting and table lookup.
+ *
+ */
+
+public class BulkLoaderTest{
+	private static void fields(String line, String... expected){
+		Check.equal(Arrays.asList(expected), Arrays.asList(BulkLoader.split(line)), "fields of [" + line + "]");
+	}
+
+	public static void main(String[] args){
+		Check.run("splits plain fields and trims them", () -> {
+			fields("1,Smith,Cardiology,3", "1", "Smith", "Cardiology", "3");
+			fields(" 1 , Smith ,3 ", "1", "Smith", "3");
+			fields("single", "single");
+		});
+
+		Check.run("keeps empty fields", () -> {
+			fields("", "");
+			fields("1,,3", "1", "", "3");
+			fields("1,2,", "1", "2", "");
+			fields(",", "", "");
+		});
+
+		Check.run("reads quoted fields verbatim", () -> {
+			fields("1,\"Main St, Riverside\",3", "1", "Main St, Riverside", "3");
+			fields("\"say \"\"hi\"\"\",x", "say \"hi\"", "x");
+			fields("\" padded \"", " padded ");
+			fields("\"\",1", "", "1");
+			fields("1,\"last\"", "1", "last");
+		});
+
+		Check.run("reads one field by position", () -> {
+			Check.equal("Cardiology", BulkLoader.field("1,Smith,Cardiology,3", 2), "field 2");
+			Check.equal(null, BulkLoader.field("1,Smith", 5), "field past the end");
+		});
+
+		Check.run("looks tables up by name, ignoring case", () -> {
+			Check.equal("has_appointment", BulkLoader.table("HAS_APPOINTMENT").getName(), "table name");
+			Check.fails(IllegalArgumentException.class, () -> BulkLoader.table("nope"), "unknown table");
+			for (BulkLoader.Table t : BulkLoader.TABLES)
+				Check.isTrue(BulkLoader.table(t.getName()) == t, "lookup of " + t.getName());
+		});
+
+		Check.finish("BulkLoaderTest");
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.Objects;
+
+/**
+ * Minimal assertions for the database-free unit tests under test/, which
+ * run as plain main classes (see test.sh). Each test case runs through
+ * run(); a failed check ends the case and is counted, and finish() exits
+ * with status 1 when any case failed.
+ *
+ */
+
+final class Check{
+	private static int _cases = 0;
+	private static int _failures = 0;
+
+	private Check(){}
+
+	/**
+	 * One test case.
+	 */
+	interface Case{
+		void run() throws Exception;
+	}
+
+	/**
+	 * Raised by a failed check.
+	 */
+	static final class Failure extends RuntimeException{
+		Failure(String message){
+			super(message);
+		}
+	}
+
+	static void run(String name, Case c){
+		++_cases;
+		try{
+			c.run();
+			System.out.println("ok   " + name);
+		}catch (Failure e){
+			++_failures;
+			System.out.println("FAIL " + name + ": " + e.getMessage());
+		}catch (Exception e){
+			++_failures;
+			System.out.println("FAIL " + name + ": " + e);
+		}//end try
+	}
+
+	static void isTrue(boolean condition, String what){
+		if (!condition)
+			throw new Failure(what);
+	}
+
+	static void equal(Object expected, Object actual, String what){
+		if (!Objects.equals(expected, actual))
+			throw new Failure(what + ": expected <" + expected + "> but was <" + actual + ">");
+	}
+
+	/**
+	 * Checks that c throws an exception of type expected.
+	 */
+	static void fails(Class<? extends Throwable> expected, Case c, String what){
+		try{
+			c.run();
+		}catch (Throwable e){
+			if (expected.isInstance(e))
+				return;
+			throw new Failure(what + ": expected " + expected.getSimpleName() + " but got " + e);
+		}//end try
+		throw new Failure(what + ": expected " + expected.getSimpleName());
+	}
+
+	/**
+	 * Prints the totals and exits with status 1 when a case failed.
+	 */
+	static void finish(String suite){
+		System.out.println(suite + ": " + (_cases - _failures) + "/" + _cases + " passed");
+		if (_failures > 0)
+			System.exit(1);
+	}
+}
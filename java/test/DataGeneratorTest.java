@@ -0,0 +1,79 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.util.Arrays;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DataGenerator's searches rows against the slots' status and the
+ * patients' number_of_appts.
+ *
+ */
+
+public class DataGeneratorTest{
+	private static String[] rows(DataGenerator g, String table, int id){
+		StringBuilder out = new StringBuilder();
+		int written = g.writeRow(table, id, out);
+		String[] lines = out.length() == 0 ? new String[0] : out.toString().split("\n");
+		Check.equal(written, lines.length, "rows reported for " + table + " " + id);
+		return lines;
+	}
+
+	public static void main(String[] args){
+		DataGenerator g = new DataGenerator(1, 7, LocalDate.of(2026, 1, 15));
+		int appointments = (int) g.rowCount("Appointment");
+		int patients = (int) g.rowCount("Patient");
+
+		Check.run("emits searches rows by status, holder first", () -> {
+			int waitlisted = 0;
+			for (int a = 0; a < appointments; ++a){
+				String status = rows(g, "Appointment", a)[0].split(",")[3];
+				String[] searches = rows(g, "searches", a);
+				Set<String> seen = new HashSet<>();
+				for (int place = 0; place < searches.length; ++place){
+					String[] f = searches[place].split(",");
+					Check.equal(String.valueOf(g.patientOf(a, place)), f[1], "patient in place " + place + " of " + a);
+					Check.isTrue(seen.add(f[1]), "patient listed once on " + a);
+				}//end for
+				if ("AV".equals(status))
+					Check.equal(0, searches.length, "searches rows of free " + a);
+				else if ("WL".equals(status)){
+					Check.isTrue(searches.length >= 2 && searches.length <= 1 + DataGenerator.MAX_WAITING,
+						"holder and waitlist of " + a + ": " + searches.length);
+					++waitlisted;
+				}else
+					Check.equal(1, searches.length, "searches rows of " + status + " " + a);
+			}//end for
+			Check.isTrue(waitlisted > 0, "some slots are waitlisted");
+		});
+
+		Check.run("number_of_appts counts the patient's searches rows", () -> {
+			Map<String, Integer> counts = new HashMap<>();
+			for (int a = 0; a < appointments; ++a){
+				for (String row : rows(g, "searches", a))
+					counts.merge(row.split(",")[1], 1, Integer::sum);
+			}//end for
+			for (int p = 0; p < patients; ++p){
+				String[] f = rows(g, "Patient", p)[0].split(",");
+				Check.equal(String.valueOf(counts.getOrDefault(String.valueOf(p), 0)), f[f.length - 1],
+					"number_of_appts of " + p);
+			}//end for
+		});
+
+		Check.finish("DataGeneratorTest");
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+/**
+ * LatencyHistogram's bucket bounds and percentiles, as reported by
+ * QueryMetrics.
+ *
+ */
+
+public class LatencyHistogramTest{
+	public static void main(String[] args){
+		Check.run("bounds double from 50 us", () -> {
+			Check.equal(50000L, LatencyHistogram.getBound(0), "first bound");
+			for (int i = 1; i < LatencyHistogram.getBucketCount(); ++i)
+				Check.equal(2 * LatencyHistogram.getBound(i - 1), LatencyHistogram.getBound(i), "bound " + i);
+			Check.isTrue(LatencyHistogram.getBound(LatencyHistogram.getBucketCount() - 1) > 50000000000L,
+				"last bound above 50 s");
+		});
+
+		Check.run("bounds are inclusive", () -> {
+			LatencyHistogram h = new LatencyHistogram();
+			h.record(0);
+			h.record(50000);
+			h.record(50001);
+			h.record(100000);
+			h.record(100001);
+			Check.equal(2L, h.getBucket(0), "bucket 0");
+			Check.equal(2L, h.getBucket(1), "bucket 1");
+			Check.equal(1L, h.getBucket(2), "bucket 2");
+		});
+
+		Check.run("counts past the last bound in the overflow bucket", () -> {
+			LatencyHistogram h = new LatencyHistogram();
+			int overflow = LatencyHistogram.getBucketCount();
+			h.record(LatencyHistogram.getBound(overflow - 1));
+			h.record(LatencyHistogram.getBound(overflow - 1) + 1);
+			h.record(Long.MAX_VALUE / 2);
+			Check.equal(1L, h.getBucket(overflow - 1), "last bounded bucket");
+			Check.equal(2L, h.getBucket(overflow), "overflow bucket");
+			Check.equal(Long.MAX_VALUE / 2, h.percentile(1.0), "p100 is the maximum");
+		});
+
+		Check.run("keeps count, sum and max", () -> {
+			LatencyHistogram h = new LatencyHistogram();
+			for (long nanos : new long[]{ 3000, 70000, 1000 })
+				h.record(nanos);
+			Check.equal(3L, h.getCount(), "count");
+			Check.equal(74000L, h.getSumNanos(), "sum");
+			Check.equal(70000L, h.getMaxNanos(), "max");
+		});
+
+		Check.run("reports percentiles as bucket bounds capped by the max", () -> {
+			LatencyHistogram h = new LatencyHistogram();
+			Check.equal(0L, h.percentile(0.5), "empty");
+			//90 fast calls in bucket 0, 9 in bucket 3, one slow one in bucket 5
+			for (int i = 0; i < 90; ++i)
+				h.record(10000);
+			for (int i = 0; i < 9; ++i)
+				h.record(300000);
+			h.record(1500000);
+			Check.equal(LatencyHistogram.getBound(0), h.percentile(0.5), "p50");
+			Check.equal(LatencyHistogram.getBound(0), h.percentile(0.9), "p90");
+			Check.equal(LatencyHistogram.getBound(3), h.percentile(0.99), "p99");
+			Check.equal(1500000L, h.percentile(1.0), "p100 capped by the max");
+			LatencyHistogram one = new LatencyHistogram();
+			one.record(10000);
+			Check.equal(10000L, one.percentile(0.5), "p50 of one call capped by the max");
+		});
+
+		Check.finish("LatencyHistogramTest");
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.sql.SQLException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LruCache's loading, eviction, expiry and the generation check that keeps
+ * a load overlapping an invalidation from caching its value.
+ *
+ */
+
+public class LruCacheTest{
+	//counts the loads and answers with the key and the load's number
+	private static final class CountingLoader implements LruCache.Loader<Integer, String>{
+		final AtomicInteger loads = new AtomicInteger();
+
+		public String load(Integer key){
+			return key + "#" + this.loads.incrementAndGet();
+		}
+	}
+
+	public static void main(String[] args){
+		Check.run("loads on a miss and hits afterwards", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 4, 0);
+			CountingLoader loader = new CountingLoader();
+			Check.equal("1#1", cache.get(1, loader), "first get");
+			Check.equal("1#1", cache.get(1, loader), "second get");
+			Check.equal(1, loader.loads.get(), "loads");
+			Check.equal(1L, cache.getHits(), "hits");
+			Check.equal(1L, cache.getMisses(), "misses");
+		});
+
+		Check.run("caches a null value", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 4, 0);
+			AtomicInteger loads = new AtomicInteger();
+			LruCache.Loader<Integer, String> missing = key -> { loads.incrementAndGet(); return null; };
+			Check.equal(null, cache.get(1, missing), "first get");
+			Check.equal(null, cache.get(1, missing), "second get");
+			Check.equal(1, loads.get(), "loads");
+		});
+
+		Check.run("evicts the least recently used entry", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 2, 0);
+			CountingLoader loader = new CountingLoader();
+			cache.get(1, loader);
+			cache.get(2, loader);
+			cache.get(1, loader);
+			cache.get(3, loader);
+			Check.equal(2, cache.size(), "size");
+			Check.equal(1L, cache.getEvictions(), "evictions");
+			Check.equal("1#1", cache.get(1, loader), "recently used entry kept");
+			Check.equal("2#4", cache.get(2, loader), "eldest entry reloaded");
+		});
+
+		Check.run("reloads an expired entry", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 4, 1);
+			CountingLoader loader = new CountingLoader();
+			cache.get(1, loader);
+			Thread.sleep(5);
+			Check.equal("1#2", cache.get(1, loader), "get after the ttl");
+			Check.equal(1L, cache.getExpirations(), "expirations");
+		});
+
+		Check.run("caches nothing when the loader fails", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 4, 0);
+			Check.fails(SQLException.class, () -> cache.get(1, key -> { throw new SQLException("down"); }), "failing load");
+			Check.equal(0, cache.size(), "size");
+		});
+
+		Check.run("invalidate and invalidateIf drop entries", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 8, 0);
+			CountingLoader loader = new CountingLoader();
+			for (int k = 1; k <= 4; ++k)
+				cache.get(k, loader);
+			cache.invalidate(1);
+			cache.invalidateIf(k -> k % 2 == 0);
+			Check.equal(1, cache.size(), "size");
+			Check.equal("3#3", cache.get(3, loader), "untouched entry");
+			cache.invalidateAll();
+			Check.equal(0, cache.size(), "size after invalidateAll");
+		});
+
+		Check.run("discards a load that overlaps an invalidation", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 4, 0);
+			CountingLoader loader = new CountingLoader();
+			//the row changes, and its key is invalidated, while it is being read
+			Check.equal("1#1", cache.get(1, key -> { cache.invalidate(key); return loader.load(key); }), "racing get");
+			Check.equal(0, cache.size(), "stale value not cached");
+			Check.equal("1#2", cache.get(1, loader), "next get reloads");
+			//an invalidation of another key bumps the generation just the same
+			cache.get(2, key -> { cache.invalidateIf(k -> false); return loader.load(key); });
+			Check.equal(1, cache.size(), "only key 1 cached");
+		});
+
+		Check.run("keeps no stale value when loads race invalidations", () -> {
+			LruCache<Integer, String> cache = new LruCache<>("t", 4, 0);
+			AtomicInteger version = new AtomicInteger();
+			ExecutorService readers = Executors.newFixedThreadPool(4);
+			try{
+				for (int round = 0; round < 200; ++round){
+					CountDownLatch loading = new CountDownLatch(1);
+					CountDownLatch written = new CountDownLatch(1);
+					//a reader reads the old version, the writer updates and invalidates, the read ends
+					Future<String> reader = readers.submit(() -> cache.get(0, key -> {
+						String value = String.valueOf(version.get());
+						loading.countDown();
+						try{
+							written.await();
+						}catch (InterruptedException e){
+							Thread.currentThread().interrupt();
+						}//end try
+						return value;
+					}));
+					loading.await();
+					version.incrementAndGet();
+					cache.invalidate(0);
+					written.countDown();
+					reader.get(10, TimeUnit.SECONDS);
+					Check.equal(String.valueOf(version.get()), cache.get(0, key -> String.valueOf(version.get())),
+						"value after round " + round);
+					cache.invalidate(0);
+				}//end for
+			}finally{
+				readers.shutdownNow();
+			}//end try
+		});
+
+		Check.finish("LruCacheTest");
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The text ResultSink writes in each format, for rows given through
+ * columns() and write(String[]) as the menu's index paths do.
+ *
+ */
+
+public class ResultSinkTest{
+	private static final String[] NAMES = { "appnt_id", "time_slot" };
+	private static final boolean[] NUMERIC = { true, false };
+
+	//writes the rows in format through a small buffer, so it is drained mid-row
+	private static String print(ResultSink.Format format, String[]... rows) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ResultSink sink = ResultSink.open(format, out, 64);
+		sink.columns(NAMES, NUMERIC);
+		for (String[] row : rows)
+			sink.write(row);
+		Check.equal((long) rows.length, sink.getRowCount(), "rows of " + format);
+		sink.close();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public static void main(String[] args){
+		Check.run("tsv ends every cell with a tab and prints null", () -> {
+			Check.equal("appnt_id\ttime_slot\t\n7\t8:00-10:00\t\n8\tnull\t\n",
+				print(ResultSink.Format.TSV, new String[]{ "7", "8:00-10:00" }, new String[]{ "8", null }), "tsv");
+		});
+
+		Check.run("csv quotes only where needed", () -> {
+			Check.equal("appnt_id,time_slot\r\n7,8:00-10:00\r\n8,\r\n9,\"a,b \"\"c\"\"\"\r\n",
+				print(ResultSink.Format.CSV, new String[]{ "7", "8:00-10:00" }, new String[]{ "8", null },
+					new String[]{ "9", "a,b \"c\"" }), "csv");
+		});
+
+		Check.run("jsonl writes numbers, strings and escapes", () -> {
+			Check.equal("{\"appnt_id\":7,\"time_slot\":\"8:00-10:00\"}\n"
+					+ "{\"appnt_id\":\"NaN\",\"time_slot\":null}\n"
+					+ "{\"appnt_id\":9,\"time_slot\":\"tab\\t\\\"q\\\" \\u0001 \u00e9\"}\n",
+				print(ResultSink.Format.JSONL, new String[]{ "7", "8:00-10:00" }, new String[]{ "NaN", null },
+					new String[]{ "9", "tab\t\"q\" \u0001 \u00e9" }), "jsonl");
+		});
+
+		Check.run("table aligns the columns and counts the rows", () -> {
+			Check.equal(" appnt_id | time_slot\n"
+					+ "----------+-------------\n"
+					+ "        7 | 8:00-10:00\n"
+					+ "     1234 | 17:00-19:30\n"
+					+ "(2 rows)\n",
+				print(ResultSink.Format.TABLE, new String[]{ "7", "8:00-10:00" }, new String[]{ "1234", "17:00-19:30" }),
+				"table");
+			Check.equal(" appnt_id | time_slot\n----------+-----------\n(0 rows)\n",
+				print(ResultSink.Format.TABLE), "empty table");
+		});
+
+		Check.run("encodes text longer than the buffer as UTF-8", () -> {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < 100; ++i)
+				text.append("\u00e9\u20ac\ud83d\ude00");
+			String tsv = print(ResultSink.Format.TSV, new String[]{ "1", text.toString() });
+			Check.equal("appnt_id\ttime_slot\t\n1\t" + text + "\t\n", tsv, "long row");
+		});
+
+		Check.run("checks the columns", () -> {
+			ResultSink sink = ResultSink.open(ResultSink.Format.TSV, new ByteArrayOutputStream(), 64);
+			Check.fails(IllegalArgumentException.class, () -> sink.write(new String[]{ "1" }), "row before columns");
+			sink.columns(NAMES, NUMERIC);
+			Check.fails(IllegalStateException.class, () -> sink.columns(NAMES, NUMERIC), "columns twice");
+			Check.fails(IllegalArgumentException.class, () -> sink.write(new String[]{ "1" }), "short row");
+			Check.equal(ResultSink.Format.CSV, ResultSink.Format.parse(" csv "), "format name");
+			Check.fails(IllegalArgumentException.class, () -> ResultSink.Format.parse("xml"), "unknown format");
+		});
+
+		Check.finish("ResultSinkTest");
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StatementCache against a fake connection whose statements only record
+ * whether they were closed.
+ *
+ */
+
+public class StatementCacheTest{
+	//the statements the fake connection prepared, in order
+	private final List<boolean[]> _closed = new ArrayList<boolean[]>();
+
+	private Connection connection(){
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+			new Class<?>[]{ Connection.class }, (proxy, method, args) -> {
+				if (!"prepareStatement".equals(method.getName()))
+					throw new UnsupportedOperationException(method.getName());
+				final boolean[] closed = { false };
+				this._closed.add(closed);
+				return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[]{ PreparedStatement.class }, (p, m, a) -> {
+						if ("close".equals(m.getName())){
+							closed[0] = true;
+							return null;
+						}//end if
+						if ("isClosed".equals(m.getName()))
+							return closed[0];
+						throw new UnsupportedOperationException(m.getName());
+					});
+			});
+	}
+
+	public static void main(String[] args){
+		Check.run("reuses a prepared statement", () -> {
+			StatementCacheTest t = new StatementCacheTest();
+			StatementCache.Stats stats = new StatementCache.Stats();
+			StatementCache cache = new StatementCache(t.connection(), 4, stats);
+			PreparedStatement first = cache.get("SELECT 1");
+			Check.isTrue(first == cache.get("SELECT 1"), "second get returns the cached statement");
+			Check.equal(1, t._closed.size(), "statements prepared");
+			Check.equal(1L, stats.getHits(), "hits");
+			Check.equal(1L, stats.getMisses(), "misses");
+			Check.equal(1L, stats.getHits("SELECT 1"), "hits of the SQL text");
+		});
+
+		Check.run("keeps every statement open while the connection is held", () -> {
+			StatementCacheTest t = new StatementCacheTest();
+			StatementCache cache = new StatementCache(t.connection(), 2, new StatementCache.Stats());
+			cache.get("A");
+			cache.get("B");
+			cache.get("C");
+			Check.equal(3, cache.size(), "size past the maximum");
+			for (boolean[] closed : t._closed)
+				Check.isTrue(!closed[0], "no statement closed before trim()");
+		});
+
+		Check.run("trim closes the least recently used statements", () -> {
+			StatementCacheTest t = new StatementCacheTest();
+			StatementCache.Stats stats = new StatementCache.Stats();
+			StatementCache cache = new StatementCache(t.connection(), 2, stats);
+			cache.get("A");
+			cache.get("B");
+			cache.get("C");
+			cache.get("A");
+			cache.trim();
+			Check.equal(2, cache.size(), "size after trim");
+			Check.isTrue(!t._closed.get(0)[0], "A was used last and stays open");
+			Check.isTrue(t._closed.get(1)[0], "B is closed");
+			Check.isTrue(!t._closed.get(2)[0], "C stays open");
+			Check.equal(1L, stats.getEvictions(), "evictions");
+			cache.get("B");
+			Check.equal(4, t._closed.size(), "B is prepared again");
+		});
+
+		Check.run("replaces a statement closed behind the cache's back", () -> {
+			StatementCacheTest t = new StatementCacheTest();
+			StatementCache cache = new StatementCache(t.connection(), 2, new StatementCache.Stats());
+			cache.get("A").close();
+			cache.get("A");
+			Check.equal(2, t._closed.size(), "statements prepared");
+		});
+
+		Check.run("counts at most MAX_TRACKED_SQL texts one by one", () -> {
+			StatementCache.Stats stats = new StatementCache.Stats();
+			for (int i = 0; i < StatementCache.Stats.MAX_TRACKED_SQL + 10; ++i)
+				stats.hit("SELECT " + i);
+			stats.hit("SELECT 0");
+			Check.equal(StatementCache.Stats.MAX_TRACKED_SQL + 1, stats.getHitsBySql().size(), "tracked texts");
+			Check.equal(10L, stats.getHits(StatementCache.Stats.OTHER_SQL), "hits counted as other");
+			Check.equal(2L, stats.getHits("SELECT 0"), "hits of a tracked text");
+		});
+
+		Check.finish("StatementCacheTest");
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Template JAVA User Interface
+ * =============================
+ *
+ * Database Management Systems
+ * Department of Computer Science &amp; Engineering
+ * University of California - Riverside
+ *
+ * Target DBMS: 'Postgres'
+ *
+ */
+
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TimeSlot parsing, checked against a transcription of V006's
+ * dbproject_slot_minutes so that slots parsed in Java and in SQL agree.
+ *
+ */
+
+public class TimeSlotTest{
+	//dbproject_slot_minutes' pattern; \s and \d mean the same in Java's default mode
+	private static final Pattern V006 = Pattern.compile("^\\s*(\\d{1,2}):(\\d\\d)\\s*-\\s*(\\d{1,2}):(\\d\\d)\\s*$");
+
+	/**
+	 * @return V006's int4range as {lower, upper}, or null where it gives NULL
+	 */
+	private static int[] v006(String slot){
+		Matcher m = V006.matcher(slot);
+		if (!m.matches() || Integer.parseInt(m.group(2)) > 59 || Integer.parseInt(m.group(4)) > 59)
+			return null;
+		int s = Integer.parseInt(m.group(1)) * 60 + Integer.parseInt(m.group(2));
+		int e = Integer.parseInt(m.group(3)) * 60 + Integer.parseInt(m.group(4));
+		if (s > 1440 || e > 1440 || s == e)
+			return null;
+		return new int[]{ s, e < s ? e + 1440 : e };
+	}
+
+	//the range V006 would store for the slot, or null when TimeSlot rejects it
+	private static int[] java(String slot){
+		try{
+			TimeSlot t = TimeSlot.parse(slot);
+			return new int[]{ t.getStartMinute(), t.getStartMinute() + t.getMinutes() };
+		}catch (IllegalArgumentException e){
+			return null;
+		}//end try
+	}
+
+	private static void agrees(String slot){
+		int[] expected = v006(slot);
+		int[] actual = java(slot);
+		String what = "range of [" + slot + "]";
+		if (expected == null || actual == null)
+			Check.equal(expected == null ? null : expected[0] + "-" + expected[1],
+				actual == null ? null : actual[0] + "-" + actual[1], what);
+		else
+			Check.isTrue(expected[0] == actual[0] && expected[1] == actual[1],
+				what + ": expected " + expected[0] + "-" + expected[1] + " but was " + actual[0] + "-" + actual[1]);
+	}
+
+	public static void main(String[] args){
+		Check.run("parses slots and times", () -> {
+			TimeSlot t = TimeSlot.parse("8:00-10:30");
+			Check.equal(480, t.getStartMinute(), "start");
+			Check.equal(630, t.getEndMinute(), "end");
+			Check.equal(150, t.getMinutes(), "minutes");
+			Check.equal("8:00-10:30", t.toString(), "text");
+			Check.equal(t, TimeSlot.parse(" 08:00 - 10:30 "), "padded slot");
+			Check.equal(1440, TimeSlot.parseTime("24:00"), "end of day");
+		});
+
+		Check.run("runs past midnight when the end is not after the start", () -> {
+			TimeSlot t = TimeSlot.parse("22:00-2:00");
+			Check.isTrue(t.isOvernight(), "overnight");
+			Check.equal(240, t.getMinutes(), "minutes");
+			Check.isTrue(t.contains(23 * 60) && t.contains(60) && !t.contains(2 * 60), "contains");
+			Check.equal(LocalDateTime.of(2026, 3, 2, 2, 0), t.endOn(LocalDate.of(2026, 3, 1)), "end");
+		});
+
+		Check.run("rejects what V006 maps to NULL", () -> {
+			for (String slot : new String[]{ "", "8:00", "8-10", "8:00-8:00", "7:60-9:00", "24:01-1:00",
+					"+8:00-10:00", "8:00-+9:30", "\u0668:00-10:00", "8:00-10:00-", "8:0-9:00", "100:00-1:00" })
+				Check.fails(IllegalArgumentException.class, () -> TimeSlot.parse(slot), "[" + slot + "]");
+			Check.fails(IllegalArgumentException.class, () -> TimeSlot.parse(null), "null");
+		});
+
+		Check.run("agrees with V006 on every combination of times", () -> {
+			String[] times = { "0:00", "00:00", "8:00", "08:30", "9:5", "12:59", "23:59", "24:00", "24:01",
+				"25:00", "7:60", "99:99", "100:00", "+8:00", "-1:00", "8:+5", "8", ":30", "", " 9:15", "9:15\t",
+				"\u0668:00", "\u00a09:15", "\u000b9:15", "ab:cd" };
+			List<String> slots = new ArrayList<String>();
+			for (String start : times){
+				for (String end : times){
+					slots.add(start + "-" + end);
+					slots.add(start + " - " + end);
+				}//end for
+			}//end for
+			slots.add("8:00--10:00");
+			slots.add("8:00 10:00");
+			slots.add("\n8:00-10:00\r");
+			for (String slot : slots)
+				agrees(slot);
+		});
+
+		Check.finish("TimeSlotTest");
+	}
+}
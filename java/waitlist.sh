@@ -0,0 +1,8 @@
+#! /bin/bash
+DBNAME=$USER"_DB"
+PORT=$PGPORT
+USER=$USER
+
+# Promotes waitlisted patients to freed slots (migration V008), once or continuously
+# Example: ./waitlist.sh --watch
+java -cp lib/*:bin/ WaitlistPromoter $DBNAME $PORT $USER "$@"
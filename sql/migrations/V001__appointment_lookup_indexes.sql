@@ -0,0 +1,34 @@
+-------------------------------------------
+-- V001: indexes for the appointment lookups
+-------------------------------------------
+-- create.sql only defines primary keys. These support the menu queries:
+--   5  appointments of a doctor in a date range  (has_appointment.doctor_id, AV/AC by appnt_ID)
+--   6  available appointments of a department    (request_maintenance.dept_name, AV by adate)
+--   8  patients per doctor with a status         (searches.aid)
+-- and the booking transaction of option 4.
+
+-- doctor -> appointments; (doctor_id, appt_id) makes the probe index-only
+CREATE INDEX has_appointment_doctor_appt_idx ON has_appointment (doctor_id, appt_id);
+
+-- open slots only ('AV'/'AC' are a small share of all appointments)
+CREATE INDEX appointment_open_idx ON Appointment (appnt_ID, adate) WHERE status IN ('AV', 'AC');
+CREATE INDEX appointment_available_adate_idx ON Appointment (adate, appnt_ID, time_slot) WHERE status = 'AV';
+
+-- covering index for date range scans over every status
+CREATE INDEX appointment_adate_covering_idx ON Appointment (adate, appnt_ID, status, time_slot);
+
+-- department name -> doctors
+CREATE INDEX request_maintenance_dept_name_idx ON request_maintenance (dept_name, did);
+
+-- appointment -> patients who booked it
+CREATE INDEX searches_aid_idx ON searches (aid, pid);
+
+-- foreign keys that are joined on but not indexed by their primary key
+CREATE INDEX doctor_did_idx ON Doctor (did);
+CREATE INDEX department_hid_idx ON Department (hid);
+CREATE INDEX schedules_staff_idx ON schedules (staff_id);
+
+ANALYZE Appointment;
+ANALYZE has_appointment;
+ANALYZE request_maintenance;
+ANALYZE searches;
@@ -0,0 +1,69 @@
+-------------------------------------------
+-- V002: change feed for client-side caches
+-------------------------------------------
+-- Every committed change to Appointment, Doctor, has_appointment and
+-- searches is announced on channel dbproject_changes, so DBproject
+-- instances can keep their caches coherent (see ChangeFeed.java).
+--
+-- Payload: <table>|<op>|<key>[|<key>...]|<sent at, epoch ms>
+--   table  A=Appointment D=Doctor H=has_appointment S=searches
+--   op     I=insert U=update D=delete T=truncate (no keys)
+--   keys   A: appnt_ID|status   D: doctor_ID   H: appt_id|doctor_id   S: hid|pid|aid
+-- Notifications are delivered at commit, in commit order.
+--
+-- A session can suppress the feed for bulk loads with
+--   SET dbproject.change_feed = 'off';
+-- listeners then have to be resynchronized by other means.
+
+CREATE OR REPLACE FUNCTION dbproject_notify_change() RETURNS trigger AS $$
+DECLARE
+	r RECORD;
+	payload TEXT;
+BEGIN
+	IF current_setting('dbproject.change_feed', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		payload := TG_ARGV[0] || '|T';
+	ELSE
+		IF TG_OP = 'DELETE' THEN
+			r := OLD;
+		ELSE
+			r := NEW;
+		END IF;
+		payload := TG_ARGV[0] || '|' || left(TG_OP, 1) || '|';
+		-- one branch per table: record fields are resolved when a branch runs
+		IF TG_ARGV[0] = 'A' THEN
+			payload := payload || r.appnt_ID || '|' || coalesce(r.status, '');
+		ELSIF TG_ARGV[0] = 'D' THEN
+			payload := payload || r.doctor_ID;
+		ELSIF TG_ARGV[0] = 'H' THEN
+			payload := payload || r.appt_id || '|' || r.doctor_id;
+		ELSE
+			payload := payload || r.hid || '|' || r.pid || '|' || r.aid;
+		END IF;
+	END IF;
+	PERFORM pg_notify('dbproject_changes',
+		payload || '|' || (extract(epoch FROM clock_timestamp()) * 1000)::bigint);
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- status is the only Appointment column the caches hold besides the slot itself
+CREATE TRIGGER appointment_change_feed AFTER INSERT OR DELETE OR UPDATE OF status, adate, time_slot ON Appointment
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('A');
+CREATE TRIGGER doctor_change_feed AFTER INSERT OR UPDATE OR DELETE ON Doctor
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('D');
+CREATE TRIGGER has_appointment_change_feed AFTER INSERT OR UPDATE OR DELETE ON has_appointment
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('H');
+CREATE TRIGGER searches_change_feed AFTER INSERT OR UPDATE OR DELETE ON searches
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('S');
+
+CREATE TRIGGER appointment_change_feed_truncate AFTER TRUNCATE ON Appointment
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('A');
+CREATE TRIGGER doctor_change_feed_truncate AFTER TRUNCATE ON Doctor
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('D');
+CREATE TRIGGER has_appointment_change_feed_truncate AFTER TRUNCATE ON has_appointment
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('H');
+CREATE TRIGGER searches_change_feed_truncate AFTER TRUNCATE ON searches
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('S');
@@ -0,0 +1,94 @@
+-------------------------------------------
+-- V003: pre-aggregated counts for report 7
+-------------------------------------------
+-- doctor_status_count holds, per doctor and appointment status, the
+-- number of the doctor's appointments (has_appointment) with that status,
+-- i.e. what report 7 used to compute with a GROUP BY over the whole
+-- Doctor x Appointment x has_appointment join. Triggers keep it current
+-- for every writer: linking or unlinking an appointment and changing an
+-- appointment's status. Appointments without a status are not counted
+-- (the GROUP BY reported them with a count of 0).
+--
+-- StatusCounts verifies the table against a fresh aggregate or rebuilds
+-- it, in parallel over doctor ID ranges. Sessions that bulk load set
+--   SET dbproject.status_counts = 'off';
+-- and rebuild afterwards.
+
+CREATE TABLE doctor_status_count
+(
+	doctor_id INTEGER NOT NULL,
+	status _STATUS NOT NULL,
+	cnt BIGINT NOT NULL,
+	PRIMARY KEY (doctor_id, status)
+);
+
+-- report 7 reads the non-zero counts in descending order
+CREATE INDEX doctor_status_count_cnt_idx ON doctor_status_count (cnt DESC, doctor_id, status) WHERE cnt > 0;
+
+CREATE OR REPLACE FUNCTION dbproject_add_status_count(d INTEGER, s VARCHAR, delta INTEGER) RETURNS void AS $$
+BEGIN
+	IF s IS NULL OR delta = 0 THEN
+		RETURN;
+	END IF;
+	INSERT INTO doctor_status_count (doctor_id, status, cnt) VALUES (d, s, delta)
+		ON CONFLICT (doctor_id, status) DO UPDATE SET cnt = doctor_status_count.cnt + EXCLUDED.cnt;
+END;
+$$ LANGUAGE plpgsql;
+
+-- has_appointment: a link counts the appointment's current status for the doctor
+CREATE OR REPLACE FUNCTION dbproject_count_has_appointment() RETURNS trigger AS $$
+BEGIN
+	IF current_setting('dbproject.status_counts', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		DELETE FROM doctor_status_count;
+		RETURN NULL;
+	END IF;
+	IF TG_OP IN ('DELETE', 'UPDATE') THEN
+		PERFORM dbproject_add_status_count(OLD.doctor_id, (SELECT status FROM Appointment WHERE appnt_ID = OLD.appt_id), -1);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		PERFORM dbproject_add_status_count(NEW.doctor_id, (SELECT status FROM Appointment WHERE appnt_ID = NEW.appt_id), 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Appointment: a status change moves one count per linked doctor
+CREATE OR REPLACE FUNCTION dbproject_count_appointment_status() RETURNS trigger AS $$
+DECLARE
+	d INTEGER;
+BEGIN
+	IF current_setting('dbproject.status_counts', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	-- rows are updated in status order, so opposite transitions cannot deadlock
+	FOR d IN SELECT doctor_id FROM has_appointment WHERE appt_id = NEW.appnt_ID ORDER BY doctor_id LOOP
+		IF OLD.status < NEW.status THEN
+			PERFORM dbproject_add_status_count(d, OLD.status, -1);
+			PERFORM dbproject_add_status_count(d, NEW.status, 1);
+		ELSE
+			PERFORM dbproject_add_status_count(d, NEW.status, 1);
+			PERFORM dbproject_add_status_count(d, OLD.status, -1);
+		END IF;
+	END LOOP;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER has_appointment_status_count AFTER INSERT OR UPDATE OR DELETE ON has_appointment
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_count_has_appointment();
+CREATE TRIGGER has_appointment_status_count_truncate AFTER TRUNCATE ON has_appointment
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_count_has_appointment();
+CREATE TRIGGER appointment_status_count AFTER UPDATE OF status ON Appointment
+	FOR EACH ROW WHEN (OLD.status IS DISTINCT FROM NEW.status)
+	EXECUTE PROCEDURE dbproject_count_appointment_status();
+
+INSERT INTO doctor_status_count (doctor_id, status, cnt)
+	SELECT H.doctor_id, A.status, count(*)
+	FROM has_appointment H, Appointment A
+	WHERE A.appnt_ID = H.appt_id AND A.status IS NOT NULL
+	GROUP BY H.doctor_id, A.status;
+
+ANALYZE doctor_status_count;
@@ -0,0 +1,31 @@
+-------------------------------------------
+-- V004: materialized view for report 8
+-------------------------------------------
+-- Report 8 counts, for one appointment status, the patients (searches)
+-- of every doctor, a four-way join per request. The view keeps the
+-- answer for every status, keyed by (status, doctor_ID); the unique index
+-- is what allows REFRESH MATERIALIZED VIEW CONCURRENTLY, so readers are
+-- never blocked by a refresh.
+--
+-- matview_refresh records when each view was last refreshed, in the
+-- refresh's own transaction, so readers can show how stale the view is.
+-- PatientsPerDoctorReport refreshes it on demand or on a schedule.
+
+CREATE MATERIALIZED VIEW patients_per_doctor_status AS
+	SELECT A.status, D.doctor_ID, D.name, D.specialty, count(S.pid) AS C
+	FROM Doctor D, Searches S, has_appointment H, Appointment A
+	WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = S.aid AND H.appt_id = S.aid AND A.status IS NOT NULL
+	GROUP BY A.status, D.doctor_ID, D.name, D.specialty;
+
+CREATE UNIQUE INDEX patients_per_doctor_status_key ON patients_per_doctor_status (status, doctor_ID);
+
+CREATE TABLE matview_refresh
+(
+	name VARCHAR(64) NOT NULL,
+	refreshed_at TIMESTAMP WITH TIME ZONE NOT NULL,
+	PRIMARY KEY (name)
+);
+
+INSERT INTO matview_refresh (name, refreshed_at) VALUES ('patients_per_doctor_status', now());
+
+ANALYZE patients_per_doctor_status;
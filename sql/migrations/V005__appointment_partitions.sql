@@ -0,0 +1,159 @@
+-------------------------------------------
+-- V005: range partitioning of Appointment by adate
+-------------------------------------------
+-- Appointment becomes a table partitioned by month of adate, so the date
+-- range predicates of menu options 5 and 6 read only the partitions of
+-- their dates and old months can be detached as a whole. Partitions are
+-- named appointment_pYYYYMM; rows outside every month go to
+-- appointment_default. AppointmentPartitions (java/partitions.sh)
+-- creates future months, moves rows out of the default partition and
+-- detaches or drops old months.
+--
+-- A partitioned table can only enforce keys that contain adate, so the
+-- primary key becomes (appnt_ID, adate). appointment_key keeps one row
+-- per appointment ID: it enforces that appnt_ID is unique across
+-- partitions, is what searches, schedules and has_appointment now
+-- reference, and maps an ID to its partition. A trigger keeps it in step
+-- with every writer. Rows of detached months keep their keys, so their
+-- IDs are not reused and the rows referencing them stay valid.
+--
+-- The relations keyed by appnt_ID carry no date and are not partitioned.
+--
+-- Requires PostgreSQL 11 or later.
+
+ALTER TABLE searches DROP CONSTRAINT searches_aid_fkey;
+ALTER TABLE schedules DROP CONSTRAINT schedules_appt_id_fkey;
+ALTER TABLE has_appointment DROP CONSTRAINT has_appointment_appt_id_fkey;
+
+ALTER TABLE Appointment RENAME TO appointment_unpartitioned;
+
+CREATE TABLE appointment_key
+(
+	appnt_ID INTEGER NOT NULL,
+	adate DATE NOT NULL,
+	PRIMARY KEY (appnt_ID)
+);
+INSERT INTO appointment_key (appnt_ID, adate) SELECT appnt_ID, adate FROM appointment_unpartitioned;
+
+ALTER TABLE searches ADD FOREIGN KEY (aid) REFERENCES appointment_key(appnt_ID);
+ALTER TABLE schedules ADD FOREIGN KEY (appt_id) REFERENCES appointment_key(appnt_ID);
+ALTER TABLE has_appointment ADD FOREIGN KEY (appt_id) REFERENCES appointment_key(appnt_ID);
+
+CREATE TABLE Appointment
+(
+	appnt_ID INTEGER NOT NULL,
+	adate DATE NOT NULL,
+	time_slot VARCHAR(11),
+	status _STATUS,
+	PRIMARY KEY (appnt_ID, adate)
+) PARTITION BY RANGE (adate);
+
+CREATE TABLE appointment_default PARTITION OF Appointment DEFAULT;
+
+-- one partition per month from the oldest appointment to a year ahead
+DO $$
+DECLARE
+	m DATE;
+	last DATE;
+BEGIN
+	SELECT date_trunc('month', coalesce(min(adate), current_date)),
+		date_trunc('month', greatest(max(adate), current_date + 365))
+		INTO m, last FROM appointment_unpartitioned;
+	WHILE m <= last LOOP
+		EXECUTE format('CREATE TABLE %I PARTITION OF Appointment FOR VALUES FROM (%L) TO (%L)',
+			'appointment_p' || to_char(m, 'YYYYMM'), m, (m + interval '1 month')::date);
+		m := (m + interval '1 month')::date;
+	END LOOP;
+END;
+$$;
+
+INSERT INTO Appointment (appnt_ID, adate, time_slot, status)
+	SELECT appnt_ID, adate, time_slot, status FROM appointment_unpartitioned;
+
+-- takes the old indexes, triggers and the view of V004 with it
+DROP TABLE appointment_unpartitioned CASCADE;
+
+-- appointment_key follows inserts, deletes and changes of appnt_ID or adate.
+-- An UPDATE that moves a row to another month runs as a DELETE and an
+-- INSERT: the DELETE leaves the key alone while the row still exists
+-- under its new date, and the INSERT then moves the key.
+-- AppointmentPartitions turns it off while it moves rows between
+-- partitions, which changes no key.
+CREATE OR REPLACE FUNCTION dbproject_appointment_key() RETURNS trigger AS $$
+BEGIN
+	IF current_setting('dbproject.appointment_key', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		DELETE FROM appointment_key;
+	ELSIF TG_OP = 'INSERT' THEN
+		INSERT INTO appointment_key (appnt_ID, adate) VALUES (NEW.appnt_ID, NEW.adate)
+			ON CONFLICT (appnt_ID) DO NOTHING;
+		IF NOT FOUND THEN
+			IF EXISTS (SELECT 1 FROM appointment_key K, Appointment A
+					WHERE K.appnt_ID = NEW.appnt_ID AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate) THEN
+				RAISE unique_violation USING MESSAGE = 'duplicate appointment ID ' || NEW.appnt_ID;
+			END IF;
+			UPDATE appointment_key SET adate = NEW.adate WHERE appnt_ID = NEW.appnt_ID;
+		END IF;
+	ELSIF TG_OP = 'UPDATE' THEN
+		UPDATE appointment_key SET appnt_ID = NEW.appnt_ID, adate = NEW.adate WHERE appnt_ID = OLD.appnt_ID;
+	ELSIF NOT EXISTS (SELECT 1 FROM Appointment WHERE appnt_ID = OLD.appnt_ID) THEN
+		DELETE FROM appointment_key WHERE appnt_ID = OLD.appnt_ID;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER appointment_key_sync AFTER INSERT OR DELETE OR UPDATE OF appnt_ID, adate ON Appointment
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_appointment_key();
+CREATE TRIGGER appointment_key_sync_truncate AFTER TRUNCATE ON Appointment
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_appointment_key();
+
+-- the indexes of V001, now one per partition
+CREATE INDEX appointment_open_idx ON Appointment (appnt_ID, adate) WHERE status IN ('AV', 'AC');
+CREATE INDEX appointment_available_adate_idx ON Appointment (adate, appnt_ID, time_slot) WHERE status = 'AV';
+CREATE INDEX appointment_adate_covering_idx ON Appointment (adate, appnt_ID, status, time_slot);
+
+-- the triggers of V002 and V003
+CREATE TRIGGER appointment_change_feed AFTER INSERT OR DELETE OR UPDATE OF status, adate, time_slot ON Appointment
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('A');
+CREATE TRIGGER appointment_change_feed_truncate AFTER TRUNCATE ON Appointment
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('A');
+CREATE TRIGGER appointment_status_count AFTER UPDATE OF status ON Appointment
+	FOR EACH ROW WHEN (OLD.status IS DISTINCT FROM NEW.status)
+	EXECUTE PROCEDURE dbproject_count_appointment_status();
+
+-- V003's status lookup goes through the key, reading a single partition
+CREATE OR REPLACE FUNCTION dbproject_count_has_appointment() RETURNS trigger AS $$
+BEGIN
+	IF current_setting('dbproject.status_counts', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		DELETE FROM doctor_status_count;
+		RETURN NULL;
+	END IF;
+	IF TG_OP IN ('DELETE', 'UPDATE') THEN
+		PERFORM dbproject_add_status_count(OLD.doctor_id, (SELECT A.status FROM appointment_key K, Appointment A
+			WHERE K.appnt_ID = OLD.appt_id AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate), -1);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		PERFORM dbproject_add_status_count(NEW.doctor_id, (SELECT A.status FROM appointment_key K, Appointment A
+			WHERE K.appnt_ID = NEW.appt_id AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate), 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- the view of V004
+CREATE MATERIALIZED VIEW patients_per_doctor_status AS
+	SELECT A.status, D.doctor_ID, D.name, D.specialty, count(S.pid) AS C
+	FROM Doctor D, Searches S, has_appointment H, Appointment A
+	WHERE H.doctor_id = D.doctor_ID AND A.appnt_ID = S.aid AND H.appt_id = S.aid AND A.status IS NOT NULL
+	GROUP BY A.status, D.doctor_ID, D.name, D.specialty;
+CREATE UNIQUE INDEX patients_per_doctor_status_key ON patients_per_doctor_status (status, doctor_ID);
+UPDATE matview_refresh SET refreshed_at = now() WHERE name = 'patients_per_doctor_status';
+
+ANALYZE appointment_key;
+ANALYZE Appointment;
@@ -0,0 +1,55 @@
+-------------------------------------------
+-- V006: structured time slots
+-------------------------------------------
+-- time_slot is text like '8:00-10:00'. Both tables that hold it get
+-- generated columns with the slot as a range, kept by the database for
+-- every writer:
+--   request_maintenance.slot_minutes  int4range of minutes since midnight
+--   Appointment.slot                  tsrange of the slot on adate
+-- A slot whose end is not after its start runs past midnight. Text that
+-- is not a valid slot gives NULL. TimeSlot.java parses the same format.
+--
+-- The GiST index serves the open slot search (DBproject.findOpenSlots):
+-- available appointments overlapping a time window.
+--
+-- Requires PostgreSQL 12 or later.
+
+CREATE OR REPLACE FUNCTION dbproject_slot_minutes(slot TEXT) RETURNS int4range AS $$
+DECLARE
+	m TEXT[];
+	s INTEGER;
+	e INTEGER;
+BEGIN
+	m := regexp_match(slot, '^\s*(\d{1,2}):(\d\d)\s*-\s*(\d{1,2}):(\d\d)\s*$');
+	IF m IS NULL OR m[2]::int > 59 OR m[4]::int > 59 THEN
+		RETURN NULL;
+	END IF;
+	s := m[1]::int * 60 + m[2]::int;
+	e := m[3]::int * 60 + m[4]::int;
+	IF s > 1440 OR e > 1440 OR s = e THEN
+		RETURN NULL;
+	END IF;
+	IF e < s THEN
+		e := e + 1440;
+	END IF;
+	RETURN int4range(s, e);
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION dbproject_slot_range(d DATE, slot TEXT) RETURNS tsrange AS $$
+	SELECT tsrange(d + make_interval(mins => lower(r)), d + make_interval(mins => upper(r)))
+	FROM dbproject_slot_minutes(slot) r
+	WHERE NOT isempty(r);
+$$ LANGUAGE sql IMMUTABLE;
+
+ALTER TABLE request_maintenance
+	ADD COLUMN slot_minutes int4range GENERATED ALWAYS AS (dbproject_slot_minutes(time_slot)) STORED;
+
+ALTER TABLE Appointment
+	ADD COLUMN slot tsrange GENERATED ALWAYS AS (dbproject_slot_range(adate, time_slot)) STORED;
+
+-- open slots only, like the AV indexes of V001
+CREATE INDEX appointment_available_slot_idx ON Appointment USING gist (slot) WHERE status = 'AV';
+
+ANALYZE request_maintenance;
+ANALYZE Appointment;
@@ -0,0 +1,16 @@
+-------------------------------------------
+-- V007: indexes for the earliest available search
+-------------------------------------------
+-- EarliestAvailableSearch (menu option 11) starts from the doctors of a
+-- specialty and/or the departments of a name, optionally in one hospital,
+-- and then reads each doctor's open slots through
+-- has_appointment_doctor_appt_idx (V001) and the partitions of its dates.
+
+-- specialty -> doctors
+CREATE INDEX doctor_specialty_idx ON Doctor (specialty, doctor_ID, did);
+
+-- department name -> departments, per hospital
+CREATE INDEX department_name_idx ON Department (name, hid, dept_ID);
+
+ANALYZE Doctor;
+ANALYZE Department;
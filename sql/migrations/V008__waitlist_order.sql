@@ -0,0 +1,22 @@
+-------------------------------------------
+-- V008: waitlist order
+-------------------------------------------
+-- A patient who books a taken slot is waitlisted on it: the booking adds
+-- a searches row and the slot becomes 'WL'. request_seq records the order
+-- of those rows, so each slot's first row is the patient holding it and
+-- the later rows are its waitlist, first come first served. Existing rows
+-- are numbered in table order.
+--
+-- WaitlistPromoter moves waitlisted patients to the 'AV' slots of the same
+-- doctor; AppointmentBooker.cancel() frees slots.
+
+ALTER TABLE searches ADD COLUMN request_seq BIGSERIAL;
+
+-- holder and waitlist of a slot
+CREATE INDEX searches_aid_request_idx ON searches (aid, request_seq);
+
+-- the few waitlisted slots, without reading the others
+CREATE INDEX appointment_waitlisted_idx ON Appointment (appnt_ID) WHERE status = 'WL';
+
+ANALYZE searches;
+ANALYZE Appointment;
@@ -0,0 +1,73 @@
+-------------------------------------------
+-- V009: change feed for the reference tables
+-------------------------------------------
+-- ReferenceCache also caches Hospital rows, the dept_IDs of a department
+-- name and the doctors request_maintenance lists for it, so those tables
+-- join the feed of V002 (see ChangeFeed.java).
+--
+-- Payload as in V002, with three more tables:
+--   table  E=Department O=Hospital M=request_maintenance
+--   keys   E: dept_ID   O: hospital_ID[|old hospital_ID]   M: did
+-- Department and request_maintenance changes drop every cached department
+-- lookup, as department names are free text and may contain the '|' of
+-- the payload. A Hospital update that changes the ID names both IDs.
+
+CREATE OR REPLACE FUNCTION dbproject_notify_change() RETURNS trigger AS $$
+DECLARE
+	r RECORD;
+	payload TEXT;
+BEGIN
+	IF current_setting('dbproject.change_feed', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		payload := TG_ARGV[0] || '|T';
+	ELSE
+		IF TG_OP = 'DELETE' THEN
+			r := OLD;
+		ELSE
+			r := NEW;
+		END IF;
+		payload := TG_ARGV[0] || '|' || left(TG_OP, 1) || '|';
+		-- one branch per table: record fields are resolved when a branch runs
+		IF TG_ARGV[0] = 'A' THEN
+			payload := payload || r.appnt_ID || '|' || coalesce(r.status, '');
+		ELSIF TG_ARGV[0] = 'D' THEN
+			payload := payload || r.doctor_ID;
+		ELSIF TG_ARGV[0] = 'H' THEN
+			payload := payload || r.appt_id || '|' || r.doctor_id;
+		ELSIF TG_ARGV[0] = 'E' THEN
+			payload := payload || r.dept_ID;
+		ELSIF TG_ARGV[0] = 'O' THEN
+			payload := payload || r.hospital_ID;
+			-- OLD is only assigned for updates, so test TG_OP first
+			IF TG_OP = 'UPDATE' THEN
+				IF OLD.hospital_ID <> NEW.hospital_ID THEN
+					payload := payload || '|' || OLD.hospital_ID;
+				END IF;
+			END IF;
+		ELSIF TG_ARGV[0] = 'M' THEN
+			payload := payload || r.did;
+		ELSE
+			payload := payload || r.hid || '|' || r.pid || '|' || r.aid;
+		END IF;
+	END IF;
+	PERFORM pg_notify('dbproject_changes',
+		payload || '|' || (extract(epoch FROM clock_timestamp()) * 1000)::bigint);
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER department_change_feed AFTER INSERT OR UPDATE OR DELETE ON Department
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('E');
+CREATE TRIGGER hospital_change_feed AFTER INSERT OR UPDATE OR DELETE ON Hospital
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('O');
+CREATE TRIGGER request_maintenance_change_feed AFTER INSERT OR UPDATE OR DELETE ON request_maintenance
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_notify_change('M');
+
+CREATE TRIGGER department_change_feed_truncate AFTER TRUNCATE ON Department
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('E');
+CREATE TRIGGER hospital_change_feed_truncate AFTER TRUNCATE ON Hospital
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('O');
+CREATE TRIGGER request_maintenance_change_feed_truncate AFTER TRUNCATE ON request_maintenance
+	FOR EACH STATEMENT EXECUTE PROCEDURE dbproject_notify_change('M');
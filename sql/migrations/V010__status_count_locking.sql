@@ -0,0 +1,40 @@
+-------------------------------------------
+-- V010: serialize status counts with status changes
+-------------------------------------------
+-- Linking an appointment to a doctor only takes a KEY SHARE lock on its
+-- appointment_key row (the foreign key), so a concurrent status change of
+-- the appointment did not wait for it: the link counted the status it
+-- read before the change committed, and the change's trigger did not see
+-- the uncommitted link, leaving the old status counted for that doctor.
+--
+-- The has_appointment trigger now locks the Appointment row before it
+-- reads the status. A status change in progress makes it wait and then
+-- read the new status; a status change that comes later waits for the
+-- link to commit and then finds it in has_appointment.
+
+CREATE OR REPLACE FUNCTION dbproject_count_has_appointment() RETURNS trigger AS $$
+DECLARE
+	s VARCHAR;
+BEGIN
+	IF current_setting('dbproject.status_counts', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		DELETE FROM doctor_status_count;
+		RETURN NULL;
+	END IF;
+	IF TG_OP IN ('DELETE', 'UPDATE') THEN
+		SELECT A.status INTO s FROM appointment_key K, Appointment A
+			WHERE K.appnt_ID = OLD.appt_id AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate
+			FOR UPDATE OF A;
+		PERFORM dbproject_add_status_count(OLD.doctor_id, s, -1);
+	END IF;
+	IF TG_OP IN ('INSERT', 'UPDATE') THEN
+		SELECT A.status INTO s FROM appointment_key K, Appointment A
+			WHERE K.appnt_ID = NEW.appt_id AND A.appnt_ID = K.appnt_ID AND A.adate = K.adate
+			FOR UPDATE OF A;
+		PERFORM dbproject_add_status_count(NEW.doctor_id, s, 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,44 @@
+-------------------------------------------
+-- V011: appointment keys move only with their row
+-------------------------------------------
+-- V005's key trigger let an INSERT whose appnt_ID was taken move the key
+-- whenever no Appointment row held it any more. Keys of detached months
+-- outlive their rows on purpose, so a reused ID of an archived
+-- appointment was accepted and inherited the archived searches,
+-- schedules and has_appointment rows.
+--
+-- The DELETE half of a cross-partition UPDATE now marks the key as
+-- moving (its row still exists under the new date), and the INSERT half
+-- moves only a marked key. Any other INSERT of a taken ID is a
+-- unique_violation, whether or not the ID's row is still attached.
+
+ALTER TABLE appointment_key ADD COLUMN moving BOOLEAN NOT NULL DEFAULT false;
+
+CREATE OR REPLACE FUNCTION dbproject_appointment_key() RETURNS trigger AS $$
+BEGIN
+	IF current_setting('dbproject.appointment_key', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'TRUNCATE' THEN
+		DELETE FROM appointment_key;
+	ELSIF TG_OP = 'INSERT' THEN
+		INSERT INTO appointment_key (appnt_ID, adate) VALUES (NEW.appnt_ID, NEW.adate)
+			ON CONFLICT (appnt_ID) DO NOTHING;
+		IF NOT FOUND THEN
+			UPDATE appointment_key SET adate = NEW.adate, moving = false
+				WHERE appnt_ID = NEW.appnt_ID AND moving;
+			IF NOT FOUND THEN
+				RAISE unique_violation USING MESSAGE = 'duplicate appointment ID ' || NEW.appnt_ID;
+			END IF;
+		END IF;
+	ELSIF TG_OP = 'UPDATE' THEN
+		UPDATE appointment_key SET appnt_ID = NEW.appnt_ID, adate = NEW.adate WHERE appnt_ID = OLD.appnt_ID;
+	ELSIF EXISTS (SELECT 1 FROM Appointment WHERE appnt_ID = OLD.appnt_ID) THEN
+		-- the row moved to another partition, the INSERT that follows takes the key along
+		UPDATE appointment_key SET moving = true WHERE appnt_ID = OLD.appnt_ID;
+	ELSE
+		DELETE FROM appointment_key WHERE appnt_ID = OLD.appnt_ID;
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
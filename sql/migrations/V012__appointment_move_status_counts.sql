@@ -0,0 +1,42 @@
+-------------------------------------------
+-- V012: status counts follow appointments across partitions
+-------------------------------------------
+-- An UPDATE that moves an appointment to another month runs as a DELETE
+-- and an INSERT (see V005), and only AFTER DELETE and AFTER INSERT
+-- triggers fire for it. When the same UPDATE also changed the status,
+-- V003's appointment_status_count trigger (AFTER UPDATE OF status) never
+-- ran, and the linked doctors kept the old status counted.
+--
+-- The DELETE half now does that trigger's work. By the time it fires the
+-- row already exists under its new date, so it reads the new status from
+-- there; a plain DELETE finds no row and changes nothing, as before. The
+-- INSERT half needs no counting of its own.
+
+CREATE OR REPLACE FUNCTION dbproject_count_appointment_move() RETURNS trigger AS $$
+DECLARE
+	s Appointment.status%TYPE;
+	d INTEGER;
+BEGIN
+	IF current_setting('dbproject.status_counts', true) = 'off' THEN
+		RETURN NULL;
+	END IF;
+	SELECT status INTO s FROM Appointment WHERE appnt_ID = OLD.appnt_ID;
+	IF NOT FOUND OR s IS NOT DISTINCT FROM OLD.status THEN
+		RETURN NULL;
+	END IF;
+	-- same order as dbproject_count_appointment_status, so the two cannot deadlock
+	FOR d IN SELECT doctor_id FROM has_appointment WHERE appt_id = OLD.appnt_ID ORDER BY doctor_id LOOP
+		IF OLD.status < s THEN
+			PERFORM dbproject_add_status_count(d, OLD.status, -1);
+			PERFORM dbproject_add_status_count(d, s, 1);
+		ELSE
+			PERFORM dbproject_add_status_count(d, s, 1);
+			PERFORM dbproject_add_status_count(d, OLD.status, -1);
+		END IF;
+	END LOOP;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER appointment_move_status_count AFTER DELETE ON Appointment
+	FOR EACH ROW EXECUTE PROCEDURE dbproject_count_appointment_move();